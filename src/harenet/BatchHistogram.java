@@ -0,0 +1,162 @@
+/*
+ * see license.txt
+ */
+package harenet;
+
+/**
+ * Records the sizes of batches (such as the number of datagrams received in a single {@link Host#update(Host.MessageListener, int)})
+ * in power of two buckets: 0, 1, 2-3, 4-7, ..., with the last bucket holding everything larger.
+ *
+ * @author Tony
+ *
+ */
+public class BatchHistogram {
+
+    /**
+     * The number of buckets
+     */
+    public static final int NUMBER_OF_BUCKETS = 10;
+
+    private final long[] buckets;
+    private long numberOfBatches;
+    private long totalSize;
+    private int lastSize;
+    private int maxSize;
+    private long numberOfBudgetHits;
+
+    /**
+     */
+    public BatchHistogram() {
+        this.buckets = new long[NUMBER_OF_BUCKETS];
+    }
+
+    /**
+     * @param size the size of the batch
+     * @return the bucket the size belongs in
+     */
+    public static int bucketIndex(int size) {
+        if(size <= 0) {
+            return 0;
+        }
+
+        return Math.min(32 - Integer.numberOfLeadingZeros(size), NUMBER_OF_BUCKETS - 1);
+    }
+
+    /**
+     * @param bucket
+     * @return the smallest batch size that falls in the bucket
+     */
+    public static int bucketLowerBound(int bucket) {
+        return bucket == 0 ? 0 : 1 << (bucket - 1);
+    }
+
+    /**
+     * Records a batch
+     *
+     * @param size the size of the batch
+     * @param hitBudget if the batch was cut short by a budget
+     */
+    public void record(int size, boolean hitBudget) {
+        this.buckets[bucketIndex(size)]++;
+        this.numberOfBatches++;
+        this.totalSize += size;
+        this.lastSize = size;
+        this.maxSize = Math.max(this.maxSize, size);
+
+        if(hitBudget) {
+            this.numberOfBudgetHits++;
+        }
+    }
+
+    /**
+     * Clears out the recorded batches
+     */
+    public void reset() {
+        for(int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = 0;
+        }
+
+        this.numberOfBatches = 0;
+        this.totalSize = 0;
+        this.lastSize = 0;
+        this.maxSize = 0;
+        this.numberOfBudgetHits = 0;
+    }
+
+    /**
+     * @param bucket
+     * @return the number of batches recorded in the bucket
+     */
+    public long getBucketCount(int bucket) {
+        return this.buckets[bucket];
+    }
+
+    /**
+     * @return the number of batches recorded
+     */
+    public long getNumberOfBatches() {
+        return numberOfBatches;
+    }
+
+    /**
+     * @return the sum of all the batch sizes
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * @return the size of the last batch
+     */
+    public int getLastSize() {
+        return lastSize;
+    }
+
+    /**
+     * @return the largest batch
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the average batch size
+     */
+    public double getAverageSize() {
+        return this.numberOfBatches > 0 ? (double)this.totalSize / this.numberOfBatches : 0;
+    }
+
+    /**
+     * @return the number of batches that were cut short by a budget
+     */
+    public long getNumberOfBudgetHits() {
+        return numberOfBudgetHits;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("batches: ").append(this.numberOfBatches)
+          .append(" avg: ").append(String.format("%.2f", getAverageSize()))
+          .append(" max: ").append(this.maxSize)
+          .append(" budget hits: ").append(this.numberOfBudgetHits)
+          .append(" [");
+
+        for(int i = 0; i < this.buckets.length; i++) {
+            if(i > 0) {
+                sb.append(", ");
+            }
+
+            sb.append(bucketLowerBound(i));
+            if(i == this.buckets.length - 1) {
+                sb.append("+");
+            }
+            sb.append(": ").append(this.buckets[i]);
+        }
+
+        return sb.append("]").toString();
+    }
+}
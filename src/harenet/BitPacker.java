@@ -5,17 +5,26 @@ package harenet;
 
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
  * Special thanks to: http://www.shadebob.org/posts/bit-packing-in-java
  * for the implementation https://gist.github.com/cobolfoo/0c4124308e7cc05d82b8
  * 
+ * <p>
+ * The bits are stored in 64 bit words, bit <code>n</code> being bit <code>n % 64</code> of word <code>n / 64</code>,
+ * so that a value is written (or read) with at most two word operations rather than one operation per bit.  This
+ * is the same layout as a little endian byte stream, which lets whole words be copied to and from a {@link ByteBuffer}.
+ * 
  * @author Tony
  *
  */
 public class BitPacker {
 
-    private BitArray data;
+    private static final int WORD_SIZE = Long.SIZE;
+    
+    private long[] words;
     private int numBits;   
     private int position;
     private int mark;
@@ -25,7 +34,7 @@ public class BitPacker {
      * @param initialSizeInBits the initial size of the bit set
      */
     public BitPacker(int initialSizeInBits, int limit) {
-        this.data = new BitArray(initialSizeInBits);
+        this.words = new long[(initialSizeInBits + WORD_SIZE - 1) / WORD_SIZE];
         this.numBits = 0;
         this.position = 0;
         this.mark = 0;
@@ -73,7 +82,7 @@ public class BitPacker {
      * @return this object for method chaining
      */
     public BitPacker clear() {
-        this.data.clear();
+        Arrays.fill(this.words, 0L);
         this.numBits = 0;
         this.position = 0;
         this.mark = 0;
@@ -174,17 +183,25 @@ public class BitPacker {
         pad();
         
         int numberOfBytes = getNumberOfBytes();
+        
+        /* whole words are copied as is, when the read position is on a word boundary */
+        if((this.position % WORD_SIZE) == 0 && numberOfBytes >= 8) {
+            ByteOrder order = buffer.order();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            
+            while(numberOfBytes >= 8) {
+                buffer.putLong(this.words[this.position / WORD_SIZE]);
+                this.position += WORD_SIZE;
+                numberOfBytes -= 8;
+            }
+            
+            buffer.order(order);
+        }
+        
         for (int i = 0; i < numberOfBytes; i++) {
             buffer.put(getByte());
         }
-        /*
-        byte[] bytes = data.getData();
-        for (int i = 0; i < bytes.length; i++) {
-            buffer.put(bytes[i]);
-        }
-
-        this.position += bytes.length * 8;
-        */
+        
         return this;
     }
     
@@ -195,15 +212,29 @@ public class BitPacker {
      * @return this object for method chaining
      */
     public BitPacker readFrom(ByteBuffer buffer) {                
-        /*int remaining = buffer.remaining();
-        if(remaining < data.numberOfBytes()) {
-            for(int i = 0; i < remaining; i++) {
-                data.setDataElement(i, buffer.get());
-            }   
+        
+        /* whole words are copied as is, when the write position is on a word boundary */
+        if((this.position % WORD_SIZE) == 0 && buffer.remaining() >= 8) {
+            ByteOrder order = buffer.order();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            
+            while(buffer.remaining() >= 8) {
+                if(this.position + WORD_SIZE > this.limit) {
+                    buffer.order(order);
+                    throw new BufferOverflowException();
+                }
+                
+                this.words[this.position / WORD_SIZE] = buffer.getLong();
+                this.position += WORD_SIZE;
+            }
+            
+            buffer.order(order);
+            
+            if(this.position > this.numBits) {
+                this.numBits = this.position;
+            }
         }
         
-        this.position += remaining * 8;        
-        */
         while(buffer.hasRemaining()) {
             putByte(buffer.get());
         }
@@ -216,14 +247,22 @@ public class BitPacker {
             throw new BufferOverflowException();
         }
         
-        for (int i = 0; i < numberOfBits; i++) {
-
-            if (((value >> i) & 1) == 1) {
-                data.setBit(position++, true);
-            }
-            else {
-                data.setBit(position++, false);
+        if(numberOfBits > 0) {
+            long mask = mask(numberOfBits);
+            long bits = value & mask;
+            
+            int index = position / WORD_SIZE;
+            int offset = position % WORD_SIZE;
+            
+            this.words[index] = (this.words[index] & ~(mask << offset)) | (bits << offset);
+            
+            /* the value spills over into the next word */
+            int spill = (offset + numberOfBits) - WORD_SIZE;
+            if(spill > 0) {
+                this.words[index + 1] = (this.words[index + 1] & ~(mask >>> (numberOfBits - spill))) | (bits >>> (WORD_SIZE - offset));
             }
+            
+            position += numberOfBits;
         }
         
         // if we've expanded the buffer, make
@@ -235,6 +274,63 @@ public class BitPacker {
         return this;
     }
     
+    /**
+     * Reads the bits at the supplied position, without moving the read position
+     * 
+     * @param position the bit position
+     * @param numberOfBits the number of bits to read, at most 64
+     * @return the bits, with bit 0 being the first bit read
+     */
+    private long getBits(int position, int numberOfBits) {
+        if(numberOfBits <= 0) {
+            return 0;
+        }
+        
+        int index = position / WORD_SIZE;
+        int offset = position % WORD_SIZE;
+        
+        long value = this.words[index] >>> offset;
+        if(offset + numberOfBits > WORD_SIZE) {
+            value |= this.words[index + 1] << (WORD_SIZE - offset);
+        }
+        
+        return value & mask(numberOfBits);
+    }
+    
+    /**
+     * Reads the next bits, moving the read position
+     * 
+     * @param numberOfBits
+     * @return the bits
+     */
+    private long getBits(int numberOfBits) {
+        long value = getBits(this.position, numberOfBits);
+        this.position += numberOfBits;
+        return value;
+    }
+    
+    /**
+     * Reads the next bits, making sure they have been written first
+     * 
+     * @param numberOfBits
+     * @return the bits
+     */
+    private long getCheckedBits(int numberOfBits) {
+        if(numberOfBits > 0 && this.position + numberOfBits > this.numBits) {
+            throw new IllegalStateException("Out of bound error, read: " + Math.max(this.position, this.numBits) + ", numBits: " + numBits);
+        }
+        
+        return getBits(numberOfBits);
+    }
+    
+    /**
+     * @param numberOfBits
+     * @return a mask of the lower number of bits
+     */
+    private static long mask(int numberOfBits) {
+        return (numberOfBits >= WORD_SIZE) ? -1L : (1L << numberOfBits) - 1L;
+    }
+    
 
     public BitPacker putBits(long value, int numberOfBits) {
         putBits(this.position, value, numberOfBits);
@@ -344,13 +440,7 @@ public class BitPacker {
     }
 
     public BitPacker putBoolean(boolean value) {
-        if(this.position + 1 > this.limit) {
-            throw new BufferOverflowException();
-        }
-        
-        data.setBit(numBits++, value);
-        this.position++;
-        return this;
+        return putBits(value ? 1L : 0L, 1);
     }
     
     public BitPacker putBoolean(int position, boolean value) {
@@ -358,7 +448,14 @@ public class BitPacker {
             throw new BufferOverflowException();
         }
         
-        data.setBit(position, value);
+        long bit = 1L << (position % WORD_SIZE);
+        if(value) {
+            this.words[position / WORD_SIZE] |= bit;
+        }
+        else {
+            this.words[position / WORD_SIZE] &= ~bit;
+        }
+        
         if(position==numBits+1) {
             numBits++;            
         }
@@ -381,33 +478,44 @@ public class BitPacker {
     }
 
     public BitPacker putBytes(byte[] value, int offset, int length) {
-        for (int i = offset; i < length; i++) {
+        int end = offset + length;
+        int i = offset;
+        
+        /* eight bytes at a time */
+        for (; i + 8 <= end; i += 8) {
+            putBits(toWord(value, i), WORD_SIZE);
+        }
+        
+        for (; i < end; i++) {
             putByte(value[i]);
         }
 
         return this;
     }
     
-
-    private void checkPosition() {
-        if (position > numBits - 1) {
-            throw new IllegalStateException("Out of bound error, read: " + position + ", numBits: " + numBits);                
-        }
+    /**
+     * @param bytes
+     * @param offset
+     * @return the eight bytes at the offset as a little endian word
+     */
+    private static long toWord(byte[] bytes, int offset) {
+        return  ((bytes[offset    ] & 0xFFL)      ) |
+                ((bytes[offset + 1] & 0xFFL) <<  8) |
+                ((bytes[offset + 2] & 0xFFL) << 16) |
+                ((bytes[offset + 3] & 0xFFL) << 24) |
+                ((bytes[offset + 4] & 0xFFL) << 32) |
+                ((bytes[offset + 5] & 0xFFL) << 40) |
+                ((bytes[offset + 6] & 0xFFL) << 48) |
+                ((bytes[offset + 7] & 0xFFL) << 56);
     }
+    
 
     public byte getByte() {
         return getByte(Byte.SIZE);
     }
 
     public byte getByte(int length) {
-
-        byte value = 0;
-
-        for (int i = 0; i < length; i++) {
-            value |= (data.getBit(position++) ? 1 : 0) << (i % Byte.SIZE);
-        }
-
-        return value;
+        return (byte) getBits(length);
     }
     
     public short getShort() {
@@ -415,14 +523,7 @@ public class BitPacker {
     }
 
     public short getShort(int length) {
-
-        short value = 0;
-
-        for (int i = 0; i < length; i++) {
-            value |= (data.getBit(position++) ? 1 : 0) << (i % Short.SIZE);
-        }
-
-        return value;
+        return (short) getBits(length);
     }
 
     public int getInteger() {
@@ -430,15 +531,7 @@ public class BitPacker {
     }
 
     public int getInteger(int length) {
-
-        int value = 0;
-
-        for (int i = 0; i < length; i++) {
-            checkPosition();
-            value |= (data.getBit(position++) ? 1 : 0) << (i % Integer.SIZE);
-        }
-
-        return value;
+        return (int) getCheckedBits(length);
     }
 
     public long getLong() {
@@ -446,15 +539,7 @@ public class BitPacker {
     }
 
     public long getLong(int length) {
-
-        long value = 0;
-
-        for (int i = 0; i < length; i++) {
-            checkPosition();
-            value |= (data.getBit(position++) ? 1L : 0L) << (i % Long.SIZE);
-        }
-
-        return value;
+        return getCheckedBits(length);
     }
 
     public float getFloat() {
@@ -462,15 +547,7 @@ public class BitPacker {
     }
 
     public float getFloat(int length) {
-
-        int value = 0;
-
-        for (int i = 0; i < length; i++) {
-            checkPosition();
-            value |= (data.getBit(position++) ? 1 : 0) << (i % Float.SIZE);
-        }
-
-        return Float.intBitsToFloat(value);
+        return Float.intBitsToFloat((int) getCheckedBits(length));
     }
     
     public double getDouble() {
@@ -478,20 +555,11 @@ public class BitPacker {
     }
 
     public double getDouble(int length) {
-
-        long value = 0;
-
-        for (int i = 0; i < length; i++) {
-            checkPosition();
-            value |= (data.getBit(position++) ? 1L : 0L) << (i % Double.SIZE);
-        }
-
-        return Double.longBitsToDouble(value);
+        return Double.longBitsToDouble(getCheckedBits(length));
     }
 
     public boolean getBoolean() {
-        checkPosition();
-        return data.getBit(position++);
+        return getCheckedBits(1) != 0;
     }
 
     public byte[] getBytes(int length) {
@@ -500,7 +568,17 @@ public class BitPacker {
     }
     
     public byte[] getBytes(byte[] bytes, int offset, int length) {        
-        for (int i = 0; i < length; i++) {
+        int i = 0;
+        
+        /* eight bytes at a time */
+        for (; i + 8 <= length; i += 8) {
+            long word = getBits(WORD_SIZE);
+            for (int j = 0; j < 8; j++) {
+                bytes[offset + i + j] = (byte) (word >>> (j * Byte.SIZE));
+            }
+        }
+        
+        for (; i < length; i++) {
             bytes[offset + i] = getByte();
         }
         return bytes;
@@ -539,6 +617,11 @@ public class BitPacker {
     }
 
     public void dump() {
+        BitArray data = new BitArray(this.words.length * WORD_SIZE);
+        for(int i = 0; i < data.numberOfBytes(); i++) {
+            data.setDataElement(i, (byte) (this.words[i / 8] >>> ((i % 8) * Byte.SIZE)));
+        }
+        
         StatementFactory statementFactory = new StatementFactory();
         Statement statement = statementFactory.getInstance(numBits,data);
         statement.print();
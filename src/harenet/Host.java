@@ -15,11 +15,15 @@ import java.util.Queue;
 import harenet.Peer.State;
 import harenet.messages.ConnectionRequestMessage;
 import harenet.messages.DisconnectMessage;
+import harenet.messages.EncodedNetMessage;
+import harenet.messages.FragmentMessage;
 import harenet.messages.HeartbeatMessage;
 import harenet.messages.Message;
+import harenet.messages.NetMessage;
 import harenet.messages.NetMessageFactory;
 import harenet.messages.PingMessage;
 import harenet.messages.PongMessage;
+import harenet.messages.SequencedNetMessage;
 import harenet.messages.ServerFullMessage;
 
 /**
@@ -58,6 +62,9 @@ public class Host {
     private boolean isServer;
     private Peer localPeer;
     
+    private BatchHistogram receiveBatches;
+    private boolean isReceiveBudgetExhausted;
+    
     /**
      * Listens for messages and {@link Peer} connection state events.
      * 
@@ -131,6 +138,8 @@ public class Host {
         peers = new Peer[config.getMaxConnections()];
         
         protocol = new Protocol(config.getCompressionThreshold(), config.getMtu());
+        
+        receiveBatches = new BatchHistogram();
     }
     
     /**
@@ -140,6 +149,20 @@ public class Host {
         return config;
     }
     
+    /**
+     * @return the number of bytes available for messages in a packet
+     */
+    public int getMaxPacketPayloadSize() {
+        return config.getMtu() - protocol.size();
+    }
+    
+    /**
+     * @return the number of datagrams received per {@link #update(MessageListener, int)}
+     */
+    public BatchHistogram getReceiveBatches() {
+        return receiveBatches;
+    }
+    
     /**
      * @return the {@link Log} instance
      */
@@ -378,6 +401,37 @@ public class Host {
         return bytesReceived;
     }
     
+    /**
+     * Drains the datagrams that are ready on the socket, parsing each one into its
+     * {@link Peer}s message queue.  The one read buffer is reused for every datagram, as the
+     * messages are fully read out of it before the next receive.  This stops once the socket is
+     * empty, or the packet or time budget from the {@link NetConfig} is used up; anything left 
+     * over is picked up on the next update.
+     * 
+     * @return the number of datagrams received
+     * @throws IOException
+     */
+    public int receiveAllClientPackets() throws IOException {
+        final int maxPackets = config.getMaxReceivePackets();
+        final int maxTime = config.getMaxReceiveTime();
+        final int startTime = Time.time();
+        
+        this.isReceiveBudgetExhausted = false;
+        
+        int numberOfPackets = 0;
+        while(receiveClientPackets()) {
+            numberOfPackets++;
+            
+            if(numberOfPackets >= maxPackets || 
+               (maxTime > 0 && (Time.time() - startTime) >= maxTime)) {
+                this.isReceiveBudgetExhausted = true;
+                break;
+            }
+        }
+        
+        return numberOfPackets;
+    }
+    
     /**
      * Updates the network state
      * 
@@ -390,22 +444,24 @@ public class Host {
         // For each Client:
         // 1) send out Packet
         // 2) read in queued up Messages from clients
-        // 3) receive Packet
-        // 4) parse Packet
-        // 5) place Message in client Queue
+        // 3) receive all ready Packets
+        // 4) parse Packets
+        // 5) place Messages in client Queues
 
         int startTime = Time.time();
         
         /* send any pending packets */
         sendClientPackets();
         
+        int numberOfPackets = 0;
         int socketState = SOCKET_WAIT;
         do {
                 
-            /* if we received a packet from the client
+            /* if we received packets from the clients
              * we can break out
              */
-            if(receiveClientPackets()) {
+            numberOfPackets = receiveAllClientPackets();
+            if(numberOfPackets > 0) {
                 break;
             }
             
@@ -422,6 +478,8 @@ public class Host {
             }
         } while (socketState == SOCKET_READ);
         
+        this.receiveBatches.record(numberOfPackets, this.isReceiveBudgetExhausted);
+        
         dispatchMessages(listener);
         
         checkTimeouts(listener);
@@ -534,8 +592,22 @@ public class Host {
                                 + " with Ack: " + peer.getRemoteSequence());
                     }
                     
+                    /* mark which packet number this message was sent out in,
+                     * so that the sender can check if it was acknowledged
+                     */
+                    int seq = peer.getSendSequence()+1;
+                    msg.setSequenceNumberSent(seq);
+                    
+                    NetMessage netMessage = msg.getMessage();
+                    if(netMessage instanceof SequencedNetMessage) {
+                        ((SequencedNetMessage)netMessage).setSequenceNumberSent(seq);
+                    }
+                    
                     msg.writeTo(writeBuffer);
                     numberOfMessagesSent++;
+                    
+                    /* unreliable messages are only sent once, so this peer is done with it */
+                    EncodedNetMessage.release(msg);
                 }
 
             }
@@ -828,7 +900,12 @@ public class Host {
 //                    log.debug("Receiving message: " + protocol.getSendSequence() + " with Ack: " + protocol.getAcknowledge());
 //                }
                 if(!peer.isDuplicateMessage(message)) {
-                    peer.receive(message);
+                    if(message instanceof FragmentMessage) {
+                        peer.receiveFragment((FragmentMessage)message, messageFactory);
+                    }
+                    else {
+                        peer.receive(message);
+                    }
                 }
             }
             else {
@@ -838,6 +915,9 @@ public class Host {
                 else if(message instanceof PongMessage) {
                     peer.pongMessageReceived();
                 }
+                else if(message instanceof FragmentMessage) {
+                    peer.receiveFragment((FragmentMessage)message, messageFactory);
+                }
                 else {
                     peer.receive(message);
                 }
@@ -917,6 +997,7 @@ public class Host {
                 }
                 else {
                     peer.timeoutDuplicates(currentTime, messageTimeout);
+                    peer.timeoutFragments(currentTime, messageTimeout);
                 }
             }
             else if(peer!=null && peer.isDisconnecting()) {                
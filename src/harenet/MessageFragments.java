@@ -0,0 +1,314 @@
+/*
+ * see license.txt 
+ */
+package harenet;
+
+import harenet.messages.FragmentGroup;
+import harenet.messages.FragmentMessage;
+import harenet.messages.Message;
+import harenet.messages.NetMessage;
+import harenet.messages.NetMessageFactory;
+import harenet.messages.ReliableNetMessage;
+import harenet.messages.SequencedNetMessage;
+import harenet.messages.UnReliableNetMessage;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Splits up {@link NetMessage}s that are too large to fit in a single packet into {@link FragmentMessage}s, and 
+ * puts the received {@link FragmentMessage}s back together.
+ * 
+ * <p>
+ * The message is compressed before it is split up, so that the fewest number of fragments are sent.  The 
+ * fragments of a reliable message are sent reliably, so the normal acknowledgement of the reliable messages takes 
+ * care of resending any lost fragments.  The fragments of an unreliable message are sent unreliably; if any of them 
+ * are lost, the message is lost as it would have been had it fit in a packet.  The received fragments are buffered 
+ * until the whole message arrives; the amount buffered is bounded by {@link NetConfig#getMaxReassemblySize()}, and 
+ * incomplete messages are discarded once they time out.
+ * 
+ * @author Tony
+ *
+ */
+public class MessageFragments {
+
+    /**
+     * A message being put back together
+     */
+    private static class Assembly {
+        byte[][] fragments;
+        int numberOfFragmentsReceived;
+        int numberOfBytes;
+        
+        boolean isReliable;
+        boolean isCompressed;
+        int messageSize;
+        
+        long timeStarted;
+    }
+    
+    private Log log;
+    private int maxReassemblySize;
+    
+    private AtomicInteger groupIdGen;
+    
+    private Map<Integer, Assembly> assemblies;
+    private int numberOfBytesBuffered;
+    
+    /**
+     * @param log
+     * @param maxReassemblySize the maximum number of bytes that can be buffered waiting to be put back together
+     */
+    public MessageFragments(Log log, int maxReassemblySize) {
+        this.log = log;
+        this.maxReassemblySize = maxReassemblySize;
+        
+        this.groupIdGen = new AtomicInteger();
+        this.assemblies = new HashMap<Integer, Assembly>();
+    }
+    
+    /**
+     * Splits up the {@link Message} into {@link FragmentMessage}s, which are sent reliably if the message is reliable
+     * 
+     * @param message the message to split up
+     * @param maxFragmentSize the maximum number of bytes of data each fragment can hold
+     * @param fragments the queue the {@link FragmentMessage}s are added to
+     * @return the number of fragments
+     */
+    public int fragment(Message message, int maxFragmentSize, Queue<Message> fragments) {
+        NetMessage netMessage = message.getMessage();
+        
+        /* the size stored in the message is capped, so count it again */
+        ByteCounterIOBuffer counter = new ByteCounterIOBuffer();
+        netMessage.write(counter);
+        int messageSize = counter.capacity();
+        
+        IOBuffer buffer = new ByteBufferIOBuffer(messageSize);
+        netMessage.write(buffer);
+        
+        byte[] data = new byte[messageSize];
+        buffer.bitPosition(0);
+        buffer.getBytes(data);
+        
+        int length = messageSize;
+        byte flags = 0;
+        
+        byte[] compressed = compress(data);
+        if(compressed != null) {
+            data = compressed;
+            length = compressed.length;
+            flags |= FragmentMessage.FLAG_COMPRESSED;
+        }
+        
+        int groupId = this.groupIdGen.incrementAndGet();
+        int numberOfFragments = (length + maxFragmentSize - 1) / maxFragmentSize;
+        if(numberOfFragments > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Message is too large to be sent: " + messageSize + " bytes");
+        }
+        
+        /* an unreliable sequenced message is told which packets its fragments went out in */
+        FragmentGroup group = null;
+        if(!message.isReliable() && netMessage instanceof SequencedNetMessage) {
+            group = new FragmentGroup((SequencedNetMessage)netMessage, numberOfFragments);
+        }
+        
+        for(int i = 0; i < numberOfFragments; i++) {
+            int offset = i * maxFragmentSize;
+            FragmentMessage fragment = new FragmentMessage(message.isReliable(), groupId, i, numberOfFragments, flags, messageSize, 
+                                                           data, offset, Math.min(maxFragmentSize, length - offset));
+            fragment.setGroup(group);
+            fragments.add(fragment);
+        }
+        
+        return numberOfFragments;
+    }
+    
+    /**
+     * @param data
+     * @return the compressed data, or null if it doesn't compress
+     */
+    private byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            
+            byte[] output = new byte[data.length];
+            int length = deflater.deflate(output);
+            if(!deflater.finished() || length >= data.length) {
+                return null;
+            }
+            
+            byte[] compressed = new byte[length];
+            System.arraycopy(output, 0, compressed, 0, length);
+            return compressed;
+        }
+        finally {
+            deflater.end();
+        }
+    }
+    
+    /**
+     * Buffers the received fragment, putting the message back together once all 
+     * of its fragments have been received
+     * 
+     * @param fragment
+     * @param messageFactory
+     * @return the message if all of its fragments have been received, otherwise null
+     */
+    public Message reassemble(FragmentMessage fragment, NetMessageFactory messageFactory) {
+        int groupId = fragment.getGroupId();
+        int fragmentIndex = fragment.getFragmentIndex();
+        int numberOfFragments = fragment.getNumberOfFragments();
+        
+        if(numberOfFragments <= 0 || fragmentIndex < 0 || fragmentIndex >= numberOfFragments 
+                || fragment.getMessageSize() <= 0 || fragment.getMessageSize() > this.maxReassemblySize) {
+            if(log.enabled()) {
+                log.error("Invalid message fragment: " + groupId + " [" + fragmentIndex + "/" + numberOfFragments + "]");
+            }
+            return null;
+        }
+        
+        Assembly assembly = this.assemblies.get(groupId);
+        if(assembly == null) {
+            assembly = new Assembly();
+            assembly.fragments = new byte[numberOfFragments][];
+            assembly.isReliable = fragment.isReliable();
+            assembly.isCompressed = fragment.isCompressed();
+            assembly.messageSize = fragment.getMessageSize();
+            assembly.timeStarted = System.currentTimeMillis();
+            
+            this.assemblies.put(groupId, assembly);
+        }
+        
+        if(assembly.fragments.length != numberOfFragments || assembly.isReliable != fragment.isReliable() 
+                || assembly.fragments[fragmentIndex] != null) {
+            return null;
+        }
+        
+        if(this.numberOfBytesBuffered + fragment.getLength() > this.maxReassemblySize) {
+            if(log.enabled()) {
+                log.error("Message reassembly buffer is full, dropping message: " + groupId);
+            }
+            
+            discard(groupId);
+            return null;
+        }
+        
+        byte[] data = new byte[fragment.getLength()];
+        System.arraycopy(fragment.getData(), fragment.getOffset(), data, 0, data.length);
+        
+        assembly.fragments[fragmentIndex] = data;
+        assembly.numberOfFragmentsReceived++;
+        assembly.numberOfBytes += data.length;
+        this.numberOfBytesBuffered += data.length;
+        
+        if(assembly.numberOfFragmentsReceived < numberOfFragments) {
+            return null;
+        }
+        
+        discard(groupId);
+        
+        byte[] message = new byte[assembly.numberOfBytes];
+        int offset = 0;
+        for(int i = 0; i < assembly.fragments.length; i++) {
+            System.arraycopy(assembly.fragments[i], 0, message, offset, assembly.fragments[i].length);
+            offset += assembly.fragments[i].length;
+        }
+        
+        if(assembly.isCompressed) {
+            message = uncompress(message, assembly.messageSize);
+            if(message == null) {
+                if(log.enabled()) {
+                    log.error("Unable to uncompress message: " + groupId);
+                }
+                return null;
+            }
+        }
+        
+        IOBuffer buffer = new ByteBufferIOBuffer(message.length);
+        buffer.putBytes(message);
+        buffer.bitPosition(0);
+        
+        NetMessage netMessage = messageFactory.readNetMessage(buffer);
+        short size = (short)Math.min(message.length, Short.MAX_VALUE);
+        return assembly.isReliable ? new ReliableNetMessage(netMessage, size) 
+                                   : new UnReliableNetMessage(netMessage, size);
+    }
+    
+    /**
+     * @param data
+     * @param messageSize
+     * @return the uncompressed data, or null if it was invalid
+     */
+    private byte[] uncompress(byte[] data, int messageSize) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            
+            byte[] output = new byte[messageSize];
+            int length = inflater.inflate(output);
+            if(length != messageSize || !inflater.finished()) {
+                return null;
+            }
+            
+            return output;
+        }
+        catch(DataFormatException e) {
+            return null;
+        }
+        finally {
+            inflater.end();
+        }
+    }
+    
+    /**
+     * Discards the partially received message
+     * 
+     * @param groupId
+     */
+    private void discard(int groupId) {
+        Assembly assembly = this.assemblies.remove(groupId);
+        if(assembly != null) {
+            this.numberOfBytesBuffered -= assembly.numberOfBytes;
+        }
+    }
+    
+    /**
+     * Discards any partially received messages that have timed out
+     * 
+     * @param currentTime
+     * @param timeout
+     */
+    public void timeoutFragments(long currentTime, long timeout) {
+        Iterator<Map.Entry<Integer, Assembly>> it = this.assemblies.entrySet().iterator();
+        while(it.hasNext()) {
+            Assembly assembly = it.next().getValue();
+            if(currentTime - assembly.timeStarted > timeout) {
+                this.numberOfBytesBuffered -= assembly.numberOfBytes;
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * @return the number of bytes buffered waiting to be put back together
+     */
+    public int getNumberOfBytesBuffered() {
+        return numberOfBytesBuffered;
+    }
+    
+    /**
+     * Discards all of the partially received messages
+     */
+    public void clear() {
+        this.assemblies.clear();
+        this.numberOfBytesBuffered = 0;
+    }
+}
@@ -6,6 +6,7 @@ package harenet;
 import harenet.messages.ConnectionAcceptedMessage;
 import harenet.messages.ConnectionRequestMessage;
 import harenet.messages.DisconnectMessage;
+import harenet.messages.FragmentMessage;
 import harenet.messages.HeartbeatMessage;
 import harenet.messages.Message;
 import harenet.messages.NetMessageFactory;
@@ -37,6 +38,10 @@ public class MessageHeader {
     public static final byte RELIABLE_NETMESSAGE = 8;
     public static final byte UNRELIABLE_NETMESSAGE = 9;
     
+    // a piece of a NetMessage that is too large for a single packet
+    public static final byte FRAGMENT_MESSAGE = 10;
+    public static final byte UNRELIABLE_FRAGMENT_MESSAGE = 11;
+    
     
     
     /**
@@ -75,6 +80,14 @@ public class MessageHeader {
                 message = new UnReliableNetMessage();
                 break;
             }
+            case FRAGMENT_MESSAGE: {
+                message = new FragmentMessage(true);
+                break;
+            }
+            case UNRELIABLE_FRAGMENT_MESSAGE: {
+                message = new FragmentMessage(false);
+                break;
+            }
             case HEARTBEAT_MESSAGE: {
                 message = HeartbeatMessage.INSTANCE;
                 break;
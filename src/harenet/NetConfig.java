@@ -26,6 +26,11 @@ public class NetConfig {
     private int compressionThreshold;
     private boolean useDirectBuffers;
     
+    private int maxReassemblySize;
+    
+    private int maxReceivePackets;
+    private int maxReceiveTime;
+    
     private Log log;
     private NetMessageFactory messageFactory;
     
@@ -81,6 +86,11 @@ public class NetConfig {
         this.useDirectBuffers = useDirectBuffers;
         this.log = log;
         this.messageFactory = messageFactory;
+        
+        this.maxReassemblySize = 512 * 1024;
+        
+        this.maxReceivePackets = 256;
+        this.maxReceiveTime = 5;
     }
     
     /**
@@ -217,6 +227,50 @@ public class NetConfig {
         return timeout;
     }
     
+    /**
+     * @return the maximum number of bytes of fragmented messages that can be buffered
+     * per connection, waiting for the rest of the message to arrive
+     */
+    public int getMaxReassemblySize() {
+        return maxReassemblySize;
+    }
+    
+    /**
+     * @param maxReassemblySize the maxReassemblySize to set
+     */
+    public void setMaxReassemblySize(int maxReassemblySize) {
+        this.maxReassemblySize = maxReassemblySize;
+    }
+    
+    /**
+     * @return the maximum number of datagrams to read off of the socket in a single update
+     */
+    public int getMaxReceivePackets() {
+        return maxReceivePackets;
+    }
+    
+    /**
+     * @param maxReceivePackets the maxReceivePackets to set
+     */
+    public void setMaxReceivePackets(int maxReceivePackets) {
+        this.maxReceivePackets = maxReceivePackets;
+    }
+    
+    /**
+     * @return the maximum amount of time, in milliseconds, to spend reading datagrams off of the socket in a 
+     * single update.  Zero (or less) means there is no time limit
+     */
+    public int getMaxReceiveTime() {
+        return maxReceiveTime;
+    }
+    
+    /**
+     * @param maxReceiveTime the maxReceiveTime to set
+     */
+    public void setMaxReceiveTime(int maxReceiveTime) {
+        this.maxReceiveTime = maxReceiveTime;
+    }
+    
     /**
      * @return the compressionThreshold
      */
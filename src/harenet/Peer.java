@@ -6,7 +6,10 @@ package harenet;
 import harenet.Host.MessageListener;
 import harenet.messages.ConnectionRequestMessage;
 import harenet.messages.DisconnectMessage;
+import harenet.messages.EncodedNetMessage;
+import harenet.messages.FragmentMessage;
 import harenet.messages.Message;
+import harenet.messages.NetMessageFactory;
 import harenet.messages.ReliableNetMessage;
 import harenet.messages.ServerFullMessage;
 import harenet.messages.UnReliableNetMessage;
@@ -55,6 +58,10 @@ public class Peer {
     
     private Map<Integer, Message> receivedReliableMessages;
     
+    private MessageFragments fragments;
+    private int maxMessageSize;
+    private int maxFragmentSize;
+    
     private long roundTripTime;
     
     /* the packet number */
@@ -65,6 +72,9 @@ public class Peer {
     
     /* what the other connection received from us */
     private int remoteAck;
+    
+    /* the packets the other connection received prior to the remoteAck */
+    private int remoteAckHistory;
         
     /* last time this peer received a message */
     private long lastReceivedTime;
@@ -108,6 +118,11 @@ public class Peer {
         
         this.receivedReliableMessages = new ConcurrentHashMap<>();
         
+        /* messages larger than what can fit in a packet must be split up */
+        this.fragments = new MessageFragments(this.log, this.config.getMaxReassemblySize());
+        this.maxMessageSize = host.getMaxPacketPayloadSize() - 1;
+        this.maxFragmentSize = this.maxMessageSize - FragmentMessage.HEADER_SIZE - new FragmentMessage(true).getSize();
+        
         this.ackBuffer = new int[32];
         this.ackBufferIndex = 0;
         
@@ -252,6 +267,7 @@ public class Peer {
                  */
                 if(isAcknowledged(ackHistory, msg)) {                    
                     it.remove();
+                    EncodedNetMessage.release(msg);
                     if(log.enabled()) {
                         log.debug("Reliable message received: " 
                                         + msg.getClass().getSimpleName() 
@@ -274,6 +290,7 @@ public class Peer {
                             }
                             
                             it.remove();
+                            EncodedNetMessage.release(msg);
                         }
                     }
                 }
@@ -296,6 +313,7 @@ public class Peer {
      */
     public void setRemoteAck(int ackHistory, int remoteAck) {
         this.remoteAck = remoteAck;
+        this.remoteAckHistory = ackHistory;
 
 //        this.ackBuffer[this.ackBufferIndex] = this.remoteAck;
 //        this.ackBufferIndex = (this.ackBufferIndex + 1) % this.ackBuffer.length;
@@ -340,6 +358,31 @@ public class Peer {
                 
     }
     
+    /**
+     * Determines if the other connection has reported receiving the packet with the supplied sequence number.  This
+     * only looks at the latest acknowledgement information, so only packets within the last 32 packets
+     * of the remote ack can be determined.
+     * 
+     * @param sequenceNumber the packet sequence number
+     * @return true if the packet was received by the other connection
+     */
+    public boolean isSequenceAcknowledged(int sequenceNumber) {
+        int ack = this.remoteAck;
+        int ackHistory = this.remoteAckHistory;
+        
+        if(sequenceNumber == ack) {
+            return true;
+        }
+        
+        /* the ack history marks the packet remoteAck - N at bit N */
+        int ackPosition = ack - sequenceNumber;
+        if(ackPosition > 0 && ackPosition < 32) {
+            return ((ackHistory >>> ackPosition) & 1) != 0;
+        }
+        
+        return false;
+    }
+    
     /**
      * @return the lastSendTime
      */
@@ -545,9 +588,23 @@ public class Peer {
         this.state = State.DISCONNECTED;
         this.host.disconnect(this);
         this.inboundMessages.clear();
-        this.outgoingMessages.clear();
+        clearMessages(this.outgoingMessages);
         this.receivedReliableMessages.clear();
-        this.reliableOutgoingMessages.clear();
+        clearMessages(this.reliableOutgoingMessages);
+        this.fragments.clear();
+    }
+    
+    /**
+     * Empties the queue, releasing any shared encoded messages.  The messages are polled off so that
+     * a message being packed at the same time is only ever released once.
+     * 
+     * @param messages
+     */
+    private void clearMessages(Queue<Message> messages) {
+        Message msg = null;
+        while((msg = messages.poll()) != null) {
+            EncodedNetMessage.release(msg);
+        }
     }
     
     /**
@@ -555,10 +612,23 @@ public class Peer {
      * @param message
      */
     public void send(Message message) {
-        if(message.isReliable()) {            
+        /* too large to fit in a packet, so split it up; the pieces of an unreliable message are
+         * sent unreliably, so a lost piece drops the message rather than having it resent late
+         */
+        if(message.getMessage() != null && message.getSize() > this.maxMessageSize) {
+            Queue<Message> queue = message.isReliable() ? this.reliableOutgoingMessages : this.outgoingMessages;
+            int numberOfFragments = this.fragments.fragment(message, this.maxFragmentSize, queue);
+            if(log.enabled()) {
+                log.debug("Splitting message: " + message.getMessage().getClass().getSimpleName() 
+                        + " into " + numberOfFragments + " fragments");
+            }
+        }
+        else if(message.isReliable()) {            
+            EncodedNetMessage.retain(message);
             this.reliableOutgoingMessages.add(message.copy());
         }
         else {
+            EncodedNetMessage.retain(message);
             this.outgoingMessages.add(message);
         }
     }
@@ -575,6 +645,16 @@ public class Peer {
         }        
     }
     
+    /**
+     * Discards any partially received fragmented messages that have timed out
+     * 
+     * @param currentTime
+     * @param timeout
+     */
+    public void timeoutFragments(long currentTime, long timeout) {
+        this.fragments.timeoutFragments(currentTime, timeout);
+    }
+    
     /**
      * Checks and temporarily stores the message to check for duplicates
      * @param msg
@@ -597,6 +677,20 @@ public class Peer {
     public void receive(Message message) {        
         this.inboundMessages.add(message);
     }
+    
+    /**
+     * Receives a piece of a message, once all of the pieces are received the message
+     * is put back together and received
+     * 
+     * @param fragment
+     * @param messageFactory
+     */
+    public void receiveFragment(FragmentMessage fragment, NetMessageFactory messageFactory) {
+        Message message = this.fragments.reassemble(fragment, messageFactory);
+        if(message != null) {
+            receive(message);
+        }
+    }
 
     /**
      * Receives messages
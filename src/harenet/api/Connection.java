@@ -71,6 +71,15 @@ public interface Connection extends Endpoint {
      */
     public void send(int protocolFlags, NetMessage msg) throws IOException;
     
+    /**
+     * Determines if the remote end has acknowledged receiving the packet.
+     * 
+     * @see harenet.messages.SequencedNetMessage
+     * @param sequenceNumber the packet sequence number
+     * @return true if the packet was received by the remote end
+     */
+    public boolean isAcknowledged(int sequenceNumber);
+    
     /**
      * @return the remote address
      */
@@ -172,6 +172,14 @@ public class HareNetClient extends HareNetEndpoint implements Client {
         }
     }
 
+    /* (non-Javadoc)
+     * @see harenet.api.Connection#isAcknowledged(int)
+     */
+    @Override
+    public boolean isAcknowledged(int sequenceNumber) {
+        return (this.peer != null) && this.peer.isSequenceAcknowledged(sequenceNumber);
+    }
+
     /* (non-Javadoc)
      * @see net.jenet.api.Connection#getRemoteAddress()
      */
@@ -4,13 +4,16 @@
 package harenet.api.impl;
 
 import harenet.ByteCounterIOBuffer;
+import harenet.IOBuffer;
 import harenet.NetConfig;
 import harenet.api.Connection;
 import harenet.api.ConnectionListener;
 import harenet.api.Endpoint;
+import harenet.messages.EncodedNetMessage;
 import harenet.messages.Message;
 import harenet.messages.NetMessage;
 import harenet.messages.ReliableNetMessage;
+import harenet.messages.SequencedNetMessage;
 import harenet.messages.UnReliableNetMessage;
 
 import java.util.Vector;
@@ -30,6 +33,7 @@ public abstract class HareNetEndpoint implements Endpoint {
 //    private Output output;    
         
     private ByteCounterIOBuffer byteCounter;
+    private IOBuffer encodeBuffer;
     private NetConfig netConfig;
     
     private int pollRate;
@@ -44,6 +48,7 @@ public abstract class HareNetEndpoint implements Endpoint {
         
     //    this.output = new Output(1500, 4098);
         this.byteCounter = new ByteCounterIOBuffer();
+        this.encodeBuffer = IOBuffer.Factory.allocate(netConfig.getMtu());
         
         this.pollRate = netConfig.getPollRate();
     }
@@ -67,13 +72,50 @@ public abstract class HareNetEndpoint implements Endpoint {
         byteCounter.clear();
         message.write(byteCounter);
         
+        /* messages that are too large for a packet are split up by the Peer, so the size
+         * only needs to be large enough to signal that
+         */
+        short size = (short)Math.min(byteCounter.capacity(), Short.MAX_VALUE);
+        
         Message msg = ((protocolFlags&Endpoint.FLAG_RELIABLE)!=0) ? 
-                            new ReliableNetMessage(message, (short)byteCounter.capacity()) :
-                            new UnReliableNetMessage(message, (short)byteCounter.capacity()) ;
+                            new ReliableNetMessage(message, size) :
+                            new UnReliableNetMessage(message, size) ;
         return msg;
     }
     
     
+    /**
+     * Writes out a {@link NetMessage} that is to be sent to a number of peers.  The {@link NetMessage} is
+     * serialized once up front into an {@link EncodedNetMessage}, which each peer copies into its packet.
+     * 
+     * <p>
+     * The caller holds a reference to the {@link EncodedNetMessage}, and must {@link EncodedNetMessage#release(Message)} 
+     * it once the message has been sent to the peers.
+     * 
+     * @param protocolFlags
+     * @param message
+     * @return the {@link Message} containing the encoded {@link NetMessage} pay load
+     */
+    protected Message writeBroadcastMessage(int protocolFlags, NetMessage message) {
+        
+        /* these are told which packet they went out in, so they must be handed to each peer as is */
+        if(message instanceof SequencedNetMessage) {
+            return writeMessage(protocolFlags, message);
+        }
+        
+        EncodedNetMessage encoded = null;
+        synchronized (this.encodeBuffer) {
+            encoded = EncodedNetMessage.encode(message, this.encodeBuffer);
+        }
+        
+        short size = (short)Math.min(encoded.getNumberOfBytes(), Short.MAX_VALUE);
+        
+        Message msg = ((protocolFlags&Endpoint.FLAG_RELIABLE)!=0) ? 
+                            new ReliableNetMessage(encoded, size) :
+                            new UnReliableNetMessage(encoded, size) ;
+        return msg;
+    }
+    
     /**
      * Reads in the {@link Message} extracting out the {@link NetMessage} pay load
      * @param message
@@ -9,6 +9,7 @@ import harenet.NetConfig;
 import harenet.Peer;
 import harenet.api.Connection;
 import harenet.api.Server;
+import harenet.messages.EncodedNetMessage;
 import harenet.messages.Message;
 import harenet.messages.NetMessage;
 
@@ -171,8 +172,9 @@ public class HareNetServer extends HareNetEndpoint implements Server {
     @Override
     public void sendToAll(int protocolFlags, NetMessage msg) throws IOException {
         if(this.host != null) {
-            Message message = writeMessage(protocolFlags, msg);
+            Message message = writeBroadcastMessage(protocolFlags, msg);
             this.host.sendToAll(message);
+            releaseBroadcastMessage(msg, message);
         }
     }
 
@@ -182,8 +184,22 @@ public class HareNetServer extends HareNetEndpoint implements Server {
     @Override
     public void sendToAllExcept(int protocolFlags, NetMessage msg, int connectionId) throws IOException {
         if(this.host != null) {
-            Message message = writeMessage(protocolFlags, msg);
+            Message message = writeBroadcastMessage(protocolFlags, msg);
             this.host.sendToAllExcept(message, (byte) connectionId);
+            releaseBroadcastMessage(msg, message);
+        }
+    }
+
+    /**
+     * Releases the reference held to a message written by {@link #writeBroadcastMessage(int, NetMessage)}.  If
+     * the message was passed on as is, the reference belongs to the caller and is left alone.
+     * 
+     * @param msg the message that was sent
+     * @param message the message that was written
+     */
+    private void releaseBroadcastMessage(NetMessage msg, Message message) {
+        if(message.getMessage() != msg) {
+            EncodedNetMessage.release(message);
         }
     }
 
@@ -0,0 +1,209 @@
+/*
+ * see license.txt
+ */
+package harenet.messages;
+
+import java.nio.BufferOverflowException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import harenet.ByteCounterIOBuffer;
+import harenet.IOBuffer;
+
+/**
+ * A {@link NetMessage} that has already been serialized.  Messages sent to many peers are encoded once
+ * into one of these, and each peer's packet just copies the encoded bits, rather than each peer
+ * serializing the message all over again.
+ *
+ * <p>
+ * The encoded bits are immutable and shared by every peer the message is queued for, so the message
+ * is reference counted: each peer {@link #retain()}s it when it is queued and {@link #release()}s it once
+ * the peer is done with it (the reliable message was acknowledged or timed out, or the unreliable message
+ * was packed).  The creator holds the first reference, and releases it once the message has been handed
+ * off to the peers.  When the last reference is released the encoded bits are dropped.
+ *
+ * @author Tony
+ *
+ */
+public class EncodedNetMessage implements ReferenceCountedNetMessage {
+
+    private NetMessage message;
+    private long[] words;
+    private final int numberOfBits;
+    private final AtomicInteger references;
+
+    /**
+     * @param message the original message
+     * @param words the encoded bits
+     * @param numberOfBits the number of encoded bits
+     */
+    private EncodedNetMessage(NetMessage message, long[] words, int numberOfBits) {
+        this.message = message;
+        this.words = words;
+        this.numberOfBits = numberOfBits;
+        this.references = new AtomicInteger(1);
+    }
+
+    /**
+     * Encodes the {@link NetMessage}.  The returned message holds one reference, which belongs
+     * to the caller.
+     *
+     * @param message the message to encode
+     * @param scratch the buffer to encode into, if the message does not fit a buffer large enough is allocated
+     * @return the encoded message
+     */
+    public static EncodedNetMessage encode(NetMessage message, IOBuffer scratch) {
+        try {
+            scratch.clear();
+            message.write(scratch);
+        }
+        catch(BufferOverflowException e) {
+            ByteCounterIOBuffer counter = new ByteCounterIOBuffer();
+            message.write(counter);
+
+            scratch = IOBuffer.Factory.allocate(counter.capacity());
+            scratch.clear();
+            message.write(scratch);
+        }
+
+        int numberOfBits = scratch.bitPosition();
+        long[] words = new long[(numberOfBits + Long.SIZE - 1) / Long.SIZE];
+
+        scratch.bitPosition(0);
+        for(int i = 0; i < words.length; i++) {
+            words[i] = scratch.getLongBits(Math.min(Long.SIZE, numberOfBits - (i * Long.SIZE)));
+        }
+
+        return new EncodedNetMessage(message, words, numberOfBits);
+    }
+
+    /**
+     * Retains the message if the {@link Message} carries a {@link ReferenceCountedNetMessage}
+     *
+     * @param msg
+     */
+    public static void retain(Message msg) {
+        NetMessage netMessage = msg.getMessage();
+        if(netMessage instanceof ReferenceCountedNetMessage) {
+            ((ReferenceCountedNetMessage)netMessage).retain();
+        }
+    }
+
+    /**
+     * Releases the message if the {@link Message} carries a {@link ReferenceCountedNetMessage}, or
+     * is a {@link FragmentMessage} of one
+     *
+     * @param msg
+     */
+    public static void release(Message msg) {
+        NetMessage netMessage = msg.getMessage();
+        if(netMessage instanceof ReferenceCountedNetMessage) {
+            ((ReferenceCountedNetMessage)netMessage).release();
+        }
+        else if(msg instanceof FragmentMessage) {
+            ((FragmentMessage)msg).release();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see harenet.messages.ReferenceCountedNetMessage#retain()
+     */
+    @Override
+    public void retain() {
+        int count;
+        do {
+            count = this.references.get();
+            if(count <= 0) {
+                throw new IllegalStateException("The encoded message has already been released");
+            }
+        }
+        while(!this.references.compareAndSet(count, count + 1));
+    }
+
+    /**
+     * Removes a reference, dropping the encoded bits once there are no more references
+     *
+     * @return true if this was the last reference
+     */
+    @Override
+    public boolean release() {
+        int count = this.references.decrementAndGet();
+        if(count < 0) {
+            throw new IllegalStateException("The encoded message has already been released");
+        }
+
+        if(count == 0) {
+            this.words = null;
+            this.message = null;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of outstanding references
+     */
+    public int getReferenceCount() {
+        return this.references.get();
+    }
+
+    /**
+     * @return true if all of the references have been released
+     */
+    public boolean isReleased() {
+        return this.references.get() <= 0;
+    }
+
+    /**
+     * @return the message that was encoded, or null if this has been released
+     */
+    public NetMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the number of encoded bits
+     */
+    public int getNumberOfBits() {
+        return numberOfBits;
+    }
+
+    /**
+     * @return the number of encoded bytes
+     */
+    public int getNumberOfBytes() {
+        return (this.numberOfBits + 7) / 8;
+    }
+
+    /* (non-Javadoc)
+     * @see harenet.messages.NetMessage#write(harenet.IOBuffer)
+     */
+    @Override
+    public void write(IOBuffer buffer) {
+        long[] words = this.words;
+        if(words == null) {
+            throw new IllegalStateException("The encoded message has already been released");
+        }
+
+        for(int i = 0; i < words.length; i++) {
+            buffer.putLongBits(words[i], Math.min(Long.SIZE, this.numberOfBits - (i * Long.SIZE)));
+        }
+    }
+
+    /**
+     * Reads the message into the original message, the same as the receiving peer does; the encoded bits
+     * are exactly the bits of the original message, so it reads back what {@link #write(IOBuffer)} wrote.  The
+     * encoded bits are left as they are.
+     *
+     * @see harenet.messages.NetMessage#read(harenet.IOBuffer)
+     */
+    @Override
+    public void read(IOBuffer buffer) {
+        NetMessage message = this.message;
+        if(message == null) {
+            throw new IllegalStateException("The encoded message has already been released");
+        }
+
+        message.read(buffer);
+    }
+}
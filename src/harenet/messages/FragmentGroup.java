@@ -0,0 +1,81 @@
+/*
+ * see license.txt
+ */
+package harenet.messages;
+
+/**
+ * The unreliable {@link FragmentMessage}s of a {@link SequencedNetMessage} that was too large for a single
+ * packet.  The message can only be acknowledged once every one of its fragments has been received, so
+ * rather than each packet the message is told the range of packets its fragments were sent out in, once
+ * the last of them has been packed.
+ *
+ * <p>
+ * A {@link ReferenceCountedNetMessage} is retained until every fragment has been either sent or dropped.
+ *
+ * @author Tony
+ *
+ */
+public class FragmentGroup {
+
+    private SequencedNetMessage message;
+    private final int numberOfFragments;
+
+    private int numberOfFragmentsSent;
+    private int numberOfFragmentsReleased;
+
+    private int firstSequenceNumber;
+    private int lastSequenceNumber;
+
+    /**
+     * @param message the message that was split up
+     * @param numberOfFragments the number of fragments it was split up into
+     */
+    public FragmentGroup(SequencedNetMessage message, int numberOfFragments) {
+        this.message = message;
+        this.numberOfFragments = numberOfFragments;
+
+        if(message instanceof ReferenceCountedNetMessage) {
+            ((ReferenceCountedNetMessage)message).retain();
+        }
+    }
+
+    /**
+     * A fragment was packed
+     *
+     * @param sequenceNumber the sequence number of the packet the fragment was sent out in
+     */
+    void fragmentSent(int sequenceNumber) {
+        if(this.numberOfFragmentsSent == 0) {
+            this.firstSequenceNumber = sequenceNumber;
+            this.lastSequenceNumber = sequenceNumber;
+        }
+        else {
+            this.firstSequenceNumber = Math.min(this.firstSequenceNumber, sequenceNumber);
+            this.lastSequenceNumber = Math.max(this.lastSequenceNumber, sequenceNumber);
+        }
+
+        this.numberOfFragmentsSent++;
+    }
+
+    /**
+     * The peer is done with a fragment, it was either sent or dropped.  Once the peer is done with all
+     * of them, the message is told which packets they were sent out in (if they all were sent).
+     */
+    void fragmentReleased() {
+        this.numberOfFragmentsReleased++;
+        if(this.numberOfFragmentsReleased < this.numberOfFragments || this.message == null) {
+            return;
+        }
+
+        SequencedNetMessage message = this.message;
+        this.message = null;
+
+        if(this.numberOfFragmentsSent == this.numberOfFragments) {
+            message.setSequenceNumbersSent(this.firstSequenceNumber, this.lastSequenceNumber);
+        }
+
+        if(message instanceof ReferenceCountedNetMessage) {
+            ((ReferenceCountedNetMessage)message).release();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * see license.txt 
+ */
+package harenet.messages;
+
+import harenet.IOBuffer;
+import harenet.MessageHeader;
+
+/**
+ * A piece of a {@link NetMessage} that is too large to fit in a single packet.  The pieces
+ * are put back together by the receiving peer.  The pieces of a reliable message are sent
+ * reliably; the pieces of an unreliable message are sent unreliably, and are never resent.
+ * 
+ * @see harenet.MessageFragments
+ * @author Tony
+ *
+ */
+public class FragmentMessage extends AbstractMessage {
+
+    /**
+     * The fragment data is compressed
+     */
+    public static final byte FLAG_COMPRESSED = (1<<0);
+    
+    /**
+     * The number of bytes the fragment header takes up (not including the 
+     * reliable message header)
+     */
+    public static final int HEADER_SIZE = 4 + // groupId
+                                          2 + // fragmentIndex
+                                          2 + // numberOfFragments
+                                          1 + // flags
+                                          4 + // messageSize
+                                          2   // length
+                                          ;
+    
+    private int groupId;
+    private short fragmentIndex;
+    private short numberOfFragments;
+    private byte flags;
+    private int messageSize;
+    
+    private byte[] data;
+    private int offset;
+    private int length;
+    
+    /* not sent, the sender side group of an unreliable sequenced message */
+    private FragmentGroup group;
+    
+    /**
+     */
+    public FragmentMessage() {
+        this(true);
+    }
+    
+    /**
+     * @param isReliable if this is a piece of a reliable message
+     */
+    public FragmentMessage(boolean isReliable) {
+        super(isReliable ? MessageHeader.FRAGMENT_MESSAGE : MessageHeader.UNRELIABLE_FRAGMENT_MESSAGE);
+    }
+    
+    /**
+     * @param isReliable if this is a piece of a reliable message
+     * @param groupId the id of the message this is a piece of
+     * @param fragmentIndex the index of this piece
+     * @param numberOfFragments the total number of pieces
+     * @param flags
+     * @param messageSize the size of the message, once put back together (and uncompressed)
+     * @param data
+     * @param offset
+     * @param length
+     */
+    public FragmentMessage(boolean isReliable, int groupId, int fragmentIndex, int numberOfFragments, byte flags, int messageSize, byte[] data, int offset, int length) {
+        super(isReliable ? MessageHeader.FRAGMENT_MESSAGE : MessageHeader.UNRELIABLE_FRAGMENT_MESSAGE, 
+              null, (short)(HEADER_SIZE + length));
+        this.groupId = groupId;
+        this.fragmentIndex = (short)fragmentIndex;
+        this.numberOfFragments = (short)numberOfFragments;
+        this.flags = flags;
+        this.messageSize = messageSize;
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+    
+    /* (non-Javadoc)
+     * @see harenet.messages.AbstractMessage#isReliable()
+     */
+    @Override
+    public boolean isReliable() {
+        return type == MessageHeader.FRAGMENT_MESSAGE;
+    }
+    
+    /* (non-Javadoc)
+     * @see harenet.messages.AbstractMessage#getSize()
+     */
+    @Override
+    public short getSize() {
+        /* the reliable pieces also carry the message id */
+        return isReliable() ? (short)(super.getSize() + 4) : super.getSize();
+    }
+    
+    /* (non-Javadoc)
+     * @see harenet.messages.AbstractMessage#writeHeader(harenet.IOBuffer)
+     */
+    @Override
+    protected void writeHeader(IOBuffer buffer) {
+        if(isReliable()) {
+            buffer.putInt(messageId);
+        }
+    }
+    
+    /* (non-Javadoc)
+     * @see harenet.messages.AbstractMessage#readHeader(harenet.IOBuffer)
+     */
+    @Override
+    protected void readHeader(IOBuffer buffer) {
+        if(isReliable()) {
+            this.messageId = buffer.getInt();
+        }
+    }
+    
+    /* (non-Javadoc)
+     * @see harenet.messages.AbstractMessage#writeTo(harenet.IOBuffer)
+     */
+    @Override
+    public void writeTo(IOBuffer buffer) {
+        buffer.putByte(type);
+        writeHeader(buffer);
+        
+        buffer.putInt(groupId);
+        buffer.putShort(fragmentIndex);
+        buffer.putShort(numberOfFragments);
+        buffer.putByte(flags);
+        buffer.putInt(messageSize);
+        buffer.putShort((short)length);
+        buffer.putBytes(data, offset, length);
+    }
+    
+    /* (non-Javadoc)
+     * @see harenet.messages.AbstractMessage#readFrom(harenet.IOBuffer, harenet.messages.NetMessageFactory)
+     */
+    @Override
+    public void readFrom(IOBuffer buffer, NetMessageFactory messageFactory) {
+        readHeader(buffer);
+        
+        groupId = buffer.getInt();
+        fragmentIndex = buffer.getShort();
+        numberOfFragments = buffer.getShort();
+        flags = buffer.getByte();
+        messageSize = buffer.getInt();
+        length = buffer.getShort() & 0xFFFF;
+        
+        data = new byte[length];
+        offset = 0;
+        buffer.getBytes(data);
+        
+        sizeInBytes = (short)(HEADER_SIZE + length);
+    }
+    
+    /* (non-Javadoc)
+     * @see harenet.messages.AbstractMessage#setSequenceNumberSent(int)
+     */
+    @Override
+    public void setSequenceNumberSent(int sequenceNumberSent) {
+        super.setSequenceNumberSent(sequenceNumberSent);
+        if(group != null) {
+            group.fragmentSent(sequenceNumberSent);
+        }
+    }
+    
+    /**
+     * @param group the group this fragment belongs to, which is told when this fragment is sent and released
+     */
+    public void setGroup(FragmentGroup group) {
+        this.group = group;
+    }
+    
+    /**
+     * The sending peer is done with this fragment, it was either sent or dropped
+     */
+    public void release() {
+        FragmentGroup group = this.group;
+        if(group != null) {
+            this.group = null;
+            group.fragmentReleased();
+        }
+    }
+    
+    /**
+     * @return the id of the message this is a piece of
+     */
+    public int getGroupId() {
+        return groupId;
+    }
+    
+    /**
+     * @return the index of this piece
+     */
+    public int getFragmentIndex() {
+        return fragmentIndex;
+    }
+    
+    /**
+     * @return the total number of pieces
+     */
+    public int getNumberOfFragments() {
+        return numberOfFragments;
+    }
+    
+    /**
+     * @return true if the data is compressed
+     */
+    public boolean isCompressed() {
+        return (flags & FLAG_COMPRESSED) != 0;
+    }
+    
+    /**
+     * @return the size of the message, once put back together (and uncompressed)
+     */
+    public int getMessageSize() {
+        return messageSize;
+    }
+    
+    /**
+     * @return the data
+     */
+    public byte[] getData() {
+        return data;
+    }
+    
+    /**
+     * @return the offset into the data
+     */
+    public int getOffset() {
+        return offset;
+    }
+    
+    /**
+     * @return the number of bytes of data
+     */
+    public int getLength() {
+        return length;
+    }
+    
+    /* (non-Javadoc)
+     * @see harenet.messages.Message#copy()
+     */
+    @Override
+    public Message copy() {
+        return new FragmentMessage(isReliable(), groupId, fragmentIndex, numberOfFragments, flags, messageSize, data, offset, length);
+    }
+}
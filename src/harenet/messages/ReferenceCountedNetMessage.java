@@ -0,0 +1,34 @@
+/*
+ * see license.txt
+ */
+package harenet.messages;
+
+/**
+ * A {@link NetMessage} that is shared with the {@link harenet.Peer}s it is sent to.  Each peer
+ * {@link #retain()}s the message when it is queued and {@link #release()}s it once the peer is done
+ * with it (the reliable message was acknowledged or timed out, or the unreliable message was packed).
+ * The creator holds the first reference, and releases it once the message has been handed off.
+ *
+ * <p>
+ * This allows the message to be safely reused (or its resources dropped) once the last reference
+ * has been released.
+ *
+ * @see EncodedNetMessage#retain(Message)
+ * @see EncodedNetMessage#release(Message)
+ * @author Tony
+ *
+ */
+public interface ReferenceCountedNetMessage extends NetMessage {
+
+    /**
+     * Adds a reference
+     */
+    public void retain();
+
+    /**
+     * Removes a reference
+     *
+     * @return true if this was the last reference
+     */
+    public boolean release();
+}
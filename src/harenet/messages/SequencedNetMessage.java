@@ -0,0 +1,32 @@
+/*
+ * see license.txt 
+ */
+package harenet.messages;
+
+/**
+ * A {@link NetMessage} that is told which packet it was sent out in.  Paired with 
+ * {@link harenet.api.Connection#isAcknowledged(int)} this allows for checking if the remote
+ * end received the message, without having to send it reliably.
+ * 
+ * @author Tony
+ *
+ */
+public interface SequencedNetMessage extends NetMessage {
+
+    /**
+     * Invoked when this message is packed into a packet
+     * 
+     * @param sequenceNumber the sequence number of the packet this message was sent out in
+     */
+    public void setSequenceNumberSent(int sequenceNumber);
+    
+    /**
+     * Invoked when this message was too large for a single packet, and every one of its fragments has 
+     * been packed.  The message was received only if all of the packets in the range were.
+     * 
+     * @see FragmentGroup
+     * @param firstSequenceNumber the sequence number of the first packet a fragment was sent out in
+     * @param lastSequenceNumber the sequence number of the last packet a fragment was sent out in
+     */
+    public void setSequenceNumbersSent(int firstSequenceNumber, int lastSequenceNumber);
+}
@@ -53,4 +53,26 @@ public class AIConfig {
     public long getReactionTime() {
         return this.config.getInt(500, "ai", "reactionTime");
     }
+    
+    /**
+     * @return true if bots should use Jump Point Search for finding paths over open terrain
+     */
+    public boolean isJumpPointSearchEnabled() {
+        return this.config.getBool(true, "ai", "jumpPointSearch");
+    }
+    
+    /**
+     * @return true if bots should plan long routes over the {@link Zones} first (HPA*)
+     */
+    public boolean isHierarchicalPathFindingEnabled() {
+        return this.config.getBool(true, "ai", "hierarchicalPathFinding");
+    }
+    
+    /**
+     * @return the number of path finding nodes the bots may search per frame, if 0 or less
+     * paths are searched right away
+     */
+    public int getPathSearchBudget() {
+        return this.config.getInt(3_000, "ai", "pathSearchBudget");
+    }
 }
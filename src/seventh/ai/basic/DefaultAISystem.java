@@ -29,6 +29,8 @@ import seventh.game.PlayerInfo;
 import seventh.game.PlayerInfos;
 import seventh.game.PlayerInfos.PlayerInfoIterator;
 import seventh.game.Team;
+import seventh.game.events.TileRemovedEvent;
+import seventh.game.events.TileRemovedListener;
 import seventh.game.type.GameType;
 import seventh.game.type.cmd.CommanderGameType;
 import seventh.math.Rectangle;
@@ -73,6 +75,8 @@ public class DefaultAISystem implements AISystem {
     private AIConfig config;
     private World world;
     
+    private TileRemovedListener tileRemovedListener;
+    
     private final Map<String, PersonalityTraits> personalities;
     private static final PersonalityTraits defaultPersonality = new PersonalityTraits();
     static {
@@ -86,6 +90,14 @@ public class DefaultAISystem implements AISystem {
      * 
      */
     public DefaultAISystem() {
+        this(null);
+    }
+    
+    /**
+     * @param zones the {@link Zones} of the map if they were built ahead of time, otherwise null
+     */
+    public DefaultAISystem(Zones zones) {
+        this.zones = zones;
         this.brains = new Brain[SeventhConstants.MAX_PLAYERS];    
         this.personalities = new HashMap<>();
                 
@@ -161,7 +173,12 @@ public class DefaultAISystem implements AISystem {
         this.random = new Randomizer(game.getRandom());
         this.config = new AIConfig(game.getConfig().getConfig());
         
-        this.zones = new Zones(game);
+        if(this.zones != null) {
+            this.zones.setGame(game);
+        }
+        else {
+            this.zones = new Zones(game);
+        }
         this.stats = new Stats(game, this.zones);
         
         initScriptingEngine();
@@ -169,6 +186,18 @@ public class DefaultAISystem implements AISystem {
         this.aiCommands = new AICommands(this);
         this.world = new World(config, game, zones, goals, random);
         
+        final ZoneGraph zoneGraph = this.world.getZoneGraph();
+        if(zoneGraph != null) {
+            this.tileRemovedListener = new TileRemovedListener() {
+                
+                @Override
+                public void onTileRemoved(TileRemovedEvent event) {
+                    zoneGraph.updateTile(event.getTileX(), event.getTileY());
+                }
+            };
+            game.getDispatcher().addEventListener(TileRemovedEvent.class, this.tileRemovedListener);
+        }
+        
         GameType gameType = game.getGameType();
         
         TeamStrategyFactory teamStrategyFactory = new DefaultAISystemTeamStrategyFactory();
@@ -186,8 +215,10 @@ public class DefaultAISystem implements AISystem {
             }
         });
         
-        
-        this.watcher.startWatching();
+        /* the assets may have failed to load, which has been logged already */
+        if(this.watcher != null) {
+            this.watcher.startWatching();
+        }
     }
     
     
@@ -299,7 +330,14 @@ public class DefaultAISystem implements AISystem {
      */
     @Override
     public void destroy() {
-        this.watcher.stopWatching();
+        if(this.watcher != null) {
+            this.watcher.stopWatching();
+        }
+        
+        if(this.tileRemovedListener != null) {
+            this.game.getDispatcher().removeEventListener(TileRemovedEvent.class, this.tileRemovedListener);
+            this.tileRemovedListener = null;
+        }
         
         for(int i = 0; i < this.brains.length; i++) {
             this.brains[i] = null;
@@ -364,6 +402,12 @@ public class DefaultAISystem implements AISystem {
     public void update(TimeStep timeStep) {
         this.stats.update(timeStep);
         
+        // hand back any paths that were searched for, before
+        // the bots think about what to do next
+        if(this.world.getPathRequests() != null) {
+            this.world.getPathRequests().update(timeStep);
+        }
+        
         for(int i = 0; i < brains.length; i++) {
             Brain brain = brains[i];
             if(brain != null) {
@@ -474,6 +518,10 @@ public class DefaultAISystem implements AISystem {
     public void startOfRound(GameInfo game) {
         zones.calculateBombTargets();
         
+        if(world.getZoneGraph() != null) {
+            world.getZoneGraph().onRoundStarted();
+        }
+        
         alliedAIStrategy.startOfRound(game);
         axisAIStrategy.startOfRound(game);
     }
@@ -535,7 +583,8 @@ public class DefaultAISystem implements AISystem {
         me.add("brains", this.brains)
           .add("stats", this.stats)
           .add("allied_strategy", this.alliedAIStrategy)
-          .add("axis_strategy", this.axisAIStrategy);
+          .add("axis_strategy", this.axisAIStrategy)
+          .add("path_requests", this.world.getPathRequests());
         return me;
     }
     
@@ -7,14 +7,17 @@ package seventh.ai.basic;
 import java.util.ArrayList;
 import java.util.List;
 
+import seventh.ai.basic.PathRequestQueue.PathRequest;
 import seventh.game.Player;
 import seventh.game.PlayerInfo;
 import seventh.game.entities.Door;
 import seventh.game.entities.Entity;
 import seventh.game.entities.PlayerEntity;
 import seventh.game.entities.vehicles.Vehicle;
-import seventh.graph.AStarGraphSearch;
 import seventh.graph.GraphNode;
+import seventh.graph.GraphSearchPath;
+import seventh.map.GridAStarGraphSearch;
+import seventh.map.JumpPointGraphSearch;
 import seventh.map.MapGraph;
 import seventh.map.Tile;
 import seventh.math.Vector2f;
@@ -41,6 +44,13 @@ public class PathPlanner<E> {
     
     private List<Tile> tilesToAvoid;
     
+    private ZoneGraph zoneGraph;
+    private List<Tile> route;
+    private int currentRouteTile;
+    
+    private PathRequestQueue pathRequests;
+    private PathRequest pendingRequest;
+    
     private Entity isEntityOnTile(Tile tile) {
         Entity ent = isVehicleOnTile(tile);
         if(ent==null) {
@@ -84,31 +94,11 @@ public class PathPlanner<E> {
         return null;
     }
         
-    public static class SearchPath<E> extends AStarGraphSearch<Tile, E> {
+    public static class SearchPath<E> extends GridAStarGraphSearch<E> {
         public List<Tile> tilesToAvoid = new ArrayList<>();
         
-        @Override
-        protected int heuristicEstimateDistance(
-                GraphNode<Tile, E> startNode,
-                GraphNode<Tile, E> currentNode,
-                GraphNode<Tile, E> goal) {
-            Tile startTile = startNode.getValue();
-            Tile currentTile = currentNode.getValue();
-            Tile goalTile = goal.getValue();
-                        
-            int dx = Math.abs(currentTile.getX() - goalTile.getX());
-            int dy = Math.abs(currentTile.getY() - goalTile.getY());                        
-            
-            int sdx = Math.abs(startTile.getX() - goalTile.getX());
-            int sdy = Math.abs(startTile.getY() - goalTile.getY());
-            
-            final int D = 1;
-            //final int D2 = 2;
-            
-            //distance = D * (dx+dy) + (D2 - 2 * D) * Math.min(dx, dy);
-            int distance = D * (dx+dy);
-            int cross = Math.abs(dx*sdy - sdx*dy);
-            return distance + (cross);//
+        public SearchPath(MapGraph<E> graph) {
+            super(graph);
         }
         
         @Override
@@ -122,35 +112,45 @@ public class PathPlanner<E> {
         }
     }
     
-    public static class AvoidSearchPath<E> extends AStarGraphSearch<Tile,E> {
+    public static class AvoidSearchPath<E> extends GridAStarGraphSearch<E> {
+        
+        /**
+         * The additional cost of walking through a zone that should be avoided, this is
+         * large enough that a path will go well out of its way to stay clear of the zone
+         */
+        public static final int AVOID_ZONE_COST = 100 * STRAIGHT_COST;
+        
         public List<Tile> tilesToAvoid = new ArrayList<>();
         public List<Zone> zonesToAvoid;
         
+        private boolean isGoalAvoided;
+        
+        public AvoidSearchPath(MapGraph<E> graph) {
+            super(graph);
+        }
+        
         @Override
-        protected int heuristicEstimateDistance(
-                GraphNode<Tile, E> startNode,
-                GraphNode<Tile, E> currentNode,
-                GraphNode<Tile, E> goal) {            
-            Tile currentTile = currentNode.getValue();
-            Tile goalTile = goal.getValue();
-            
-            int dx = Math.abs(currentTile.getX() - goalTile.getX());
-            int dy = Math.abs(currentTile.getY() - goalTile.getY());                        
-            
-            final int D = 1;
-            //final int D2 = 2;
-            
-            //distance = D * (dx+dy) + (D2 - 2 * D) * Math.min(dx, dy);
-            int distance = D * (dx+dy);
-            
-            if(shouldBeAvoided(currentTile)||shouldBeAvoided(goalTile)) {
-                distance = Integer.MAX_VALUE;
+        public void beginSearch(GraphNode<Tile, E> start, GraphNode<Tile, E> goal) {
+            /* if the goal is in a zone we should avoid, there is no 
+             * way around it, so just take the shortest path
+             */
+            this.isGoalAvoided = goal != null && shouldBeAvoided(goal.getValue());
+            super.beginSearch(start, goal);
+        }
+        
+        @Override
+        protected int getNodeCost(GraphNode<Tile, E> node) {
+            if(!this.isGoalAvoided && shouldBeAvoided(node.getValue())) {
+                return AVOID_ZONE_COST;
             }
-            
-            return distance;
+            return 0;
         }
         
         private boolean shouldBeAvoided(Tile tile) {
+            if(zonesToAvoid == null) {
+                return false;
+            }
+            
             for(int i = 0; i < zonesToAvoid.size(); i++) {
                 Zone zone = zonesToAvoid.get(i);
                 if(zone.getBounds().intersects(tile.getBounds())) {
@@ -162,20 +162,13 @@ public class PathPlanner<E> {
         
         @Override
         protected boolean shouldIgnore(GraphNode<Tile, E> node) {
-            /*Tile tile = node.getValue();
-            for(int i = 0; i < zonesToAvoid.size(); i++) {
-                Zone zone = zonesToAvoid.get(i);
-                if(zone.getBounds().intersects(tile.getBounds())) {
-                    return true;
-                }
-            }*/
-            
             return this.tilesToAvoid.contains(node.getValue());
         }
     }
     
     private SearchPath<E> fuzzySearchPath;     
     private AvoidSearchPath<E> avoidSearchPath;
+    private JumpPointGraphSearch<E> jpsSearchPath;
     
     /**
      * @param path
@@ -191,10 +184,34 @@ public class PathPlanner<E> {
         this.tilesToAvoid = new ArrayList<Tile>();
         this.currentNode = 0;
         
-        this.fuzzySearchPath = new SearchPath<E>();
-        this.avoidSearchPath = new AvoidSearchPath<E>();        
+        this.fuzzySearchPath = new SearchPath<E>(graph);
+        this.avoidSearchPath = new AvoidSearchPath<E>(graph);        
+        
+        if(brain.getConfig().isJumpPointSearchEnabled()) {
+            this.jpsSearchPath = new JumpPointGraphSearch<E>(graph);
+        }
+        
+        this.zoneGraph = this.world.getZoneGraph();
+        this.route = new ArrayList<Tile>();
+        this.currentRouteTile = 0;
+        
+        this.pathRequests = this.world.getPathRequests();
     } 
     
+    /**
+     * Jump Point Search only works when every tile costs the same to walk on, so if there are
+     * tiles to avoid this falls back to the A* search
+     * 
+     * @return the search to use for finding a path
+     */
+    private GraphSearchPath<Tile, E> selectSearchPath() {
+        if(this.jpsSearchPath != null && this.fuzzySearchPath.tilesToAvoid.isEmpty()) {
+            return this.jpsSearchPath;
+        }
+        
+        return this.fuzzySearchPath;
+    }
+    
     private void setPath(List<GraphNode<Tile, E>> newPath) {
         clearPath();
         if(newPath != null) {
@@ -212,6 +229,170 @@ public class PathPlanner<E> {
         this.finalDestination.zeroOut();
         this.path.clear();
         this.tilesToAvoid.clear();
+        this.route.clear();
+        this.currentRouteTile = 0;
+        
+        if(this.pendingRequest != null) {
+            this.pendingRequest.cancel();
+            this.pendingRequest = null;
+        }
+    }
+    
+    /**
+     * Queues up the search on the {@link PathRequestQueue}, until the path comes back the
+     * bot heads straight for the destination
+     * 
+     * @param searchPath
+     * @param start
+     * @param destination
+     * @return true if the search was queued up
+     */
+    private boolean requestPath(GraphSearchPath<Tile, E> searchPath, Vector2f start, Vector2f destination) {
+        if(this.pathRequests == null) {
+            return false;
+        }
+        
+        GraphNode<Tile, E> startNode = this.graph.getNearestNodeByWorld(start);
+        GraphNode<Tile, E> destNode = this.graph.getNearestNodeByWorld(destination);
+        
+        return requestPath(searchPath, startNode, destNode, destination);
+    }
+    
+    /**
+     * Queues up the search on the {@link PathRequestQueue}, until the path comes back the
+     * bot heads straight for the destination
+     * 
+     * @param searchPath
+     * @param startNode
+     * @param destNode
+     * @param destination
+     * @return true if the search was queued up
+     */
+    private boolean requestPath(GraphSearchPath<Tile, E> searchPath, GraphNode<Tile, E> startNode, GraphNode<Tile, E> destNode, Vector2f destination) {
+        if(this.pathRequests == null) {
+            return false;
+        }
+        
+        /* the destination may be the final destination, which is cleared out */
+        float x = destination.x;
+        float y = destination.y;
+        
+        clearPath();
+        this.finalDestination.set(x, y);
+        this.pendingRequest = this.pathRequests.submit(this, searchPath, startNode, destNode);
+        return true;
+    }
+    
+    /**
+     * The {@link PathRequestQueue} has finished searching for a path
+     * 
+     * @param request
+     * @param newPath the path, or null if there is no path
+     */
+    void onPathRequestCompleted(PathRequest request, List<GraphNode<Tile, ?>> newPath) {
+        if(request != this.pendingRequest) {
+            return;
+        }
+        
+        this.pendingRequest = null;
+        this.currentNode = 0;
+        this.currentNodeCount = 0;
+        this.path.clear();
+        
+        if(newPath != null) {
+            for(int i = 0; i < newPath.size(); i++) {
+                @SuppressWarnings("unchecked")
+                GraphNode<Tile, E> node = (GraphNode<Tile, E>)newPath.get(i);
+                this.path.add(node);
+            }
+        }
+    }
+    
+    /**
+     * @return true if the path is still being searched for
+     */
+    public boolean isPathPending() {
+        return this.pendingRequest != null;
+    }
+    
+    /**
+     * Attempts to plan a long distance path over the {@link ZoneGraph}.  Only the first leg of the 
+     * route is searched at full resolution, the remaining legs are refined as the path is walked
+     * (see {@link #refineRoute(GraphNode)}).
+     * 
+     * @param start
+     * @param destination
+     * @return true if a route was planned
+     */
+    private boolean findRoute(Vector2f start, Vector2f destination) {
+        if(this.zoneGraph == null || !this.fuzzySearchPath.tilesToAvoid.isEmpty()) {
+            return false;
+        }
+        
+        GraphNode<Tile, E> startNode = this.graph.getNearestNodeByWorld(start);
+        GraphNode<Tile, E> destNode = this.graph.getNearestNodeByWorld(destination);
+        if(startNode == null || destNode == null || !this.zoneGraph.isLongDistance(startNode.getValue(), destNode.getValue())) {
+            return false;
+        }
+        
+        clearPath();
+        this.finalDestination.set(destination);
+        if(this.zoneGraph.findRoute(startNode.getValue(), destNode.getValue(), this.route) < 0) {
+            this.route.clear();
+            return false;
+        }
+        
+        refineRoute(startNode);
+        return true;
+    }
+    
+    /**
+     * @return true if there are legs of the route that have not been added to the path yet
+     */
+    private boolean hasRouteRemaining() {
+        return this.currentRouteTile < this.route.size();
+    }
+    
+    /**
+     * Searches the next leg of the route, and appends it to the path
+     * 
+     * @param from the node to start the leg from
+     */
+    private void refineRoute(GraphNode<Tile, E> from) {
+        GraphSearchPath<Tile, E> searchPath = selectSearchPath();
+        
+        while(hasRouteRemaining()) {
+            Tile tile = this.route.get(this.currentRouteTile++);
+            GraphNode<Tile, E> to = this.graph.getNodeByIndex(tile.getXIndex(), tile.getYIndex());
+            
+            List<GraphNode<Tile, E>> leg = searchPath.search(from, to);
+            if(leg == null) {
+                
+                // the map must have changed since the route was
+                // planned, so just search the rest of the way; this
+                // can be a long search, so it is queued up like any other
+                Tile destination = this.route.get(this.route.size() - 1);
+                GraphNode<Tile, E> destNode = this.graph.getNodeByIndex(destination.getXIndex(), destination.getYIndex());
+                if(requestPath(searchPath, from, destNode, this.finalDestination)) {
+                    return;
+                }
+                
+                leg = searchPath.search(from, destNode);
+                
+                this.route.clear();
+                this.currentRouteTile = 0;
+                
+                if(leg != null) {
+                    this.path.addAll(leg);
+                }
+                return;
+            }
+            
+            if(!leg.isEmpty()) {
+                this.path.addAll(leg);
+                return;
+            }
+        }
     }
     
     /**
@@ -222,7 +403,7 @@ public class PathPlanner<E> {
      * @return the estimated cost of moving from start to destination
      */
     public int pathCost(Vector2f start, Vector2f destination) {
-        List<GraphNode<Tile, E>> newPath = this.graph.findPath(this.fuzzySearchPath, start, destination);
+        List<GraphNode<Tile, E>> newPath = this.graph.findPath(selectSearchPath(), start, destination);
         int cost = newPath.size() * 32;
         return cost;
     }
@@ -234,7 +415,16 @@ public class PathPlanner<E> {
      * @param destination
      */
     public void findPath(Vector2f start, Vector2f destination) {                
-        List<GraphNode<Tile, E>> newPath = this.graph.findPath(this.fuzzySearchPath, start, destination);
+        if(findRoute(start, destination)) {
+            this.finalDestination.set(destination);
+            return;
+        }
+        
+        if(requestPath(selectSearchPath(), start, destination)) {
+            return;
+        }
+        
+        List<GraphNode<Tile, E>> newPath = this.graph.findPath(selectSearchPath(), start, destination);
         setPath(newPath);
         
         this.finalDestination.set(destination);
@@ -244,7 +434,7 @@ public class PathPlanner<E> {
         this.fuzzySearchPath.tilesToAvoid.clear();
         this.fuzzySearchPath.tilesToAvoid.addAll(tilesToAvoid);
         
-        List<GraphNode<Tile, E>> newPath = this.graph.findPath(this.fuzzySearchPath, start, destination);
+        List<GraphNode<Tile, E>> newPath = this.graph.findPath(selectSearchPath(), start, destination);
         setPath(newPath);
         
         this.finalDestination.set(destination);
@@ -262,6 +452,10 @@ public class PathPlanner<E> {
     public void findAvoidancePath(Vector2f start, Vector2f destination, List<Zone> zonesToAvoid) {
         this.avoidSearchPath.zonesToAvoid = zonesToAvoid;
 
+        if(requestPath(this.avoidSearchPath, start, destination)) {
+            return;
+        }
+        
         List<GraphNode<Tile, E>> newPath = this.graph.findPathAvoidZones(this.avoidSearchPath, start, destination, zonesToAvoid);
         setPath(newPath);
         
@@ -272,7 +466,7 @@ public class PathPlanner<E> {
      * @return if there is currently a path
      */
     public boolean hasPath() {
-        return !this.path.isEmpty();
+        return !this.path.isEmpty() || isPathPending();
     }
     
     /**
@@ -326,6 +520,14 @@ public class PathPlanner<E> {
         
         nextWaypoint.zeroOut();
         
+        // still waiting on the path, so just head
+        // towards the destination
+        if(isPathPending()) {
+            nextWaypoint.x = (finalDestination.x - x);
+            nextWaypoint.y = (finalDestination.y - y);
+            return nextWaypoint;
+        }
+        
         if(! path.isEmpty() && currentNode < path.size() ) {
             GraphNode<Tile, E> node = path.get(currentNode);
             Tile tile = node.getValue();
@@ -338,6 +540,10 @@ public class PathPlanner<E> {
                 ) {
                 currentNode++;
                 currentNodeCount = 0;
+                
+                if(currentNode >= path.size() && hasRouteRemaining()) {
+                    refineRoute(node);
+                }
             
 //                if(ent.isSprinting()) {
 //                    if(currentNode < path.size()) {
@@ -407,7 +613,7 @@ public class PathPlanner<E> {
      * @return true if the current position is about the end of the path
      */
     public boolean atDestination() {
-        return (currentNode >= path.size());
+        return (currentNode >= path.size()) && !hasRouteRemaining() && !isPathPending();
     }
 }
 
@@ -0,0 +1,233 @@
+/*
+ * see license.txt 
+ */
+package seventh.ai.basic;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+import seventh.graph.GraphNode;
+import seventh.graph.GraphSearchPath;
+import seventh.graph.IncrementalGraphSearchPath;
+import seventh.map.Tile;
+import seventh.shared.Debugable;
+import seventh.shared.TimeStep;
+import seventh.shared.Updatable;
+
+/**
+ * Queues up the path searches for the bots, and works through them under a per frame budget of node 
+ * expansions.  This keeps a frame where every bot picks a new destination at once (such as the start 
+ * of a round) from spiking; a search that doesn't fit in the budget picks up where it left off in the 
+ * next frame.  The {@link PathPlanner} steers straight for the destination until its path comes back.
+ * 
+ * @author Tony
+ *
+ */
+public class PathRequestQueue implements Updatable, Debugable {
+
+    /**
+     * A request for a path
+     * 
+     * @author Tony
+     *
+     */
+    public static class PathRequest {
+        private PathPlanner<?> planner;
+        private GraphSearchPath<Tile, ?> searchPath;
+        private GraphNode<Tile, ?> start, goal;
+        
+        private boolean isStarted;
+        private boolean isCancelled;
+        private long submittedTick;
+        
+        PathRequest(PathPlanner<?> planner, GraphSearchPath<Tile, ?> searchPath, GraphNode<Tile, ?> start, GraphNode<Tile, ?> goal) {
+            this.planner = planner;
+            this.searchPath = searchPath;
+            this.start = start;
+            this.goal = goal;
+        }
+        
+        /**
+         * Cancels this request, the {@link PathPlanner} will not be notified of the result
+         */
+        public void cancel() {
+            this.isCancelled = true;
+        }
+        
+        /**
+         * @return true if this request was cancelled
+         */
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+        
+        /**
+         * Runs the search
+         * 
+         * @param maxExpansions
+         * @return the number of nodes expanded
+         */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        int search(int maxExpansions) {
+            if(this.searchPath instanceof IncrementalGraphSearchPath) {
+                IncrementalGraphSearchPath incremental = (IncrementalGraphSearchPath)this.searchPath;
+                if(!this.isStarted) {
+                    this.isStarted = true;
+                    incremental.beginSearch(this.start, this.goal);
+                }
+                
+                int numberOfExpansions = incremental.continueSearch(maxExpansions);
+                if(!incremental.isSearching()) {
+                    this.planner.onPathRequestCompleted(this, incremental.getSearchResult());
+                }
+                return numberOfExpansions;
+            }
+            
+            /* can't break this one up, so just run the whole thing */
+            List path = this.searchPath.search((GraphNode)this.start, (GraphNode)this.goal);
+            this.isStarted = true;
+            this.planner.onPathRequestCompleted(this, path);
+            return 1;
+        }
+        
+        /**
+         * @return true if the search is complete
+         */
+        @SuppressWarnings("rawtypes")
+        boolean isDone() {
+            if(!this.isStarted) {
+                return false;
+            }
+            
+            if(this.searchPath instanceof IncrementalGraphSearchPath) {
+                return !((IncrementalGraphSearchPath)this.searchPath).isSearching();
+            }
+            return true;
+        }
+    }
+    
+    private Queue<PathRequest> requests;
+    private PathRequest currentRequest;
+    private int maxExpansionsPerTick;
+    
+    private long tick;
+    
+    /* metrics */
+    private int numberOfPendingRequests;
+    private int maxNumberOfPendingRequests;
+    private int expansionsLastTick;
+    private int completedLastTick;
+    private long totalCompleted;
+    private long totalWaitTicks;
+    private long maxWaitTicks;
+    
+    /**
+     * @param maxExpansionsPerTick the maximum number of nodes searched per frame
+     */
+    public PathRequestQueue(int maxExpansionsPerTick) {
+        this.maxExpansionsPerTick = maxExpansionsPerTick;
+        this.requests = new ArrayDeque<>();
+    }
+    
+    /**
+     * Queues up a search, the {@link PathPlanner} is notified of the result in a later frame
+     * 
+     * @param planner
+     * @param searchPath
+     * @param start
+     * @param goal
+     * @return the request
+     */
+    public PathRequest submit(PathPlanner<?> planner, GraphSearchPath<Tile, ?> searchPath, GraphNode<Tile, ?> start, GraphNode<Tile, ?> goal) {
+        PathRequest request = new PathRequest(planner, searchPath, start, goal);
+        request.submittedTick = this.tick;
+        
+        this.requests.add(request);
+        this.numberOfPendingRequests = this.requests.size() + (this.currentRequest != null ? 1 : 0);
+        this.maxNumberOfPendingRequests = Math.max(this.maxNumberOfPendingRequests, this.numberOfPendingRequests);
+        
+        return request;
+    }
+    
+    /**
+     * @return the number of requests waiting on a result
+     */
+    public int getNumberOfPendingRequests() {
+        return numberOfPendingRequests;
+    }
+    
+    /**
+     * @return the number of nodes expanded last frame
+     */
+    public int getExpansionsLastTick() {
+        return expansionsLastTick;
+    }
+    
+    /* (non-Javadoc)
+     * @see seventh.shared.Updatable#update(seventh.shared.TimeStep)
+     */
+    @Override
+    public void update(TimeStep timeStep) {
+        this.tick++;
+        
+        int budget = this.maxExpansionsPerTick;
+        this.expansionsLastTick = 0;
+        this.completedLastTick = 0;
+        
+        while(budget > 0) {
+            if(this.currentRequest == null) {
+                this.currentRequest = this.requests.poll();
+                if(this.currentRequest == null) {
+                    break;
+                }
+            }
+            
+            PathRequest request = this.currentRequest;
+            if(request.isCancelled()) {
+                this.currentRequest = null;
+                continue;
+            }
+            
+            int numberOfExpansions = request.search(budget);
+            budget -= numberOfExpansions;
+            this.expansionsLastTick += numberOfExpansions;
+            
+            if(request.isDone()) {
+                this.currentRequest = null;
+                this.completedLastTick++;
+                this.totalCompleted++;
+                
+                long waitTicks = this.tick - request.submittedTick;
+                this.totalWaitTicks += waitTicks;
+                this.maxWaitTicks = Math.max(this.maxWaitTicks, waitTicks);
+            }
+        }
+        
+        this.numberOfPendingRequests = this.requests.size() + (this.currentRequest != null ? 1 : 0);
+    }
+    
+    /* (non-Javadoc)
+     * @see seventh.shared.Debugable#getDebugInformation()
+     */
+    @Override
+    public DebugInformation getDebugInformation() {
+        DebugInformation me = new DebugInformation();
+        me.add("budget", this.maxExpansionsPerTick)
+          .add("expansions_last_tick", this.expansionsLastTick)
+          .add("completed_last_tick", this.completedLastTick)
+          .add("queue_depth", this.numberOfPendingRequests)
+          .add("max_queue_depth", this.maxNumberOfPendingRequests)
+          .add("avg_wait_ticks", this.totalCompleted > 0 ? (double)this.totalWaitTicks / this.totalCompleted : 0.0)
+          .add("max_wait_ticks", this.maxWaitTicks);
+        return me;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return getDebugInformation().toString();
+    }
+}
@@ -9,6 +9,7 @@ import java.util.List;
 import seventh.ai.basic.actions.Actions;
 import seventh.game.GameInfo;
 import seventh.game.Player;
+import seventh.game.PlayerView;
 import seventh.game.SoundEventPool;
 import seventh.game.Team;
 import seventh.game.entities.BombTarget;
@@ -21,6 +22,7 @@ import seventh.game.type.obj.ObjectiveGameType;
 import seventh.map.Map;
 import seventh.map.MapGraph;
 import seventh.map.Tile;
+import seventh.map.TileVisibility;
 import seventh.math.OBB;
 import seventh.math.Rectangle;
 import seventh.math.Vector2f;
@@ -43,6 +45,7 @@ public class World {
     private Randomizer random;
     
     private List<Tile> tiles;
+    private PlayerView lineOfSight;
     
     private Rectangle tileBounds;
     private GameInfo game;
@@ -52,6 +55,8 @@ public class World {
     private List<BombTarget> activeBombs;
     
     private Zones zones;
+    private ZoneGraph zoneGraph;
+    private PathRequestQueue pathRequests;
     
     private Actions goals;
     
@@ -77,8 +82,17 @@ public class World {
         this.map = game.getMap();
         this.graph = game.getGraph();
         
+        if(config.isHierarchicalPathFindingEnabled()) {
+            this.zoneGraph = new ZoneGraph(this.graph, this.map, zones);
+        }
+        
+        if(config.getPathSearchBudget() > 0) {
+            this.pathRequests = new PathRequestQueue(config.getPathSearchBudget());
+        }
+        
         
         this.tiles = new ArrayList<Tile>();
+        this.lineOfSight = new PlayerView(map);
         this.tileBounds = new Rectangle();
         this.tileBounds.setWidth(map.getTileWidth());
         this.tileBounds.setHeight(map.getTileHeight());
@@ -110,6 +124,20 @@ public class World {
         return zones;
     }
     
+    /**
+     * @return the zone graph used for hierarchical path finding, or null if it is disabled
+     */
+    public ZoneGraph getZoneGraph() {
+        return zoneGraph;
+    }
+    
+    /**
+     * @return the queue of path searches, or null if paths are searched right away
+     */
+    public PathRequestQueue getPathRequests() {
+        return pathRequests;
+    }
+    
     /**
      * @return the soundEvents
      */
@@ -277,17 +305,16 @@ public class World {
      * @return
      */
     public List<PlayerEntity> getPlayersInLineOfSight(List<PlayerEntity> players, PlayerEntity entity) {        
-        tiles = entity.calculateLineOfSight(tiles);
+        List<Tile> tiles = entity.calculateLineOfSight(this.lineOfSight);
+        TileVisibility visibility = this.lineOfSight.getVisibility();
         int size = tiles.size();
         for(int i = 0; i < size;i++) {
             Tile tile = tiles.get(i);
-            if(tile!=null && tile.getMask() > 0) {
+            if(tile!=null && visibility.isVisible(tile)) {
                 this.tileBounds.setLocation(tile.getX(), tile.getY());
                 playersIn(players, tileBounds);
             }
         }
-        
-        map.setMask(tiles, 0);
 
         if(!players.isEmpty()) {
             players.remove(entity);
@@ -0,0 +1,601 @@
+/*
+ * see license.txt 
+ */
+package seventh.ai.basic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import seventh.graph.Edge;
+import seventh.graph.Edges;
+import seventh.graph.Edges.Directions;
+import seventh.graph.GraphNode;
+import seventh.map.GridAStarGraphSearch;
+import seventh.map.Map;
+import seventh.map.MapGraph;
+import seventh.map.OpenTileHeap;
+import seventh.map.Tile;
+
+/**
+ * An abstract graph over the {@link Zones}, used for hierarchical path finding (HPA*).  Where two adjacent 
+ * {@link Zone}s have walkable tiles on both sides of their border, a pair of portal tiles is placed on the
+ * entrance.  The portals of a {@link Zone} are linked together with the cost of walking between them, without
+ * leaving the {@link Zone}.
+ * 
+ * <p>
+ * Long routes are first planned over the portals, and then each leg can be refined with a regular path 
+ * search as the bot gets to it, which keeps each full resolution search inside a couple of {@link Zone}s.
+ * 
+ * <p>
+ * When tiles are removed (or restored) at runtime, only the portals of the effected {@link Zone} and its 
+ * neighbors are rebuilt.
+ * 
+ * @author Tony
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class ZoneGraph {
+
+    /**
+     * Entrances at least this many tiles long get a portal at each end, rather than one in the middle
+     */
+    private static final int LONG_ENTRANCE_SIZE = 6;
+    
+    /**
+     * A tile on the border of a {@link Zone}
+     * 
+     * @author Tony
+     *
+     */
+    private static class Portal {
+        final int index;
+        final int zoneId;
+        
+        /* the portal on the other side of the border */
+        Portal pair;
+        
+        /* the other portals in the zone */
+        List<Portal> links;
+        int[] linkCosts;
+        
+        /* search state */
+        int g, f, goalCost;
+        int generation, closedGeneration;
+        Portal cameFrom;
+        
+        Portal(int index, int zoneId) {
+            this.index = index;
+            this.zoneId = zoneId;
+            this.links = new ArrayList<>();
+            this.linkCosts = new int[4];
+        }
+        
+        void addLink(Portal portal, int cost) {
+            if(this.links.size() >= this.linkCosts.length) {
+                this.linkCosts = Arrays.copyOf(this.linkCosts, this.linkCosts.length * 2);
+            }
+            this.linkCosts[this.links.size()] = cost;
+            this.links.add(portal);
+        }
+    }
+    
+    private GraphNode[][] nodes;
+    private int width, height;
+    private int numberOfCols, numberOfRows;
+    
+    private int[] tileZones;
+    private int[] colStart, colEnd;
+    private int[] rowStart, rowEnd;
+    
+    private List<Portal>[] zonePortals;
+    private boolean[] changedZones;
+    
+    /* flood fill scratch */
+    private int[] dist, distGeneration;
+    private int floodGeneration;
+    private OpenTileHeap openTiles;
+    
+    /* abstract search scratch */
+    private PriorityQueue<Portal> openPortals;
+    private int searchGeneration;
+    
+    /**
+     * @param graph
+     * @param map
+     * @param zones
+     */
+    public ZoneGraph(MapGraph<?> graph, Map map, Zones zones) {
+        this(graph, map.getTileWidth(), map.getTileHeight(), 
+             zones.getZoneWidth(), zones.getZoneHeight(), zones.getNumberOfCols(), zones.getNumberOfRows());
+    }
+    
+    /**
+     * @param graph
+     * @param tileWidth the width of a tile, in pixels
+     * @param tileHeight the height of a tile, in pixels
+     * @param zoneWidth the width of a zone, in pixels
+     * @param zoneHeight the height of a zone, in pixels
+     * @param numberOfCols the number of zone columns
+     * @param numberOfRows the number of zone rows
+     */
+    @SuppressWarnings("unchecked")
+    public ZoneGraph(MapGraph<?> graph, int tileWidth, int tileHeight, int zoneWidth, int zoneHeight, int numberOfCols, int numberOfRows) {
+        this.nodes = graph.graph;
+        this.height = this.nodes.length;
+        this.width = this.nodes[0].length;
+        this.numberOfCols = numberOfCols;
+        this.numberOfRows = numberOfRows;
+        
+        /* a tile belongs to the zone its center is in */
+        int[] tileCols = new int[this.width];
+        this.colStart = new int[numberOfCols];
+        this.colEnd = new int[numberOfCols];
+        Arrays.fill(this.colStart, Integer.MAX_VALUE);
+        Arrays.fill(this.colEnd, -1);
+        for(int x = 0; x < this.width; x++) {
+            int col = Math.min((x * tileWidth + tileWidth / 2) / zoneWidth, numberOfCols - 1);
+            tileCols[x] = col;
+            this.colStart[col] = Math.min(this.colStart[col], x);
+            this.colEnd[col] = Math.max(this.colEnd[col], x);
+        }
+        
+        int[] tileRows = new int[this.height];
+        this.rowStart = new int[numberOfRows];
+        this.rowEnd = new int[numberOfRows];
+        Arrays.fill(this.rowStart, Integer.MAX_VALUE);
+        Arrays.fill(this.rowEnd, -1);
+        for(int y = 0; y < this.height; y++) {
+            int row = Math.min((y * tileHeight + tileHeight / 2) / zoneHeight, numberOfRows - 1);
+            tileRows[y] = row;
+            this.rowStart[row] = Math.min(this.rowStart[row], y);
+            this.rowEnd[row] = Math.max(this.rowEnd[row], y);
+        }
+        
+        int size = this.width * this.height;
+        this.tileZones = new int[size];
+        for(int y = 0; y < this.height; y++) {
+            for(int x = 0; x < this.width; x++) {
+                this.tileZones[y * this.width + x] = tileRows[y] * numberOfCols + tileCols[x];
+            }
+        }
+        
+        int numberOfZones = numberOfCols * numberOfRows;
+        this.zonePortals = new List[numberOfZones];
+        for(int i = 0; i < numberOfZones; i++) {
+            this.zonePortals[i] = new ArrayList<>();
+        }
+        this.changedZones = new boolean[numberOfZones];
+        
+        this.dist = new int[size];
+        this.distGeneration = new int[size];
+        this.openTiles = new OpenTileHeap(size);
+        
+        this.openPortals = new PriorityQueue<>(64, new Comparator<Portal>() {
+            @Override
+            public int compare(Portal a, Portal b) {
+                return Integer.compare(a.f, b.f);
+            }
+        });
+        
+        for(int x = 0; x < this.width - 1; x++) {
+            if(tileCols[x] != tileCols[x + 1]) {
+                buildVerticalBorder(x, 0, this.height - 1);
+            }
+        }
+        
+        for(int y = 0; y < this.height - 1; y++) {
+            if(tileRows[y] != tileRows[y + 1]) {
+                buildHorizontalBorder(y, 0, this.width - 1);
+            }
+        }
+        
+        for(int i = 0; i < numberOfZones; i++) {
+            linkZone(i);
+        }
+    }
+    
+    /**
+     * @return the total number of portals
+     */
+    public int getNumberOfPortals() {
+        int numberOfPortals = 0;
+        for(int i = 0; i < this.zonePortals.length; i++) {
+            numberOfPortals += this.zonePortals[i].size();
+        }
+        return numberOfPortals;
+    }
+    
+    private boolean isWalkable(int x, int y) {
+        return x >= 0 && y >= 0 && x < this.width && y < this.height && this.nodes[y][x] != null;
+    }
+    
+    private int zoneCol(int zoneId) {
+        return zoneId % this.numberOfCols;
+    }
+    
+    private int zoneRow(int zoneId) {
+        return zoneId / this.numberOfCols;
+    }
+    
+    /**
+     * @param start
+     * @param goal
+     * @return true if the tiles are far enough apart (not in the same or adjacent {@link Zone}s) that
+     * a hierarchical search is worth doing
+     */
+    public boolean isLongDistance(Tile start, Tile goal) {
+        int startZone = this.tileZones[start.getYIndex() * this.width + start.getXIndex()];
+        int goalZone = this.tileZones[goal.getYIndex() * this.width + goal.getXIndex()];
+        
+        return Math.abs(zoneCol(startZone) - zoneCol(goalZone)) > 1 || 
+               Math.abs(zoneRow(startZone) - zoneRow(goalZone)) > 1;
+    }
+    
+    /**
+     * The tile at the supplied tile coordinates has been removed or added, which rebuilds the 
+     * portals of its {@link Zone}
+     * 
+     * @param tileX
+     * @param tileY
+     */
+    public void updateTile(int tileX, int tileY) {
+        if(tileX < 0 || tileY < 0 || tileX >= this.width || tileY >= this.height) {
+            return;
+        }
+        
+        int zoneId = this.tileZones[tileY * this.width + tileX];
+        rebuildZone(zoneId);
+        this.changedZones[zoneId] = true;
+    }
+    
+    /**
+     * The destroyed tiles are restored at the start of a round, so rebuild any {@link Zone}s
+     * that were changed during the last round
+     */
+    public void onRoundStarted() {
+        for(int i = 0; i < this.changedZones.length; i++) {
+            if(this.changedZones[i]) {
+                this.changedZones[i] = false;
+                rebuildZone(i);
+            }
+        }
+    }
+    
+    /**
+     * Removes the portals of the zone, and builds them back up from its borders
+     * 
+     * @param zoneId
+     */
+    private void rebuildZone(int zoneId) {
+        List<Portal> portals = this.zonePortals[zoneId];
+        for(int i = 0; i < portals.size(); i++) {
+            Portal pair = portals.get(i).pair;
+            this.zonePortals[pair.zoneId].remove(pair);
+        }
+        portals.clear();
+        
+        int col = zoneCol(zoneId);
+        int row = zoneRow(zoneId);
+        int x0 = this.colStart[col], x1 = this.colEnd[col];
+        int y0 = this.rowStart[row], y1 = this.rowEnd[row];
+        
+        /* no tiles in this zone */
+        if(x0 > x1 || y0 > y1) {
+            return;
+        }
+        
+        if(x0 > 0) {
+            buildVerticalBorder(x0 - 1, y0, y1);
+        }
+        if(x1 < this.width - 1) {
+            buildVerticalBorder(x1, y0, y1);
+        }
+        if(y0 > 0) {
+            buildHorizontalBorder(y0 - 1, x0, x1);
+        }
+        if(y1 < this.height - 1) {
+            buildHorizontalBorder(y1, x0, x1);
+        }
+        
+        linkZone(zoneId);
+        if(x0 > 0) {
+            linkZone(this.tileZones[y0 * this.width + x0 - 1]);
+        }
+        if(x1 < this.width - 1) {
+            linkZone(this.tileZones[y0 * this.width + x1 + 1]);
+        }
+        if(y0 > 0) {
+            linkZone(this.tileZones[(y0 - 1) * this.width + x0]);
+        }
+        if(y1 < this.height - 1) {
+            linkZone(this.tileZones[(y1 + 1) * this.width + x0]);
+        }
+    }
+    
+    private boolean isSameBorder(int a, int b, int offset) {
+        return this.tileZones[a] == this.tileZones[b] && this.tileZones[a + offset] == this.tileZones[b + offset];
+    }
+    
+    /**
+     * Builds the entrances between the tiles at x and x+1
+     * 
+     * @param x
+     * @param yStart
+     * @param yEnd
+     */
+    private void buildVerticalBorder(int x, int yStart, int yEnd) {
+        int runStart = -1;
+        for(int y = yStart; y <= yEnd; y++) {
+            boolean isOpen = isWalkable(x, y) && isWalkable(x + 1, y);
+            if(runStart > -1 && (!isOpen || !isSameBorder(runStart * this.width + x, y * this.width + x, 1))) {
+                addEntrance(runStart * this.width + x, this.width, y - runStart, 1);
+                runStart = -1;
+            }
+            
+            if(isOpen && runStart < 0) {
+                runStart = y;
+            }
+        }
+        
+        if(runStart > -1) {
+            addEntrance(runStart * this.width + x, this.width, yEnd + 1 - runStart, 1);
+        }
+    }
+    
+    /**
+     * Builds the entrances between the tiles at y and y+1
+     * 
+     * @param y
+     * @param xStart
+     * @param xEnd
+     */
+    private void buildHorizontalBorder(int y, int xStart, int xEnd) {
+        int runStart = -1;
+        for(int x = xStart; x <= xEnd; x++) {
+            boolean isOpen = isWalkable(x, y) && isWalkable(x, y + 1);
+            if(runStart > -1 && (!isOpen || !isSameBorder(y * this.width + runStart, y * this.width + x, this.width))) {
+                addEntrance(y * this.width + runStart, 1, x - runStart, this.width);
+                runStart = -1;
+            }
+            
+            if(isOpen && runStart < 0) {
+                runStart = x;
+            }
+        }
+        
+        if(runStart > -1) {
+            addEntrance(y * this.width + runStart, 1, xEnd + 1 - runStart, this.width);
+        }
+    }
+    
+    /**
+     * Adds the portals for an entrance
+     * 
+     * @param start the first tile index of the entrance
+     * @param step the index step along the entrance
+     * @param length the number of tiles in the entrance
+     * @param offset the index offset to the tile on the other side of the border
+     */
+    private void addEntrance(int start, int step, int length, int offset) {
+        if(length >= LONG_ENTRANCE_SIZE) {
+            addPortals(start, offset);
+            addPortals(start + (length - 1) * step, offset);
+        }
+        else {
+            addPortals(start + (length / 2) * step, offset);
+        }
+    }
+    
+    private void addPortals(int index, int offset) {
+        Portal a = new Portal(index, this.tileZones[index]);
+        Portal b = new Portal(index + offset, this.tileZones[index + offset]);
+        a.pair = b;
+        b.pair = a;
+        
+        this.zonePortals[a.zoneId].add(a);
+        this.zonePortals[b.zoneId].add(b);
+    }
+    
+    /**
+     * Links the portals of the zone with the cost of walking between them
+     * 
+     * @param zoneId
+     */
+    private void linkZone(int zoneId) {
+        List<Portal> portals = this.zonePortals[zoneId];
+        for(int i = 0; i < portals.size(); i++) {
+            portals.get(i).links.clear();
+        }
+        
+        for(int i = 0; i < portals.size(); i++) {
+            Portal portal = portals.get(i);
+            flood(zoneId, portal.index);
+            
+            for(int j = 0; j < portals.size(); j++) {
+                Portal other = portals.get(j);
+                int cost = floodDistance(other.index);
+                if(i != j && cost > -1) {
+                    portal.addLink(other, cost);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Calculates the distance from the tile to every other tile in the zone, without leaving the zone
+     * 
+     * @param zoneId
+     * @param fromIndex
+     */
+    private void flood(int zoneId, int fromIndex) {
+        this.floodGeneration++;
+        if(this.floodGeneration == Integer.MAX_VALUE) {
+            Arrays.fill(this.distGeneration, 0);
+            this.floodGeneration = 1;
+        }
+        
+        this.openTiles.clear();
+        this.dist[fromIndex] = 0;
+        this.distGeneration[fromIndex] = this.floodGeneration;
+        this.openTiles.push(fromIndex, 0, 0);
+        
+        while(!this.openTiles.isEmpty()) {
+            int index = this.openTiles.pop();
+            GraphNode node = this.nodes[index / this.width][index % this.width];
+            if(node == null) {
+                continue;
+            }
+            
+            Edges edges = node.edges();
+            for(int i = 0; i < edges.size(); i++) {
+                Edge edge = edges.get(i);
+                if(edge == null || edge.getRight() == null) {
+                    continue;
+                }
+                
+                Tile tile = (Tile)edge.getRight().getValue();
+                int neighbor = tile.getYIndex() * this.width + tile.getXIndex();
+                if(this.tileZones[neighbor] != zoneId) {
+                    continue;
+                }
+                
+                int cost = this.dist[index] + (Directions.isCardinal(i) ? GridAStarGraphSearch.STRAIGHT_COST 
+                                                                        : GridAStarGraphSearch.DIAGONAL_COST);
+                if(this.distGeneration[neighbor] != this.floodGeneration) {
+                    this.distGeneration[neighbor] = this.floodGeneration;
+                    this.dist[neighbor] = cost;
+                    this.openTiles.push(neighbor, cost, 0);
+                }
+                else if(cost < this.dist[neighbor]) {
+                    this.dist[neighbor] = cost;
+                    this.openTiles.decrease(neighbor, cost);
+                }
+            }
+        }
+    }
+    
+    /**
+     * @param index
+     * @return the distance from the last flood, or -1 if it was not reached
+     */
+    private int floodDistance(int index) {
+        return this.distGeneration[index] == this.floodGeneration ? this.dist[index] : -1;
+    }
+    
+    private int heuristicEstimateDistance(int index, int goalIndex) {
+        int dx = Math.abs(index % this.width - goalIndex % this.width);
+        int dy = Math.abs(index / this.width - goalIndex / this.width);
+        
+        return GridAStarGraphSearch.STRAIGHT_COST * (dx + dy) 
+             + (GridAStarGraphSearch.DIAGONAL_COST - 2 * GridAStarGraphSearch.STRAIGHT_COST) * Math.min(dx, dy);
+    }
+    
+    private void relax(Portal portal, Portal from, int g, int goalIndex) {
+        if(portal.generation != this.searchGeneration) {
+            portal.generation = this.searchGeneration;
+            portal.g = g;
+            portal.f = g + heuristicEstimateDistance(portal.index, goalIndex);
+            portal.cameFrom = from;
+            this.openPortals.add(portal);
+        }
+        else if(portal.closedGeneration != this.searchGeneration && g < portal.g) {
+            this.openPortals.remove(portal);
+            portal.f -= portal.g - g;
+            portal.g = g;
+            portal.cameFrom = from;
+            this.openPortals.add(portal);
+        }
+    }
+    
+    /**
+     * Plans a route over the portals from the start to the goal tile.
+     * 
+     * @param start
+     * @param goal
+     * @param route the portal tiles to pass through, ending with the goal tile (not including the start tile)
+     * @return the estimated cost of the route, or -1 if there is no route
+     */
+    public int findRoute(Tile start, Tile goal, List<Tile> route) {
+        route.clear();
+        
+        int startIndex = start.getYIndex() * this.width + start.getXIndex();
+        int goalIndex = goal.getYIndex() * this.width + goal.getXIndex();
+        if(!isWalkable(start.getXIndex(), start.getYIndex()) || !isWalkable(goal.getXIndex(), goal.getYIndex())) {
+            return -1;
+        }
+        
+        this.searchGeneration++;
+        if(this.searchGeneration == Integer.MAX_VALUE) {
+            for(int i = 0; i < this.zonePortals.length; i++) {
+                for(Portal portal : this.zonePortals[i]) {
+                    portal.generation = 0;
+                    portal.closedGeneration = 0;
+                }
+            }
+            this.searchGeneration = 1;
+        }
+        this.openPortals.clear();
+        
+        int startZone = this.tileZones[startIndex];
+        int goalZone = this.tileZones[goalIndex];
+        Portal goalPortal = new Portal(goalIndex, goalZone);
+        
+        List<Portal> goalPortals = this.zonePortals[goalZone];
+        flood(goalZone, goalIndex);
+        for(int i = 0; i < goalPortals.size(); i++) {
+            Portal portal = goalPortals.get(i);
+            portal.goalCost = floodDistance(portal.index);
+        }
+        
+        if(startZone == goalZone && floodDistance(startIndex) > -1) {
+            relax(goalPortal, null, floodDistance(startIndex), goalIndex);
+        }
+        
+        List<Portal> startPortals = this.zonePortals[startZone];
+        flood(startZone, startIndex);
+        for(int i = 0; i < startPortals.size(); i++) {
+            Portal portal = startPortals.get(i);
+            int cost = floodDistance(portal.index);
+            if(cost > -1) {
+                relax(portal, null, cost, goalIndex);
+            }
+        }
+        
+        while(!this.openPortals.isEmpty()) {
+            Portal portal = this.openPortals.poll();
+            portal.closedGeneration = this.searchGeneration;
+            
+            if(portal == goalPortal) {
+                for(Portal p = goalPortal; p != null; p = p.cameFrom) {
+                    if(p.index != startIndex) {
+                        GraphNode node = this.nodes[p.index / this.width][p.index % this.width];
+                        route.add((Tile)node.getValue());
+                    }
+                }
+                Collections.reverse(route);
+                return goalPortal.g;
+            }
+            
+            if(portal.zoneId == goalZone && portal.goalCost > -1) {
+                relax(goalPortal, portal, portal.g + portal.goalCost, goalIndex);
+            }
+            
+            if(portal.pair.closedGeneration != this.searchGeneration) {
+                relax(portal.pair, portal, portal.g + GridAStarGraphSearch.STRAIGHT_COST, goalIndex);
+            }
+            
+            for(int i = 0; i < portal.links.size(); i++) {
+                Portal link = portal.links.get(i);
+                if(link.closedGeneration != this.searchGeneration) {
+                    relax(link, portal, portal.g + portal.linkCosts[i], goalIndex);
+                }
+            }
+        }
+        
+        return -1;
+    }
+}
@@ -36,12 +36,21 @@ public class Zones {
      * @param game
      */
     public Zones(GameInfo game) {
+        this(game.getMap());
         this.game = game;
+    }
+    
+    /**
+     * Builds the {@link Zones} of a map before there is a game for it (such as when the map is being 
+     * preloaded), the game must be set with {@link #setGame(GameInfo)} before it is used.
+     * 
+     * @param map
+     */
+    public Zones(Map map) {
         bombTargetZones = new ArrayList<>();
         
         final int ZONE_SIZE_IN_TILES = 12;
         
-        Map map = game.getMap();
 
         mapWidth = map.getMapWidth();
         mapHeight = map.getMapHeight();
@@ -115,6 +124,13 @@ public class Zones {
         return true;
     }
     
+    /**
+     * @param game the game these zones are used in
+     */
+    public void setGame(GameInfo game) {
+        this.game = game;
+    }
+    
     /**
      * Determines which Zone's the {@link BombTarget}s
      * fall into
@@ -149,6 +165,34 @@ public class Zones {
     public int getNumberOfZones() {
         return this.numberOfZones;
     }
+    
+    /**
+     * @return the width of a zone, in pixels
+     */
+    public int getZoneWidth() {
+        return zoneWidth;
+    }
+    
+    /**
+     * @return the height of a zone, in pixels
+     */
+    public int getZoneHeight() {
+        return zoneHeight;
+    }
+    
+    /**
+     * @return the number of zone columns
+     */
+    public int getNumberOfCols() {
+        return numberOfCols;
+    }
+    
+    /**
+     * @return the number of zone rows
+     */
+    public int getNumberOfRows() {
+        return numberOfRows;
+    }
         
     
     /**
@@ -148,6 +148,8 @@ public class ClientGame {
 
     
     private long gameClock;
+    private int serverTime;
+    private int inputSequence;
     private boolean gameEnded, roundEnded;
     
     
@@ -238,7 +240,7 @@ public class ClientGame {
         this.camera = newCamera(map.getMapWidth(), map.getMapHeight());
         this.cameraController = new CameraController(this);
         
-        this.gameTimers = new Timers(SeventhConstants.MAX_TIMERS);
+        this.gameTimers = new Timers();
         
         this.hud = new Hud(this);
         this.random = new Random();
@@ -805,6 +807,28 @@ public class ClientGame {
         return gameClock;
     }
     
+    /**
+     * @return the servers game clock of the last applied game update (see NetField.SERVER_TIME), which
+     * is the point in time the entities are being rendered at
+     */
+    public int getServerTime() {
+        return serverTime;
+    }
+    
+    /**
+     * @return the sequence number of the last input sent to the server
+     */
+    public int getInputSequence() {
+        return inputSequence;
+    }
+    
+    /**
+     * @param inputSequence the sequence number of the last input sent to the server
+     */
+    public void setInputSequence(int inputSequence) {
+        this.inputSequence = inputSequence;
+    }
+    
     /**
      * @return the camera
      */
@@ -1291,6 +1315,7 @@ public class ClientGame {
         NetGameUpdate netUpdate = msg.netUpdate;
 
         gameClock = netUpdate.time;
+        serverTime = netUpdate.serverTime;
         
         if(netUpdate.entities != null) {
             int size = netUpdate.entities.length;
@@ -15,6 +15,7 @@ import seventh.map.Tile;
 import seventh.math.Line;
 import seventh.math.Rectangle;
 import seventh.math.Vector2f;
+import seventh.network.messages.PlayerInputMessage;
 import seventh.shared.Geom;
 import seventh.shared.TimeStep;
 
@@ -24,6 +25,17 @@ import seventh.shared.TimeStep;
  */
 public abstract class ClientControllableEntity extends ClientEntity {
     
+    /**
+     * The number of predicted moves kept until the server has processed 
+     * the input they were made under
+     */
+    private static final int MAX_PREDICTED_MOVES = 64;
+    
+    /**
+     * How much of the remaining correction is kept each frame, see {@link #reconcile(int, float, float)}
+     */
+    private static final float CORRECTION_DECAY = 0.8f;
+    
     protected State currentState;
     protected int lineOfSight;
     
@@ -41,6 +53,14 @@ public abstract class ClientControllableEntity extends ClientEntity {
     
     private Vector2f xCollisionTilePos, yCollisionTilePos;
     
+    /* the predicted moves not yet processed by the server, tagged with the last input sent at the time */
+    private int[] moveSequences;
+    private float[] moveDeltaX, moveDeltaY;
+    private int oldestMove, numberOfMoves;
+    
+    private boolean isReconciled;
+    private Vector2f correction;
+    
     /**
      * @param game
      * @param pos
@@ -55,6 +75,11 @@ public abstract class ClientControllableEntity extends ClientEntity {
         this.xCollisionTilePos = new Vector2f();
         this.yCollisionTilePos = new Vector2f();
         
+        this.moveSequences = new int[MAX_PREDICTED_MOVES];
+        this.moveDeltaX = new float[MAX_PREDICTED_MOVES];
+        this.moveDeltaY = new float[MAX_PREDICTED_MOVES];
+        this.correction = new Vector2f();
+        
         this.isControlledByLocalPlayer = false;
         
 
@@ -121,13 +146,22 @@ public abstract class ClientControllableEntity extends ClientEntity {
      */
     public Vector2f getRenderPos(float alpha) {
         if(isControlledByLocalPlayer()) {
-            //Vector2f.Vector2fLerp(predictedPos, pos, alpha, renderPos);
+            
+            /* the prediction is up to date with the server, so only
+             * what is left of the last correction needs smoothing out
+             */
+            if(isReconciled) {
+                renderPos.x = predictedPos.x + correction.x;
+                renderPos.y = predictedPos.y + correction.y;
+            }
+            else {
+                //Vector2f.Vector2fLerp(predictedPos, pos, alpha, renderPos);
             
 //            renderPos.x = predictedPos.x * 0.6f + pos.x * 0.4f;
 //            renderPos.y = predictedPos.y * 0.6f + pos.y * 0.4f;
-            renderPos.x = renderPos.x * 0.8f + predictedPos.x * 0.2f; // was pos
-            renderPos.y = renderPos.y * 0.8f + predictedPos.y * 0.2f;
-
+                renderPos.x = renderPos.x * 0.8f + predictedPos.x * 0.2f; // was pos
+                renderPos.y = renderPos.y * 0.8f + predictedPos.y * 0.2f;
+            }
         }
         else {            
             Vector2f.Vector2fLerp(previousPos, pos, alpha, renderPos);
@@ -257,76 +291,154 @@ public abstract class ClientControllableEntity extends ClientEntity {
             float deltaX = (vel.x * movementSpeed * dt);
             float deltaY = (vel.y * movementSpeed * dt);
             
-            float newX = predictedPos.x + deltaX;
-            float newY = predictedPos.y + deltaY;
-            
-            boolean isBlocked = false;
-            boolean isBlockedByEntity = false;
-            
-            bounds.x = (int)newX;            
-            if(map.rectCollides(bounds, 1, xCollisionTilePos)) {
-                bounds.x = (int)predictedPos.x;
-                newX = predictedPos.x;
-                isBlocked = true;
-            }
-            else if(collidesAgainstEntity(bounds) || collidesAgainstMapObject(bounds)) {
-                bounds.x = (int)predictedPos.x;
-                newX = predictedPos.x;
-                isBlocked = true;
-                isBlockedByEntity = true;
-            }
-            
-            bounds.y = (int)newY;            
-            if(map.rectCollides(bounds, 1, yCollisionTilePos)) {
-                bounds.y = (int)predictedPos.y;
-                newY = predictedPos.y;
-                isBlocked = true;
-            }
-            else if(collidesAgainstEntity(bounds) || collidesAgainstMapObject(bounds)) {
-                bounds.y = (int)predictedPos.y;
-                newY = predictedPos.y;
-                isBlocked = true;
-                isBlockedByEntity = true;
-            }
+            predictMove(map, deltaX, deltaY);
+            addPredictedMove(game.getInputSequence(), deltaX, deltaY);
             
-            if(isBlocked) {
-                /* some things want to stop dead it their tracks
-                 * if a component is blocked
-                 */
-                if(!continueIfBlock()) {
-                    bounds.setLocation(pos);
-                    
-                    newX = pos.x;
-                    newY = pos.y;
-                }  
-                
-                /*
-                 * Otherwise determine if the character
-                 * is a couple pixels off and is snagged on
-                 * a corner, if so auto adjust them
-                 */
-                else if (!isBlockedByEntity) {
-                    if(deltaX != 0 && deltaY == 0) {                
-                        newY = adjustY(xCollisionTilePos, deltaX, (int)(predictedPos.x + deltaX), bounds.y);
-                    }
-                    else if(deltaX == 0 && deltaY != 0) {
-                        newX = adjustX(yCollisionTilePos, deltaY, bounds.x, (int)(predictedPos.y + deltaY));
-                    }
-                }
+            if(!isReconciled) {
+                clientSideCorrection(pos, predictedPos, predictedPos, 0.15f);
             }
-            
-            predictedPos.set(newX, newY);
-            
-            clientSideCorrection(pos, predictedPos, predictedPos, 0.15f);
             lastMoveTime = timeStep.getGameClock();
         }        
-        else {
+        else if(!isReconciled) {
             float alpha = 0.15f + 0.108f * (float)((timeStep.getGameClock() - lastMoveTime) / timeStep.getDeltaTime());
             if(alpha > 0.75f) {
                 alpha = 0.75f;
             }
             clientSideCorrection(pos, predictedPos, predictedPos, alpha);
         }
+        
+        correction.x *= CORRECTION_DECAY;
+        correction.y *= CORRECTION_DECAY;
+    }
+    
+    /**
+     * Moves the predicted position, checking for collisions along the way
+     * 
+     * @param map
+     * @param deltaX
+     * @param deltaY
+     */
+    private void predictMove(Map map, float deltaX, float deltaY) {
+        float newX = predictedPos.x + deltaX;
+        float newY = predictedPos.y + deltaY;
+        
+        boolean isBlocked = false;
+        boolean isBlockedByEntity = false;
+        
+        bounds.x = (int)newX;            
+        if(map.rectCollides(bounds, 1, xCollisionTilePos)) {
+            bounds.x = (int)predictedPos.x;
+            newX = predictedPos.x;
+            isBlocked = true;
+        }
+        else if(collidesAgainstEntity(bounds) || collidesAgainstMapObject(bounds)) {
+            bounds.x = (int)predictedPos.x;
+            newX = predictedPos.x;
+            isBlocked = true;
+            isBlockedByEntity = true;
+        }
+        
+        bounds.y = (int)newY;            
+        if(map.rectCollides(bounds, 1, yCollisionTilePos)) {
+            bounds.y = (int)predictedPos.y;
+            newY = predictedPos.y;
+            isBlocked = true;
+        }
+        else if(collidesAgainstEntity(bounds) || collidesAgainstMapObject(bounds)) {
+            bounds.y = (int)predictedPos.y;
+            newY = predictedPos.y;
+            isBlocked = true;
+            isBlockedByEntity = true;
+        }
+        
+        if(isBlocked) {
+            /* some things want to stop dead it their tracks
+             * if a component is blocked
+             */
+            if(!continueIfBlock()) {
+                bounds.setLocation(pos);
+                
+                newX = pos.x;
+                newY = pos.y;
+            }  
+            
+            /*
+             * Otherwise determine if the character
+             * is a couple pixels off and is snagged on
+             * a corner, if so auto adjust them
+             */
+            else if (!isBlockedByEntity) {
+                if(deltaX != 0 && deltaY == 0) {                
+                    newY = adjustY(xCollisionTilePos, deltaX, (int)(predictedPos.x + deltaX), bounds.y);
+                }
+                else if(deltaX == 0 && deltaY != 0) {
+                    newX = adjustX(yCollisionTilePos, deltaY, bounds.x, (int)(predictedPos.y + deltaY));
+                }
+            }
+        }
+        
+        predictedPos.set(newX, newY);
+    }
+    
+    /**
+     * Keeps the predicted move until the server has processed the input it was made under
+     * 
+     * @param inputSequence the last input sent to the server
+     * @param deltaX
+     * @param deltaY
+     */
+    private void addPredictedMove(int inputSequence, float deltaX, float deltaY) {
+        if(numberOfMoves == MAX_PREDICTED_MOVES) {
+            oldestMove = (oldestMove + 1) % MAX_PREDICTED_MOVES;
+            numberOfMoves--;
+        }
+        
+        int index = (oldestMove + numberOfMoves) % MAX_PREDICTED_MOVES;
+        moveSequences[index] = inputSequence;
+        moveDeltaX[index] = deltaX;
+        moveDeltaY[index] = deltaY;
+        numberOfMoves++;
+    }
+    
+    /**
+     * Reconciles the prediction with the server.  The server position reflects the inputs up to the
+     * supplied input sequence, so the predicted position is the server position with the moves made since
+     * replayed on top of it.  The difference from the previous prediction is smoothed out over the next 
+     * few frames, rather than jumping to it.
+     * 
+     * @param inputSequence the last input the server has processed
+     * @param serverX the server position
+     * @param serverY the server position
+     */
+    public void reconcile(int inputSequence, float serverX, float serverY) {
+        while(numberOfMoves > 0 && !PlayerInputMessage.isNewerSequence(moveSequences[oldestMove], inputSequence)) {
+            oldestMove = (oldestMove + 1) % MAX_PREDICTED_MOVES;
+            numberOfMoves--;
+        }
+        
+        float previousX = predictedPos.x;
+        float previousY = predictedPos.y;
+        
+        predictedPos.set(serverX, serverY);
+        
+        Map map = game.getMap();
+        for(int i = 0; i < numberOfMoves; i++) {
+            int index = (oldestMove + i) % MAX_PREDICTED_MOVES;
+            predictMove(map, moveDeltaX[index], moveDeltaY[index]);
+        }
+        bounds.setLocation(pos);
+        
+        correction.x += previousX - predictedPos.x;
+        correction.y += previousY - predictedPos.y;
+        
+        /* if the entity is more than two tiles off, snap
+         * into position
+         */
+        if(!isReconciled || correction.lengthSquared() > 62 * 62) {
+            correction.zeroOut();
+        }
+        
+        isReconciled = true;
     }
     
     protected boolean collidesAgainstEntity(Rectangle bounds) {
@@ -348,6 +348,10 @@ public class ClientPlayerEntity extends ClientControllableEntity {
                 this.vehicle = null;
                 
                 updateWeaponState(ps.weapon, time);
+                
+                if(isControlledByLocalPlayer()) {
+                    reconcile(ps.inputSequence, ps.posX, ps.posY);
+                }
             }
         }
         else {
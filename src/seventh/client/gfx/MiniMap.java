@@ -19,7 +19,7 @@ import seventh.client.weapon.ClientWeapon;
 import seventh.game.weapons.Weapon.WeaponState;
 import seventh.map.Layer;
 import seventh.map.Map;
-import seventh.map.Tile;
+import seventh.map.TilePrototype;
 import seventh.math.Rectangle;
 import seventh.math.Vector2f;
 import seventh.shared.TimeStep;
@@ -59,12 +59,12 @@ public class MiniMap implements Renderable {
         Layer[] layers = map.getBackgroundLayers();
         for(int y = 0; y < map.getTileWorldHeight(); y++) {
             for(int x = 0; x < map.getTileWorldWidth(); x++) {
-                Tile topTile = null;
+                TilePrototype topTile = null;
                 
                 boolean hasGroundTile = false;
                 boolean hasCollidable = false;
                 for(int i = 0; i < layers.length; i++) {                                        
-                    Tile tile = layers[i].getRow(y)[x]; 
+                    TilePrototype tile = layers[i].getPrototype(x, y); 
                     if(tile != null) {
                         if(!layers[i].collidable()) {
                             hasGroundTile = true;
@@ -6,11 +6,14 @@ package seventh.client.network;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 
+import harenet.NetConfig;
 import harenet.api.Client;
 import harenet.api.impl.HareNetClient;
 import seventh.client.ClientSeventhConfig;
 import seventh.client.SeventhGame;
 import seventh.client.network.ClientProtocol.GameCreationListener;
+import seventh.network.messages.BufferIO.SeventhNetMessageFactory;
+import seventh.network.messages.GameUpdateMessagePool;
 import seventh.shared.Command;
 import seventh.shared.Cons;
 import seventh.shared.Console;
@@ -32,7 +35,11 @@ public class ClientConnection {
      * @param console
      */
     public ClientConnection(SeventhGame app, ClientSeventhConfig config, Console console) {
-        this.client = new HareNetClient(config.getNetConfig());
+        /* the received game updates are reused once they have been applied */
+        NetConfig netConfig = config.getNetConfig();
+        netConfig.setMessageFactory(new SeventhNetMessageFactory(new GameUpdateMessagePool()));
+        
+        this.client = new HareNetClient(netConfig);
         
         this.protocol = new ClientNetworkProtocol(this, app);
         this.client.addConnectionListener(this.protocol);
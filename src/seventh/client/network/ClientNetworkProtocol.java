@@ -20,6 +20,8 @@ import seventh.client.screens.InGameScreen;
 import seventh.client.screens.ServerFullScreen;
 import seventh.game.net.NetGameState;
 import seventh.game.net.NetMap;
+import seventh.game.net.NetEntityPool;
+import seventh.game.net.NetSnapshots;
 import seventh.map.Map;
 import seventh.map.MapLoaderUtil;
 import seventh.network.messages.AICommandMessage;
@@ -99,6 +101,12 @@ public class ClientNetworkProtocol extends NetworkProtocol implements ClientProt
     private ClientPlayers players;
     
     private Queue<QueuedMessage> outboundQ;
+    private NetSnapshots snapshots;
+    
+    /* the snapshot of the last game update that couldn't be rebuilt, -1 if the
+     * client has since received a full update
+     */
+    private volatile int resyncSnapshotId;
     
         
     /**
@@ -109,6 +117,9 @@ public class ClientNetworkProtocol extends NetworkProtocol implements ClientProt
         super(connection.getClient());
         this.client = connection.getClient();                
         this.outboundQ = new ConcurrentLinkedQueue<QueuedMessage>();
+        this.snapshots = new NetSnapshots();
+        this.snapshots.setEntityPool(new NetEntityPool(SeventhConstants.MAX_ENTITIES));
+        this.resyncSnapshotId = -1;
         
         this.app = app;
         this.connection = connection;            
@@ -191,6 +202,40 @@ public class ClientNetworkProtocol extends NetworkProtocol implements ClientProt
     @Override
     public void onConnected(Connection conn) {
         Cons.println("Client connected");
+        this.snapshots.clear();
+        this.resyncSnapshotId = -1;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see seventh.shared.NetworkProtocol#onReceived(harenet.api.Connection, java.lang.Object)
+     */
+    @Override
+    public void onReceived(Connection conn, Object message) {
+        /* the game updates are delta compressed against the previously received
+         * updates, so they must be rebuilt in the order they are received
+         */
+        if(message instanceof GameUpdateMessage) {
+            GameUpdateMessage msg = (GameUpdateMessage)message;
+            if(msg.netUpdate != null) {
+                int snapshotId = msg.netUpdate.getSnapshotId();
+                
+                /* the server compressed this against a snapshot we don't have, ask 
+                 * it to stop using the snapshots it has already sent as baselines
+                 */
+                if(!msg.netUpdate.resolve(this.snapshots)) {
+                    this.resyncSnapshotId = Math.max(this.resyncSnapshotId, snapshotId);
+                    msg.release();
+                    return;
+                }
+                
+                if(msg.netUpdate.getBaselineSnapshotId() < 0 && snapshotId > this.resyncSnapshotId) {
+                    this.resyncSnapshotId = -1;
+                }
+            }
+        }
+        
+        super.onReceived(conn, message);
     }
     
     /*
@@ -234,7 +279,14 @@ public class ClientNetworkProtocol extends NetworkProtocol implements ClientProt
         /* game messages first, from most frequent to least */
         
         if(message instanceof GameUpdateMessage) {
-            receiveGameUpdateMessage(conn, (GameUpdateMessage)message);
+            GameUpdateMessage msg = (GameUpdateMessage)message;
+            try {
+                receiveGameUpdateMessage(conn, msg);
+            }
+            finally {
+                /* the received updates are pooled, see ClientConnection */
+                msg.release();
+            }
         }
         else if(message instanceof GamePartialStatsMessage) {
             receiveGamePartialStatsMessage(conn, (GamePartialStatsMessage)message);
@@ -378,6 +430,9 @@ public class ClientNetworkProtocol extends NetworkProtocol implements ClientProt
     public void receiveGameUpdateMessage(Connection conn, GameUpdateMessage msg) {
         if(game != null) {
             game.applyGameUpdate(msg);
+            
+            /* the entities of older updates can now be reused */
+            this.snapshots.setAppliedSnapshotId(msg.netUpdate.getSnapshotId());
         }
     }
 
@@ -737,6 +792,7 @@ public class ClientNetworkProtocol extends NetworkProtocol implements ClientProt
      */
     @Override
     public void sendPlayerInputMessage(PlayerInputMessage msg) {
+        msg.resyncSnapshotId = this.resyncSnapshotId;
         sendUnReliableMessage(msg);
     }
     
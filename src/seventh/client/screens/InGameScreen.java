@@ -649,6 +649,11 @@ public class InGameScreen implements Screen {
             inputKeys = 0;
         }
             
+        /* the last inputs are sent again along with this one, 
+         * in case they were lost
+         */
+        inputMessage.nextInput();
+        
         /* capture the inputs for moving the camera if
          * we are in freeform mode
          */
@@ -661,6 +666,8 @@ public class InGameScreen implements Screen {
         
         Vector2f mousePos = cursor.getCursorPos();
         inputMessage.orientation = game.calcPlayerOrientation(mousePos.x, mousePos.y);                 
+        inputMessage.renderTime = game.getServerTime();
+        game.setInputSequence(inputMessage.sequence);
         connection.getClientProtocol().sendPlayerInputMessage(inputMessage);
         connection.updateNetwork(timeStep);
                         
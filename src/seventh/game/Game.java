@@ -6,7 +6,6 @@ package seventh.game;
 import static seventh.shared.SeventhConstants.MAX_ENTITIES;
 import static seventh.shared.SeventhConstants.MAX_PERSISTANT_ENTITIES;
 import static seventh.shared.SeventhConstants.MAX_PLAYERS;
-import static seventh.shared.SeventhConstants.MAX_TIMERS;
 import static seventh.shared.SeventhConstants.SPAWN_INVINCEABLILITY_TIME;
 
 import java.io.File;
@@ -15,6 +14,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.Random;
 
+import harenet.ByteBufferIOBuffer;
+import harenet.IOBuffer;
 import leola.vm.Leola;
 import leola.vm.types.LeoObject;
 import seventh.ai.AISystem;
@@ -57,9 +58,11 @@ import seventh.game.net.NetGameState;
 import seventh.game.net.NetGameStats;
 import seventh.game.net.NetGameUpdate;
 import seventh.game.net.NetMapDestructables;
+import seventh.game.net.NetPlayer;
 import seventh.game.net.NetPlayerPartialStat;
 import seventh.game.net.NetPlayerStat;
 import seventh.game.net.NetSound;
+import seventh.game.net.NetSnapshots;
 import seventh.game.net.NetSoundByEntity;
 import seventh.game.type.GameType;
 import seventh.game.weapons.Explosion;
@@ -153,6 +156,16 @@ public class Game implements GameInfo, Debugable, Updatable {
         Type.FLAME_THROWER,
     };
     
+    /**
+     * The number of tiles (in each direction) a broadphase cell covers
+     */
+    private static final int SPATIAL_HASH_TILES_PER_CELL = 2;
+    
+    /**
+     * The size of the buffer used to measure the size of a {@link NetEntity}
+     */
+    private static final int NET_ENTITY_SCRATCH_SIZE = 4 * 1024;
+    
     private Entity[] entities;    
     private PlayerEntity[] playerEntities;
     private int[] deadFrames;    
@@ -184,11 +197,15 @@ public class Game implements GameInfo, Debugable, Updatable {
     
     // data members that are strictly here for performance
     // reasons
-    public List<Tile> tilesInLineOfSight = new ArrayList<Tile>();
-    List<SoundEmittedEvent> aSoundsHeard = new ArrayList<SoundEmittedEvent>();
-    List<Entity> aEntitiesInView = new ArrayList<Entity>();
+    private PlayerView[] playerViews;
+    private NetEntity[] netEntities;
+    private NetPlayer[] netPlayers;
+    private int[] netEntityBits;
+    private int[] netPlayerBits;
+    private IOBuffer netEntityScratch;
+    private boolean netUpdatesPrepared;
+    private boolean netUpdatesMeasured;
         
-    private NetGameUpdate[] playerUpdates;
     private NetGameState gameState;
     private NetGameStats gameStats;
     private NetGamePartialStats gamePartialStats;
@@ -196,6 +213,29 @@ public class Game implements GameInfo, Debugable, Updatable {
     private Timers gameTimers;
     private Triggers gameTriggers;
     
+    /**
+     * Broadphase indexes, so that touch queries only check
+     * things near the query region
+     */
+    private SpatialHash entityIndex;
+    private SpatialHash mapObjectIndex;
+    private int[] touchCandidates;
+    private int[] mapObjectCandidates;
+    
+    /**
+     * Casts bullets along their whole path for a frame, rather
+     * than checking every pixel of it
+     */
+    private SweptCollision sweptCollision;
+    private boolean continuousBulletCollision;
+    
+    /**
+     * Rewinds the players to what a remote shooter saw, when
+     * checking its bullets
+     */
+    private LagCompensation lagCompensation;
+    private long gameClock;
+    
     private final float DISTANCE_CHECK;
     private final int TILE_WIDTH, TILE_HEIGHT;
     
@@ -231,8 +271,8 @@ public class Game implements GameInfo, Debugable, Updatable {
         this.gameMap = gameMap;
         this.map = gameMap.getMap();
         
-        this.graph = map.createMapGraph(new NodeData());
-        this.gameTimers = new Timers(MAX_TIMERS);
+        this.graph = (gameMap.getGraph() != null) ? gameMap.getGraph() : map.createMapGraph(new NodeData());
+        this.gameTimers = new Timers();
         this.gameTriggers = new Triggers(this);
         
         this.entities = new Entity[MAX_ENTITIES];
@@ -240,10 +280,12 @@ public class Game implements GameInfo, Debugable, Updatable {
         
         this.deadFrames = new int[MAX_ENTITIES];
         
-        this.playerUpdates = new NetGameUpdate[MAX_ENTITIES];
-        for(int i = 0; i < this.playerUpdates.length; i++) {
-            this.playerUpdates[i] = new NetGameUpdate();
-        }
+        this.playerViews = new PlayerView[MAX_PLAYERS];
+        this.netEntities = new NetEntity[MAX_ENTITIES];
+        this.netPlayers = new NetPlayer[MAX_PLAYERS];
+        this.netEntityBits = new int[MAX_ENTITIES];
+        this.netPlayerBits = new int[MAX_PLAYERS];
+        this.netEntityScratch = new ByteBufferIOBuffer(NET_ENTITY_SCRATCH_SIZE);
         
         this.bombTargets = new ArrayList<BombTarget>();
         this.vehicles = new ArrayList<Vehicle>();
@@ -255,7 +297,7 @@ public class Game implements GameInfo, Debugable, Updatable {
         this.soundEvents = new SoundEventPool(SeventhConstants.MAX_SOUNDS);
         this.lastFramesSoundEvents = new SoundEventPool(SeventhConstants.MAX_SOUNDS);
         
-        this.aiSystem = new DefaultAISystem();
+        this.aiSystem = new DefaultAISystem(gameMap.getZones());
         
         this.random = new Random();
         
@@ -273,6 +315,15 @@ public class Game implements GameInfo, Debugable, Updatable {
         
         this.DISTANCE_CHECK = TILE_HEIGHT * TILE_WIDTH * 2;
         
+        this.entityIndex = new SpatialHash(MAX_ENTITIES, TILE_WIDTH, TILE_HEIGHT, 
+                map.getTileWorldWidth(), map.getTileWorldHeight(), SPATIAL_HASH_TILES_PER_CELL);
+        this.touchCandidates = new int[MAX_ENTITIES];
+        indexMapObjects();
+        
+        this.sweptCollision = new SweptCollision();
+        this.continuousBulletCollision = config.getConfig().getBool(true, "sv_continuous_bullet_collision");
+        this.lagCompensation = new LagCompensation(MAX_PLAYERS, config.getConfig().getInt(500, "sv_max_lag_compensation"));
+        
         this.eventRegistration = new EventRegistration(this.dispatcher);
         
         this.dispatcher.addEventListener(PlayerKilledEvent.class, new PlayerKilledListener() {
@@ -502,6 +553,58 @@ public class Game implements GameInfo, Debugable, Updatable {
         return config;
     }
     
+    /**
+     * @return true if bullets are cast along their whole path, false if they
+     * check for collisions at every pixel they travel
+     */
+    public boolean isContinuousBulletCollision() {
+        return continuousBulletCollision;
+    }
+    
+    /**
+     * @param continuousBulletCollision the continuousBulletCollision to set
+     */
+    public void setContinuousBulletCollision(boolean continuousBulletCollision) {
+        this.continuousBulletCollision = continuousBulletCollision;
+    }
+    
+    /**
+     * @return the lag compensation
+     */
+    public LagCompensation getLagCompensation() {
+        return lagCompensation;
+    }
+    
+    /**
+     * @param shooter
+     * @return the amount of time, in msec, the shots of the supplied shooter are rewound by
+     */
+    public int getLagCompensationTime(Entity shooter) {
+        if(shooter != null && shooter.getType().isPlayer()) {
+            return this.lagCompensation.getRewindTime(shooter.getId());
+        }
+        return 0;
+    }
+    
+    /**
+     * Rewinds the other players to what the shooter saw, until {@link #endLagCompensation()} is invoked.  While
+     * rewound, the player touch checks use the rewound positions.
+     * 
+     * @param shooter
+     * @param rewindTime the amount of time to rewind by, in msec
+     * @return true if the players were rewound
+     */
+    public boolean beginLagCompensation(Entity shooter, int rewindTime) {
+        return this.lagCompensation.rewind(rewindTime, this.playerEntities, shooter);
+    }
+    
+    /**
+     * Puts the rewound players back
+     */
+    public void endLagCompensation() {
+        this.lagCompensation.restore();
+    }
+    
     /* (non-Javadoc)
      * @see seventh.game.GameInfo#getRandom()
      */
@@ -814,17 +917,26 @@ public class Game implements GameInfo, Debugable, Updatable {
      */
     @Override
     public void update(TimeStep timeStep) {        
+        this.netUpdatesPrepared = false;
+        this.netUpdatesMeasured = false;
+        this.gameClock = timeStep.getGameClock();
+        
         for(int i = 0; i < entities.length; i++) {
             Entity ent = entities[i];            
             if(ent!=null) {
                 if(ent.isAlive()) {
                     deadFrames[i] = 0;
                     ent.update(timeStep);
+                    
+                    if(entities[i] == ent) {
+                        entityIndex.update(i, ent.getBroadphaseBounds());
+                    }
                 }
                 else {
                     deadFrames[i]++;
                     if(deadFrames[i] > 1) {
                         entities[i] = null;
+                        entityIndex.remove(i);
                     }
                 }
             }    
@@ -833,6 +945,8 @@ public class Game implements GameInfo, Debugable, Updatable {
             }
         }            
         
+        this.lagCompensation.record(this.gameClock, this.playerEntities);
+        
         this.aiSystem.update(timeStep);
         this.gameTimers.update(timeStep);
         this.gameTriggers.update(timeStep);
@@ -1156,6 +1270,8 @@ public class Game implements GameInfo, Debugable, Updatable {
             this.deadFrames[i] = 0;
         }
         
+        this.entityIndex.clear();
+        
         for(int i = 0; i < this.playerEntities.length;i++) {
             this.playerEntities[i] = null;
         }
@@ -1265,6 +1381,38 @@ public class Game implements GameInfo, Debugable, Updatable {
         
         if(id >= 0 && id < MAX_ENTITIES) {            
             entities[id] = ent;
+            entityIndex.add(id, ent.getBroadphaseBounds());
+        }
+    }
+    
+    /**
+     * Updates the broadphase index for the supplied {@link Entity}; this should be invoked
+     * if an {@link Entity} is moved outside of its own update.  
+     * 
+     * @param ent
+     */
+    public void updateSpatialIndex(Entity ent) {
+        int id = ent.getId();
+        if(id >= 0 && id < MAX_ENTITIES && entities[id] == ent) {
+            entityIndex.update(id, ent.getBroadphaseBounds());
+        }
+    }
+    
+    /**
+     * Builds the broadphase index for the {@link MapObject}s, these
+     * do not move so this is only done once, when the game is created
+     * with the map and its loaded objects
+     */
+    private void indexMapObjects() {
+        List<MapObject> mapObjects = getMapObjects();
+        int size = mapObjects != null ? mapObjects.size() : 0;
+        
+        this.mapObjectIndex = new SpatialHash(size, TILE_WIDTH, TILE_HEIGHT, 
+                map.getTileWorldWidth(), map.getTileWorldHeight(), SPATIAL_HASH_TILES_PER_CELL);
+        this.mapObjectCandidates = new int[size];
+        
+        for(int i = 0; i < size; i++) {
+            this.mapObjectIndex.add(i, mapObjects.get(i).getBounds());
         }
     }
     
@@ -1443,7 +1591,22 @@ public class Game implements GameInfo, Debugable, Updatable {
         if(player != null) {            
             if(player.isAlive()) {
                 PlayerEntity entity = player.getEntity();                
-                entity.handleUserCommand(msg.keys, msg.orientation);                                
+                
+                /* replay any inputs that were lost along the way, oldest
+                 * first; duplicate and out of order inputs are ignored
+                 */
+                int numberOfNewInputs = msg.getNumberOfNewInputs(entity.getLastInputSequence());
+                if(numberOfNewInputs < 1) {
+                    return;
+                }
+                
+                for(int i = numberOfNewInputs - 2; i >= 0; i--) {
+                    entity.handleUserCommand(msg.previousKeys[i], msg.previousOrientations[i]);
+                }
+                
+                entity.handleUserCommand(msg.keys, msg.orientation);
+                entity.setLastInputSequence(msg.sequence);
+                this.lagCompensation.setRenderTime(entity.getId(), this.gameClock, msg.renderTime);                                
             }
             else {                
                 player.handleInput(this, msg.keys);
@@ -1930,6 +2093,68 @@ public class Game implements GameInfo, Debugable, Updatable {
     }
     
     
+    /**
+     * @param id a candidate id from the broadphase
+     * @return the {@link PlayerEntity} if the id is an active player, otherwise null
+     */
+    private PlayerEntity getPlayerEntityCandidate(int id) {
+        if(id < this.playerEntities.length) {
+            PlayerEntity player = this.playerEntities[id];
+            if(player != null && player == this.entities[id]) {
+                return player;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Queries the broadphase for the ids of the players that may touch the region.  While the players are
+     * rewound (see {@link #beginLagCompensation(Entity, int)}) the broadphase still has them where they 
+     * currently are, so the players are checked directly instead.
+     * 
+     * @param region
+     * @param candidates the candidate ids, which may also include entities that aren't players
+     * @return the number of candidates
+     */
+    private int queryPlayerCandidates(Rectangle region, int[] candidates) {
+        if(this.lagCompensation.isRewound()) {
+            int numberOfCandidates = 0;
+            for(int id = 0; id < this.playerEntities.length; id++) {
+                PlayerEntity player = getPlayerEntityCandidate(id);
+                if(player != null && region.intersects(player.getBroadphaseBounds())) {
+                    candidates[numberOfCandidates++] = id;
+                }
+            }
+            return numberOfCandidates;
+        }
+        
+        return this.entityIndex.query(region, candidates);
+    }
+    
+    /**
+     * @param id a candidate id from the broadphase
+     * @return the {@link Vehicle} if the id is a registered vehicle, otherwise null
+     */
+    private Vehicle getVehicleCandidate(int id) {
+        Entity ent = this.entities[id];
+        if(ent != null && ent.getType().isVehicle() && this.vehicles.contains(ent)) {
+            return (Vehicle)ent;
+        }
+        return null;
+    }
+    
+    /**
+     * @param id a candidate id from the broadphase
+     * @return the {@link Door} if the id is a registered door, otherwise null
+     */
+    private Door getDoorCandidate(int id) {
+        Entity ent = this.entities[id];
+        if(ent != null && ent.getType().isDoor() && this.doors.contains(ent)) {
+            return (Door)ent;
+        }
+        return null;
+    }
+    
     /**
      * @param vehicle
      * @return true if the supplied {@link Vehicle} touches a {@link PlayerEntity}
@@ -1938,8 +2163,10 @@ public class Game implements GameInfo, Debugable, Updatable {
     public boolean doesVehicleTouchPlayers(Vehicle vehicle) {
         if(vehicle.hasOperator()) {
             PlayerEntity operator = vehicle.getOperator();
-            for(int i = 0; i < this.playerEntities.length; i++) {
-                Entity other = this.playerEntities[i];
+            int[] candidates = this.touchCandidates;
+            int numberOfCandidates = this.entityIndex.query(vehicle.getBroadphaseBounds(), candidates);
+            for(int j = 0; j < numberOfCandidates; j++) {
+                Entity other = getPlayerEntityCandidate(candidates[j]);
                 if(other != null) {
                     if(other != operator && vehicle.isTouching(other)) {
                         if(vehicle.onTouch != null) {
@@ -1961,8 +2188,11 @@ public class Game implements GameInfo, Debugable, Updatable {
     
     @Override
     public boolean doesTouchOthers(Entity ent, boolean invokeTouch) {
-        for(int i = 0; i < this.vehicles.size(); i++) {
-            Entity other = this.vehicles.get(i);
+        int[] candidates = this.touchCandidates;
+        int numberOfCandidates = this.entityIndex.query(ent.getBroadphaseBounds(), candidates);
+        
+        for(int i = 0; i < numberOfCandidates; i++) {
+            Entity other = getVehicleCandidate(candidates[i]);
             if(other != null) {
                 if(other != ent && other.isTouching(ent)) {
                     if(!invokeTouch) {
@@ -1976,8 +2206,8 @@ public class Game implements GameInfo, Debugable, Updatable {
             }
         }
         
-        for(int i = 0; i < this.doors.size(); i++) {
-            Entity other = this.doors.get(i);
+        for(int i = 0; i < numberOfCandidates; i++) {
+            Entity other = getDoorCandidate(candidates[i]);
             if(other != null) {
                 if(other != ent && other.isTouching(ent)) {
                     if(!invokeTouch) {
@@ -1997,8 +2227,10 @@ public class Game implements GameInfo, Debugable, Updatable {
     
     @Override
     public boolean doesTouchEntity(Rectangle bounds) {
-        for(int i = 0; i < this.entities.length; i++) {
-            Entity other = this.entities[i];
+        int[] candidates = this.touchCandidates;
+        int numberOfCandidates = this.entityIndex.query(bounds, candidates);
+        for(int i = 0; i < numberOfCandidates; i++) {
+            Entity other = this.entities[candidates[i]];
             if(other != null) {
                 if(bounds.intersects(other.getBounds())) {
                     return true;
@@ -2014,8 +2246,10 @@ public class Game implements GameInfo, Debugable, Updatable {
      */
     @Override
     public boolean doesTouchPlayers(Entity ent) {
-        for(int i = 0; i < this.playerEntities.length; i++) {
-            Entity other = this.playerEntities[i];
+        int[] candidates = this.touchCandidates;
+        int numberOfCandidates = queryPlayerCandidates(ent.getBroadphaseBounds(), candidates);
+        for(int i = 0; i < numberOfCandidates; i++) {
+            Entity other = getPlayerEntityCandidate(candidates[i]);
             if(other != null) {
                 if(other != ent && /*other.bounds.intersects(ent.bounds)*/ ent.isTouching(other)) {
                     if(ent.onTouch != null) {
@@ -2035,8 +2269,11 @@ public class Game implements GameInfo, Debugable, Updatable {
     
     public boolean doesTouchMapObject(Entity ent, boolean invokeTouch) {
         List<MapObject> mapObjects = getMapObjects();
-        for(int i = 0; i < mapObjects.size(); i++) {
-            MapObject object = mapObjects.get(i);
+        
+        int[] candidates = this.mapObjectCandidates;
+        int numberOfCandidates = this.mapObjectIndex.query(ent.getBroadphaseBounds(), candidates);
+        for(int i = 0; i < numberOfCandidates; i++) {
+            MapObject object = mapObjects.get(candidates[i]);
             if(object.isCollidable()) {
                 if(object.isTouching(ent)) { 
                     if(!invokeTouch) {
@@ -2060,8 +2297,10 @@ public class Game implements GameInfo, Debugable, Updatable {
      */
     @Override
     public boolean doesTouchVehicles(Entity ent) {
-        for(int i = 0; i < this.vehicles.size(); i++) {
-            Entity other = this.vehicles.get(i);
+        int[] candidates = this.touchCandidates;
+        int numberOfCandidates = this.entityIndex.query(ent.getBroadphaseBounds(), candidates);
+        for(int i = 0; i < numberOfCandidates; i++) {
+            Entity other = getVehicleCandidate(candidates[i]);
             if(other != null) {
                 if(other != ent && other.isTouching(ent)) {
                     if(ent.onTouch != null) {
@@ -2077,8 +2316,10 @@ public class Game implements GameInfo, Debugable, Updatable {
 
     @Override
     public boolean doesTouchDoors(Entity ent) {
-        for(int i = 0; i < this.doors.size(); i++) {
-            Entity other = this.doors.get(i);
+        int[] candidates = this.touchCandidates;
+        int numberOfCandidates = this.entityIndex.query(ent.getBroadphaseBounds(), candidates);
+        for(int i = 0; i < numberOfCandidates; i++) {
+            Entity other = getDoorCandidate(candidates[i]);
             if(other != null) {
                 if(other != ent && other.isTouching(ent)) {
                     if(ent.onTouch != null) {
@@ -2092,14 +2333,73 @@ public class Game implements GameInfo, Debugable, Updatable {
         return false;
     }
     
+    /**
+     * Casts the supplied bullet from its current bounds to the new position, and gathers the steps
+     * along the way in which it may hit something.  Only the steps in the returned intervals need to
+     * run the precise collision checks, the rest of the path is known to be clear.
+     * 
+     * <p>
+     * The returned {@link SweptCollision} is shared, and is only valid until the next call.
+     * 
+     * @param bullet
+     * @param newX
+     * @param newY
+     * @param origin where the bullet was fired from
+     * @param maxDistance the max distance the bullet can travel from the origin
+     * @return the sweep results
+     */
+    public SweptCollision sweepBullet(Entity bullet, int newX, int newY, Vector2f origin, int maxDistance) {
+        SweptCollision sweep = this.sweptCollision;
+        sweep.begin(bullet.getBounds(), newX, newY);
+        sweep.addWorldBounds(map);
+        sweep.addCollidableTiles(map);
+        sweep.addMaxDistance(origin, maxDistance);
+        
+        Rectangle region = sweep.getSweptBounds();
+        
+        boolean isRewound = this.lagCompensation.isRewound();
+        
+        int[] candidates = this.touchCandidates;
+        int numberOfCandidates = this.entityIndex.query(region, candidates);
+        for(int i = 0; i < numberOfCandidates; i++) {
+            Entity other = this.entities[candidates[i]];
+            if(other != null && other != bullet) {
+                Type type = other.getType();
+                if((type.isPlayer() && !isRewound) || type.isVehicle() || type.isDoor()) {
+                    sweep.addTarget(other.getBroadphaseBounds());
+                }
+            }
+        }
+        
+        if(isRewound) {
+            numberOfCandidates = queryPlayerCandidates(region, candidates);
+            for(int i = 0; i < numberOfCandidates; i++) {
+                sweep.addTarget(this.playerEntities[candidates[i]].getBroadphaseBounds());
+            }
+        }
+        
+        List<MapObject> mapObjects = getMapObjects();
+        
+        candidates = this.mapObjectCandidates;
+        numberOfCandidates = this.mapObjectIndex.query(region, candidates);
+        for(int i = 0; i < numberOfCandidates; i++) {
+            sweep.addTarget(mapObjects.get(candidates[i]).getBounds());
+        }
+        
+        sweep.resolve();
+        return sweep;
+    }
+    
     /* (non-Javadoc)
      * @see seventh.game.GameInfo#doesTouchPlayers(seventh.game.Entity, seventh.math.Vector2f, seventh.math.Vector2f)
      */
     @Override
     public boolean doesTouchPlayers(Entity ent, Vector2f origin, Vector2f dir) {        
         if(ent.onTouch != null) {
-            for(int i = 0; i < this.playerEntities.length; i++) {
-                Entity other = this.playerEntities[i];
+            int[] candidates = this.touchCandidates;
+            int numberOfCandidates = queryPlayerCandidates(ent.getBroadphaseBounds(), candidates);
+            for(int i = 0; i < numberOfCandidates; i++) {
+                Entity other = getPlayerEntityCandidate(candidates[i]);
                 if(other != null) {
                     if(other != ent && other.canTakeDamage() && /*other.bounds.intersects(ent.bounds)*/ ent.isTouching(other)) {                                
                         if(isEntityReachable(other, origin, dir)) {
@@ -2227,7 +2527,10 @@ public class Game implements GameInfo, Debugable, Updatable {
      * @return just returns the networked game statistics
      */
     public NetGameStats getNetGameStats() {        
-        gameStats.playerStats = new NetPlayerStat[this.players.getNumberOfPlayers()];
+        int numberOfPlayers = this.players.getNumberOfPlayers();
+        if(gameStats.playerStats == null || gameStats.playerStats.length != numberOfPlayers) {
+            gameStats.playerStats = new NetPlayerStat[numberOfPlayers];
+        }
         Player[] players = this.players.getPlayers();
         
         int j = 0;
@@ -2247,7 +2550,10 @@ public class Game implements GameInfo, Debugable, Updatable {
      * @return returns the networked game (partial) statistics
      */
     public NetGamePartialStats getNetGamePartialStats() {
-        gamePartialStats.playerStats = new NetPlayerPartialStat[this.players.getNumberOfPlayers()];
+        int numberOfPlayers = this.players.getNumberOfPlayers();
+        if(gamePartialStats.playerStats == null || gamePartialStats.playerStats.length != numberOfPlayers) {
+            gamePartialStats.playerStats = new NetPlayerPartialStat[numberOfPlayers];
+        }
         Player[] players = this.players.getPlayers();
         
         int j = 0;
@@ -2272,12 +2578,13 @@ public class Game implements GameInfo, Debugable, Updatable {
      * in this update, we enable the positional information of the NetSound and by pass
      * the client's positional information.
      * 
-     * @param snds
-     * @param entities
+     * @param netUpdate
      */
-    private void adjustNetSoundsPosition(NetSound[] snds, NetEntity[] entities) {
+    private void adjustNetSoundsPosition(NetGameUpdate netUpdate) {
+        NetSound[] snds = netUpdate.sounds;
+        NetEntity[] entities = netUpdate.entities;
         if(snds!=null) {
-            for(int sndIndex = 0; sndIndex < snds.length; sndIndex++) {
+            for(int sndIndex = 0; sndIndex < netUpdate.numberOfSounds; sndIndex++) {
                 NetSound snd = snds[sndIndex];
                 if(snd != null) {
                     switch(snd.getSoundType().getSourceType()) {
@@ -2300,24 +2607,153 @@ public class Game implements GameInfo, Debugable, Updatable {
         }
     }
     
+    /**
+     * Builds the network state of each {@link Entity} for this frame.  Every {@link NetGameUpdate} shares these, so 
+     * once they are prepared {@link #getNetGameUpdateFor(int)} can be called for multiple players at the same time.
+     * This must be invoked after the game has been updated and before any of the {@link NetGameUpdate}s are built.
+     */
+    public void prepareNetGameUpdates() {
+        prepareNetGameUpdates(false);
+    }
+    
+    /**
+     * Builds the network state of each {@link Entity} for this frame, see {@link #prepareNetGameUpdates()}.
+     * 
+     * @param measure if the size of each {@link NetEntity} is measured as well, which is only needed 
+     * when the {@link NetGameUpdate}s are built with a budget
+     */
+    public void prepareNetGameUpdates(boolean measure) {
+        for(int i = 0; i < entities.length; i++) {
+            Entity ent = entities[i];
+            if(ent != null) {
+                netEntities[i] = ent.getNetEntity();
+                if(measure) {
+                    netEntityBits[i] = getNetEntityBits(netEntities[i]);
+                }
+                
+                if(i < MAX_PLAYERS && ent instanceof PlayerEntity && ent.isAlive()) {
+                    netPlayers[i] = ((PlayerEntity)ent).getNetPlayer();
+                    if(measure) {
+                        netPlayerBits[i] = getNetEntityBits(netPlayers[i]);
+                    }
+                }
+                else if(i < MAX_PLAYERS) {
+                    netPlayers[i] = null;
+                }
+            }
+            else {
+                netEntities[i] = null;
+                if(i < MAX_PLAYERS) {
+                    netPlayers[i] = null;
+                }
+            }
+        }
+        
+        this.netUpdatesPrepared = true;
+        this.netUpdatesMeasured = measure;
+    }
+    
+    /**
+     * @param netEntity
+     * @return the number of bits the entity takes in a {@link NetGameUpdate}, if it is sent in full
+     */
+    private int getNetEntityBits(NetEntity netEntity) {
+        if(netEntity == null) {
+            return 0;
+        }
+        
+        netEntityScratch.clear();
+        netEntity.write(netEntityScratch);
+        return netEntityScratch.bitPosition() + NetSnapshots.OP_BITS;
+    }
+    
+    /**
+     * Converts the list of {@link Entity}s into the prepared {@link NetEntity}s
+     * 
+     * @param entities
+     * @param results
+     */
+    private void toNetEntities(List<Entity> entities, NetEntity[] results) {
+        int size = entities.size();
+        for(int i = 0; i < size; i++) {
+            Entity ent = entities.get(i);
+            if(ent != null) {
+                int id = ent.getId();
+                results[id] = netEntities[id];
+            }
+        }
+    }
+    
     /**
+     * @param playerId
+     * @return the {@link PlayerView} used for calculating what the player can see and hear
+     */
+    private PlayerView getPlayerView(int playerId) {
+        PlayerView view = this.playerViews[playerId];
+        if(view == null) {
+            view = new PlayerView(this.map);
+            this.playerViews[playerId] = view;
+        }
+        
+        view.clear();
+        return view;
+    }
+    
+    /**
+     * Builds the {@link NetGameUpdate} for the supplied player.  If the {@link #prepareNetGameUpdates()} was 
+     * invoked for this frame, this is safe to be called for different players at the same time.
+     * 
      * @param playerId
      * @return returns only the entities within the viewport of the supplied player
      */    
     public NetGameUpdate getNetGameUpdateFor(int playerId) {
+        return getNetGameUpdateFor(playerId, new NetGameUpdate());
+    }
+    
+    /**
+     * Builds the {@link NetGameUpdate} for the supplied player into the supplied update, which allows 
+     * the updates to be reused.  If the {@link #prepareNetGameUpdates()} was invoked for this frame, this 
+     * is safe to be called for different players (with different updates) at the same time.
+     * 
+     * @param playerId
+     * @param netUpdate the update to fill in, this is cleared first
+     * @return the supplied update, containing only the entities within the viewport of the supplied player; 
+     * or null if there is no such player
+     */    
+    public NetGameUpdate getNetGameUpdateFor(int playerId, NetGameUpdate netUpdate) {
+        return getNetGameUpdateFor(playerId, netUpdate, 0);
+    }
+    
+    /**
+     * Builds the {@link NetGameUpdate} for the supplied player into the supplied update, sending no more 
+     * than the budget allows.  When the entities in view don't all fit, the ones with the highest
+     * {@link PriorityAccumulator} priority are sent, and the rest wait for a later update.  The players 
+     * own entity, and the entities that are not persistent, are always sent.  If the 
+     * {@link #prepareNetGameUpdates(boolean)} was invoked for this frame, measuring the entities when there is a 
+     * budget, this is safe to be called for different players (with different updates) at the same time.
+     * 
+     * @param playerId
+     * @param netUpdate the update to fill in, this is cleared first
+     * @param budget the max number of bytes of entities in the update (this is the size of the entities 
+     * if they are sent in full, delta compression only makes them smaller); if 0 or less there is no limit
+     * @return the supplied update, containing only the entities within the viewport of the supplied player; 
+     * or null if there is no such player
+     */    
+    public NetGameUpdate getNetGameUpdateFor(int playerId, NetGameUpdate netUpdate, int budget) {
         Player player = this.players.getPlayer(playerId);
         if(player == null) {
             return null;
         }
+        
+        if(!this.netUpdatesPrepared || (budget > 0 && !this.netUpdatesMeasured)) {
+            prepareNetGameUpdates(budget > 0);
+        }
                                 
-        // TODO: Figure out a way to cache the NetGameUpdate object
-        NetGameUpdate netUpdate =  new NetGameUpdate();//
-                    //this.playerUpdates[playerId];                
         netUpdate.clear();                
         
         if (player.isPureSpectator()) {
-            NetEntity.toNetEntities(entities, netUpdate.entities);
-            netUpdate.setNetSounds(NetSound.toNetSounds(soundEvents));
+            System.arraycopy(netEntities, 0, netUpdate.entities, 0, netEntities.length);
+            netUpdate.addNetSounds(soundEvents);
                         
             /*
              * If the current player you are watching is dead,
@@ -2335,25 +2771,24 @@ public class Game implements GameInfo, Debugable, Updatable {
             Team team = player.getTeam();
             List<Player> players = team.getPlayers();
             
-            aEntitiesInView.clear();
-            aSoundsHeard.clear();
-            
+            PlayerView view = getPlayerView(playerId);
+            List<Entity> entitiesInView = view.getEntitiesInView();
             
             for(int i = 0; i < players.size(); i++) {
                 Player p = players.get(i);
                 if(p.isAlive()) {
                     PlayerEntity playerEntity = p.getEntity();
                     
-                    aSoundsHeard = playerEntity.getHeardSounds(soundEvents, aSoundsHeard);            
-                    aEntitiesInView = playerEntity.getEntitiesInView(this, aEntitiesInView);    
-                    aEntitiesInView.add(playerEntity);
+                    playerEntity.getHeardSounds(soundEvents, view);            
+                    playerEntity.getEntitiesInView(this, view);    
+                    entitiesInView.add(playerEntity);
                 }
             }
             
-            netUpdate.setNetSounds(NetSound.consolidateToNetSounds(aSoundsHeard));             
-            NetEntity.toNetEntities(aEntitiesInView, netUpdate.entities);
+            netUpdate.consolidateNetSounds(view.getSoundsHeard());
+            toNetEntities(entitiesInView, netUpdate.entities);
             
-            adjustNetSoundsPosition(netUpdate.sounds, netUpdate.entities);
+            adjustNetSoundsPosition(netUpdate);
         }
         else {
             PlayerEntity playerEntity = player.isSpectating() ? player.getSpectatingEntity() : player.getEntity();
@@ -2362,24 +2797,34 @@ public class Game implements GameInfo, Debugable, Updatable {
                 /*
                  * Calculate all the sounds this player can hear
                  */            
-                aSoundsHeard.clear();
-                aSoundsHeard = playerEntity.getHeardSounds(soundEvents, aSoundsHeard);            
-                netUpdate.setNetSounds(NetSound.toNetSounds(aSoundsHeard)); 
+                PlayerView view = getPlayerView(playerId);
+                netUpdate.addNetSounds(playerEntity.getHeardSounds(soundEvents, view));
                                         
                 
                 /*
                  * Calculate all the visuals this player can see
                  */
-                aEntitiesInView.clear();
-                aEntitiesInView = playerEntity.getEntitiesInView(this, aEntitiesInView);
-                NetEntity.toNetEntities(aEntitiesInView, netUpdate.entities);
+                List<Entity> entitiesInView = playerEntity.getEntitiesInView(this, view);
                 
                 /* now add the players full entity state */
+                int budgetBits = 0;
+                if(budget > 0) {
+                    budgetBits = Math.max(1, budget * 8 - MAX_ENTITIES); // the presence bits
+                }
+                
                 if(playerEntity.isAlive()) {
-                    netUpdate.entities[playerEntity.getId()] = playerEntity.getNetPlayer();
+                    netUpdate.entities[playerEntity.getId()] = netPlayers[playerEntity.getId()];
+                    if(budgetBits > 0) {
+                        budgetBits = Math.max(1, budgetBits - netPlayerBits[playerEntity.getId()]);
+                    }
                 }
                 
-                adjustNetSoundsPosition(netUpdate.sounds, netUpdate.entities);
+                /* send the most important of what is left, that fits */
+                PriorityAccumulator priorities = view.getPriorities();
+                priorities.accumulate(playerEntity, entitiesInView);
+                priorities.select(netEntities, netEntityBits, budgetBits, netUpdate.entities);
+                
+                adjustNetSoundsPosition(netUpdate);
             }
         }
         
@@ -2390,6 +2835,7 @@ public class Game implements GameInfo, Debugable, Updatable {
         }
         
         netUpdate.time = (int)time;        
+        netUpdate.serverTime = (int)gameClock;
         netUpdate.spectatingPlayerId = player.getSpectatingPlayerId();
         return netUpdate;
     }
@@ -3,8 +3,10 @@
  */
 package seventh.game;
 
+import seventh.ai.basic.Zones;
 import seventh.game.net.NetMap;
 import seventh.map.Map;
+import seventh.map.MapGraph;
 
 /**
  * The current game map information
@@ -17,6 +19,9 @@ public class GameMap {
     private NetMap netMap;
     private Map map;
     
+    private MapGraph<Void> graph;
+    private Zones zones;
+    
     /**
      * @param path
      * @param name
@@ -45,6 +50,32 @@ public class GameMap {
         return map;
     }
     
+    /**
+     * Sets the path finding graph and AI {@link Zones} that were built ahead of time
+     * for this map
+     * 
+     * @param graph
+     * @param zones
+     */
+    public void setPreloaded(MapGraph<Void> graph, Zones zones) {
+        this.graph = graph;
+        this.zones = zones;
+    }
+    
+    /**
+     * @return the path finding graph built ahead of time, or null if it wasn't
+     */
+    public MapGraph<Void> getGraph() {
+        return graph;
+    }
+    
+    /**
+     * @return the AI {@link Zones} built ahead of time, or null if they weren't
+     */
+    public Zones getZones() {
+        return zones;
+    }
+    
     /**
      * @return the netMap
      */
@@ -0,0 +1,274 @@
+/*
+ * see license.txt
+ */
+package seventh.game;
+
+import java.util.Arrays;
+
+import seventh.game.entities.Entity;
+import seventh.math.Rectangle;
+import seventh.math.Vector2f;
+import seventh.network.messages.NetField;
+
+/**
+ * Server side lag compensation.  A remote player sees the other players where they were when the last game update
+ * it received was sent, so by the time its shots reach the server, its targets have moved on.  This keeps a short
+ * history of where each entity was, keyed by the game clock, so that the entities can be rewound to what the shooter
+ * actually saw while its shots are checked, and then put back.
+ *
+ * <p>
+ * The history is kept in flat arrays, one frame of every entity id per game update, in a ring of
+ * {@link #HISTORY_SIZE} frames.  The clients echo back the (truncated, see {@link NetField#SERVER_TIME}) game clock
+ * of the update they are rendering, from which the amount of time to rewind their shots is worked out.  This is
+ * capped by a max rewind time, so that a client can't ask to have its shots checked against the distant past.
+ *
+ * @author Tony
+ *
+ */
+public class LagCompensation {
+
+    /**
+     * The number of frames kept, at the default server frame rate this is over a second
+     */
+    public static final int HISTORY_SIZE = 64;
+
+    private final int capacity;
+    private final int maxRewindTime;
+
+    private final long[] frameTimes;
+    private final Entity[] frameEntities;
+    private final float[] posX, posY;
+    private final int[] boundsX, boundsY, boundsWidth, boundsHeight;
+    private int newestFrame;
+    private int numberOfFrames;
+
+    private final int[] rewindTimes;
+
+    /* the current state of the entities that are rewound, so they can be put back */
+    private final Entity[] rewoundEntities;
+    private final float[] savedPosX, savedPosY;
+    private final int[] savedBounds;
+    private int numberOfRewound;
+    private boolean isRewound;
+
+    /**
+     * @param capacity the maximum number of entities this keeps the history of (ids range from 0 to capacity-1)
+     * @param maxRewindTime the max amount of time, in msec, the entities can be rewound by (0 disables the rewinding)
+     */
+    public LagCompensation(int capacity, int maxRewindTime) {
+        this.capacity = capacity;
+        this.maxRewindTime = Math.max(0, Math.min(maxRewindTime, NetField.SERVER_TIME.getMax()));
+
+        int size = HISTORY_SIZE * capacity;
+        this.frameTimes = new long[HISTORY_SIZE];
+        this.frameEntities = new Entity[size];
+        this.posX = new float[size];
+        this.posY = new float[size];
+        this.boundsX = new int[size];
+        this.boundsY = new int[size];
+        this.boundsWidth = new int[size];
+        this.boundsHeight = new int[size];
+
+        this.rewindTimes = new int[capacity];
+
+        this.rewoundEntities = new Entity[capacity];
+        this.savedPosX = new float[capacity];
+        this.savedPosY = new float[capacity];
+        this.savedBounds = new int[capacity * 4];
+
+        this.newestFrame = -1;
+    }
+
+    /**
+     * @return the max amount of time, in msec, the entities can be rewound by
+     */
+    public int getMaxRewindTime() {
+        return maxRewindTime;
+    }
+
+    /**
+     * @return the game clock of the last recorded frame, or 0 if nothing has been recorded
+     */
+    public long getNewestTime() {
+        return this.numberOfFrames > 0 ? this.frameTimes[this.newestFrame] : 0;
+    }
+
+    /**
+     * @return true if the entities are currently rewound
+     */
+    public boolean isRewound() {
+        return isRewound;
+    }
+
+    /**
+     * Forgets all of the history, such as when a new round starts
+     */
+    public void clear() {
+        if(this.isRewound) {
+            restore();
+        }
+
+        Arrays.fill(this.frameEntities, null);
+        Arrays.fill(this.rewindTimes, 0);
+        this.newestFrame = -1;
+        this.numberOfFrames = 0;
+    }
+
+    /**
+     * Records where the entities are at this point in time.  This is invoked once per game update, after the
+     * entities have moved.
+     *
+     * @param gameClock the current game clock
+     * @param entities the entities, indexed by their id (null and dead entities are skipped)
+     */
+    public void record(long gameClock, Entity[] entities) {
+        this.newestFrame = (this.newestFrame + 1) % HISTORY_SIZE;
+        if(this.numberOfFrames < HISTORY_SIZE) {
+            this.numberOfFrames++;
+        }
+
+        this.frameTimes[this.newestFrame] = gameClock;
+
+        int offset = this.newestFrame * this.capacity;
+        int size = Math.min(entities.length, this.capacity);
+        for(int id = 0; id < size; id++) {
+            Entity ent = entities[id];
+            int index = offset + id;
+            if(ent != null && ent.isAlive()) {
+                Vector2f pos = ent.getPos();
+                Rectangle bounds = ent.getBounds();
+
+                this.frameEntities[index] = ent;
+                this.posX[index] = pos.x;
+                this.posY[index] = pos.y;
+                this.boundsX[index] = bounds.x;
+                this.boundsY[index] = bounds.y;
+                this.boundsWidth[index] = bounds.width;
+                this.boundsHeight[index] = bounds.height;
+            }
+            else {
+                this.frameEntities[index] = null;
+            }
+        }
+
+        for(int id = size; id < this.capacity; id++) {
+            this.frameEntities[offset + id] = null;
+        }
+    }
+
+    /**
+     * Works out how far back the supplied client is seeing, from the game clock of the update it is rendering
+     *
+     * @param id the id of the clients entity
+     * @param gameClock the current game clock
+     * @param renderTime the {@link NetField#SERVER_TIME} of the game update the client is rendering
+     */
+    public void setRenderTime(int id, long gameClock, int renderTime) {
+        if(id >= 0 && id < this.capacity) {
+            int rewindTime = ((int)gameClock - renderTime) & NetField.SERVER_TIME.getMax();
+            this.rewindTimes[id] = Math.min(rewindTime, this.maxRewindTime);
+        }
+    }
+
+    /**
+     * @param id the id of the clients entity
+     * @return the amount of time, in msec, the shots of the supplied client are rewound by
+     */
+    public int getRewindTime(int id) {
+        if(id >= 0 && id < this.capacity) {
+            return this.rewindTimes[id];
+        }
+        return 0;
+    }
+
+    /**
+     * Moves the entities back to where they were the supplied amount of time ago, this must be followed by
+     * a {@link #restore()} once the checks are done.  Only entities that are still the same entities they were
+     * back then are moved; and the entities are placed in between the two recorded frames around that time.
+     *
+     * @param rewindTime the amount of time to rewind, in msec
+     * @param entities the entities, indexed by their id
+     * @param ignore an entity to leave where it is (the shooter), may be null
+     * @return true if the entities were rewound, false if there was nothing to rewind
+     */
+    public boolean rewind(int rewindTime, Entity[] entities, Entity ignore) {
+        if(this.isRewound || rewindTime <= 0 || this.maxRewindTime <= 0 || this.numberOfFrames < 2) {
+            return false;
+        }
+
+        long time = this.frameTimes[this.newestFrame] - Math.min(rewindTime, this.maxRewindTime);
+
+        /* find the frame at or just before the time, and the frame after it */
+        int after = this.newestFrame;
+        int before = after;
+        for(int i = 1; i < this.numberOfFrames; i++) {
+            before = (after - 1 + HISTORY_SIZE) % HISTORY_SIZE;
+            if(this.frameTimes[before] <= time) {
+                break;
+            }
+            after = before;
+        }
+
+        float alpha = 0f;
+        long beforeTime = this.frameTimes[before];
+        long afterTime = this.frameTimes[after];
+        if(time > beforeTime && afterTime > beforeTime) {
+            alpha = (float)(time - beforeTime) / (float)(afterTime - beforeTime);
+        }
+
+        int beforeOffset = before * this.capacity;
+        int afterOffset = after * this.capacity;
+
+        this.numberOfRewound = 0;
+        int size = Math.min(entities.length, this.capacity);
+        for(int id = 0; id < size; id++) {
+            Entity ent = entities[id];
+            if(ent == null || ent == ignore || !ent.isAlive() || this.frameEntities[beforeOffset + id] != ent) {
+                continue;
+            }
+
+            /* if it wasn't around in the later frame, just use the earlier one */
+            int from = beforeOffset + id;
+            int to = this.frameEntities[afterOffset + id] == ent ? afterOffset + id : from;
+
+            Vector2f pos = ent.getPos();
+            Rectangle bounds = ent.getBounds();
+
+            int n = this.numberOfRewound++;
+            this.rewoundEntities[n] = ent;
+            this.savedPosX[n] = pos.x;
+            this.savedPosY[n] = pos.y;
+            this.savedBounds[n * 4 + 0] = bounds.x;
+            this.savedBounds[n * 4 + 1] = bounds.y;
+            this.savedBounds[n * 4 + 2] = bounds.width;
+            this.savedBounds[n * 4 + 3] = bounds.height;
+
+            pos.x = this.posX[from] + (this.posX[to] - this.posX[from]) * alpha;
+            pos.y = this.posY[from] + (this.posY[to] - this.posY[from]) * alpha;
+            bounds.x = Math.round(this.boundsX[from] + (this.boundsX[to] - this.boundsX[from]) * alpha);
+            bounds.y = Math.round(this.boundsY[from] + (this.boundsY[to] - this.boundsY[from]) * alpha);
+            bounds.width = alpha < 0.5f ? this.boundsWidth[from] : this.boundsWidth[to];
+            bounds.height = alpha < 0.5f ? this.boundsHeight[from] : this.boundsHeight[to];
+        }
+
+        this.isRewound = true;
+        return true;
+    }
+
+    /**
+     * Puts the rewound entities back to where they currently are
+     */
+    public void restore() {
+        for(int n = 0; n < this.numberOfRewound; n++) {
+            Entity ent = this.rewoundEntities[n];
+            ent.getPos().set(this.savedPosX[n], this.savedPosY[n]);
+            ent.getBounds().set(this.savedBounds[n * 4 + 0], this.savedBounds[n * 4 + 1],
+                                this.savedBounds[n * 4 + 2], this.savedBounds[n * 4 + 3]);
+
+            this.rewoundEntities[n] = null;
+        }
+
+        this.numberOfRewound = 0;
+        this.isRewound = false;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * see license.txt
+ */
+package seventh.game;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import seventh.game.entities.Entity;
+import seventh.game.events.SoundEmittedEvent;
+import seventh.map.Map;
+import seventh.map.Tile;
+import seventh.map.TileVisibility;
+import seventh.math.Rectangle;
+import seventh.math.Vector2f;
+import seventh.shared.SeventhConstants;
+
+/**
+ * The scratch state used when calculating what a viewer can see and hear.  Each viewer gets its
+ * own {@link PlayerView}, so line of sight and the {@link seventh.game.net.NetGameUpdate}s can be calculated for
+ * multiple viewers at the same time, without them stepping on each others toes (which happens
+ * when the visibility is stored in the shared {@link Tile#getMask()}).
+ *
+ * @author Tony
+ *
+ */
+public class PlayerView {
+
+    /**
+     * The size of the visual bounds
+     */
+    public static final int VISUAL_BOUNDS_SIZE = 2000;
+
+    private List<Tile> tiles;
+    private TileVisibility visibility;
+
+    private Vector2f cache, tileCenter, enemyDir;
+    private Rectangle visualBounds, hearingBounds;
+
+    private List<Entity> entitiesInView;
+    private List<SoundEmittedEvent> soundsHeard;
+
+    private PriorityAccumulator priorities;
+
+    /**
+     * @param map
+     */
+    public PlayerView(Map map) {
+        this.tiles = new ArrayList<Tile>();
+        this.visibility = new TileVisibility(map);
+
+        this.cache = new Vector2f();
+        this.tileCenter = new Vector2f();
+        this.enemyDir = new Vector2f();
+
+        this.visualBounds = new Rectangle(VISUAL_BOUNDS_SIZE, VISUAL_BOUNDS_SIZE);
+        this.hearingBounds = new Rectangle(SeventhConstants.PLAYER_HEARING_RADIUS, SeventhConstants.PLAYER_HEARING_RADIUS);
+
+        this.entitiesInView = new ArrayList<Entity>();
+        this.soundsHeard = new ArrayList<SoundEmittedEvent>();
+        this.priorities = new PriorityAccumulator();
+    }
+
+    /**
+     * Clears out the entities and sounds from the last calculation
+     */
+    public void clear() {
+        this.entitiesInView.clear();
+        this.soundsHeard.clear();
+    }
+
+    /**
+     * @return the tiles that were considered in the last line of sight calculation
+     */
+    public List<Tile> getTiles() {
+        return tiles;
+    }
+
+    /**
+     * @return the visibility of the tiles
+     */
+    public TileVisibility getVisibility() {
+        return visibility;
+    }
+
+    /**
+     * @return a scratch vector
+     */
+    public Vector2f getCache() {
+        return cache;
+    }
+
+    /**
+     * @return a scratch vector for tile centers
+     */
+    public Vector2f getTileCenter() {
+        return tileCenter;
+    }
+
+    /**
+     * @return a scratch vector for the direction to an enemy
+     */
+    public Vector2f getEnemyDir() {
+        return enemyDir;
+    }
+
+    /**
+     * @return the visual bounds
+     */
+    public Rectangle getVisualBounds() {
+        return visualBounds;
+    }
+
+    /**
+     * @return the hearing bounds
+     */
+    public Rectangle getHearingBounds() {
+        return hearingBounds;
+    }
+
+    /**
+     * @return the entities in view
+     */
+    public List<Entity> getEntitiesInView() {
+        return entitiesInView;
+    }
+
+    /**
+     * @return the sounds heard
+     */
+    public List<SoundEmittedEvent> getSoundsHeard() {
+        return soundsHeard;
+    }
+
+    /**
+     * @return the priorities of the entities in view, these carry over from one update to the next
+     */
+    public PriorityAccumulator getPriorities() {
+        return priorities;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * see license.txt
+ */
+package seventh.game;
+
+import java.util.Arrays;
+import java.util.List;
+
+import seventh.game.entities.Entity;
+import seventh.game.entities.PlayerEntity;
+import seventh.game.net.NetEntity;
+import seventh.game.weapons.Bullet;
+import seventh.math.Vector2f;
+import seventh.shared.SeventhConstants;
+
+/**
+ * Decides which of the entities a viewer can see are sent in its {@link seventh.game.net.NetGameUpdate}, when
+ * they don't all fit in the update.
+ *
+ * <p>
+ * Every update, each entity in view gains priority: more the closer it is to the viewer, and more again if it is
+ * relevant to the viewer (a teammate, or an enemy or bullet heading at the viewer).  The highest priority entities
+ * are sent until the budget for the update runs out, and the entities that are sent go back to no priority.  The
+ * ones that are left out keep what they have gained, so the longer an entity goes without being sent, the more
+ * likely it is to be sent next time.  An entity that leaves the view loses its priority.
+ *
+ * <p>
+ * Only the persistent entities (the ones below {@link SeventhConstants#MAX_PERSISTANT_ENTITIES}) can be left out,
+ * as the client keeps those until told they are dead.  The client removes any other entity missing from an update,
+ * so those (bullets, grenades, rockets and such) are always sent, and take their share of the budget first.
+ *
+ * @author Tony
+ *
+ */
+public class PriorityAccumulator {
+
+    /**
+     * The priority every entity in view gains each update
+     */
+    public static final float BASE_PRIORITY = 1.0f;
+
+    /**
+     * The priority an entity right next to the viewer gains each update, this falls off to nothing at the
+     * edge of the view
+     */
+    public static final float DISTANCE_PRIORITY = 2.0f;
+
+    /**
+     * The priority a teammate gains each update
+     */
+    public static final float TEAMMATE_PRIORITY = 1.0f;
+
+    /**
+     * The priority gained each update by an enemy aiming at the viewer while firing, or a bullet heading
+     * at the viewer
+     */
+    public static final float THREAT_PRIORITY = 4.0f;
+
+    /**
+     * How closely something must be pointed at the viewer to be aimed at it, the cosine of the angle
+     */
+    private static final float AIM_CONE = 0.9f;
+
+    private static final float MAX_DISTANCE = PlayerView.VISUAL_BOUNDS_SIZE;
+
+    private float[] priorities;
+    private int[] lastUpdate;
+    private int update;
+
+    /* the entities in view, sorted by priority: the priority bits in the high word, the id in the low word */
+    private long[] candidates;
+    private int numberOfCandidates;
+
+    /**
+     *
+     */
+    public PriorityAccumulator() {
+        this.priorities = new float[SeventhConstants.MAX_ENTITIES];
+        this.lastUpdate = new int[SeventhConstants.MAX_ENTITIES];
+        this.candidates = new long[SeventhConstants.MAX_ENTITIES];
+        this.update = 1;
+    }
+
+    /**
+     * @param id
+     * @return the priority the entity has built up
+     */
+    public float getPriority(int id) {
+        return (this.lastUpdate[id] == this.update) ? this.priorities[id] : 0f;
+    }
+
+    /**
+     * Adds the priority each entity in view gains for this update.  Entities that were not in view
+     * in the previous update start over.
+     *
+     * @param viewer the entity the update is for, while alive this is not a candidate as its full state
+     * is always sent
+     * @param entitiesInView
+     */
+    public void accumulate(PlayerEntity viewer, List<Entity> entitiesInView) {
+        int previousUpdate = this.update++;
+        this.numberOfCandidates = 0;
+
+        int size = entitiesInView.size();
+        for(int i = 0; i < size; i++) {
+            Entity ent = entitiesInView.get(i);
+            if(ent == null || (ent == viewer && viewer.isAlive())) {
+                continue;
+            }
+
+            int id = ent.getId();
+            if(this.lastUpdate[id] == this.update) {
+                continue; // already added
+            }
+
+            float priority = this.lastUpdate[id] == previousUpdate ? this.priorities[id] : 0f;
+            this.priorities[id] = priority + calculatePriority(viewer, ent);
+            this.lastUpdate[id] = this.update;
+            this.candidates[this.numberOfCandidates++] = id;
+        }
+    }
+
+    /**
+     * Picks the highest priority entities that fit in the budget, the picked entities priority is reset.  The
+     * entities that are not persistent are always picked.
+     *
+     * @param netEntities the network state of each entity, by id
+     * @param entityBits the (estimated) number of bits each entity takes in the update, by id; only read if
+     * there is a budget
+     * @param budgetBits the number of bits available, if 0 or less all of the entities are picked
+     * @param results the picked entities are stored in here, by id
+     * @return the number of bits of the picked entities, 0 if there is no budget
+     */
+    public int select(NetEntity[] netEntities, int[] entityBits, int budgetBits, NetEntity[] results) {
+
+        int usedBits = 0;
+        int numberOfPersistant = 0;
+        for(int i = 0; i < this.numberOfCandidates; i++) {
+            int id = (int)this.candidates[i];
+
+            /* the client would remove these if they were left out, so they are always sent */
+            if(id >= SeventhConstants.MAX_PERSISTANT_ENTITIES) {
+                NetEntity netEntity = netEntities[id];
+                if(netEntity != null) {
+                    if(budgetBits > 0) {
+                        usedBits += entityBits[id];
+                    }
+
+                    results[id] = netEntity;
+                    this.priorities[id] = 0f;
+                }
+                continue;
+            }
+
+            /* the priorities are never negative, so their bits sort in the same order as their value */
+            this.candidates[numberOfPersistant++] = ((long)Float.floatToIntBits(this.priorities[id]) << 32) | id;
+        }
+        Arrays.sort(this.candidates, 0, numberOfPersistant);
+
+        for(int i = numberOfPersistant - 1; i >= 0; i--) {
+            int id = (int)(this.candidates[i] & 0xFFFFFFFFL);
+            NetEntity netEntity = netEntities[id];
+            if(netEntity == null) {
+                continue;
+            }
+
+            if(budgetBits > 0) {
+                /* something smaller and less important may still fit */
+                int bits = entityBits[id];
+                if(usedBits + bits > budgetBits) {
+                    continue;
+                }
+
+                usedBits += bits;
+            }
+
+            results[id] = netEntity;
+            this.priorities[id] = 0f;
+        }
+
+        return usedBits;
+    }
+
+    /**
+     * @param viewer
+     * @param ent
+     * @return the priority the entity gains this update
+     */
+    private float calculatePriority(PlayerEntity viewer, Entity ent) {
+        Vector2f viewerPos = viewer.getCenterPos();
+        Vector2f entPos = ent.getCenterPos();
+
+        float distance = (float)Math.sqrt(Vector2f.Vector2fDistanceSq(viewerPos, entPos));
+        float priority = BASE_PRIORITY + DISTANCE_PRIORITY * Math.max(0f, 1f - distance / MAX_DISTANCE);
+
+        if(ent instanceof PlayerEntity) {
+            PlayerEntity other = (PlayerEntity)ent;
+            if(viewer.isOnTeamWith(other)) {
+                priority += TEAMMATE_PRIORITY;
+            }
+            else if(other.isFiring() && isAimingAt(entPos, other.getFacing(), viewerPos)) {
+                priority += THREAT_PRIORITY;
+            }
+        }
+        else if(ent instanceof Bullet) {
+            Bullet bullet = (Bullet)ent;
+            Entity owner = bullet.getOwner();
+            boolean isFriendly = (owner instanceof PlayerEntity) && viewer.isOnTeamWith((PlayerEntity)owner);
+            if(owner != viewer && !isFriendly && isAimingAt(entPos, bullet.getTargetVel(), viewerPos)) {
+                priority += THREAT_PRIORITY;
+            }
+        }
+
+        return priority;
+    }
+
+    /**
+     * @param pos
+     * @param dir
+     * @param targetPos
+     * @return true if the direction from the position points at the target
+     */
+    private static boolean isAimingAt(Vector2f pos, Vector2f dir, Vector2f targetPos) {
+        float dx = targetPos.x - pos.x;
+        float dy = targetPos.y - pos.y;
+        float dot = dir.x * dx + dir.y * dy;
+        if(dot <= 0) {
+            return false;
+        }
+
+        float lengthSq = (dx * dx + dy * dy) * (dir.x * dir.x + dir.y * dir.y);
+        return dot * dot >= AIM_CONE * AIM_CONE * lengthSq;
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * see license.txt
+ */
+package seventh.game;
+
+import seventh.math.Rectangle;
+
+/**
+ * A uniform grid broadphase used to quickly narrow down which objects are near a region of the
+ * game world.  Cells are aligned to the map tile grid (a cell covers <code>tilesPerCell</code> x
+ * <code>tilesPerCell</code> tiles).  Objects are referenced by a small integer id (such as the entity id),
+ * which lets the spans of each object be stored in flat arrays rather than on the object itself.
+ *
+ * <p>
+ * Queries return candidates only; callers are still required to do the precise collision test.
+ *
+ * @author Tony
+ *
+ */
+public class SpatialHash {
+
+    private static final int INITIAL_CELL_CAPACITY = 4;
+
+    private final int cellWidth, cellHeight;
+    private final int numberOfCellsX, numberOfCellsY;
+
+    private int[][] cells;
+    private int[] cellSizes;
+
+    private int[] minCellX, minCellY, maxCellX, maxCellY;
+    private boolean[] isIndexed;
+
+    private int[] queryStamps;
+    private int currentStamp;
+
+    /**
+     * @param capacity the maximum number of ids this can index (ids range from 0 to capacity-1)
+     * @param tileWidth the width of a map tile
+     * @param tileHeight the height of a map tile
+     * @param tileWorldWidth the number of tiles wide the map is
+     * @param tileWorldHeight the number of tiles high the map is
+     * @param tilesPerCell the number of tiles (in each direction) a cell covers
+     */
+    public SpatialHash(int capacity, int tileWidth, int tileHeight, int tileWorldWidth, int tileWorldHeight, int tilesPerCell) {
+        this.cellWidth = Math.max(1, tileWidth * tilesPerCell);
+        this.cellHeight = Math.max(1, tileHeight * tilesPerCell);
+
+        this.numberOfCellsX = Math.max(1, (tileWorldWidth + tilesPerCell - 1) / tilesPerCell);
+        this.numberOfCellsY = Math.max(1, (tileWorldHeight + tilesPerCell - 1) / tilesPerCell);
+
+        int numberOfCells = this.numberOfCellsX * this.numberOfCellsY;
+        this.cells = new int[numberOfCells][];
+        this.cellSizes = new int[numberOfCells];
+
+        this.minCellX = new int[capacity];
+        this.minCellY = new int[capacity];
+        this.maxCellX = new int[capacity];
+        this.maxCellY = new int[capacity];
+        this.isIndexed = new boolean[capacity];
+
+        this.queryStamps = new int[capacity];
+        this.currentStamp = 0;
+    }
+
+    /**
+     * @return the maximum number of ids this can index
+     */
+    public int capacity() {
+        return this.isIndexed.length;
+    }
+
+    /**
+     * @param id
+     * @return true if the supplied id is currently indexed
+     */
+    public boolean contains(int id) {
+        return id >= 0 && id < this.isIndexed.length && this.isIndexed[id];
+    }
+
+    private int toCellX(int x) {
+        int cx = x < 0 ? 0 : x / this.cellWidth;
+        return cx >= this.numberOfCellsX ? this.numberOfCellsX - 1 : cx;
+    }
+
+    private int toCellY(int y) {
+        int cy = y < 0 ? 0 : y / this.cellHeight;
+        return cy >= this.numberOfCellsY ? this.numberOfCellsY - 1 : cy;
+    }
+
+    /**
+     * Indexes (or re-indexes) the supplied id over the bounds
+     *
+     * @param id
+     * @param bounds
+     */
+    public void add(int id, Rectangle bounds) {
+        if(id < 0 || id >= this.isIndexed.length) {
+            return;
+        }
+
+        if(this.isIndexed[id]) {
+            update(id, bounds);
+            return;
+        }
+
+        int x0 = toCellX(bounds.x);
+        int y0 = toCellY(bounds.y);
+        int x1 = toCellX(bounds.x + bounds.width);
+        int y1 = toCellY(bounds.y + bounds.height);
+
+        insert(id, x0, y0, x1, y1);
+    }
+
+    /**
+     * Updates the cells the supplied id occupies.  If the object has not crossed
+     * a cell boundary, this is a no-op.
+     *
+     * @param id
+     * @param bounds
+     */
+    public void update(int id, Rectangle bounds) {
+        if(id < 0 || id >= this.isIndexed.length) {
+            return;
+        }
+
+        if(!this.isIndexed[id]) {
+            add(id, bounds);
+            return;
+        }
+
+        int x0 = toCellX(bounds.x);
+        int y0 = toCellY(bounds.y);
+        int x1 = toCellX(bounds.x + bounds.width);
+        int y1 = toCellY(bounds.y + bounds.height);
+
+        if(x0 == this.minCellX[id] && y0 == this.minCellY[id] &&
+           x1 == this.maxCellX[id] && y1 == this.maxCellY[id]) {
+            return;
+        }
+
+        remove(id);
+        insert(id, x0, y0, x1, y1);
+    }
+
+    /**
+     * Removes the id from the index
+     *
+     * @param id
+     */
+    public void remove(int id) {
+        if(id < 0 || id >= this.isIndexed.length || !this.isIndexed[id]) {
+            return;
+        }
+
+        for(int y = this.minCellY[id]; y <= this.maxCellY[id]; y++) {
+            for(int x = this.minCellX[id]; x <= this.maxCellX[id]; x++) {
+                int cellIndex = y * this.numberOfCellsX + x;
+                int[] cell = this.cells[cellIndex];
+                int size = this.cellSizes[cellIndex];
+                for(int i = 0; i < size; i++) {
+                    if(cell[i] == id) {
+                        cell[i] = cell[size - 1];
+                        this.cellSizes[cellIndex] = size - 1;
+                        break;
+                    }
+                }
+            }
+        }
+
+        this.isIndexed[id] = false;
+    }
+
+    /**
+     * Removes all ids from the index
+     */
+    public void clear() {
+        for(int i = 0; i < this.cellSizes.length; i++) {
+            this.cellSizes[i] = 0;
+        }
+
+        for(int i = 0; i < this.isIndexed.length; i++) {
+            this.isIndexed[i] = false;
+        }
+    }
+
+    private void insert(int id, int x0, int y0, int x1, int y1) {
+        for(int y = y0; y <= y1; y++) {
+            for(int x = x0; x <= x1; x++) {
+                int cellIndex = y * this.numberOfCellsX + x;
+                int[] cell = this.cells[cellIndex];
+                int size = this.cellSizes[cellIndex];
+                if(cell == null) {
+                    cell = new int[INITIAL_CELL_CAPACITY];
+                    this.cells[cellIndex] = cell;
+                }
+                else if(size >= cell.length) {
+                    int[] newCell = new int[cell.length * 2];
+                    System.arraycopy(cell, 0, newCell, 0, size);
+                    cell = newCell;
+                    this.cells[cellIndex] = cell;
+                }
+
+                cell[size] = id;
+                this.cellSizes[cellIndex] = size + 1;
+            }
+        }
+
+        this.minCellX[id] = x0;
+        this.minCellY[id] = y0;
+        this.maxCellX[id] = x1;
+        this.maxCellY[id] = y1;
+        this.isIndexed[id] = true;
+    }
+
+    /**
+     * Gathers all of the ids that occupy the cells which overlap the supplied region.  The
+     * results are in ascending id order, so that iteration order matches a linear scan
+     * over the ids.
+     *
+     * @param region the region to query
+     * @param results the buffer to store the candidate ids in, this must be at least {@link #capacity()} in size
+     * @return the number of ids stored in the results
+     */
+    public int query(Rectangle region, int[] results) {
+        return query(region.x, region.y, region.width, region.height, results);
+    }
+
+    /**
+     * Gathers all of the ids that occupy the cells which overlap the supplied region.  The
+     * results are in ascending id order, so that iteration order matches a linear scan
+     * over the ids.
+     *
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     * @param results the buffer to store the candidate ids in, this must be at least {@link #capacity()} in size
+     * @return the number of ids stored in the results
+     */
+    public int query(int x, int y, int width, int height, int[] results) {
+        int x0 = toCellX(x);
+        int y0 = toCellY(y);
+        int x1 = toCellX(x + width);
+        int y1 = toCellY(y + height);
+
+        int stamp = nextStamp();
+        int count = 0;
+
+        for(int cy = y0; cy <= y1; cy++) {
+            for(int cx = x0; cx <= x1; cx++) {
+                int cellIndex = cy * this.numberOfCellsX + cx;
+                int size = this.cellSizes[cellIndex];
+                if(size > 0) {
+                    int[] cell = this.cells[cellIndex];
+                    for(int i = 0; i < size; i++) {
+                        int id = cell[i];
+                        if(this.queryStamps[id] != stamp) {
+                            this.queryStamps[id] = stamp;
+                            count = insertSorted(results, count, id);
+                        }
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private int nextStamp() {
+        this.currentStamp++;
+        if(this.currentStamp == 0) {
+            for(int i = 0; i < this.queryStamps.length; i++) {
+                this.queryStamps[i] = 0;
+            }
+            this.currentStamp = 1;
+        }
+        return this.currentStamp;
+    }
+
+    private static int insertSorted(int[] results, int count, int id) {
+        int i = count - 1;
+        while(i >= 0 && results[i] > id) {
+            results[i + 1] = results[i];
+            i--;
+        }
+        results[i + 1] = id;
+        return count + 1;
+    }
+}
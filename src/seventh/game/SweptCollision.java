@@ -0,0 +1,399 @@
+/*
+ * see license.txt
+ */
+package seventh.game;
+
+import seventh.map.Map;
+import seventh.math.Rectangle;
+import seventh.math.Vector2f;
+
+/**
+ * Casts a moving rectangle along its whole path for a frame, and gathers the steps of that path
+ * in which the rectangle could possibly collide with something (a collidable tile, the edge of the world,
+ * an entity, etc.).  A stepping entity (such as a {@link seventh.game.weapons.Bullet}) can then skip
+ * straight over the steps in which nothing can happen and only run the precise collision checks in
+ * the reported intervals.
+ *
+ * <p>
+ * The path matches the one a stepping entity takes: each step moves one pixel along the X axis and
+ * one pixel along the Y axis, until that axis reaches its destination.  This means the path is made up of a
+ * diagonal leg followed by an axis aligned leg, and the position at any step can be computed with
+ * {@link #stepPosition(int, int, int)}.
+ *
+ * <p>
+ * The intervals are conservative; they may include steps that do not collide, but never miss one.
+ *
+ * @author Tony
+ *
+ */
+public class SweptCollision {
+
+    /**
+     * The maximum number of intervals kept; if more are added, the last intervals are merged together
+     */
+    public static final int MAX_INTERVALS = 32;
+
+    /**
+     * Extra pixels around each target, to account for the edge tests of the precise checks
+     */
+    private static final int MARGIN = 1;
+
+    private int[] intervalStarts, intervalEnds;
+    private int numberOfIntervals;
+
+    private int startX, startY;
+    private int endX, endY;
+    private int width, height;
+    private int dirX, dirY;
+    private int lengthX, lengthY;
+    private int numberOfSteps;
+
+    private int rangeStart, rangeEnd;
+
+    private Rectangle sweptBounds;
+
+    /**
+     */
+    public SweptCollision() {
+        this.intervalStarts = new int[MAX_INTERVALS];
+        this.intervalEnds = new int[MAX_INTERVALS];
+        this.sweptBounds = new Rectangle();
+    }
+
+    /**
+     * Calculates the position along one axis of the path at the supplied step
+     *
+     * @param start the starting position
+     * @param end the destination
+     * @param step the step number
+     * @return the position at the step
+     */
+    public static int stepPosition(int start, int end, int step) {
+        if(end > start) {
+            return start + Math.min(step, end - start);
+        }
+
+        return start - Math.min(step, start - end);
+    }
+
+    /**
+     * Begins a new sweep.  This clears out any of the previously gathered intervals.
+     *
+     * @param bounds the starting bounds of the moving rectangle
+     * @param endX the destination X
+     * @param endY the destination Y
+     */
+    public void begin(Rectangle bounds, int endX, int endY) {
+        this.startX = bounds.x;
+        this.startY = bounds.y;
+        this.endX = endX;
+        this.endY = endY;
+        this.width = bounds.width;
+        this.height = bounds.height;
+
+        this.dirX = Integer.signum(endX - startX);
+        this.dirY = Integer.signum(endY - startY);
+        this.lengthX = Math.abs(endX - startX);
+        this.lengthY = Math.abs(endY - startY);
+        this.numberOfSteps = Math.max(lengthX, lengthY);
+
+        this.numberOfIntervals = 0;
+
+        int minX = Math.min(startX, endX);
+        int minY = Math.min(startY, endY);
+        this.sweptBounds.set(minX - MARGIN, minY - MARGIN,
+                             lengthX + width + MARGIN * 2,
+                             lengthY + height + MARGIN * 2);
+    }
+
+    /**
+     * @return the number of steps it takes to reach the destination
+     */
+    public int getNumberOfSteps() {
+        return numberOfSteps;
+    }
+
+    /**
+     * @return the bounds covering the whole path
+     */
+    public Rectangle getSweptBounds() {
+        return sweptBounds;
+    }
+
+    /**
+     * @return the number of intervals gathered
+     */
+    public int getNumberOfIntervals() {
+        return numberOfIntervals;
+    }
+
+    /**
+     * @param index
+     * @return the first step (inclusive) of the interval
+     */
+    public int getIntervalStart(int index) {
+        return intervalStarts[index];
+    }
+
+    /**
+     * @param index
+     * @return the last step (inclusive) of the interval
+     */
+    public int getIntervalEnd(int index) {
+        return intervalEnds[index];
+    }
+
+    /**
+     * Calculates the range of steps in which the position along one axis is within [lo, hi].  The
+     * result is stored in rangeStart and rangeEnd, if there is no such step rangeStart will be greater
+     * than rangeEnd.
+     */
+    private void stepsWithin(int start, int dir, int length, int lo, int hi) {
+        if(dir == 0) {
+            if(start >= lo && start <= hi) {
+                this.rangeStart = 0;
+                this.rangeEnd = this.numberOfSteps;
+            }
+            else {
+                this.rangeStart = 1;
+                this.rangeEnd = 0;
+            }
+            return;
+        }
+
+        int first, last;
+        if(dir > 0) {
+            first = lo - start;
+            last = hi - start;
+        }
+        else {
+            first = start - hi;
+            last = start - lo;
+        }
+
+        if(first > length || last < 0) {
+            this.rangeStart = 1;
+            this.rangeEnd = 0;
+            return;
+        }
+
+        this.rangeStart = Math.max(0, first);
+        this.rangeEnd = last >= length ? this.numberOfSteps : last;
+    }
+
+    /**
+     * Adds the steps in which the moving rectangle would overlap the region.  The rectangle only
+     * moves on one axis at a time, so each axis range is padded by a step to include the in between
+     * positions.
+     */
+    private void addRegion(int x, int y, int regionWidth, int regionHeight) {
+        stepsWithin(this.startX, this.dirX, this.lengthX, x - this.width - MARGIN, x + regionWidth + MARGIN);
+        if(this.rangeStart > this.rangeEnd) {
+            return;
+        }
+
+        int first = this.rangeStart - 1;
+        int last = this.rangeEnd + 1;
+
+        stepsWithin(this.startY, this.dirY, this.lengthY, y - this.height - MARGIN, y + regionHeight + MARGIN);
+        if(this.rangeStart > this.rangeEnd) {
+            return;
+        }
+
+        addInterval(Math.max(first, this.rangeStart - 1), Math.min(last, this.rangeEnd + 1));
+    }
+
+    /**
+     * Adds the steps in which the moving rectangle may touch the supplied target bounds
+     *
+     * @param target
+     */
+    public void addTarget(Rectangle target) {
+        addRegion(target.x, target.y, target.width, target.height);
+    }
+
+    /**
+     * Adds the steps in which the moving rectangle may touch a collidable tile.  This walks
+     * the tile columns the path crosses, and only looks up the tile rows the rectangle covers
+     * while it is in that column.
+     *
+     * @param map
+     */
+    public void addCollidableTiles(Map map) {
+        int tileWidth = map.getTileWidth();
+        int tileHeight = map.getTileHeight();
+        int maxTileX = map.getTileWorldWidth() - 1;
+        int maxTileY = map.getTileWorldHeight() - 1;
+
+        int minX = Math.min(this.startX, this.endX) - MARGIN;
+        int maxX = Math.max(this.startX, this.endX) + this.width + MARGIN;
+
+        int firstColumn = Math.max(0, floorDiv(minX, tileWidth));
+        int lastColumn = Math.min(maxTileX, floorDiv(maxX, tileWidth));
+
+        for(int column = firstColumn; column <= lastColumn; column++) {
+            int tileX = column * tileWidth;
+            stepsWithin(this.startX, this.dirX, this.lengthX, tileX - this.width - MARGIN, tileX + tileWidth + MARGIN);
+            if(this.rangeStart > this.rangeEnd) {
+                continue;
+            }
+
+            int firstStep = Math.max(0, this.rangeStart - 1);
+            int lastStep = Math.min(this.numberOfSteps, this.rangeEnd + 1);
+
+            int y0 = stepPosition(this.startY, this.endY, firstStep);
+            int y1 = stepPosition(this.startY, this.endY, lastStep);
+
+            int firstRow = Math.max(0, floorDiv(Math.min(y0, y1) - MARGIN, tileHeight));
+            int lastRow = Math.min(maxTileY, floorDiv(Math.max(y0, y1) + this.height + MARGIN, tileHeight));
+
+            for(int row = firstRow; row <= lastRow; row++) {
+                if(map.hasCollidableTile(column, row)) {
+                    addRegion(tileX, row * tileHeight, tileWidth, tileHeight);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the steps in which the moving rectangle is not safely inside of the world bounds
+     *
+     * @param map
+     */
+    public void addWorldBounds(Map map) {
+        final int inset = MARGIN + 1;
+
+        stepsWithin(this.startX, this.dirX, this.lengthX, inset, map.getMapWidth() - this.width - inset);
+        int first = shrinkStart();
+        int last = shrinkEnd();
+
+        stepsWithin(this.startY, this.dirY, this.lengthY, inset, map.getMapHeight() - this.height - inset);
+        first = Math.max(first, shrinkStart());
+        last = Math.min(last, shrinkEnd());
+
+        if(first > last) {
+            addInterval(1, this.numberOfSteps);
+        }
+        else {
+            addInterval(1, first - 1);
+            addInterval(last + 1, this.numberOfSteps);
+        }
+    }
+
+    /*
+     * Shrinks the current range by a step on each end that is not the end of the path, so
+     * that the in between positions are excluded from the safe range
+     */
+    private int shrinkStart() {
+        return this.rangeStart > 0 ? this.rangeStart + 1 : this.rangeStart;
+    }
+
+    private int shrinkEnd() {
+        return this.rangeEnd < this.numberOfSteps ? this.rangeEnd - 1 : this.rangeEnd;
+    }
+
+    /**
+     * Adds the steps in which the moving rectangle may be further than the max distance from the
+     * origin.  The distance along each leg of the path is at its largest at one of the ends of the leg, so
+     * only the ends need to be checked.
+     *
+     * @param origin
+     * @param maxDistance
+     */
+    public void addMaxDistance(Vector2f origin, int maxDistance) {
+        float safeDistance = Math.max(0, maxDistance - 2);
+        float safeDistanceSq = safeDistance * safeDistance;
+
+        int corner = Math.min(this.lengthX, this.lengthY);
+
+        float startDistanceSq = distanceSq(origin, 0);
+        float cornerDistanceSq = distanceSq(origin, corner);
+        float endDistanceSq = distanceSq(origin, this.numberOfSteps);
+
+        if(startDistanceSq > safeDistanceSq || cornerDistanceSq > safeDistanceSq) {
+            addInterval(1, corner);
+        }
+
+        if(cornerDistanceSq > safeDistanceSq || endDistanceSq > safeDistanceSq) {
+            addInterval(corner, this.numberOfSteps);
+        }
+    }
+
+    private float distanceSq(Vector2f origin, int step) {
+        float x = stepPosition(this.startX, this.endX, step) - origin.x;
+        float y = stepPosition(this.startY, this.endY, step) - origin.y;
+        return x * x + y * y;
+    }
+
+    /**
+     * Adds an interval of steps, the interval is clamped to the path (step 0 is
+     * the starting position and therefore is never included)
+     *
+     * @param first
+     * @param last
+     */
+    public void addInterval(int first, int last) {
+        first = Math.max(1, first);
+        last = Math.min(this.numberOfSteps, last);
+        if(first > last) {
+            return;
+        }
+
+        if(this.numberOfIntervals < MAX_INTERVALS) {
+            this.intervalStarts[this.numberOfIntervals] = first;
+            this.intervalEnds[this.numberOfIntervals] = last;
+            this.numberOfIntervals++;
+        }
+        else {
+            int index = MAX_INTERVALS - 1;
+            this.intervalStarts[index] = Math.min(this.intervalStarts[index], first);
+            this.intervalEnds[index] = Math.max(this.intervalEnds[index], last);
+        }
+    }
+
+    /**
+     * Sorts and merges the overlapping intervals
+     *
+     * @return the number of intervals
+     */
+    public int resolve() {
+        int[] starts = this.intervalStarts;
+        int[] ends = this.intervalEnds;
+
+        for(int i = 1; i < this.numberOfIntervals; i++) {
+            int start = starts[i];
+            int end = ends[i];
+            int j = i - 1;
+            while(j >= 0 && starts[j] > start) {
+                starts[j + 1] = starts[j];
+                ends[j + 1] = ends[j];
+                j--;
+            }
+            starts[j + 1] = start;
+            ends[j + 1] = end;
+        }
+
+        int size = 0;
+        for(int i = 0; i < this.numberOfIntervals; i++) {
+            if(size > 0 && starts[i] <= ends[size - 1] + 1) {
+                ends[size - 1] = Math.max(ends[size - 1], ends[i]);
+            }
+            else {
+                starts[size] = starts[i];
+                ends[size] = ends[i];
+                size++;
+            }
+        }
+
+        this.numberOfIntervals = size;
+        return size;
+    }
+
+    private static int floorDiv(int a, int b) {
+        int q = a / b;
+        if((a % b != 0) && ((a ^ b) < 0)) {
+            q--;
+        }
+        return q;
+    }
+}
@@ -1,24 +1,113 @@
 /*
- * see license.txt 
+ * see license.txt
  */
 package seventh.game;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import seventh.shared.TimeStep;
 import seventh.shared.Timer;
 import seventh.shared.Updatable;
 
 /**
+ * Keeps the game {@link Timer}s in a hierarchical timing wheel, so that adding and removing a timer is constant time,
+ * and each update only touches the timers that are going off (rather than updating every timer every frame).  There is
+ * no limit to the number of timers.
+ *
+ * <p>
+ * The wheel has {@link #LEVELS} levels of {@link #SLOTS} slots each, with a resolution of a millisecond; the first level
+ * holds the timers going off in the next 64 milliseconds, the second level the ones in the next 4 seconds, and so on.
+ * A timer is placed in the slot of the time it is due, and as the wheel turns the timers in the higher levels are moved
+ * down a level until they reach the first level and go off.  Each level keeps a bit set of its occupied slots, so the
+ * empty slots are skipped over.
+ *
+ * <p>
+ * A {@link Timer} in the wheel is only updated when it is due, with all of the time since it was last updated.  So it
+ * goes off on the same frame as it did when it was updated every frame.  The timers are told about changes made to them
+ * in between (such as {@link Timer#reset()} or {@link Timer#pause()}) through their {@link Timer.Scheduler}: the timer is
+ * first caught up with the time it has been running, and then placed again by its new remaining time.  A paused or
+ * stopped timer is kept out of the wheel until it is started, so the time it spends paused or stopped is not counted.
+ *
  * @author Tony
  *
  */
 public class Timers implements Updatable {
 
-    private Timer[] timers;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
     /**
-     * 
+     * A timer in the wheel
+     *
+     * @author Tony
      */
-    public Timers(int maxTimers) {
-        this.timers = new Timer[maxTimers];
+    private static class Entry {
+        final Timer timer;
+
+        /**
+         * The time the timer is due, and the time it was last updated to
+         */
+        long deadline, lastUpdateTime;
+
+        int level, slot;
+        Entry prev, next;
+
+        /**
+         * The timer is being updated by the wheel, any changes it makes to itself are picked up afterwards
+         */
+        boolean isUpdating;
+
+        Entry(Timer timer) {
+            this.timer = timer;
+        }
+    }
+
+    private Entry[][] slots;
+    private long[] occupiedSlots;
+    private Map<Timer, Entry> entries;
+
+    /**
+     * The game time the timers have been updated to, and the time the wheel has turned to
+     */
+    private long currentTime, wheelTime;
+    private boolean isUpdating;
+
+    private TimeStep timerStep, catchUpStep;
+    private Timer.Scheduler scheduler;
+
+    /**
+     *
+     */
+    public Timers() {
+        this.slots = new Entry[LEVELS][SLOTS];
+        this.occupiedSlots = new long[LEVELS];
+        this.entries = new IdentityHashMap<>();
+        this.timerStep = new TimeStep();
+        this.catchUpStep = new TimeStep();
+
+        this.scheduler = new Timer.Scheduler() {
+
+            @Override
+            public void beforeChange(Timer timer) {
+                Entry entry = entries.get(timer);
+                if(entry != null && !entry.isUpdating) {
+                    unlink(entry);
+                    catchUp(entry);
+                }
+            }
+
+            @Override
+            public void afterChange(Timer timer) {
+                Entry entry = entries.get(timer);
+                if(entry != null && !entry.isUpdating) {
+                    unlink(entry);
+                    place(entry);
+                }
+            }
+        };
     }
 
     /* (non-Javadoc)
@@ -26,38 +115,283 @@ public class Timers implements Updatable {
      */
     @Override
     public void update(TimeStep timeStep) {
-        for(int i = 0; i < timers.length; i++) {
-            if(timers[i]!=null) {
-                Timer timer = timers[i];
-                timer.update(timeStep);
-                if(timer.isExpired()) {
-                    timers[i] = null;
+        /* timers added while updating start counting from the end of this update */
+        this.currentTime += timeStep.getDeltaTime();
+        this.isUpdating = true;
+
+        try {
+            long nextTime = nextDueTime();
+            while(nextTime <= this.currentTime) {
+                this.wheelTime = nextTime;
+
+                /* move the timers of the higher level slots that have been reached down the wheel */
+                for(int level = LEVELS - 1; level > 0; level--) {
+                    int slot = slotIndex(this.wheelTime, level);
+                    Entry entry = null;
+                    while((entry = this.slots[level][slot]) != null) {
+                        unlink(entry);
+                        link(entry);
+                    }
                 }
+
+                int slot = slotIndex(this.wheelTime, 0);
+                Entry entry = null;
+                while((entry = this.slots[0][slot]) != null) {
+                    unlink(entry);
+                    goOff(entry);
+                }
+
+                nextTime = nextDueTime();
+            }
+        }
+        finally {
+            this.wheelTime = this.currentTime;
+            this.isUpdating = false;
+        }
+    }
+
+    /**
+     * Updates the timer with the time since it was last updated, and puts it back into the
+     * wheel if it isn't done
+     *
+     * @param entry
+     */
+    private void goOff(Entry entry) {
+        Timer timer = entry.timer;
+
+        this.timerStep.setDeltaTime(this.currentTime - entry.lastUpdateTime);
+        this.timerStep.setGameClock(this.currentTime);
+        entry.lastUpdateTime = this.currentTime;
+
+        entry.isUpdating = true;
+        try {
+            timer.update(this.timerStep);
+        }
+        finally {
+            entry.isUpdating = false;
+        }
+
+        /* the timer may have been removed when it went off */
+        if(this.entries.get(timer) == entry) {
+            place(entry);
+        }
+    }
+
+    /**
+     * Updates the timer with the time it has been running since it was last updated, before it is
+     * changed.  This is normally short of its end time, unless it is due in the update that is making the change.
+     *
+     * @param entry
+     */
+    private void catchUp(Entry entry) {
+        Timer timer = entry.timer;
+
+        long elapsedTime = this.currentTime - entry.lastUpdateTime;
+        entry.lastUpdateTime = this.currentTime;
+
+        if(elapsedTime > 0 && timer.isUpdating()) {
+            this.catchUpStep.setDeltaTime(elapsedTime);
+            this.catchUpStep.setGameClock(this.currentTime);
+
+            entry.isUpdating = true;
+            try {
+                timer.update(this.catchUpStep);
+            }
+            finally {
+                entry.isUpdating = false;
             }
         }
     }
-    
+
+    /**
+     * Puts the timer into the wheel by its remaining time, if it is running.  An expired timer is removed,
+     * and a paused or stopped timer is left out until it is started again.
+     *
+     * @param entry
+     */
+    private void place(Entry entry) {
+        Timer timer = entry.timer;
+        if(timer.isExpired()) {
+            removeTimer(timer);
+        }
+        else if(timer.isUpdating()) {
+            schedule(entry, timer.getRemainingTime());
+        }
+    }
+
     /**
      * Attempts to add a timer
      * @param timer
-     * @return true if the timer was added; false if there is no more room
+     * @return true if the timer was added; false if the timer has already been added
      */
     public boolean addTimer(Timer timer) {
-        for(int i = 0; i < timers.length; i++) {
-            if(timers[i]==null) {
-                timers[i] = timer;
-                return true;
-            }
+        if(this.entries.containsKey(timer)) {
+            return false;
         }
-        return false;
+
+        Entry entry = new Entry(timer);
+        entry.lastUpdateTime = this.currentTime;
+        this.entries.put(timer, entry);
+
+        timer.setScheduler(this.scheduler);
+        place(entry);
+        return true;
     }
-    
+
+    /**
+     * Removes the timer
+     *
+     * @param timer
+     * @return true if the timer was removed; false if it wasn't added
+     */
+    public boolean removeTimer(Timer timer) {
+        Entry entry = this.entries.remove(timer);
+        if(entry == null) {
+            return false;
+        }
+
+        unlink(entry);
+        if(timer.getScheduler() == this.scheduler) {
+            timer.setScheduler(null);
+        }
+        return true;
+    }
+
     /**
      * Removes all of the timers
      */
     public void removeTimers() {
-        for(int i = 0; i < timers.length; i++) {
-            timers[i] = null;
+        for(int level = 0; level < LEVELS; level++) {
+            for(int slot = 0; slot < SLOTS; slot++) {
+                this.slots[level][slot] = null;
+            }
+            this.occupiedSlots[level] = 0;
+        }
+
+        for(Timer timer : this.entries.keySet()) {
+            if(timer.getScheduler() == this.scheduler) {
+                timer.setScheduler(null);
+            }
+        }
+
+        this.entries.clear();
+    }
+
+    /**
+     * @return the number of timers
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Places the timer in the wheel to go off once the remaining time has passed
+     *
+     * @param entry
+     * @param remainingTime
+     */
+    private void schedule(Entry entry, long remainingTime) {
+        if(this.isUpdating) {
+            /* go off at most once per update */
+            remainingTime = Math.max(remainingTime, 1);
+        }
+
+        entry.deadline = this.currentTime + Math.max(remainingTime, 0);
+        link(entry);
+    }
+
+    /**
+     * @param time
+     * @param level
+     * @return the slot of the level the time falls in
+     */
+    private static int slotIndex(long time, int level) {
+        return (int)(time >>> (level * SLOT_BITS)) & SLOT_MASK;
+    }
+
+    /**
+     * Adds the entry to the slot of its deadline, in the lowest level that reaches it
+     *
+     * @param entry
+     */
+    private void link(Entry entry) {
+        int level = 0;
+        while(level < LEVELS - 1 &&
+             (entry.deadline >>> (level * SLOT_BITS)) - (this.wheelTime >>> (level * SLOT_BITS)) >= SLOTS) {
+            level++;
+        }
+
+        int slot = 0;
+        if((entry.deadline >>> (level * SLOT_BITS)) - (this.wheelTime >>> (level * SLOT_BITS)) >= SLOTS) {
+            /* further out than the wheel reaches, it is placed in the last slot and placed again once that is reached */
+            slot = (slotIndex(this.wheelTime, level) + SLOT_MASK) & SLOT_MASK;
+        }
+        else {
+            slot = slotIndex(entry.deadline, level);
+        }
+
+        entry.level = level;
+        entry.slot = slot;
+        entry.prev = null;
+        entry.next = this.slots[level][slot];
+        if(entry.next != null) {
+            entry.next.prev = entry;
+        }
+
+        this.slots[level][slot] = entry;
+        this.occupiedSlots[level] |= (1L << slot);
+    }
+
+    /**
+     * Removes the entry from its slot
+     *
+     * @param entry
+     */
+    private void unlink(Entry entry) {
+        /* already out of the wheel, such as while going off */
+        if(entry.prev == null && this.slots[entry.level][entry.slot] != entry) {
+            return;
         }
+
+        if(entry.prev != null) {
+            entry.prev.next = entry.next;
+        }
+        else {
+            this.slots[entry.level][entry.slot] = entry.next;
+            if(entry.next == null) {
+                this.occupiedSlots[entry.level] &= ~(1L << entry.slot);
+            }
+        }
+
+        if(entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    /**
+     * @return the next time the wheel has something to do: either timers going off, or timers to be moved down
+     * from a higher level.  {@link Long#MAX_VALUE} if there are no timers
+     */
+    private long nextDueTime() {
+        long nextTime = Long.MAX_VALUE;
+        for(int level = 0; level < LEVELS; level++) {
+            long occupied = this.occupiedSlots[level];
+            if(occupied != 0) {
+                int shift = level * SLOT_BITS;
+                int distance = Long.numberOfTrailingZeros(Long.rotateRight(occupied, slotIndex(this.wheelTime, level)));
+
+                /* the current slot of a higher level is only occupied when the wheel turned part way into it
+                 * since the timers were placed, in which case they are moved down right away 
+                 */
+                long time = (level == 0) ? this.wheelTime + distance
+                                         : Math.max(((this.wheelTime >>> shift) + distance) << shift, this.wheelTime);
+                nextTime = Math.min(nextTime, time);
+            }
+        }
+
+        return nextTime;
     }
 }
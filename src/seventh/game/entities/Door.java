@@ -186,7 +186,8 @@ public class Door extends Entity {
     
     private Rectangle handleTouchRadius,
                       hingeTouchRadius,
-                      autoCloseRadius;
+                      autoCloseRadius,
+                      broadphaseBounds;
     
     
     private SmoothOrientation rotation;
@@ -220,6 +221,7 @@ public class Door extends Entity {
         this.handleTouchRadius = new Rectangle(48, 48);
         this.hingeTouchRadius = new Rectangle(48,48);
         this.autoCloseRadius = new Rectangle(128, 128);
+        this.broadphaseBounds = new Rectangle();
         
         this.bounds.set(this.handleTouchRadius);
         this.bounds.setLocation(getPos());
@@ -260,6 +262,27 @@ public class Door extends Entity {
         Vector2f.Vector2fMA(this.rearHingePos, this.rotation.getFacing(), 64, this.rearDoorHandle);
         
         this.handleTouchRadius.centerAround(this.frontDoorHandle);
+        
+        // the door panels swing outside of the bounds, so make sure
+        // the broadphase covers the hinges and the handles
+        float minX = Math.min(Math.min(this.frontHingePos.x, this.frontDoorHandle.x), Math.min(this.rearHingePos.x, this.rearDoorHandle.x));
+        float minY = Math.min(Math.min(this.frontHingePos.y, this.frontDoorHandle.y), Math.min(this.rearHingePos.y, this.rearDoorHandle.y));
+        float maxX = Math.max(Math.max(this.frontHingePos.x, this.frontDoorHandle.x), Math.max(this.rearHingePos.x, this.rearDoorHandle.x));
+        float maxY = Math.max(Math.max(this.frontHingePos.y, this.frontDoorHandle.y), Math.max(this.rearHingePos.y, this.rearDoorHandle.y));
+        
+        int x = Math.min(this.bounds.x, (int)Math.floor(minX));
+        int y = Math.min(this.bounds.y, (int)Math.floor(minY));
+        int width  = Math.max(this.bounds.x + this.bounds.width,  (int)Math.ceil(maxX)) - x;
+        int height = Math.max(this.bounds.y + this.bounds.height, (int)Math.ceil(maxY)) - y;
+        this.broadphaseBounds.set(x, y, width, height);
+    }
+    
+    /* (non-Javadoc)
+     * @see seventh.game.entities.Entity#getBroadphaseBounds()
+     */
+    @Override
+    public Rectangle getBroadphaseBounds() {
+        return this.broadphaseBounds;
     }
     
     @Override
@@ -7,6 +7,7 @@ import java.util.List;
 
 import leola.vm.types.LeoObject;
 import seventh.game.Game;
+import seventh.game.PlayerView;
 import seventh.game.entities.vehicles.Vehicle;
 import seventh.game.net.NetEntity;
 import seventh.map.Map;
@@ -502,6 +503,19 @@ public abstract class Entity implements Debugable {
     public void moveTo(Vector2f pos) {
         this.pos.set(pos);
         this.bounds.setLocation(pos);
+        
+        this.game.updateSpatialIndex(this);
+    }
+    
+    /**
+     * The region this {@link Entity} is able to touch other entities in.  This must enclose
+     * any geometry used by {@link #isTouching(Entity)}, as it is what the game's broadphase
+     * indexes and queries by.  By default this is just the bounds.
+     * 
+     * @return the broadphase bounds
+     */
+    public Rectangle getBroadphaseBounds() {
+        return bounds;
     }
 
     /**
@@ -980,14 +994,14 @@ public abstract class Entity implements Debugable {
     }
     
     /**
-     * @param tiles an empty list of tiles that is used as the returned list
-     * @return calculates the line of sight, which returns a {@link List} of {@link Tile} this entity
-     * is able to see
+     * @param view the viewers scratch state, the results are stored in its {@link PlayerView#getVisibility()}
+     * @return calculates the line of sight, which returns a {@link List} of {@link Tile} that were
+     * considered, the {@link PlayerView#getVisibility()} marks which of these this entity is able to see
      */
-    public List<Tile> calculateLineOfSight(List<Tile> tiles) {
+    public List<Tile> calculateLineOfSight(PlayerView view) {
         Map map = game.getMap();
-        Geom.calculateLineOfSight(tiles, centerPos, getFacing(), WeaponConstants.DEFAULT_LINE_OF_SIGHT, map, getHeightMask(), cache);
-        return tiles;
+        Geom.calculateLineOfSight(view.getTiles(), view.getVisibility(), centerPos, getFacing(), WeaponConstants.DEFAULT_LINE_OF_SIGHT, map, getHeightMask(), view.getCache());
+        return view.getTiles();
     }
     
     /* (non-Javadoc)
@@ -25,6 +25,7 @@ import java.util.List;
 import seventh.game.Controllable;
 import seventh.game.Game;
 import seventh.game.Inventory;
+import seventh.game.PlayerView;
 import seventh.game.SoundEventPool;
 import seventh.game.SurfaceTypeToSoundType;
 import seventh.game.Team;
@@ -50,6 +51,7 @@ import seventh.game.weapons.Thompson;
 import seventh.game.weapons.Weapon;
 import seventh.map.Map;
 import seventh.map.Tile;
+import seventh.map.TileVisibility;
 import seventh.map.Tile.SurfaceType;
 import seventh.math.Line;
 import seventh.math.Rectangle;
@@ -121,12 +123,15 @@ public class PlayerEntity extends Entity implements Controllable {
     private int previousKeys;
     private float previousOrientation;
     
+    /* the sequence of the last remote input handled, which is sent back so the client can reconcile its prediction */
+    private int lastInputSequence;
+    
     private Inventory inventory;
         
     private long invinceableTime;    
     private int lineOfSight;
     private int hearingRadius;
-    private Rectangle hearingBounds, visualBounds;
+    private Rectangle hearingBounds;
     
     private float stamina;
     private boolean completedRecovery;
@@ -136,8 +141,6 @@ public class PlayerEntity extends Entity implements Controllable {
     private long runTime, recoveryTime;
     private boolean wasSprinting;
     
-    private Vector2f enemyDir;
-    
     private BombTarget bombTarget;
     private Vehicle operating;
     
@@ -166,7 +169,6 @@ public class PlayerEntity extends Entity implements Controllable {
                 
         this.bounds.set(position, PLAYER_WIDTH, PLAYER_HEIGHT);
         this.inputVel = new Vector2f();
-        this.enemyDir = new Vector2f();
         
         this.headshot = new Rectangle(4, 4);
         this.limbshot = new Rectangle(10, 10);
@@ -177,10 +179,24 @@ public class PlayerEntity extends Entity implements Controllable {
         
         this.stamina = MAX_STAMINA;
         
-        this.visualBounds = new Rectangle(2000, 2000);
-        
         setLineOfSight(WeaponConstants.DEFAULT_LINE_OF_SIGHT);
         setHearingRadius(PLAYER_HEARING_RADIUS);
+        
+        this.lastInputSequence = -1;
+    }
+    
+    /**
+     * @return the sequence number of the last remote input handled, or -1 if none have been
+     */
+    public int getLastInputSequence() {
+        return lastInputSequence;
+    }
+    
+    /**
+     * @param lastInputSequence the sequence number of the last remote input handled
+     */
+    public void setLastInputSequence(int lastInputSequence) {
+        this.lastInputSequence = lastInputSequence;
     }
     
     /**
@@ -1570,12 +1586,26 @@ public class PlayerEntity extends Entity implements Controllable {
      * @return the same instance as soundsHeard, just returned for convenience
      */
     public List<SoundEmittedEvent> getHeardSounds(SoundEventPool soundEvents, List<SoundEmittedEvent> soundsHeard) {        
-        this.hearingBounds.centerAround(getCenterPos());        
+        return getHeardSounds(soundEvents, soundsHeard, this.hearingBounds);
+    }
+    
+    /**
+     * Retrieves the sounds heard by an Entity, using the viewers scratch state
+     * @param soundEvents
+     * @param view the viewer, the sounds are added to {@link PlayerView#getSoundsHeard()}
+     * @return the {@link PlayerView#getSoundsHeard()}
+     */
+    public List<SoundEmittedEvent> getHeardSounds(SoundEventPool soundEvents, PlayerView view) {
+        return getHeardSounds(soundEvents, view.getSoundsHeard(), view.getHearingBounds());
+    }
+    
+    private List<SoundEmittedEvent> getHeardSounds(SoundEventPool soundEvents, List<SoundEmittedEvent> soundsHeard, Rectangle hearingBounds) {
+        hearingBounds.centerAround(getCenterPos());        
         
         int size = soundEvents.numberOfSounds();        
         for(int i = 0; i < size; i++) {
             SoundEmittedEvent event = soundEvents.getSound(i);
-            if(this.hearingBounds.contains(event.getPos())) {
+            if(hearingBounds.contains(event.getPos())) {
                 soundsHeard.add(event);                
             } 
         }
@@ -1583,25 +1613,34 @@ public class PlayerEntity extends Entity implements Controllable {
         return soundsHeard;
     }
     
+    /* (non-Javadoc)
+     * @see seventh.game.entities.Entity#calculateLineOfSight(seventh.game.PlayerView)
+     */
     @Override
-    public List<Tile> calculateLineOfSight(List<Tile> tiles) {
+    public List<Tile> calculateLineOfSight(PlayerView view) {
         Map map = game.getMap();
-        Geom.calculateLineOfSight(tiles, getCenterPos(), getFacing(), getLineOfSight(), map, getHeightMask(), cache);
+        List<Tile> tiles = view.getTiles();
+        TileVisibility visibility = view.getVisibility();
+        Geom.calculateLineOfSight(tiles, visibility, getCenterPos(), getFacing(), getLineOfSight(), map, getHeightMask(), view.getCache());
         
         int tileSize = tiles.size();
         List<Door> doors = game.getDoors();
         int doorSize = doors.size();
         
         Vector2f centerPos = getCenterPos();
+        Vector2f tileCenter = view.getTileCenter();
+        Rectangle visualBounds = view.getVisualBounds();
+        visualBounds.centerAround(centerPos);
         
         for(int j = 0; j < doorSize; j++ ) {
             Door door = doors.get(j);
-            if(this.visualBounds.intersects(door.getBounds())) {        
+            if(visualBounds.intersects(door.getBounds())) {        
                 for(int i = 0; i < tileSize; i++) {
                     Tile tile = tiles.get(i);
-                    if(Line.lineIntersectLine(centerPos, tile.getCenterPos(), 
+                    tileCenter.set(tile.getX() + (tile.getWidth()/2), tile.getY() + (tile.getHeight()/2));
+                    if(Line.lineIntersectLine(centerPos, tileCenter, 
                                               door.getPos(), door.getHandle())) {
-                        tile.setMask(Tile.TILE_INVISIBLE);
+                        visibility.setVisible(tile, false);
                     }
                 }
             }
@@ -1634,7 +1673,7 @@ public class PlayerEntity extends Entity implements Controllable {
     /**
      * Hides players that are behind smoke
      */
-    protected void pruneEntitiesBehindSmoke(List<Entity> entitiesInView) {
+    protected void pruneEntitiesBehindSmoke(List<Entity> entitiesInView, Rectangle visualBounds) {
         int entitySize = entitiesInView.size();
         List<Smoke> smoke = game.getSmokeEntities();
         int smokeSize = smoke.size();
@@ -1644,7 +1683,7 @@ public class PlayerEntity extends Entity implements Controllable {
         if(entitySize > 0 && smokeSize > 0) {
             for(int j = 0; j < smokeSize; j++) {
                 Smoke s = smoke.get(j);
-                if(this.visualBounds.intersects(s.getBounds())) {
+                if(visualBounds.intersects(s.getBounds())) {
                     for(int i = 0; i < entitySize;) {
                         Entity ent = entitiesInView.get(i);
                         if(ent.getType()==Type.PLAYER && Line.lineIntersectsRectangle(ent.getCenterPos(), centerPos, s.getBounds())) {
@@ -1665,23 +1704,27 @@ public class PlayerEntity extends Entity implements Controllable {
     /**
      * Given the game state, retrieve the {@link Entity}'s in the current entities view.
      * @param game
+     * @param view the viewers scratch state, the entities are added to {@link PlayerView#getEntitiesInView()}
      * @return a list of {@link Entity}s that are in this players view
      */
-    public List<Entity> getEntitiesInView(Game game, List<Entity> entitiesInView) {
+    public List<Entity> getEntitiesInView(Game game, PlayerView view) {
         /*
          * Calculate all the visuals this player can see
          */
-        Map map = game.getMap();
         Entity[] entities = game.getEntities();
+        List<Entity> entitiesInView = view.getEntitiesInView();
+        TileVisibility visibility = view.getVisibility();
+        Vector2f enemyDir = view.getEnemyDir();
         
         Vector2f centerPos = getCenterPos();
-        this.visualBounds.centerAround(centerPos);
+        Rectangle visualBounds = view.getVisualBounds();
+        visualBounds.centerAround(centerPos);
         
         if(isOperatingVehicle()) {
-            getVehicle().calculateLineOfSight(game.tilesInLineOfSight);
+            getVehicle().calculateLineOfSight(view);
         }
         else {
-            calculateLineOfSight(game.tilesInLineOfSight);                        
+            calculateLineOfSight(view);                        
         }
         
         
@@ -1698,10 +1741,10 @@ public class PlayerEntity extends Entity implements Controllable {
                 if(ent.getId() != id) {
                     Vector2f pos = ent.getCenterPos();
                     
-                    Vector2f.Vector2fSubtract(pos, centerPos, this.enemyDir);
-                    Vector2f.Vector2fNormalize(this.enemyDir, this.enemyDir);
+                    Vector2f.Vector2fSubtract(pos, centerPos, enemyDir);
+                    Vector2f.Vector2fNormalize(enemyDir, enemyDir);
                     
-                    if(!game.isEntityReachable(ent, centerPos, this.enemyDir)) {
+                    if(!game.isEntityReachable(ent, centerPos, enemyDir)) {
                         continue;
                     }
                     
@@ -1713,12 +1756,9 @@ public class PlayerEntity extends Entity implements Controllable {
                     int py = (int)pos.y;
                     
                     // check center of entity
-                    Tile tile = map.getWorldTile(0, px, py);
-                    if(tile!=null) {
-                        if (tile.getMask() > 0) {
-                            entitiesInView.add(ent);
-                            continue;                            
-                        }
+                    if(visibility.isVisibleAtWorld(px, py)) {
+                        entitiesInView.add(ent);
+                        continue;                            
                     }                                                
                                             
                     // make this a rectangle
@@ -1733,41 +1773,27 @@ public class PlayerEntity extends Entity implements Controllable {
                     
                     
                     // check upper right corner
-                    tile = map.getWorldTile(0, px+width, py);
-                    if(tile!=null) {
-                        if (tile.getMask() > 0) {
-                            //tile.getCollisionMask().pointCollide(hearingBounds, px, py)
-                            entitiesInView.add(ent);
-                            continue;
-                        }
+                    if(visibility.isVisibleAtWorld(px+width, py)) {
+                        entitiesInView.add(ent);
+                        continue;
                     }        
                         
                     // check lower right corner
-                    tile = map.getWorldTile(0, px+width, py+height);
-                    if(tile!=null) {
-                        if (tile.getMask() > 0) {
-                            entitiesInView.add(ent);
-                            continue;
-                
-                        }
+                    if(visibility.isVisibleAtWorld(px+width, py+height)) {
+                        entitiesInView.add(ent);
+                        continue;
                     }        
                     
                     // check lower left corner
-                    tile = map.getWorldTile(0, px, py+height);
-                    if(tile!=null) {
-                        if (tile.getMask() > 0) {
-                            entitiesInView.add(ent);
-                            continue;
-                        }
+                    if(visibility.isVisibleAtWorld(px, py+height)) {
+                        entitiesInView.add(ent);
+                        continue;
                     }                                            
                     
                     // check upper left corner
-                    tile = map.getWorldTile(0, px, py);
-                    if(tile!=null) {
-                        if (tile.getMask() > 0) {
-                            entitiesInView.add(ent);
-                            continue;                
-                        }
+                    if(visibility.isVisibleAtWorld(px, py)) {
+                        entitiesInView.add(ent);
+                        continue;                
                     }        
                 
                 }
@@ -1801,7 +1827,7 @@ public class PlayerEntity extends Entity implements Controllable {
             }                    
         }
         
-        pruneEntitiesBehindSmoke(entitiesInView);
+        pruneEntitiesBehindSmoke(entitiesInView, visualBounds);
         
         return entitiesInView;
     }
@@ -1835,6 +1861,7 @@ public class PlayerEntity extends Entity implements Controllable {
         }
         
         player.health = (byte)getHealth(); 
+        player.inputSequence = Math.max(0, lastInputSequence);
         
         player.isOperatingVehicle = isOperatingVehicle();
         if(player.isOperatingVehicle) {
@@ -6,6 +6,7 @@ package seventh.game.entities.vehicles;
 import java.util.List;
 
 import seventh.game.Game;
+import seventh.game.PlayerView;
 import seventh.game.SmoothOrientation;
 import seventh.game.SoundEmitter;
 import seventh.game.entities.Entity;
@@ -771,13 +772,13 @@ public class Tank extends Vehicle {
     }
 
     /* (non-Javadoc)
-     * @see seventh.game.Entity#calculateLineOfSight()
+     * @see seventh.game.entities.Entity#calculateLineOfSight(seventh.game.PlayerView)
      */
     @Override
-    public List<Tile> calculateLineOfSight(List<Tile> tiles) {
+    public List<Tile> calculateLineOfSight(PlayerView view) {
         Map map = game.getMap();
-        Geom.calculateLineOfSight(tiles, getCenterPos(), getTurretFacing(), WeaponConstants.TANK_DEFAULT_LINE_OF_SIGHT, map, getHeightMask(), cache);
-        return tiles;
+        Geom.calculateLineOfSight(view.getTiles(), view.getVisibility(), getCenterPos(), getTurretFacing(), WeaponConstants.TANK_DEFAULT_LINE_OF_SIGHT, map, getHeightMask(), view.getCache());
+        return view.getTiles();
     }
         
     /**
@@ -0,0 +1,178 @@
+/*
+ * see license.txt 
+ */
+package seventh.game.net;
+
+import harenet.IOBuffer;
+
+/**
+ * A growable run of bits, stored 64 bits at a time.  The bits are stored in the same order the
+ * {@link IOBuffer} bit operations use (least significant bit first), so they can be copied to
+ * and from an {@link IOBuffer} without any conversion.
+ * 
+ * @author Tony
+ *
+ */
+public class NetBits {
+
+    private long[] words;
+    private int numberOfBits;
+    
+    /**
+     * 
+     */
+    public NetBits() {
+        this(1024);
+    }
+    
+    /**
+     * @param initialNumberOfBits the initial capacity
+     */
+    public NetBits(int initialNumberOfBits) {
+        this.words = new long[Math.max(1, (initialNumberOfBits + 63) / 64)];
+        this.numberOfBits = 0;
+    }
+    
+    /**
+     * Removes all of the bits
+     */
+    public void clear() {
+        this.numberOfBits = 0;
+    }
+    
+    /**
+     * @return the number of bits stored
+     */
+    public int size() {
+        return numberOfBits;
+    }
+    
+    private void ensureCapacity(int numberOfBits) {
+        int numberOfWords = (numberOfBits + 63) / 64;
+        if(numberOfWords > this.words.length) {
+            long[] newWords = new long[Math.max(numberOfWords, this.words.length * 2)];
+            System.arraycopy(this.words, 0, newWords, 0, this.words.length);
+            this.words = newWords;
+        }
+    }
+    
+    /**
+     * Appends the lower bits of the value
+     * 
+     * @param value
+     * @param numberOfBits the number of bits to append (up to 64)
+     */
+    public void putBits(long value, int numberOfBits) {
+        if(numberOfBits <= 0) {
+            return;
+        }
+        
+        ensureCapacity(this.numberOfBits + numberOfBits);
+        
+        if(numberOfBits < 64) {
+            value &= (1L << numberOfBits) - 1;
+        }
+        
+        int wordIndex = this.numberOfBits >>> 6;
+        int bitIndex = this.numberOfBits & 63;
+        
+        /* the word is always clear past the last bit stored, so this 
+         * can just OR in the new bits 
+         */
+        if(bitIndex == 0) {
+            this.words[wordIndex] = value;
+        }
+        else {
+            this.words[wordIndex] |= value << bitIndex;
+            if(bitIndex + numberOfBits > 64) {
+                this.words[wordIndex + 1] = value >>> (64 - bitIndex);
+            }
+        }
+        
+        this.numberOfBits += numberOfBits;
+    }
+    
+    /**
+     * Appends bits read from the buffer
+     * 
+     * @param buffer
+     * @param numberOfBits the number of bits to read from the buffer
+     */
+    public void putBits(IOBuffer buffer, int numberOfBits) {
+        while(numberOfBits > 0) {
+            int n = Math.min(64, numberOfBits);
+            putBits(buffer.getLongBits(n), n);
+            numberOfBits -= n;
+        }
+    }
+    
+    /**
+     * Appends bits from another {@link NetBits}
+     * 
+     * @param bits
+     * @param bitIndex the index of the first bit to copy
+     * @param numberOfBits the number of bits to copy
+     */
+    public void putBits(NetBits bits, int bitIndex, int numberOfBits) {
+        while(numberOfBits > 0) {
+            int n = Math.min(64, numberOfBits);
+            putBits(bits.getBits(bitIndex, n), n);
+            bitIndex += n;
+            numberOfBits -= n;
+        }
+    }
+    
+    /**
+     * @param bitIndex the index of the first bit
+     * @param numberOfBits the number of bits to get (up to 64)
+     * @return the bits
+     */
+    public long getBits(int bitIndex, int numberOfBits) {
+        if(numberOfBits <= 0) {
+            return 0;
+        }
+        
+        if(bitIndex < 0 || bitIndex + numberOfBits > this.numberOfBits) {
+            throw new IndexOutOfBoundsException("Invalid bit range: " + bitIndex + " - " + (bitIndex + numberOfBits));
+        }
+        
+        int wordIndex = bitIndex >>> 6;
+        int offset = bitIndex & 63;
+        
+        long value = this.words[wordIndex] >>> offset;
+        if(offset + numberOfBits > 64) {
+            value |= this.words[wordIndex + 1] << (64 - offset);
+        }
+        
+        if(numberOfBits < 64) {
+            value &= (1L << numberOfBits) - 1;
+        }
+        
+        return value;
+    }
+    
+    /**
+     * Writes out the bits to the buffer
+     * 
+     * @param buffer
+     * @param bitIndex the index of the first bit to write
+     * @param numberOfBits the number of bits to write
+     */
+    public void writeTo(IOBuffer buffer, int bitIndex, int numberOfBits) {
+        while(numberOfBits > 0) {
+            int n = Math.min(64, numberOfBits);
+            buffer.putLongBits(getBits(bitIndex, n), n);
+            bitIndex += n;
+            numberOfBits -= n;
+        }
+    }
+    
+    /**
+     * Writes out all of the bits to the buffer
+     * 
+     * @param buffer
+     */
+    public void writeTo(IOBuffer buffer) {
+        writeTo(buffer, 0, this.numberOfBits);
+    }
+}
@@ -5,6 +5,7 @@ package seventh.game.net;
 
 import harenet.IOBuffer;
 import seventh.game.entities.Entity.Type;
+import seventh.network.messages.NetField;
 
 /**
  * El Bomba
@@ -25,7 +26,7 @@ public class NetBomb extends NetEntity {
     @Override
     public void read(IOBuffer buffer) {    
         super.read(buffer);
-        timeRemaining = buffer.getInt();
+        timeRemaining = NetField.BOMB_TIME.read(buffer);
     }
     
     /* (non-Javadoc)
@@ -34,6 +35,6 @@ public class NetBomb extends NetEntity {
     @Override
     public void write(IOBuffer buffer) {    
         super.write(buffer);
-        buffer.putInt(timeRemaining);
+        NetField.BOMB_TIME.write(buffer, timeRemaining);
     }
 }
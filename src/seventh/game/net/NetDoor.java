@@ -6,6 +6,7 @@ package seventh.game.net;
 import harenet.IOBuffer;
 import seventh.game.entities.Entity.Type;
 import seventh.network.messages.BufferIO;
+import seventh.network.messages.NetField;
 
 /**
  * A Door
@@ -28,7 +29,7 @@ public class NetDoor extends NetEntity {
     public void read(IOBuffer buffer) {    
         super.read(buffer);
         this.orientation = BufferIO.readAngle(buffer);
-        this.hinge = buffer.getByteBits(3);
+        this.hinge = (byte)NetField.DOOR_HINGE.read(buffer);
     }
     
     /* (non-Javadoc)
@@ -38,6 +39,6 @@ public class NetDoor extends NetEntity {
     public void write(IOBuffer buffer) {    
         super.write(buffer);
         BufferIO.writeAngle(buffer, orientation);
-        buffer.putByteBits(hinge, 3);
+        NetField.DOOR_HINGE.write(buffer, hinge);
     }
 }
@@ -0,0 +1,161 @@
+/*
+ * see license.txt
+ */
+package seventh.game.net;
+
+import harenet.IOBuffer;
+import seventh.game.entities.Entity.Type;
+import seventh.network.messages.BufferIO;
+
+/**
+ * Reuses the received {@link NetEntity}s on the client, so that decoding a game update doesn't create a new
+ * {@link NetEntity} for every entity in it.
+ *
+ * <p>
+ * Each entity slot keeps a small ring of {@link NetEntity}s, which are only reused for the same type.
+ * The client entities hold on to the last two states they were updated with (to interpolate between them),
+ * and updates may be decoded a few frames before they are applied, so a {@link NetEntity} can only be reused
+ * once two newer states of the same slot have been applied.  Each decoded entity is tagged with the snapshot
+ * it was decoded for, and the client reports the newest snapshot it has applied with
+ * {@link #setAppliedSnapshotId(int)}; if the oldest entity in the ring is still in use, a new one is
+ * created in its place.
+ *
+ * @author Tony
+ *
+ */
+public class NetEntityPool {
+
+    /**
+     * The default number of {@link NetEntity}s kept per slot
+     */
+    public static final int DEFAULT_DEPTH = 6;
+
+    /* the number of states a client entity holds on to */
+    private static final int NUMBER_OF_HELD_STATES = 2;
+
+    private final NetEntity[][] entities;
+    private final Type[][] types;
+    private final int[][] snapshotIds;
+    private final int[] nextIndex;
+    private final int depth;
+
+    private volatile int appliedSnapshotId;
+
+    private long numberOfReused;
+    private long numberOfAllocated;
+
+    /**
+     * @param numberOfSlots the number of entity slots
+     */
+    public NetEntityPool(int numberOfSlots) {
+        this(numberOfSlots, DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param numberOfSlots the number of entity slots
+     * @param depth the number of {@link NetEntity}s kept per slot
+     */
+    public NetEntityPool(int numberOfSlots, int depth) {
+        if(depth <= NUMBER_OF_HELD_STATES) {
+            throw new IllegalArgumentException("The depth must be larger than " + NUMBER_OF_HELD_STATES + ": " + depth);
+        }
+
+        this.depth = depth;
+        this.entities = new NetEntity[numberOfSlots][depth];
+        this.types = new Type[numberOfSlots][depth];
+        this.snapshotIds = new int[numberOfSlots][depth];
+        this.nextIndex = new int[numberOfSlots];
+
+        clear();
+    }
+
+    /**
+     * Forgets all of the decoded entities, this must be invoked whenever the snapshot ids start over
+     */
+    public void clear() {
+        for(int i = 0; i < this.entities.length; i++) {
+            for(int j = 0; j < this.depth; j++) {
+                this.entities[i][j] = null;
+                this.types[i][j] = null;
+                this.snapshotIds[i][j] = -1;
+            }
+            this.nextIndex[i] = 0;
+        }
+
+        this.appliedSnapshotId = -1;
+    }
+
+    /**
+     * The client has applied the game update of this snapshot (and every snapshot before it)
+     *
+     * @param snapshotId
+     */
+    public void setAppliedSnapshotId(int snapshotId) {
+        if(snapshotId > this.appliedSnapshotId) {
+            this.appliedSnapshotId = snapshotId;
+        }
+    }
+
+    /**
+     * @return the newest snapshot the client has applied
+     */
+    public int getAppliedSnapshotId() {
+        return appliedSnapshotId;
+    }
+
+    /**
+     * @param entityId
+     * @param index
+     * @return true if the entity at the index is no longer held by the client
+     */
+    private boolean isReusable(int entityId, int index) {
+        int newerId = this.snapshotIds[entityId][(index + NUMBER_OF_HELD_STATES) % this.depth];
+        return newerId > -1 && newerId <= this.appliedSnapshotId;
+    }
+
+    /**
+     * Reads the next entity from the buffer, reusing a previously decoded {@link NetEntity} of the same
+     * slot and type if it is no longer in use
+     *
+     * @param buffer
+     * @param entityId the slot of the entity
+     * @param snapshotId the snapshot being decoded
+     * @return the entity
+     */
+    public NetEntity readEntity(IOBuffer buffer, int entityId, int snapshotId) {
+        Type type = BufferIO.peekEntityType(buffer);
+
+        int index = this.nextIndex[entityId];
+        NetEntity entity = this.entities[entityId][index];
+        if(entity == null || this.types[entityId][index] != type || !isReusable(entityId, index)) {
+            entity = BufferIO.newNetEntity(type);
+            this.entities[entityId][index] = entity;
+            this.types[entityId][index] = type;
+            this.numberOfAllocated++;
+        }
+        else {
+            this.numberOfReused++;
+        }
+
+        this.snapshotIds[entityId][index] = snapshotId;
+        this.nextIndex[entityId] = (index + 1) % this.depth;
+
+        entity.read(buffer);
+        entity.id = entityId;
+        return entity;
+    }
+
+    /**
+     * @return the number of times an entity was reused
+     */
+    public long getNumberOfReused() {
+        return numberOfReused;
+    }
+
+    /**
+     * @return the number of entities that had to be created
+     */
+    public long getNumberOfAllocated() {
+        return numberOfAllocated;
+    }
+}
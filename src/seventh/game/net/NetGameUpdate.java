@@ -3,12 +3,20 @@
  */
 package seventh.game.net;
 
+import java.util.List;
+
 import harenet.BitArray;
 import harenet.IOBuffer;
 import harenet.messages.NetMessage;
+import seventh.game.SoundEventPool;
+import seventh.game.events.SoundEmittedEvent;
 import seventh.network.messages.BufferIO;
+import seventh.network.messages.NetField;
 import seventh.shared.Arrays;
+import seventh.shared.Bits;
 import seventh.shared.SeventhConstants;
+import seventh.shared.SoundType;
+import seventh.shared.SoundType.SoundSourceType;
 
 /**
  * @author Tony
@@ -19,12 +27,26 @@ public class NetGameUpdate implements NetMessage {
     public static final int SOUND_MASK = (1<<1);
     public static final int DEAD_ENTS_MASK = (1<<2);
     public static final int SPEC_MASK = (1<<3);
+    public static final int SNAPSHOT_MASK = (1<<4);
+    
+    /**
+     * The number of bits used to store the size of the encoded snapshot entities
+     */
+    private static final int SNAPSHOT_SIZE_BITS = 20;
+    
+    /**
+     * The max number of sounds in an update
+     */
+    public static final int MAX_NUMBER_OF_SOUNDS = Byte.MAX_VALUE;
     
     public NetEntity[] entities;
     public NetSound[] sounds;
     public byte numberOfSounds;
     
     public int time;
+    
+    /* the servers game clock, see NetField.SERVER_TIME */
+    public int serverTime;
     public int spectatingPlayerId = -1;
     
 
@@ -34,6 +56,20 @@ public class NetGameUpdate implements NetMessage {
     
     private boolean hasDeadEntities;
     
+    /* the entities encoded against a previous snapshot, see NetSnapshots */
+    private NetSnapshot snapshot;
+    private int snapshotId;
+    private int baselineSnapshotId;
+    private NetBits snapshotData;
+    
+    /* reused on the server, so that building an update doesn't allocate */
+    private NetBits snapshotBuffer;
+    private NetSound[] soundBuffer;
+    private NetSound[] positionalSounds;
+    private NetSoundByEntity[] entitySounds;
+    private int numberOfPositionalSounds;
+    private int numberOfEntitySounds;
+    private SoundEmittedEvent[] consolidatedSounds;
     
     protected byte bits;
     
@@ -62,7 +98,95 @@ public class NetGameUpdate implements NetMessage {
 //        Arrays.clear(sounds);
                 
         numberOfSounds = 0;
+        numberOfPositionalSounds = 0;
+        numberOfEntitySounds = 0;
         hasDeadEntities = true;
+        
+        snapshot = null;
+        snapshotData = null;
+    }
+    
+    /**
+     * Sets the encoded entities, when set these are sent in place of the {@link #entities}.
+     * 
+     * @see NetSnapshots#encode(NetGameUpdate, harenet.api.Connection, boolean)
+     * @param snapshot the snapshot of the entities
+     * @param baselineSnapshotId the snapshot the entities were encoded against, or -1 if they weren't
+     * @param snapshotData the encoded entities
+     */
+    public void setSnapshot(NetSnapshot snapshot, int baselineSnapshotId, NetBits snapshotData) {
+        this.snapshot = snapshot;
+        this.snapshotId = snapshot.getSnapshotId();
+        this.baselineSnapshotId = baselineSnapshotId;
+        this.snapshotData = snapshotData;
+    }
+    
+    /**
+     * @return the cleared buffer the entities are encoded into, this is reused between updates
+     */
+    public NetBits getSnapshotBuffer() {
+        if(snapshotBuffer == null) {
+            snapshotBuffer = new NetBits();
+        }
+        
+        snapshotBuffer.clear();
+        return snapshotBuffer;
+    }
+    
+    /**
+     * @return the snapshot id, only valid if this update has an encoded snapshot (on the client, this is -1 if 
+     * the update didn't have one)
+     */
+    public int getSnapshotId() {
+        return snapshotId;
+    }
+    
+    /**
+     * @return the snapshot the entities were encoded against, or -1 if they weren't
+     */
+    public int getBaselineSnapshotId() {
+        return baselineSnapshotId;
+    }
+    
+    /**
+     * Marks which packet the snapshot was sent out in, so that it can be used as a baseline once it is acknowledged
+     * 
+     * @param sequenceNumber
+     */
+    public void setSequenceNumberSent(int sequenceNumber) {
+        if(snapshot != null) {
+            snapshot.markSent(snapshotId, sequenceNumber);
+        }
+    }
+    
+    /**
+     * Marks which packets the snapshot was sent out in, when it was too large for a single packet
+     * 
+     * @param firstSequenceNumber
+     * @param lastSequenceNumber
+     */
+    public void setSequenceNumbersSent(int firstSequenceNumber, int lastSequenceNumber) {
+        if(snapshot != null) {
+            snapshot.markSent(snapshotId, firstSequenceNumber, lastSequenceNumber);
+        }
+    }
+    
+    /**
+     * Rebuilds the encoded entities from the received snapshots.  This must be invoked in the order 
+     * the updates were received, before the {@link #entities} are used.
+     * 
+     * @param snapshots the received snapshots
+     * @return true if the entities are available, false if the snapshot the entities were encoded against is
+     * no longer available
+     */
+    public boolean resolve(NetSnapshots snapshots) {
+        if(snapshotData == null) {
+            return true;
+        }
+        
+        boolean isResolved = snapshots.decode(this, snapshotId, baselineSnapshotId, snapshotData);
+        snapshotData = null;
+        return isResolved;
     }
     
     /* (non-Javadoc)
@@ -71,7 +195,17 @@ public class NetGameUpdate implements NetMessage {
     @Override
     public void read(IOBuffer buffer) {
         bits = buffer.getByte();
-        if( (bits & ENTITIES_MASK) != 0) {
+        
+        snapshotId = -1;
+        baselineSnapshotId = -1;
+        if( (bits & SNAPSHOT_MASK) != 0) {
+            snapshotId = buffer.getInt();
+            baselineSnapshotId = buffer.getInt();
+            
+            snapshotData = getSnapshotBuffer();
+            snapshotData.putBits(buffer, buffer.getIntBits(SNAPSHOT_SIZE_BITS));
+        }
+        else if( (bits & ENTITIES_MASK) != 0) {
             for(int i = 0; i < numberOfBytes; i++) {
                 entityBitArray.setDataElement(i, buffer.getByte());
             }
@@ -85,10 +219,10 @@ public class NetGameUpdate implements NetMessage {
         }
         
         if( (bits & SOUND_MASK) != 0) {
-            numberOfSounds = buffer.getByte();
-            sounds = new NetSound[numberOfSounds];
-            for(short i = 0; i < numberOfSounds; i++) {
-                sounds[i] = NetSound.readNetSound(buffer);                
+            int size = buffer.getByte();
+            numberOfSounds = 0;
+            for(int i = 0; i < size; i++) {
+                readNetSound(buffer);
             }
         }
         
@@ -102,9 +236,27 @@ public class NetGameUpdate implements NetMessage {
         if( (bits & SPEC_MASK) != 0) {
             spectatingPlayerId = buffer.getUnsignedByte();
         }
+        else {
+            spectatingPlayerId = -1;
+        }
         
         time = buffer.getInt();
-        
+        serverTime = NetField.SERVER_TIME.read(buffer);
+    }
+    
+    /**
+     * Reads the next sound into one of the reusable {@link NetSound}s
+     * 
+     * @see NetSound#readNetSound(IOBuffer)
+     * @param buffer
+     */
+    private void readNetSound(IOBuffer buffer) {
+        byte type = buffer.getByte();
+        NetSound sound = nextNetSound(SoundType.fromNet(Bits.getWithoutSignBit(type)).getSourceType());
+        if(sound != null) {
+            sound.type = type;
+            sound.read(buffer);
+        }
     }
     
     /* (non-Javadoc)
@@ -114,7 +266,10 @@ public class NetGameUpdate implements NetMessage {
     public void write(IOBuffer buffer) {
         bits = 0;
         
-        if(entities != null && entities.length > 0) {
+        if(snapshotData != null) {
+            bits |= SNAPSHOT_MASK;
+        }
+        else if(entities != null && entities.length > 0) {
             bits |= ENTITIES_MASK;
         }
         
@@ -132,7 +287,14 @@ public class NetGameUpdate implements NetMessage {
     
         buffer.putByte(bits);
         
-        if(entities != null && entities.length > 0) {
+        if( (bits & SNAPSHOT_MASK) != 0) {
+            buffer.putInt(snapshotId);
+            buffer.putInt(baselineSnapshotId);
+            
+            buffer.putIntBits(snapshotData.size(), SNAPSHOT_SIZE_BITS);
+            snapshotData.writeTo(buffer);
+        }
+        else if( (bits & ENTITIES_MASK) != 0) {
             entityBitArray.clear();
             
             for(int i = 0; i < entities.length; i++) {
@@ -172,7 +334,122 @@ public class NetGameUpdate implements NetMessage {
         }
         
         buffer.putInt(this.time);
+        NetField.SERVER_TIME.write(buffer, this.serverTime & NetField.SERVER_TIME.getMax());
+    }
+    
+    /**
+     * Takes the next reusable {@link NetSound} of the source type, making it the next sound of this update
+     * 
+     * @param sourceType
+     * @return the sound, or null if there is no more room
+     */
+    private NetSound nextNetSound(SoundSourceType sourceType) {
+        if(soundBuffer == null) {
+            soundBuffer = new NetSound[MAX_NUMBER_OF_SOUNDS];
+            positionalSounds = new NetSound[MAX_NUMBER_OF_SOUNDS];
+            entitySounds = new NetSoundByEntity[MAX_NUMBER_OF_SOUNDS];
+        }
+        
+        /* the sounds may have been replaced by setNetSounds */
+        if(sounds != soundBuffer) {
+            sounds = soundBuffer;
+            numberOfSounds = 0;
+        }
+        
+        if(numberOfSounds >= soundBuffer.length) {
+            return null;
+        }
+        
+        NetSound sound = null;
+        switch(sourceType) {
+            case REFERENCED:
+            case REFERENCED_ATTACHED: {
+                sound = entitySounds[numberOfEntitySounds];
+                if(sound == null) {
+                    sound = entitySounds[numberOfEntitySounds] = new NetSoundByEntity();
+                }
+                numberOfEntitySounds++;
+                break;
+            }
+            default: {
+                sound = positionalSounds[numberOfPositionalSounds];
+                if(sound == null) {
+                    sound = positionalSounds[numberOfPositionalSounds] = new NetSound();
+                }
+                numberOfPositionalSounds++;
+            }
+        }
+        
+        sounds[numberOfSounds++] = sound;
+        return sound;
+    }
+    
+    /**
+     * Adds a sound, reusing the {@link NetSound}s of previous updates.  Sounds past
+     * {@link #MAX_NUMBER_OF_SOUNDS} are ignored.
+     * 
+     * @param event
+     * @return the added sound, or null if there is no more room
+     */
+    public NetSound addNetSound(SoundEmittedEvent event) {
+        NetSound sound = nextNetSound(event.getSoundType().getSourceType());
+        if(sound != null) {
+            sound.set(event);
+        }
+        return sound;
+    }
+    
+    /**
+     * Adds each of the sounds
+     * 
+     * @see #addNetSound(SoundEmittedEvent)
+     * @param events
+     */
+    public void addNetSounds(List<SoundEmittedEvent> events) {
+        int size = events.size();
+        for(int i = 0; i < size; i++) {
+            addNetSound(events.get(i));
+        }
+    }
+    
+    /**
+     * Adds each of the sounds
+     * 
+     * @see #addNetSound(SoundEmittedEvent)
+     * @param events
+     */
+    public void addNetSounds(SoundEventPool events) {
+        int size = events.numberOfSounds();
+        for(int i = 0; i < size; i++) {
+            addNetSound(events.getSound(i));
+        }
+    }
+    
+    /**
+     * Adds each of the sounds, removing any duplicates
+     * 
+     * @see NetSound#consolidateToNetSounds(List)
+     * @param events
+     */
+    public void consolidateNetSounds(List<SoundEmittedEvent> events) {
+        if(consolidatedSounds == null) {
+            consolidatedSounds = new SoundEmittedEvent[SeventhConstants.MAX_SOUNDS];
+        }
+        
+        int size = events.size();
+        for(int i = 0; i < size; i++) {
+            SoundEmittedEvent event = events.get(i);
+            if(consolidatedSounds[event.getBufferIndex()] == null) {
+                consolidatedSounds[event.getBufferIndex()] = event;
+            }
+        }
         
+        for(int i = 0; i < consolidatedSounds.length; i++) {
+            if(consolidatedSounds[i] != null) {
+                addNetSound(consolidatedSounds[i]);
+                consolidatedSounds[i] = null;
+            }
+        }
     }
     
     /**
@@ -5,6 +5,7 @@ package seventh.game.net;
 
 import harenet.IOBuffer;
 import seventh.game.entities.Entity.Type;
+import seventh.network.messages.NetField;
 
 
 /**
@@ -30,12 +31,12 @@ public class NetLight extends NetEntity {
     public void read(IOBuffer buffer) {    
         super.read(buffer);
         
-        r = (short)(buffer.getUnsignedByte());
-        g = (short)(buffer.getUnsignedByte());
-        b = (short)(buffer.getUnsignedByte());
+        r = (short)NetField.COLOR.read(buffer);
+        g = (short)NetField.COLOR.read(buffer);
+        b = (short)NetField.COLOR.read(buffer);
         
-        luminacity = (short)(buffer.getUnsignedByte());
-        size = buffer.getShort();
+        luminacity = (short)NetField.COLOR.read(buffer);
+        size = (short)NetField.LIGHT_SIZE.read(buffer);
     }
     
     /* (non-Javadoc)
@@ -45,11 +46,11 @@ public class NetLight extends NetEntity {
     public void write(IOBuffer buffer) {    
         super.write(buffer);
         
-        buffer.putUnsignedByte(r);
-        buffer.putUnsignedByte(g);
-        buffer.putUnsignedByte(b);
+        NetField.COLOR.write(buffer, r);
+        NetField.COLOR.write(buffer, g);
+        NetField.COLOR.write(buffer, b);
         
-        buffer.putUnsignedByte(luminacity);
-        buffer.putShort(size);
+        NetField.COLOR.write(buffer, luminacity);
+        NetField.LIGHT_SIZE.write(buffer, size);
     }
 }
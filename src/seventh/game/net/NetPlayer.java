@@ -7,6 +7,7 @@ import harenet.IOBuffer;
 import seventh.game.entities.Entity.State;
 import seventh.game.entities.Entity.Type;
 import seventh.network.messages.BufferIO;
+import seventh.network.messages.NetField;
 
 /**
  * The full player state.  This is message is for the local player.
@@ -33,6 +34,9 @@ public class NetPlayer extends NetEntity {
     
     public int vehicleId;
     
+    /* the last input the server has processed, see PlayerInputMessage */
+    public int inputSequence;
+    
     protected byte bits;
     public NetWeapon weapon;
     
@@ -61,26 +65,33 @@ public class NetPlayer extends NetEntity {
     @Override
     public void read(IOBuffer buffer) {    
         super.read(buffer);
-        bits = buffer.getByte();
+        bits = (byte)NetField.PLAYER_FLAGS.read(buffer);
         
         orientation = BufferIO.readAngle(buffer);
         state = BufferIO.readState(buffer);
-        grenades = buffer.getByteBits(4);
-        health = buffer.getByteBits(7);
+        grenades = (byte)NetField.GRENADES.read(buffer);
+        health = (byte)NetField.HEALTH.read(buffer);
+        inputSequence = NetField.INPUT_SEQUENCE.read(buffer);
         
+        /* this may be a reused entity (see NetEntityPool), so every 
+         * field must be set 
+         */
         if((bits & HAS_WEAPON) != 0) {            
-            weapon = new NetWeapon();
+            if(weapon == null) {
+                weapon = new NetWeapon();
+            }
             weapon.read(buffer);
         }
+        else {
+            weapon = null;
+        }
                 
-        if((bits & IS_OPERATING_VEHICLE) != 0) {
-            isOperatingVehicle = true;
-            vehicleId = buffer.getUnsignedByte();
+        isOperatingVehicle = (bits & IS_OPERATING_VEHICLE) != 0;
+        if(isOperatingVehicle) {
+            vehicleId = NetField.ENTITY_ID.read(buffer);
         }        
         
-        if((bits & IS_SMOKE_GRENADES) != 0) {
-            isSmokeGrenades = true;
-        }
+        isSmokeGrenades = (bits & IS_SMOKE_GRENADES) != 0;
     }
     
     /* (non-Javadoc)
@@ -92,19 +103,20 @@ public class NetPlayer extends NetEntity {
         
         bits = 0;
         checkBits();
-        buffer.putByte(bits);
+        NetField.PLAYER_FLAGS.write(buffer, bits);
         
         BufferIO.writeAngle(buffer, orientation);
         BufferIO.writeState(buffer, state);
-        buffer.putByteBits(grenades, 4);
-        buffer.putByteBits(health, 7);
+        NetField.GRENADES.write(buffer, grenades);
+        NetField.HEALTH.write(buffer, health);
+        NetField.INPUT_SEQUENCE.write(buffer, inputSequence);
         
         if(weapon != null && !isOperatingVehicle) {
             weapon.write(buffer);
         }
         
         if(isOperatingVehicle) {
-            buffer.putUnsignedByte(vehicleId);
+            NetField.ENTITY_ID.write(buffer, vehicleId);
         }
     }
 }
@@ -8,6 +8,7 @@ import seventh.game.entities.Entity.State;
 import seventh.game.entities.Entity.Type;
 import seventh.game.weapons.Weapon.WeaponState;
 import seventh.network.messages.BufferIO;
+import seventh.network.messages.NetField;
 
 /**
  * This is a partial message for other entities that are NOT the local
@@ -39,7 +40,7 @@ public class NetPlayerPartial extends NetEntity {
                 
         orientation = BufferIO.readAngle(buffer);
         state = BufferIO.readState(buffer);
-        health = buffer.getByteBits(7);
+        health = (byte)NetField.HEALTH.read(buffer);
         
         /* If this player is in a vehicle,
          * send the vehicle ID in lieu of 
@@ -47,9 +48,11 @@ public class NetPlayerPartial extends NetEntity {
          */        
         if(state.isVehicleState()) {
             isOperatingVehicle = true;
-            vehicleId = buffer.getUnsignedByte();
+            vehicleId = NetField.ENTITY_ID.read(buffer);
+            weapon = null;
         }
         else {            
+            isOperatingVehicle = false;
             readWeapon(buffer);
         }
     }
@@ -59,7 +62,10 @@ public class NetPlayerPartial extends NetEntity {
      * @param buffer
      */
     protected void readWeapon(IOBuffer buffer) {
-        weapon = new NetWeapon();
+        /* this may be a reused entity (see NetEntityPool) */
+        if(weapon == null) {
+            weapon = new NetWeapon();
+        }
         weapon.type = BufferIO.readType(buffer);
         weapon.weaponState = BufferIO.readWeaponState(buffer);
     }
@@ -73,7 +79,7 @@ public class NetPlayerPartial extends NetEntity {
                 
         BufferIO.writeAngle(buffer, orientation);
         BufferIO.writeState(buffer, state);        
-        buffer.putByteBits(health, 7);
+        NetField.HEALTH.write(buffer, health);
         
 
         /* If this player is in a vehicle,
@@ -81,7 +87,7 @@ public class NetPlayerPartial extends NetEntity {
          * weapon information
          */        
         if(state.isVehicleState()) {
-            buffer.putUnsignedByte(vehicleId);
+            NetField.ENTITY_ID.write(buffer, vehicleId);
         }
         else {            
             writeWeapon(buffer);
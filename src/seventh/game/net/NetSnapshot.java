@@ -0,0 +1,229 @@
+/*
+ * see license.txt 
+ */
+package seventh.game.net;
+
+import harenet.IOBuffer;
+import harenet.api.Connection;
+import seventh.shared.SeventhConstants;
+
+/**
+ * The serialized state of each {@link NetEntity} for a single {@link NetGameUpdate}.  This is what
+ * the next {@link NetGameUpdate}s are delta compressed against, once the client acknowledges 
+ * receiving it.
+ * 
+ * @author Tony
+ *
+ */
+public class NetSnapshot {
+
+    private int snapshotId;
+    
+    private final int[] offsets;
+    private final int[] lengths;
+    private final NetBits bits;
+    
+    private int currentEntity;
+    
+    /* the packets this snapshot was sent out in, this is set from
+     * the network thread
+     */
+    private long sent;
+    private int sentSpan;
+    private boolean isAcknowledged;
+    
+    /**
+     * 
+     */
+    public NetSnapshot() {
+        this.offsets = new int[SeventhConstants.MAX_ENTITIES];
+        this.lengths = new int[SeventhConstants.MAX_ENTITIES];
+        this.bits = new NetBits(8 * 1024);
+        
+        reset(-1);
+    }
+    
+    /**
+     * Clears out this snapshot, so that it can be reused
+     * 
+     * @param snapshotId the new snapshot id
+     */
+    public void reset(int snapshotId) {
+        this.snapshotId = snapshotId;
+        this.bits.clear();
+        
+        for(int i = 0; i < this.lengths.length; i++) {
+            this.lengths[i] = -1;
+        }
+        
+        this.currentEntity = -1;
+        synchronized (this) {
+            this.sent = -1;
+        }
+        this.isAcknowledged = false;
+    }
+    
+    /**
+     * @return the snapshotId
+     */
+    public int getSnapshotId() {
+        return snapshotId;
+    }
+    
+    /**
+     * Starts storing the bits of an entity
+     * 
+     * @param entityId
+     */
+    public void beginEntity(int entityId) {
+        this.currentEntity = entityId;
+        this.offsets[entityId] = this.bits.size();
+    }
+    
+    /**
+     * Appends bits to the current entity
+     * 
+     * @param value
+     * @param numberOfBits (up to 64)
+     */
+    public void putBits(long value, int numberOfBits) {
+        this.bits.putBits(value, numberOfBits);
+    }
+    
+    /**
+     * Appends bits read from the buffer to the current entity
+     * 
+     * @param buffer
+     * @param numberOfBits
+     */
+    public void putBits(IOBuffer buffer, int numberOfBits) {
+        this.bits.putBits(buffer, numberOfBits);
+    }
+    
+    /**
+     * Finishes storing the current entity
+     */
+    public void endEntity() {
+        if(this.currentEntity > -1) {
+            this.lengths[this.currentEntity] = this.bits.size() - this.offsets[this.currentEntity];
+            this.currentEntity = -1;
+        }
+    }
+    
+    /**
+     * Copies the entity from the other snapshot into this one
+     * 
+     * @param entityId
+     * @param other
+     */
+    public void copyEntity(int entityId, NetSnapshot other) {
+        beginEntity(entityId);
+        this.bits.putBits(other.bits, other.offsets[entityId], other.lengths[entityId]);
+        endEntity();
+    }
+    
+    /**
+     * @param entityId
+     * @return true if the entity is in this snapshot
+     */
+    public boolean hasEntity(int entityId) {
+        return this.lengths[entityId] > -1;
+    }
+    
+    /**
+     * @param entityId
+     * @return the number of bits the entity takes up, or -1 if the entity isn't in this snapshot
+     */
+    public int getBitLength(int entityId) {
+        return this.lengths[entityId];
+    }
+    
+    /**
+     * @param entityId
+     * @param bitIndex the bit index relative to the start of the entity
+     * @param numberOfBits (up to 64)
+     * @return the entities bits
+     */
+    public long getBits(int entityId, int bitIndex, int numberOfBits) {
+        return this.bits.getBits(this.offsets[entityId] + bitIndex, numberOfBits);
+    }
+    
+    /**
+     * Writes out the entities bits to the buffer
+     * 
+     * @param entityId
+     * @param buffer
+     */
+    public void writeEntity(int entityId, IOBuffer buffer) {
+        this.bits.writeTo(buffer, this.offsets[entityId], this.lengths[entityId]);
+    }
+    
+    /**
+     * Marks which packet this snapshot was sent out in.  This is ignored if this snapshot has 
+     * since been reused for another snapshot.
+     * 
+     * @param snapshotId
+     * @param sequenceNumber
+     */
+    public void markSent(int snapshotId, int sequenceNumber) {
+        markSent(snapshotId, sequenceNumber, sequenceNumber);
+    }
+    
+    /**
+     * Marks which packets this snapshot was sent out in, when it was too large for a single
+     * packet.  This is ignored if this snapshot has since been reused for another snapshot.
+     * 
+     * @param snapshotId
+     * @param firstSequenceNumber
+     * @param lastSequenceNumber
+     */
+    public synchronized void markSent(int snapshotId, int firstSequenceNumber, int lastSequenceNumber) {
+        this.sent = ((long)snapshotId << 32) | (lastSequenceNumber & 0xFFFFFFFFL);
+        this.sentSpan = lastSequenceNumber - firstSequenceNumber;
+    }
+    
+    /**
+     * Determines if the client has received this snapshot
+     * 
+     * @param conn the connection this snapshot was sent to
+     * @return true if the client has acknowledged receiving this snapshot
+     */
+    public boolean isAcknowledged(Connection conn) {
+        if(!this.isAcknowledged && this.snapshotId > -1) {
+            long sent;
+            int sentSpan;
+            synchronized (this) {
+                sent = this.sent;
+                sentSpan = this.sentSpan;
+            }
+            
+            if(sent != -1 && (int)(sent >>> 32) == this.snapshotId) {
+                this.isAcknowledged = isAcknowledged(conn, (int)sent - sentSpan, (int)sent);
+            }
+        }
+        
+        return this.isAcknowledged;
+    }
+    
+    /**
+     * @param conn
+     * @param firstSequenceNumber
+     * @param lastSequenceNumber
+     * @return true if every packet in the range has been acknowledged, a fragment of this snapshot
+     * may have been in any one of them
+     */
+    private boolean isAcknowledged(Connection conn, int firstSequenceNumber, int lastSequenceNumber) {
+        /* past the ack history, these can't all be known to be acknowledged */
+        if(lastSequenceNumber - firstSequenceNumber >= 32) {
+            return false;
+        }
+        
+        for(int i = firstSequenceNumber; i <= lastSequenceNumber; i++) {
+            if(!conn.isAcknowledged(i)) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+}
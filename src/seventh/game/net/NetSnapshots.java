@@ -0,0 +1,418 @@
+/*
+ * see license.txt 
+ */
+package seventh.game.net;
+
+import harenet.ByteBufferIOBuffer;
+import harenet.IOBuffer;
+import harenet.api.Connection;
+import seventh.network.messages.BufferIO;
+
+/**
+ * The last {@link #HISTORY_SIZE} {@link NetSnapshot}s of a connection.  
+ * 
+ * <p>
+ * On the server, this is used to delta compress the {@link NetGameUpdate}s against the newest 
+ * snapshot the client has acknowledged receiving.  Each {@link NetEntity} is sent as either:
+ * <ul>
+ *  <li>{@link #FULL} - the entity is sent as is</li>
+ *  <li>{@link #UNCHANGED} - the entity is the same as in the acknowledged snapshot</li>
+ *  <li>{@link #DELTA} - only the chunks of the entity that changed since the acknowledged snapshot are sent</li>
+ * </ul>
+ * If the client has not acknowledged any of the snapshots, every entity is sent as is.  A client that 
+ * acknowledged a snapshot it could not rebuild asks for a {@link #resync(int)}, after which the snapshots 
+ * already sent are no longer used as baselines.
+ * 
+ * <p>
+ * On the client, this keeps the received snapshots so that the delta compressed {@link NetGameUpdate}s
+ * can be rebuilt.
+ * 
+ * @author Tony
+ *
+ */
+public class NetSnapshots {
+
+    /**
+     * The number of snapshots kept, this matches the number of packets covered 
+     * by the harenet acknowledgement history
+     */
+    public static final int HISTORY_SIZE = 32;
+    
+    /**
+     * The number of bits used to encode how an entity was sent
+     */
+    public static final int OP_BITS = 2;
+    
+    public static final int FULL = 0;
+    public static final int UNCHANGED = 1;
+    public static final int DELTA = 2;
+    
+    /**
+     * The size of the chunks that are checked for changes
+     */
+    public static final int CHUNK_BITS = 8;
+    
+    private static final int SCRATCH_SIZE = 32 * 1024;
+    
+    private NetSnapshot[] snapshots;
+    private int nextSnapshotId;
+    
+    /* only the snapshots from this one on can be used as baselines */
+    private int resyncSnapshotId;
+    
+    private IOBuffer scratch;
+    private IOBuffer entityScratch;
+    
+    /* if set, the decoded entities are reused */
+    private NetEntityPool entityPool;
+    
+    /**
+     * 
+     */
+    public NetSnapshots() {
+        this.snapshots = new NetSnapshot[HISTORY_SIZE];
+        for(int i = 0; i < this.snapshots.length; i++) {
+            this.snapshots[i] = new NetSnapshot();
+        }
+        
+        this.scratch = new ByteBufferIOBuffer(SCRATCH_SIZE);
+        this.entityScratch = new ByteBufferIOBuffer(SCRATCH_SIZE / 8);
+        this.nextSnapshotId = 0;
+        this.resyncSnapshotId = 0;
+    }
+    
+    /**
+     * Removes all of the snapshots
+     */
+    public void clear() {
+        for(int i = 0; i < this.snapshots.length; i++) {
+            this.snapshots[i].reset(-1);
+        }
+        this.nextSnapshotId = 0;
+        this.resyncSnapshotId = 0;
+        
+        if(this.entityPool != null) {
+            this.entityPool.clear();
+        }
+    }
+    
+    /**
+     * Sets the pool the decoded entities are taken from.  When set, the client must report the 
+     * snapshots it has applied with {@link #setAppliedSnapshotId(int)} for the entities to be reused.
+     * 
+     * @param entityPool the pool, or null to create new entities for each update
+     */
+    public void setEntityPool(NetEntityPool entityPool) {
+        this.entityPool = entityPool;
+    }
+    
+    /**
+     * @return the pool the decoded entities are taken from, or null if not set
+     */
+    public NetEntityPool getEntityPool() {
+        return entityPool;
+    }
+    
+    /**
+     * The client has applied the game update of this snapshot, the entities it holds on to
+     * from older snapshots can now be reused
+     * 
+     * @see NetEntityPool#setAppliedSnapshotId(int)
+     * @param snapshotId
+     */
+    public void setAppliedSnapshotId(int snapshotId) {
+        if(this.entityPool != null) {
+            this.entityPool.setAppliedSnapshotId(snapshotId);
+        }
+    }
+    
+    /**
+     * @param snapshotId
+     * @return the snapshot if it is still in the history, otherwise null
+     */
+    public NetSnapshot get(int snapshotId) {
+        if(snapshotId < 0) {
+            return null;
+        }
+        
+        NetSnapshot snapshot = this.snapshots[snapshotId % HISTORY_SIZE];
+        if(snapshot.getSnapshotId() == snapshotId) {
+            return snapshot;
+        }
+        
+        return null;
+    }
+    
+    /**
+     * The client failed to rebuild the update of this snapshot, it acknowledged a snapshot it does not have.  The 
+     * next update is sent in full, and only it and the following snapshots are used as baselines.
+     * 
+     * <p>
+     * The client keeps asking until it receives a full update, so a request for a snapshot sent before the last 
+     * resync is ignored.
+     * 
+     * @param snapshotId the snapshot the client failed to rebuild
+     */
+    public void resync(int snapshotId) {
+        if(snapshotId >= this.resyncSnapshotId && snapshotId < this.nextSnapshotId) {
+            this.resyncSnapshotId = this.nextSnapshotId;
+        }
+    }
+    
+    /**
+     * Finds the newest snapshot the client has acknowledged
+     * 
+     * @param conn
+     * @param snapshotId the snapshot that is about to be sent
+     * @return the newest acknowledged snapshot, or null if none of the snapshots have been acknowledged
+     */
+    private NetSnapshot findBaseline(Connection conn, int snapshotId) {
+        NetSnapshot baseline = null;
+        for(int i = 0; i < this.snapshots.length; i++) {
+            NetSnapshot snapshot = this.snapshots[i];
+            int id = snapshot.getSnapshotId();
+            
+            /* the client only remembers the last HISTORY_SIZE snapshots */
+            if(id >= this.resyncSnapshotId && id > snapshotId - HISTORY_SIZE && snapshot.isAcknowledged(conn)) {
+                if(baseline == null || id > baseline.getSnapshotId()) {
+                    baseline = snapshot;
+                }
+            }
+        }
+        
+        return baseline;
+    }
+    
+    /**
+     * Encodes the entities of the {@link NetGameUpdate}, recording them as the next snapshot sent to 
+     * the client.
+     * 
+     * @param netUpdate
+     * @param conn the connection the update is being sent to
+     * @param isDelta if the entities should be delta compressed against the newest acknowledged snapshot
+     */
+    public void encode(NetGameUpdate netUpdate, Connection conn, boolean isDelta) {
+        int snapshotId = this.nextSnapshotId++;
+        
+        NetSnapshot baseline = isDelta ? findBaseline(conn, snapshotId) : null;
+        
+        NetSnapshot snapshot = this.snapshots[snapshotId % HISTORY_SIZE];
+        snapshot.reset(snapshotId);
+        
+        NetEntity[] entities = netUpdate.entities;
+        
+        NetBits data = netUpdate.getSnapshotBuffer();
+        for(int i = 0; i < entities.length; i += Byte.SIZE) {
+            int presence = 0;
+            for(int j = 0; j < Byte.SIZE && i + j < entities.length; j++) {
+                if(entities[i + j] != null) {
+                    presence |= (1 << j);
+                }
+            }
+            data.putBits(presence, Byte.SIZE);
+        }
+        
+        for(int i = 0; i < entities.length; i++) {
+            if(entities[i] == null) {
+                continue;
+            }
+            
+            this.scratch.clear();
+            entities[i].write(this.scratch);
+            int numberOfBits = this.scratch.bitPosition();
+            this.scratch.bitPosition(0);
+            
+            snapshot.beginEntity(i);
+            snapshot.putBits(this.scratch, numberOfBits);
+            snapshot.endEntity();
+            
+            if(baseline != null) {
+                encodeEntity(data, i, snapshot, baseline);
+            }
+            else {
+                writeFull(data, i, snapshot);
+            }
+        }
+        
+        netUpdate.setSnapshot(snapshot, baseline != null ? baseline.getSnapshotId() : -1, data);
+    }
+    
+    private void writeFull(NetBits data, int entityId, NetSnapshot snapshot) {
+        int numberOfBits = snapshot.getBitLength(entityId);
+        for(int bit = 0; bit < numberOfBits; bit += 64) {
+            int n = Math.min(64, numberOfBits - bit);
+            data.putBits(snapshot.getBits(entityId, bit, n), n);
+        }
+    }
+    
+    /**
+     * Encodes the entity against the baseline
+     */
+    private void encodeEntity(NetBits data, int entityId, NetSnapshot snapshot, NetSnapshot baseline) {
+        int numberOfBits = snapshot.getBitLength(entityId);
+        
+        /* if the size of the entity changed (different type, or the entity
+         * has a variable length field that changed) send the whole thing
+         */
+        if(!baseline.hasEntity(entityId) || baseline.getBitLength(entityId) != numberOfBits) {
+            data.putBits(FULL, OP_BITS);
+            writeFull(data, entityId, snapshot);
+            return;
+        }
+        
+        int numberOfChunks = (numberOfBits + CHUNK_BITS - 1) / CHUNK_BITS;
+        int deltaSize = numberOfChunks;
+        for(int chunk = 0; chunk < numberOfChunks; chunk++) {
+            int bit = chunk * CHUNK_BITS;
+            int n = Math.min(CHUNK_BITS, numberOfBits - bit);
+            if(snapshot.getBits(entityId, bit, n) != baseline.getBits(entityId, bit, n)) {
+                deltaSize += n;
+            }
+        }
+        
+        if(deltaSize == numberOfChunks) {
+            data.putBits(UNCHANGED, OP_BITS);
+        }
+        else if(deltaSize < numberOfBits) {
+            data.putBits(DELTA, OP_BITS);
+            
+            /* the mask of which chunks changed, followed by the changed chunks */
+            for(int chunk = 0; chunk < numberOfChunks; chunk++) {
+                int bit = chunk * CHUNK_BITS;
+                int n = Math.min(CHUNK_BITS, numberOfBits - bit);
+                data.putBits(snapshot.getBits(entityId, bit, n) != baseline.getBits(entityId, bit, n) ? 1 : 0, 1);
+            }
+            
+            for(int chunk = 0; chunk < numberOfChunks; chunk++) {
+                int bit = chunk * CHUNK_BITS;
+                int n = Math.min(CHUNK_BITS, numberOfBits - bit);
+                long value = snapshot.getBits(entityId, bit, n);
+                if(value != baseline.getBits(entityId, bit, n)) {
+                    data.putBits(value, n);
+                }
+            }
+        }
+        else {
+            data.putBits(FULL, OP_BITS);
+            writeFull(data, entityId, snapshot);
+        }
+    }
+    
+    /**
+     * Rebuilds the entities of a delta compressed {@link NetGameUpdate}, storing the result as a 
+     * received snapshot.
+     * 
+     * @param netUpdate
+     * @param snapshotId
+     * @param baselineSnapshotId the snapshot the update was compressed against, or -1 if it wasn't
+     * @param data the encoded entities
+     * @return true if the entities were rebuilt, false if the baseline snapshot is no longer available
+     */
+    public boolean decode(NetGameUpdate netUpdate, int snapshotId, int baselineSnapshotId, NetBits data) {
+        NetSnapshot baseline = null;
+        if(baselineSnapshotId > -1) {
+            baseline = get(baselineSnapshotId);
+            if(baseline == null) {
+                return false;
+            }
+        }
+        
+        NetSnapshot snapshot = this.snapshots[snapshotId % HISTORY_SIZE];
+        if(snapshot == baseline) {
+            return false;
+        }
+        
+        snapshot.reset(snapshotId);
+        
+        NetEntity[] entities = netUpdate.entities;
+        
+        /* the presence bits are read straight from the data, the 
+         * entities follow them
+         */
+        int presenceBits = ((entities.length + Byte.SIZE - 1) / Byte.SIZE) * Byte.SIZE;
+        
+        this.scratch.clear();
+        data.writeTo(this.scratch);
+        this.scratch.bitPosition(presenceBits);
+        
+        for(int i = 0; i < entities.length; i++) {
+            if(data.getBits(i, 1) == 0) {
+                continue;
+            }
+            
+            int op = (baseline != null) ? this.scratch.getIntBits(OP_BITS) : FULL;
+            switch(op) {
+                case UNCHANGED: {
+                    if(!baseline.hasEntity(i)) {
+                        snapshot.reset(-1);
+                        return false;
+                    }
+                    snapshot.copyEntity(i, baseline);
+                    entities[i] = readEntity(i, snapshot, snapshotId);
+                    break;
+                }
+                case DELTA: {
+                    int numberOfBits = baseline.getBitLength(i);
+                    if(numberOfBits < 0) {
+                        snapshot.reset(-1);
+                        return false;
+                    }
+                    
+                    /* the mask of changed chunks precedes the changed chunks, the
+                     * scratch buffer holds the same bits as the data
+                     */
+                    int numberOfChunks = (numberOfBits + CHUNK_BITS - 1) / CHUNK_BITS;
+                    int maskPosition = this.scratch.bitPosition();
+                    this.scratch.bitPosition(maskPosition + numberOfChunks);
+                    
+                    snapshot.beginEntity(i);
+                    for(int chunk = 0; chunk < numberOfChunks; chunk++) {
+                        int bit = chunk * CHUNK_BITS;
+                        int n = Math.min(CHUNK_BITS, numberOfBits - bit);
+                        
+                        boolean isChanged = data.getBits(maskPosition + chunk, 1) != 0;
+                        snapshot.putBits(isChanged ? this.scratch.getLongBits(n) : baseline.getBits(i, bit, n), n);
+                    }
+                    snapshot.endEntity();
+                    
+                    entities[i] = readEntity(i, snapshot, snapshotId);
+                    break;
+                }
+                case FULL: {
+                    int start = this.scratch.bitPosition();
+                    entities[i] = readEntity(this.scratch, i, snapshotId);
+                    int numberOfBits = this.scratch.bitPosition() - start;
+                    
+                    this.scratch.bitPosition(start);
+                    snapshot.beginEntity(i);
+                    snapshot.putBits(this.scratch, numberOfBits);
+                    snapshot.endEntity();
+                    break;
+                }
+                default: {
+                    snapshot.reset(-1);
+                    return false;
+                }
+            }
+            
+            entities[i].id = i;
+        }
+        
+        return true;
+    }
+    
+    private NetEntity readEntity(int entityId, NetSnapshot snapshot, int snapshotId) {
+        this.entityScratch.clear();
+        snapshot.writeEntity(entityId, this.entityScratch);
+        this.entityScratch.bitPosition(0);
+        return readEntity(this.entityScratch, entityId, snapshotId);
+    }
+    
+    private NetEntity readEntity(IOBuffer buffer, int entityId, int snapshotId) {
+        if(this.entityPool != null) {
+            return this.entityPool.readEntity(buffer, entityId, snapshotId);
+        }
+        
+        return BufferIO.readEntity(buffer);
+    }
+}
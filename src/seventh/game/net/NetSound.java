@@ -121,6 +121,34 @@ public class NetSound implements NetMessage {
         this.hasPositionalInformation = true;
     }
     
+    /**
+     * Sets this sound from the {@link SoundEmittedEvent}, this allows for {@link NetSound}s to be reused
+     * 
+     * @param event
+     */
+    public void set(SoundEmittedEvent event) {
+        this.hasPositionalInformation = false;
+        this.posX = 0;
+        this.posY = 0;
+        
+        switch(event.getSoundType().getSourceType()) {
+            case POSITIONAL: {
+                setPos(event.getPos());
+                enablePosition();
+                break;
+            }
+            case REFERENCED: 
+            case REFERENCED_ATTACHED: {
+                /* NOTE: this does not set the enabled position flag */
+                setPos(event.getPos());
+                break;
+            }
+            default:
+        }
+        
+        setSoundType(event.getSoundType());
+    }
+    
     /**
      * Converts the {@link SoundEmittedEvent} into a {@link NetSound}
      * @param event
@@ -128,19 +156,15 @@ public class NetSound implements NetMessage {
     public static NetSound toNetSound(SoundEmittedEvent event) {
         NetSound sound = null;
         switch(event.getSoundType().getSourceType()) {
-            case POSITIONAL: {        
-                sound = new NetSound(event.getPos());
-                break;
-            }
             case REFERENCED: 
             case REFERENCED_ATTACHED: {
-                sound = new NetSoundByEntity(event.getPos(), event.getEntityId());
+                sound = new NetSoundByEntity();
                 break;
             }
             default: sound = new NetSound();
         }
         
-        sound.setSoundType(event.getSoundType());
+        sound.set(event);
         
         return sound;
     }
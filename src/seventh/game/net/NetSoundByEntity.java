@@ -4,6 +4,7 @@
 package seventh.game.net;
 
 import harenet.IOBuffer;
+import seventh.game.events.SoundEmittedEvent;
 import seventh.math.Vector2f;
 
 /**
@@ -28,6 +29,15 @@ public class NetSoundByEntity extends NetSound {
         this.entityId = entityId;
     }
     
+    /* (non-Javadoc)
+     * @see seventh.game.net.NetSound#set(seventh.game.events.SoundEmittedEvent)
+     */
+    @Override
+    public void set(SoundEmittedEvent event) {
+        super.set(event);
+        this.entityId = event.getEntityId();
+    }
+    
     /* (non-Javadoc)
      * @see seventh.network.messages.NetMessage#read(java.nio.ByteBuffer)
      */
@@ -3,7 +3,9 @@
  */
 package seventh.game.net;
 
+import seventh.game.entities.Entity.State;
 import seventh.game.entities.Entity.Type;
+import seventh.game.weapons.Weapon.WeaponState;
 import seventh.network.messages.BufferIO;
 import seventh.shared.SeventhConstants;
 import harenet.IOBuffer;
@@ -42,11 +44,11 @@ public class NetTank extends NetVehicle {
     public void read(IOBuffer buffer) {    
         super.read(buffer);
         
-        state = buffer.getByte();
+        state = buffer.getByteBits(State.numOfBits());
         orientation = BufferIO.readAngle(buffer);
         turretOrientation = BufferIO.readAngle(buffer);
-        primaryWeaponState = buffer.getByte();
-        secondaryWeaponState = buffer.getByte();
+        primaryWeaponState = buffer.getByteBits(WeaponState.numOfBits());
+        secondaryWeaponState = buffer.getByteBits(WeaponState.numOfBits());
         operatorId = BufferIO.readPlayerId(buffer);
     }
     
@@ -57,12 +59,12 @@ public class NetTank extends NetVehicle {
     public void write(IOBuffer buffer) {    
         super.write(buffer);
         
-        buffer.putByte(state);
+        buffer.putByteBits(state, State.numOfBits());
         BufferIO.writeAngle(buffer, orientation);
         BufferIO.writeAngle(buffer, turretOrientation);
         
-        buffer.putByte(primaryWeaponState);
-        buffer.putByte(secondaryWeaponState);
+        buffer.putByteBits(primaryWeaponState, WeaponState.numOfBits());
+        buffer.putByteBits(secondaryWeaponState, WeaponState.numOfBits());
         BufferIO.writePlayerId(buffer, operatorId);
     }
 }
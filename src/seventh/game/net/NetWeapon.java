@@ -8,6 +8,7 @@ import harenet.messages.NetMessage;
 import seventh.game.entities.Entity.Type;
 import seventh.game.weapons.Weapon.WeaponState;
 import seventh.network.messages.BufferIO;
+import seventh.network.messages.NetField;
 
 /**
  * @author Tony
@@ -25,8 +26,8 @@ public class NetWeapon implements NetMessage {
     @Override
     public void read(IOBuffer buffer) {
         type = BufferIO.readType(buffer);
-        ammoInClip = (short)buffer.getUnsignedByte();
-        totalAmmo = buffer.getShort();
+        ammoInClip = (short)NetField.AMMO_IN_CLIP.read(buffer);
+        totalAmmo = (short)NetField.TOTAL_AMMO.read(buffer);
         weaponState = BufferIO.readWeaponState(buffer);
     }
     
@@ -36,8 +37,8 @@ public class NetWeapon implements NetMessage {
     @Override
     public void write(IOBuffer buffer) {
         BufferIO.writeType(buffer, type);
-        buffer.putUnsignedByte(ammoInClip);
-        buffer.putShort(totalAmmo);
+        NetField.AMMO_IN_CLIP.write(buffer, ammoInClip);
+        NetField.TOTAL_AMMO.write(buffer, totalAmmo);
         BufferIO.writeWeaponState(buffer, weaponState);
     }
 }
@@ -3,8 +3,12 @@
  */
 package seventh.game.weapons;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import seventh.game.Game;
 import seventh.game.SurfaceTypeToSoundType;
+import seventh.game.SweptCollision;
 import seventh.game.entities.Entity;
 import seventh.game.net.NetBullet;
 import seventh.game.net.NetEntity;
@@ -22,6 +26,12 @@ import seventh.shared.TimeStep;
  */
 public class Bullet extends Entity {
 
+    /**
+     * Results of moving a single step
+     */
+    private static final int STEP_BLOCKED = 1;
+    private static final int STEP_STOPPED = 2;
+
     private Entity owner;
     protected Vector2f targetVel;
     private Vector2f previousPos, delta, origin;
@@ -34,6 +44,21 @@ public class Bullet extends Entity {
     private boolean piercing;
     private Entity lastEntityTouched;
     
+    /* how far back in time the owner is seeing the other players, see LagCompensation */
+    private int lagCompensationTime;
+    
+    /* the players hit while they were rewound, these are damaged once they are restored */
+    private boolean isRewound;
+    private List<RewoundHit> rewoundHits;
+    
+    /**
+     * A player hit while rewound, and where the bullet hit them
+     */
+    private static class RewoundHit {
+        Entity player;
+        float offsetX, offsetY;
+    }
+    
     private static class BulletOnTouchListener implements Entity.OnTouchListener {
         private Game game;
         public BulletOnTouchListener(Game game) {
@@ -47,7 +72,13 @@ public class Bullet extends Entity {
             if(otherType.isDamagable()) {
                 if(other != bullet.lastEntityTouched && other.canTakeDamage()) {
                     
-                    other.damage(me, bullet.getDamage());                                        
+                    if(bullet.isRewound && otherType.isPlayer()) {
+                        bullet.addRewoundHit(other);
+                    }
+                    else {
+                        other.damage(me, bullet.getDamage());
+                    }
+                    
                     if(otherType.isVehicle()) {                                                
                         bullet.kill(other);        
                         game.emitSound(bullet.getId(), SoundType.IMPACT_METAL, bullet.getCenterPos());
@@ -119,6 +150,7 @@ public class Bullet extends Entity {
         
         this.ownerHeightMask = owner.getHeightMask();
         this.piercing = isPiercing;
+        this.lagCompensationTime = game.getLagCompensationTime(owner);
         
         this.maxDistance = 5000;
     }
@@ -243,6 +275,86 @@ public class Bullet extends Entity {
     @Override
     public boolean update(TimeStep timeStep) {    
         
+        /* check against the players where the owner saw them
+         * when it fired
+         */
+        if(!game.beginLagCompensation(owner, lagCompensationTime)) {
+            return move(timeStep);
+        }
+        
+        boolean isBlocked = false;
+        this.isRewound = true;
+        try {
+            isBlocked = move(timeStep);
+        }
+        finally {
+            this.isRewound = false;
+            game.endLagCompensation();
+        }
+        
+        /* the damage is dealt where the players are now, so that anything
+         * done on their death (such as dropping their weapon) isn't done where
+         * they were rewound to
+         */
+        applyRewoundHits();
+        
+        return isBlocked;
+    }
+    
+    /**
+     * A player was hit while rewound, the bullet's position relative to the player is kept as it
+     * decides where the player was hit (see {@link seventh.game.entities.PlayerEntity#damage(Entity, int)})
+     * 
+     * @param other
+     */
+    private void addRewoundHit(Entity other) {
+        if(this.rewoundHits == null) {
+            this.rewoundHits = new ArrayList<RewoundHit>(2);
+        }
+        
+        Vector2f center = other.getCenterPos();
+        Vector2f bulletCenter = getCenterPos();
+        
+        RewoundHit hit = new RewoundHit();
+        hit.player = other;
+        hit.offsetX = bulletCenter.x - center.x;
+        hit.offsetY = bulletCenter.y - center.y;
+        this.rewoundHits.add(hit);
+    }
+    
+    /**
+     * Damages the players that were hit while rewound, with the bullet placed where it hit them
+     */
+    private void applyRewoundHits() {
+        if(this.rewoundHits == null || this.rewoundHits.isEmpty()) {
+            return;
+        }
+        
+        Vector2f pos = getPos();
+        float x = pos.x;
+        float y = pos.y;
+        
+        for(int i = 0; i < this.rewoundHits.size(); i++) {
+            RewoundHit hit = this.rewoundHits.get(i);
+            if(hit.player.canTakeDamage()) {
+                Vector2f center = hit.player.getCenterPos();
+                pos.set(center.x + hit.offsetX - bounds.width/2, center.y + hit.offsetY - bounds.height/2);
+                
+                hit.player.damage(this, getDamage());
+            }
+        }
+        
+        pos.set(x, y);
+        this.rewoundHits.clear();
+    }
+    
+    /**
+     * Moves the bullet for this frame, checking for collisions along the way
+     * 
+     * @param timeStep
+     * @return true if the bullet was blocked
+     */
+    private boolean move(TimeStep timeStep) {
         boolean isBlocked = false;
         vel.set(targetVel);
         
@@ -263,63 +375,19 @@ public class Bullet extends Entity {
         
         int heightMask = getOwnerHeightMask();
                 
-        if(dx != 0 || dy != 0) {                        
-            do {        
-                
-                if(bounds.x != newX) {
-                    if(dx==0) {    
-                        break;
-                    }
-                    
-                    bounds.x += dx;
-                    if( map.rectCollides(bounds, heightMask) ) {
-                        isBlocked = collideX(bounds.x, bounds.x-dx);
-                        if(isBlocked) {
-                            bounds.x -= dx;
-                        }
-                    }
-                }
-                
-                if(bounds.y != newY && !isBlocked) {
-
-                    if(dy==0) {
-                        break;
-                    }
-                    
-                    bounds.y += dy;
-                    if( map.rectCollides(bounds, heightMask)) {
-                        isBlocked = collideY(bounds.y, bounds.y-dy);    
-                        if(isBlocked) {
-                            bounds.y -= dy;
-                        }
-                    }
-                    
-                 }
-                
-                if( bounds.y < 0 
-                    || bounds.x < 0
-                    || (bounds.y > map.getMapHeight() + 80)
-                    || (bounds.x > map.getMapWidth() + 80)) {
-                    
-                    kill(this);
-                    break;
-                }
-                else {
-                    if(collidesAgainstEntity(bounds) || collidesAgainstMapObject(bounds)) {
-                        break;
-                    }
-                }
-                
-                /* if this has traveled the max distance, kill it */
-                delta.set(bounds.x, bounds.y);
-                float distanceTraveledSq = Vector2f.Vector2fDistanceSq(origin, delta);
-                int maxDistance = getMaxDistance();
-                if(distanceTraveledSq > (maxDistance*maxDistance) ) {                    
-                    kill(this);
-                    break;
-                }
-                
-            } while(!isBlocked && (bounds.x != newX || bounds.y != newY));
+        if(dx != 0 || dy != 0) {
+            
+            /* the swept path must be the same one the stepping takes, which
+             * is only the case if the bounds head in the same direction
+             */
+            if(game.isContinuousBulletCollision() &&
+               dx == Integer.signum(newX - bounds.x) && 
+               dy == Integer.signum(newY - bounds.y)) {
+                isBlocked = sweep(map, dx, dy, newX, newY, heightMask);
+            }
+            else {
+                isBlocked = step(map, dx, dy, newX, newY, heightMask);
+            }
         }
         else {
             if(!collidesAgainstEntity(bounds)) {
@@ -334,6 +402,124 @@ public class Bullet extends Entity {
         return isBlocked;
     }
     
+    /**
+     * Moves the bullet one pixel at a time, checking for collisions at
+     * each step
+     * 
+     * @return true if the bullet was blocked
+     */
+    private boolean step(Map map, int dx, int dy, int newX, int newY, int heightMask) {
+        int result = 0;
+        do {
+            result = stepOnce(map, dx, dy, newX, newY, heightMask);
+        } while(result == 0 && (bounds.x != newX || bounds.y != newY));
+        
+        return (result & STEP_BLOCKED) != 0;
+    }
+    
+    /**
+     * Casts the bullet along its whole path, and only checks for collisions in the steps
+     * where the bullet may hit something.  The results are the same as {@link #step(Map, int, int, int, int, int)}.
+     * 
+     * @return true if the bullet was blocked
+     */
+    private boolean sweep(Map map, int dx, int dy, int newX, int newY, int heightMask) {
+        int startX = bounds.x;
+        int startY = bounds.y;
+        
+        SweptCollision sweep = game.sweepBullet(this, newX, newY, origin, getMaxDistance());
+        int numberOfIntervals = sweep.getNumberOfIntervals();
+        for(int i = 0; i < numberOfIntervals; i++) {
+            int first = sweep.getIntervalStart(i);
+            int last = sweep.getIntervalEnd(i);
+            
+            /* nothing can be hit up until this interval, so skip
+             * right up to it
+             */
+            bounds.x = SweptCollision.stepPosition(startX, newX, first - 1);
+            bounds.y = SweptCollision.stepPosition(startY, newY, first - 1);
+            
+            for(int j = first; j <= last; j++) {
+                int result = stepOnce(map, dx, dy, newX, newY, heightMask);
+                if(result != 0) {
+                    return (result & STEP_BLOCKED) != 0;
+                }
+            }
+        }
+        
+        bounds.x = newX;
+        bounds.y = newY;
+        return false;
+    }
+    
+    /**
+     * Moves the bullet one pixel closer to its destination, and checks for
+     * collisions
+     * 
+     * @return 0 if the bullet can keep on moving, otherwise a combination of
+     * {@link #STEP_BLOCKED} and {@link #STEP_STOPPED}
+     */
+    private int stepOnce(Map map, int dx, int dy, int newX, int newY, int heightMask) {
+        boolean isBlocked = false;
+        
+        if(bounds.x != newX) {
+            if(dx==0) {    
+                return STEP_STOPPED;
+            }
+            
+            bounds.x += dx;
+            if( map.rectCollides(bounds, heightMask) ) {
+                isBlocked = collideX(bounds.x, bounds.x-dx);
+                if(isBlocked) {
+                    bounds.x -= dx;
+                }
+            }
+        }
+        
+        if(bounds.y != newY && !isBlocked) {
+
+            if(dy==0) {
+                return STEP_STOPPED;
+            }
+            
+            bounds.y += dy;
+            if( map.rectCollides(bounds, heightMask)) {
+                isBlocked = collideY(bounds.y, bounds.y-dy);    
+                if(isBlocked) {
+                    bounds.y -= dy;
+                }
+            }
+            
+         }
+        
+        int result = isBlocked ? STEP_BLOCKED : 0;
+        
+        if( bounds.y < 0 
+            || bounds.x < 0
+            || (bounds.y > map.getMapHeight() + 80)
+            || (bounds.x > map.getMapWidth() + 80)) {
+            
+            kill(this);
+            return result | STEP_STOPPED;
+        }
+        else {
+            if(collidesAgainstEntity(bounds) || collidesAgainstMapObject(bounds)) {
+                return result | STEP_STOPPED;
+            }
+        }
+        
+        /* if this has traveled the max distance, kill it */
+        delta.set(bounds.x, bounds.y);
+        float distanceTraveledSq = Vector2f.Vector2fDistanceSq(origin, delta);
+        int maxDistance = getMaxDistance();
+        if(distanceTraveledSq > (maxDistance*maxDistance) ) {                    
+            kill(this);
+            return result | STEP_STOPPED;
+        }
+        
+        return result;
+    }
+    
     @Override
     protected boolean collidesAgainstEntity(Rectangle bounds) {
         if ( game.doesTouchPlayers(this, origin, targetVel) && !this.piercing ) {
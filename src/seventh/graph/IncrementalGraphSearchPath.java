@@ -0,0 +1,42 @@
+/*
+ * see license.txt
+ */
+package seventh.graph;
+
+import java.util.List;
+
+/**
+ * A {@link GraphSearchPath} that can be run a little at a time, so that a search can be spread 
+ * over multiple frames.
+ * 
+ * @author Tony
+ *
+ */
+public interface IncrementalGraphSearchPath<E,T> extends GraphSearchPath<E,T> {
+
+    /**
+     * Starts a new search, abandoning any search in progress.
+     * 
+     * @param start - starting point
+     * @param goal - ending point
+     */
+    public void beginSearch(GraphNode<E,T> start, GraphNode<E,T> goal);
+    
+    /**
+     * Continues the search started by {@link #beginSearch(GraphNode, GraphNode)}
+     * 
+     * @param maxExpansions - the maximum number of nodes to expand
+     * @return the number of nodes expanded
+     */
+    public int continueSearch(int maxExpansions);
+    
+    /**
+     * @return true if the search has not finished yet
+     */
+    public boolean isSearching();
+    
+    /**
+     * @return the result of the last finished search, null if no path exists.
+     */
+    public List<GraphNode<E,T>> getSearchResult();
+}
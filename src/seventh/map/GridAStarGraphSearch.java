@@ -0,0 +1,355 @@
+/*
+ * see license.txt
+ */
+package seventh.map;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import seventh.graph.Edge;
+import seventh.graph.Edges;
+import seventh.graph.Edges.Directions;
+import seventh.graph.GraphNode;
+import seventh.graph.IncrementalGraphSearchPath;
+
+/**
+ * The A* (A-Star) optimal-path searching algorithm, specialized for the tile grid of a {@link MapGraph}.  Unlike 
+ * the generic {@link seventh.graph.AStarGraphSearch} this does not allocate any memory per search (other than the 
+ * resulting path):
+ * <ul>
+ *  <li>the open set is an indexed binary heap of tile indexes ({@link OpenTileHeap})</li>
+ *  <li>the scores are stored in int arrays indexed by tile, which are shared by all of the searches of
+ *  the graph (see {@link GridSearchSpace})</li>
+ *  <li>rather than clearing the scores between searches, each search bumps a generation counter which 
+ *  invalidates the previous search's scores</li>
+ * </ul>
+ * 
+ * The distance between tiles is measured with {@link #STRAIGHT_COST} and {@link #DIAGONAL_COST}, and the
+ * heuristic is the octile distance, which never over estimates so the resulting path is optimal.
+ * 
+ * <p>
+ * The search can also be run incrementally (see {@link IncrementalGraphSearchPath}), which allows a search
+ * to be spread out over multiple frames.
+ * 
+ * @author Tony
+ *
+ */
+public class GridAStarGraphSearch<T> implements IncrementalGraphSearchPath<Tile, T> {
+
+    /**
+     * The cost of moving to a tile N, E, S or W
+     */
+    public static final int STRAIGHT_COST = 10;
+    
+    /**
+     * The cost of moving to a tile NE, SE, SW or NW (~ sqrt(2) * STRAIGHT_COST)
+     */
+    public static final int DIAGONAL_COST = 14;
+    
+    private MapGraph<T> graph;
+    private int width, height;
+    
+    private GridSearchSpace space;
+    
+    private int[] gScores;      /* Distance from start to optimal path */
+    private int[] cameFrom;     /* Nodes visited to reach goal node */
+    
+    private int[] visited;      /* the generation the scores were set in */
+    private int[] closed;       /* the generation the node was closed in */
+    private int generation;
+    
+    private OpenTileHeap openSet;
+    
+    /* the search in progress */
+    private GraphNode<Tile, T> start, goal;
+    private int startIndex, goalIndex;
+    private int goalX, goalY;
+    private boolean isSearching;
+    private boolean isRunAllAtOnce;
+    private List<GraphNode<Tile, T>> result;
+    
+    /**
+     * @param graph
+     */
+    public GridAStarGraphSearch(MapGraph<T> graph) {
+        this.graph = graph;
+        this.height = graph.graph.length;
+        this.width = graph.graph[0].length;
+        
+        /* the scores are shared by all of the searches of the graph, and 
+         * are picked up once a search begins
+         */
+        this.generation = 0;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see seventh.graph.GraphSearchPath#search(seventh.graph.GraphNode, seventh.graph.GraphNode)
+     */
+    @Override
+    public List<GraphNode<Tile, T>> search(GraphNode<Tile, T> start, GraphNode<Tile, T> goal) {
+        /* subclasses may hook into beginSearch */
+        this.isRunAllAtOnce = true;
+        try {
+            beginSearch(start, goal);
+        }
+        finally {
+            this.isRunAllAtOnce = false;
+        }
+        
+        continueSearch(Integer.MAX_VALUE);
+        
+        return getSearchResult();
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see seventh.graph.IncrementalGraphSearchPath#beginSearch(seventh.graph.GraphNode, seventh.graph.GraphNode)
+     */
+    @Override
+    public void beginSearch(GraphNode<Tile, T> start, GraphNode<Tile, T> goal) {
+        beginSearch(start, goal, this.isRunAllAtOnce ? this.graph.getSearchSpace() 
+                                                     : this.graph.getIncrementalSearchSpace());
+    }
+    
+    /**
+     * Begins the search in the supplied space
+     * 
+     * @param start
+     * @param goal
+     * @param space the space for a search run all at once, or the space for a search spread out over multiple frames
+     */
+    private void beginSearch(GraphNode<Tile, T> start, GraphNode<Tile, T> goal, GridSearchSpace space) {
+        this.result = null;
+        this.isSearching = false;
+        this.start = start;
+        this.goal = goal;
+        
+        if(start == null || goal == null) {
+            return;
+        }
+        
+        nextGeneration(space);
+        
+        Tile goalTile = goal.getValue();
+        this.goalX = goalTile.getXIndex();
+        this.goalY = goalTile.getYIndex();
+        this.goalIndex = this.goalY * this.width + this.goalX;
+        
+        Tile startTile = start.getValue();
+        this.startIndex = startTile.getYIndex() * this.width + startTile.getXIndex();
+        
+        this.visited[this.startIndex] = this.generation;
+        this.gScores[this.startIndex] = 0;
+        int h = heuristicEstimateDistance(startTile.getXIndex(), startTile.getYIndex(), this.goalX, this.goalY);
+        this.openSet.push(this.startIndex, h, h);
+        
+        this.isSearching = true;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see seventh.graph.IncrementalGraphSearchPath#isSearching()
+     */
+    @Override
+    public boolean isSearching() {
+        return this.isSearching;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see seventh.graph.IncrementalGraphSearchPath#getSearchResult()
+     */
+    @Override
+    public List<GraphNode<Tile, T>> getSearchResult() {
+        return this.result;
+    }
+    
+    /**
+     * Calculate the heuristic distance between the tile and the goal tile.  This defaults to 
+     * the octile distance.
+     * 
+     * @param x the tile x index
+     * @param y the tile y index
+     * @param goalX the goal tile x index
+     * @param goalY the goal tile y index
+     * @return the estimated cost from the tile to the goal
+     */
+    protected int heuristicEstimateDistance(int x, int y, int goalX, int goalY) {
+        int dx = Math.abs(x - goalX);
+        int dy = Math.abs(y - goalY);
+        
+        return STRAIGHT_COST * (dx + dy) + (DIAGONAL_COST - 2 * STRAIGHT_COST) * Math.min(dx, dy);
+    }
+    
+    /**
+     * If this node should be ignored
+     * 
+     * @param node
+     * @return true if this node should be ignored
+     */
+    protected boolean shouldIgnore(GraphNode<Tile, T> node) {
+        return false;
+    }
+    
+    /**
+     * Any additional cost for moving onto the node, this must not be negative
+     * 
+     * @param node
+     * @return the additional cost
+     */
+    protected int getNodeCost(GraphNode<Tile, T> node) {
+        return 0;
+    }
+    
+    /**
+     * Invalidates the previous search, taking over the shared {@link GridSearchSpace}
+     * 
+     * @param space
+     */
+    private void nextGeneration(GridSearchSpace space) {
+        this.space = space;
+        this.gScores = space.gScores;
+        this.cameFrom = space.cameFrom;
+        
+        this.visited = space.visited;
+        this.closed = space.closed;
+        this.openSet = space.openSet;
+        
+        this.generation = space.beginSearch(this);
+    }
+    
+    /**
+     * Reconstructs the path from the start to finish nodes.
+     * 
+     * @param startIndex
+     * @param goalIndex
+     * @return the list of {@link GraphNode}s needed to reach the goal (not including the start)
+     */
+    @SuppressWarnings("unchecked")
+    private List<GraphNode<Tile, T>> reconstructPath(int startIndex, int goalIndex) {
+        int numberOfNodes = 0;
+        for(int index = goalIndex; index != startIndex; index = this.cameFrom[index]) {
+            numberOfNodes++;
+        }
+        
+        List<GraphNode<Tile, T>> result = new ArrayList<GraphNode<Tile, T>>(numberOfNodes);
+        for(int i = 0; i < numberOfNodes; i++) {
+            result.add(null);
+        }
+        
+        int i = numberOfNodes - 1;
+        for(int index = goalIndex; index != startIndex; index = this.cameFrom[index]) {
+            result.set(i--, (GraphNode<Tile, T>)this.graph.graph[index / this.width][index % this.width]);
+        }
+        
+        return result;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see seventh.graph.IncrementalGraphSearchPath#continueSearch(int)
+     */
+    @Override
+    public int continueSearch(int maxExpansions) {
+        int numberOfExpansions = 0;
+        
+        /* another incremental search ran since the last frame, so start over */
+        if(this.isSearching && !this.space.isOwnedBy(this)) {
+            beginSearch(this.start, this.goal, this.space);
+        }
+        
+        while(this.isSearching && numberOfExpansions < maxExpansions) {
+            if(this.openSet.isEmpty()) {
+                this.isSearching = false;   /* No path found */
+                break;
+            }
+            
+            int x = this.openSet.pop();
+            numberOfExpansions++;
+            
+            if(x == this.goalIndex) {
+                this.result = reconstructPath(this.startIndex, this.goalIndex);
+                this.isSearching = false;
+                break;
+            }
+            
+            this.closed[x] = this.generation;
+            
+            @SuppressWarnings("unchecked")
+            GraphNode<Tile, T> node = (GraphNode<Tile, T>)this.graph.graph[x / this.width][x % this.width];
+            if(node == null) {
+                continue;
+            }
+            
+            Edges<Tile, T> edges = node.edges();
+            int skipMask = 0;
+            
+            for(int i = 0; i < edges.size(); i++) {
+                Edge<Tile, T> edge = edges.get(i);
+                if(edge == null) {
+                    continue;
+                }
+                
+                GraphNode<Tile, T> neighbor = edge.getRight();
+                if(neighbor == null) {
+                    continue;
+                }
+                
+                Tile tile = neighbor.getValue();
+                int y = tile.getYIndex() * this.width + tile.getXIndex();
+                
+                /* If this node has been visited before, ignore it and move on */
+                if(this.closed[y] == this.generation) {
+                    continue;
+                }
+                
+                Directions dir = Directions.fromIndex(i);
+                if(shouldIgnore(neighbor)) {
+                    
+                    /* don't cut the corners of an ignored node */
+                    if(Directions.isCardinal(i)) {
+                        switch(dir) {
+                            case N:
+                                skipMask |= Directions.NE.getMask() | Directions.NW.getMask();
+                                break;
+                            case E:
+                                skipMask |= Directions.NE.getMask() | Directions.SE.getMask();
+                                break;
+                            case S:
+                                skipMask |= Directions.SE.getMask() | Directions.SW.getMask();
+                                break;
+                            case W:
+                                skipMask |= Directions.NW.getMask() | Directions.SW.getMask();
+                                break;
+                            default:
+                        }
+                    }
+                    continue;
+                }
+                
+                if((dir.getMask() & skipMask) != 0) {
+                    continue;
+                }
+                
+                int moveCost = Directions.isCardinal(i) ? STRAIGHT_COST : DIAGONAL_COST;
+                int tentativeGscore = this.gScores[x] + moveCost + edge.getWeight() + getNodeCost(neighbor);
+                
+                if(this.visited[y] != this.generation) {
+                    this.visited[y] = this.generation;
+                    this.cameFrom[y] = x;
+                    this.gScores[y] = tentativeGscore;
+                    int h = heuristicEstimateDistance(tile.getXIndex(), tile.getYIndex(), this.goalX, this.goalY);
+                    this.openSet.push(y, tentativeGscore + h, h);
+                }
+                else if(tentativeGscore < this.gScores[y]) {
+                    this.cameFrom[y] = x;
+                    this.gScores[y] = tentativeGscore;
+                    this.openSet.decrease(y, tentativeGscore + this.openSet.getHScore(y));
+                }
+            }
+        }
+        
+        return numberOfExpansions;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * see license.txt
+ */
+package seventh.map;
+
+import java.util.Arrays;
+
+/**
+ * The scores and open set of the grid path searches ({@link GridAStarGraphSearch} and {@link JumpPointGraphSearch}).
+ * These are a handful of arrays the size of the map, so rather than each search (and each bot has a few) owning
+ * its own, the searches of a {@link MapGraph} share them.
+ *
+ * <p>
+ * The searches all run on the game thread, and a search run all at once always finishes before the next one begins, 
+ * so those share one space.  A search spread out over multiple frames (see {@link seventh.graph.IncrementalGraphSearchPath})
+ * would be wiped out by any search run in between its frames, so those share a second space; as the bots queue 
+ * up these searches and run them one at a time, the space is rarely taken out from under a search.  The search 
+ * that last began owns the space, a search that finds it has lost the space starts over.
+ *
+ * @author Tony
+ *
+ */
+class GridSearchSpace {
+
+    final int[] gScores;      /* Distance from start to optimal path */
+    final int[] cameFrom;     /* Nodes visited to reach goal node */
+
+    final int[] visited;      /* the generation the scores were set in */
+    final int[] closed;       /* the generation the node was closed in */
+
+    final OpenTileHeap openSet;
+
+    private int generation;
+    private Object owner;
+
+    /**
+     * @param numberOfTiles the total number of tiles in the grid
+     */
+    GridSearchSpace(int numberOfTiles) {
+        this.gScores = new int[numberOfTiles];
+        this.cameFrom = new int[numberOfTiles];
+
+        this.visited = new int[numberOfTiles];
+        this.closed = new int[numberOfTiles];
+        this.generation = 0;
+
+        this.openSet = new OpenTileHeap(numberOfTiles);
+    }
+
+    /**
+     * Invalidates the previous search, handing the space over to the new search
+     *
+     * @param owner the search that is beginning
+     * @return the generation of the new search
+     */
+    int beginSearch(Object owner) {
+        this.owner = owner;
+        this.generation++;
+
+        /* on the off chance we wrap around, start fresh */
+        if(this.generation == Integer.MAX_VALUE) {
+            Arrays.fill(this.visited, 0);
+            Arrays.fill(this.closed, 0);
+            this.generation = 1;
+        }
+
+        this.openSet.clear();
+        return this.generation;
+    }
+
+    /**
+     * @param search
+     * @return true if the search still owns this space
+     */
+    boolean isOwnedBy(Object search) {
+        return this.owner == search;
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * see license.txt
+ */
+package seventh.map;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import seventh.graph.GraphNode;
+import seventh.graph.IncrementalGraphSearchPath;
+
+/**
+ * Jump Point Search (JPS) over the tile grid of a {@link MapGraph}.  On a uniform-cost 8-connected grid, the
+ * search only needs to expand the 'jump points' (tiles where an obstacle forces a change in direction) rather
+ * than every tile on the way, which makes it much cheaper than a plain A* search on open maps.
+ * 
+ * <p>
+ * A tile is walkable if it has a node in {@link MapGraph#graph}, so tiles removed or added at runtime 
+ * (by {@link MapGraph#removeNode(int, int)} and {@link MapGraph#addNode(int, int)}) are picked up by the next search.
+ * Diagonal moves are only allowed when both adjacent cardinal tiles are walkable, so a path never cuts 
+ * the corner of an obstacle.
+ * 
+ * <p>
+ * The scores and open set are shared with the other searches of the graph, see {@link GridSearchSpace}.
+ * 
+ * <p>
+ * This assumes every move costs the same ({@link GridAStarGraphSearch#STRAIGHT_COST} and {@link GridAStarGraphSearch#DIAGONAL_COST}),
+ * any tiles to avoid or weighted edges should use a {@link GridAStarGraphSearch} instead.
+ * 
+ * @author Tony
+ *
+ */
+public class JumpPointGraphSearch<T> implements IncrementalGraphSearchPath<Tile, T> {
+
+    private MapGraph<T> graph;
+    private int width, height;
+    
+    private GridSearchSpace space;
+    
+    private int[] gScores;      /* Distance from start to optimal path */
+    private int[] cameFrom;     /* The jump point we came from */
+    
+    private int[] visited;      /* the generation the scores were set in */
+    private int[] closed;       /* the generation the node was closed in */
+    private int generation;
+    
+    private OpenTileHeap openSet;
+    private int[] neighbors;    /* scratch space for the pruned neighbor directions */
+    
+    /* the search in progress */
+    private GraphNode<Tile, T> start, goal;
+    private int startIndex, goalIndex;
+    private int goalX, goalY;
+    private boolean isSearching;
+    private boolean isRunAllAtOnce;
+    private List<GraphNode<Tile, T>> result;
+    
+    /**
+     * @param graph
+     */
+    public JumpPointGraphSearch(MapGraph<T> graph) {
+        this.graph = graph;
+        this.height = graph.graph.length;
+        this.width = graph.graph[0].length;
+        
+        /* the scores are shared by all of the searches of the graph, and 
+         * are picked up once a search begins
+         */
+        this.generation = 0;
+        this.neighbors = new int[8 * 2];
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see seventh.graph.GraphSearchPath#search(seventh.graph.GraphNode, seventh.graph.GraphNode)
+     */
+    @Override
+    public List<GraphNode<Tile, T>> search(GraphNode<Tile, T> start, GraphNode<Tile, T> goal) {
+        /* subclasses may hook into beginSearch */
+        this.isRunAllAtOnce = true;
+        try {
+            beginSearch(start, goal);
+        }
+        finally {
+            this.isRunAllAtOnce = false;
+        }
+        
+        continueSearch(Integer.MAX_VALUE);
+        
+        return getSearchResult();
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see seventh.graph.IncrementalGraphSearchPath#beginSearch(seventh.graph.GraphNode, seventh.graph.GraphNode)
+     */
+    @Override
+    public void beginSearch(GraphNode<Tile, T> start, GraphNode<Tile, T> goal) {
+        beginSearch(start, goal, this.isRunAllAtOnce ? this.graph.getSearchSpace() 
+                                                     : this.graph.getIncrementalSearchSpace());
+    }
+    
+    /**
+     * Begins the search in the supplied space
+     * 
+     * @param start
+     * @param goal
+     * @param space the space for a search run all at once, or the space for a search spread out over multiple frames
+     */
+    private void beginSearch(GraphNode<Tile, T> start, GraphNode<Tile, T> goal, GridSearchSpace space) {
+        this.result = null;
+        this.isSearching = false;
+        this.start = start;
+        this.goal = goal;
+        
+        if(start == null || goal == null) {
+            return;
+        }
+        
+        nextGeneration(space);
+        
+        Tile goalTile = goal.getValue();
+        this.goalX = goalTile.getXIndex();
+        this.goalY = goalTile.getYIndex();
+        this.goalIndex = this.goalY * this.width + this.goalX;
+        
+        Tile startTile = start.getValue();
+        this.startIndex = startTile.getYIndex() * this.width + startTile.getXIndex();
+        
+        this.visited[this.startIndex] = this.generation;
+        this.gScores[this.startIndex] = 0;
+        this.cameFrom[this.startIndex] = -1;
+        
+        int h = octileDistance(startTile.getXIndex(), startTile.getYIndex(), this.goalX, this.goalY);
+        this.openSet.push(this.startIndex, h, h);
+        
+        this.isSearching = true;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see seventh.graph.IncrementalGraphSearchPath#isSearching()
+     */
+    @Override
+    public boolean isSearching() {
+        return this.isSearching;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see seventh.graph.IncrementalGraphSearchPath#getSearchResult()
+     */
+    @Override
+    public List<GraphNode<Tile, T>> getSearchResult() {
+        return this.result;
+    }
+    
+    /**
+     * The octile distance between two tiles
+     * 
+     * @param x
+     * @param y
+     * @param toX
+     * @param toY
+     * @return the cost of moving between the two tiles on an open grid
+     */
+    private static int octileDistance(int x, int y, int toX, int toY) {
+        int dx = Math.abs(x - toX);
+        int dy = Math.abs(y - toY);
+        
+        return GridAStarGraphSearch.STRAIGHT_COST * (dx + dy) 
+             + (GridAStarGraphSearch.DIAGONAL_COST - 2 * GridAStarGraphSearch.STRAIGHT_COST) * Math.min(dx, dy);
+    }
+    
+    /**
+     * @param x
+     * @param y
+     * @return true if the tile can be walked on
+     */
+    private boolean isWalkable(int x, int y) {
+        return x >= 0 && y >= 0 && x < this.width && y < this.height && this.graph.graph[y][x] != null;
+    }
+    
+    /**
+     * Invalidates the previous search, taking over the shared {@link GridSearchSpace}
+     * 
+     * @param space
+     */
+    private void nextGeneration(GridSearchSpace space) {
+        this.space = space;
+        this.gScores = space.gScores;
+        this.cameFrom = space.cameFrom;
+        
+        this.visited = space.visited;
+        this.closed = space.closed;
+        this.openSet = space.openSet;
+        
+        this.generation = space.beginSearch(this);
+    }
+    
+    private int addNeighbor(int numberOfNeighbors, int dx, int dy) {
+        this.neighbors[numberOfNeighbors * 2 + 0] = dx;
+        this.neighbors[numberOfNeighbors * 2 + 1] = dy;
+        return numberOfNeighbors + 1;
+    }
+    
+    /**
+     * Calculates the directions worth searching from the tile, pruning the directions that 
+     * are more cheaply reached from the parent
+     * 
+     * @param index the tile index
+     * @param parent the parent tile index, or -1 if the tile is the start
+     * @return the number of directions stored in {@link #neighbors}
+     */
+    private int findNeighbors(int index, int parent) {
+        int x = index % this.width;
+        int y = index / this.width;
+        int numberOfNeighbors = 0;
+        
+        if(parent < 0) {
+            for(int dy = -1; dy <= 1; dy++) {
+                for(int dx = -1; dx <= 1; dx++) {
+                    if(dx == 0 && dy == 0) {
+                        continue;
+                    }
+                    
+                    if(dx != 0 && dy != 0) {
+                        if(isWalkable(x + dx, y) && isWalkable(x, y + dy)) {
+                            numberOfNeighbors = addNeighbor(numberOfNeighbors, dx, dy);
+                        }
+                    }
+                    else if(isWalkable(x + dx, y + dy)) {
+                        numberOfNeighbors = addNeighbor(numberOfNeighbors, dx, dy);
+                    }
+                }
+            }
+            return numberOfNeighbors;
+        }
+        
+        int dx = Integer.signum(x - parent % this.width);
+        int dy = Integer.signum(y - parent / this.width);
+        
+        if(dx != 0 && dy != 0) {
+            boolean isWalkableX = isWalkable(x + dx, y);
+            boolean isWalkableY = isWalkable(x, y + dy);
+            
+            if(isWalkableY) {
+                numberOfNeighbors = addNeighbor(numberOfNeighbors, 0, dy);
+            }
+            if(isWalkableX) {
+                numberOfNeighbors = addNeighbor(numberOfNeighbors, dx, 0);
+            }
+            if(isWalkableX && isWalkableY) {
+                numberOfNeighbors = addNeighbor(numberOfNeighbors, dx, dy);
+            }
+        }
+        else if(dx != 0) {
+            boolean isNextWalkable = isWalkable(x + dx, y);
+            boolean isTopWalkable = isWalkable(x, y - 1);
+            boolean isBottomWalkable = isWalkable(x, y + 1);
+            
+            if(isNextWalkable) {
+                numberOfNeighbors = addNeighbor(numberOfNeighbors, dx, 0);
+                if(isTopWalkable) {
+                    numberOfNeighbors = addNeighbor(numberOfNeighbors, dx, -1);
+                }
+                if(isBottomWalkable) {
+                    numberOfNeighbors = addNeighbor(numberOfNeighbors, dx, 1);
+                }
+            }
+            
+            if(isTopWalkable) {
+                numberOfNeighbors = addNeighbor(numberOfNeighbors, 0, -1);
+            }
+            if(isBottomWalkable) {
+                numberOfNeighbors = addNeighbor(numberOfNeighbors, 0, 1);
+            }
+        }
+        else {
+            boolean isNextWalkable = isWalkable(x, y + dy);
+            boolean isLeftWalkable = isWalkable(x - 1, y);
+            boolean isRightWalkable = isWalkable(x + 1, y);
+            
+            if(isNextWalkable) {
+                numberOfNeighbors = addNeighbor(numberOfNeighbors, 0, dy);
+                if(isLeftWalkable) {
+                    numberOfNeighbors = addNeighbor(numberOfNeighbors, -1, dy);
+                }
+                if(isRightWalkable) {
+                    numberOfNeighbors = addNeighbor(numberOfNeighbors, 1, dy);
+                }
+            }
+            
+            if(isLeftWalkable) {
+                numberOfNeighbors = addNeighbor(numberOfNeighbors, -1, 0);
+            }
+            if(isRightWalkable) {
+                numberOfNeighbors = addNeighbor(numberOfNeighbors, 1, 0);
+            }
+        }
+        
+        return numberOfNeighbors;
+    }
+    
+    /**
+     * Moves from the tile in the supplied direction until a jump point is found
+     * 
+     * @param x the tile x index to start from
+     * @param y the tile y index to start from
+     * @param dx the x direction
+     * @param dy the y direction
+     * @return the jump point tile index, or -1 if the direction is a dead end
+     */
+    private int jump(int x, int y, int dx, int dy) {
+        while(isWalkable(x, y)) {
+            if(x == this.goalX && y == this.goalY) {
+                return y * this.width + x;
+            }
+            
+            if(dx != 0 && dy != 0) {
+                /* a diagonal move is a jump point if either of its straight moves reaches one */
+                if(jump(x + dx, y, dx, 0) > -1 || jump(x, y + dy, 0, dy) > -1) {
+                    return y * this.width + x;
+                }
+                
+                /* don't cut corners */
+                if(!isWalkable(x + dx, y) || !isWalkable(x, y + dy)) {
+                    return -1;
+                }
+            }
+            else if(dx != 0) {
+                if((isWalkable(x, y - 1) && !isWalkable(x - dx, y - 1)) ||
+                   (isWalkable(x, y + 1) && !isWalkable(x - dx, y + 1))) {
+                    return y * this.width + x;
+                }
+            }
+            else {
+                if((isWalkable(x - 1, y) && !isWalkable(x - 1, y - dy)) ||
+                   (isWalkable(x + 1, y) && !isWalkable(x + 1, y - dy))) {
+                    return y * this.width + x;
+                }
+            }
+            
+            x += dx;
+            y += dy;
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * Reconstructs the path from the start to finish nodes, filling in the tiles between the jump points.
+     * 
+     * @param startIndex
+     * @param goalIndex
+     * @return the list of {@link GraphNode}s needed to reach the goal (not including the start)
+     */
+    @SuppressWarnings("unchecked")
+    private List<GraphNode<Tile, T>> reconstructPath(int startIndex, int goalIndex) {
+        int numberOfNodes = 0;
+        for(int index = goalIndex; index != startIndex; index = this.cameFrom[index]) {
+            int from = this.cameFrom[index];
+            numberOfNodes += Math.max(Math.abs(index % this.width - from % this.width), 
+                                      Math.abs(index / this.width - from / this.width));
+        }
+        
+        List<GraphNode<Tile, T>> result = new ArrayList<GraphNode<Tile, T>>(numberOfNodes);
+        for(int i = 0; i < numberOfNodes; i++) {
+            result.add(null);
+        }
+        
+        int i = numberOfNodes - 1;
+        for(int index = goalIndex; index != startIndex; index = this.cameFrom[index]) {
+            int from = this.cameFrom[index];
+            int fromX = from % this.width;
+            int fromY = from / this.width;
+            
+            int x = index % this.width;
+            int y = index / this.width;
+            int dx = Integer.signum(fromX - x);
+            int dy = Integer.signum(fromY - y);
+            
+            while(x != fromX || y != fromY) {
+                result.set(i--, (GraphNode<Tile, T>)this.graph.graph[y][x]);
+                x += dx;
+                y += dy;
+            }
+        }
+        
+        return result;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see seventh.graph.IncrementalGraphSearchPath#continueSearch(int)
+     */
+    @Override
+    public int continueSearch(int maxExpansions) {
+        int numberOfExpansions = 0;
+        
+        /* another incremental search ran since the last frame, so start over */
+        if(this.isSearching && !this.space.isOwnedBy(this)) {
+            beginSearch(this.start, this.goal, this.space);
+        }
+        
+        while(this.isSearching && numberOfExpansions < maxExpansions) {
+            if(this.openSet.isEmpty()) {
+                this.isSearching = false;   /* No path found */
+                break;
+            }
+            
+            int index = this.openSet.pop();
+            numberOfExpansions++;
+            
+            if(index == this.goalIndex) {
+                this.result = reconstructPath(this.startIndex, this.goalIndex);
+                this.isSearching = false;
+                break;
+            }
+            
+            this.closed[index] = this.generation;
+            
+            int x = index % this.width;
+            int y = index / this.width;
+            
+            int numberOfNeighbors = findNeighbors(index, this.cameFrom[index]);
+            for(int i = 0; i < numberOfNeighbors; i++) {
+                int dx = this.neighbors[i * 2 + 0];
+                int dy = this.neighbors[i * 2 + 1];
+                
+                int jumpPoint = jump(x + dx, y + dy, dx, dy);
+                if(jumpPoint < 0 || this.closed[jumpPoint] == this.generation) {
+                    continue;
+                }
+                
+                int jumpX = jumpPoint % this.width;
+                int jumpY = jumpPoint / this.width;
+                int tentativeGscore = this.gScores[index] + octileDistance(x, y, jumpX, jumpY);
+                
+                if(this.visited[jumpPoint] != this.generation) {
+                    this.visited[jumpPoint] = this.generation;
+                    this.cameFrom[jumpPoint] = index;
+                    this.gScores[jumpPoint] = tentativeGscore;
+                    
+                    int h = octileDistance(jumpX, jumpY, this.goalX, this.goalY);
+                    this.openSet.push(jumpPoint, tentativeGscore + h, h);
+                }
+                else if(tentativeGscore < this.gScores[jumpPoint]) {
+                    this.cameFrom[jumpPoint] = index;
+                    this.gScores[jumpPoint] = tentativeGscore;
+                    this.openSet.decrease(jumpPoint, tentativeGscore + this.openSet.getHScore(jumpPoint));
+                }
+            }
+        }
+        
+        return numberOfExpansions;
+    }
+}
@@ -4,9 +4,24 @@
  */
 package seventh.map;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import seventh.map.Tile.CollisionMask;
+
 /**
  * A {@link Layer} in a {@link Map}.
  * 
+ * <p>
+ * The cells are stored compactly: each cell is an index into the layers palette of shared {@link TilePrototype}s 
+ * and a few flag bits (the flips, and if the tile has been destroyed); the height mask is the same for every cell
+ * of a layer.  {@link Tile} objects are only created for the cells they are asked for, by {@link #getTile(int, int)},
+ * and are then kept so that the same cell always gives back the same {@link Tile}.  Checks that only need to know
+ * what is in a cell (such as collision checks) should use {@link #getPrototype(int, int)}, which doesn't create one.
+ * 
  * @author Tony
  *
  */
@@ -23,9 +38,27 @@ public class Layer {
     }
     
     /**
-     * Underlying layer
+     * The flag bit of a destroyed cell, the lower bits are the {@link TilePrototype#FLIPS}
+     */
+    private static final int DESTROYED = (1 << 3);
+    
+    /**
+     * Underlying layer, the index of each cells prototype in the palette (0 being an empty cell), and
+     * the cells flags
      */
-    private Tile[][] rows;
+    private char[] cells;
+    private byte[] flags;
+    private int numberOfRows, numberOfColumns;
+    private int tileWidth, tileHeight;
+    
+    private List<TilePrototype> palette;
+    private java.util.Map<TilePrototype, Integer> paletteIndices;
+    private java.util.Map<CollisionMask, TilePrototype> handBuiltPrototypes;
+    
+    /**
+     * The tiles of the cells that have been asked for, created when first needed
+     */
+    private volatile AtomicReferenceArray<Tile> tiles;
     
     /**
      * Collidables
@@ -67,7 +100,8 @@ public class Layer {
     private String name;
     
     /**
-     * Constructs a {@link Layer}.
+     * Constructs a {@link Layer}, the number of columns and size of the tiles is taken from the first row
+     * that is added with {@link #addRow(int, Tile[])}.
      */
     public Layer(String name,
                  boolean collidable, 
@@ -78,9 +112,38 @@ public class Layer {
                  int index, 
                  int heightMask,
                  int numberOfRows) {
+        this(name, collidable, isForeground, isDestructable, isLightLayer, isVisible, index, heightMask, numberOfRows, 0, 0, 0);
+    }
+    
+    /**
+     * Constructs a {@link Layer}.
+     */
+    public Layer(String name,
+                 boolean collidable, 
+                 boolean isForeground, 
+                 boolean isDestructable, 
+                 boolean isLightLayer, 
+                 boolean isVisible,
+                 int index, 
+                 int heightMask,
+                 int numberOfRows,
+                 int numberOfColumns,
+                 int tileWidth,
+                 int tileHeight) {
         
         this.name = name;
-        this.rows = new Tile[numberOfRows][];        
+        this.numberOfRows = numberOfRows;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        
+        this.palette = new ArrayList<TilePrototype>();
+        this.palette.add(null); // the empty cell
+        this.paletteIndices = new IdentityHashMap<TilePrototype, Integer>();
+        
+        if(numberOfColumns > 0) {
+            allocateCells(numberOfColumns);
+        }
+        
         this.canCollide = collidable;
         this.isForeground = isForeground;
         this.isDestructable = isDestructable;
@@ -106,13 +169,13 @@ public class Layer {
     }
         
     /**
-     * Applies the height mask to this layer
+     * Applies the height mask to the tiles of this layer
      */
     public void applyHeightMask() {
-        for(int rowIndex = 0; rowIndex < this.rows.length; rowIndex++) {
-            Tile[] row = this.rows[rowIndex];
-            for(int i = 0; i < row.length; i++) {
-                Tile t = row[i];
+        AtomicReferenceArray<Tile> tiles = this.tiles;
+        if(tiles != null) {
+            for(int i = 0; i < tiles.length(); i++) {
+                Tile t = tiles.get(i);
                 if(t != null) {
                     t.setHeightMask(heightMask);                    
                 }
@@ -184,30 +247,244 @@ public class Layer {
      * @return
      */
     public int numberOfRows() {
-        return this.rows.length;
+        return this.numberOfRows;
     }
+    
     /**
-     * Get a row in the layer.
+     * The number of columns in this layer.
      * 
-     * @param i
      * @return
      */
-    public Tile[] getRow(int i) {
-        return this.rows[i];
+    public int numberOfColumns() {
+        return this.numberOfColumns;
+    }
+    
+    private void allocateCells(int numberOfColumns) {
+        this.numberOfColumns = numberOfColumns;
+        this.cells = new char[this.numberOfRows * numberOfColumns];
+        this.flags = new byte[this.numberOfRows * numberOfColumns];
+    }
+    
+    /**
+     * @param prototype
+     * @return the index of the prototype in the palette, adding it if need be
+     */
+    private char toPaletteIndex(TilePrototype prototype) {
+        Integer paletteIndex = this.paletteIndices.get(prototype);
+        if(paletteIndex == null) {
+            if(this.palette.size() > Character.MAX_VALUE) {
+                throw new IllegalStateException("Too many different tiles in layer: " + this.name);
+            }
+            
+            paletteIndex = this.palette.size();
+            this.palette.add(prototype);
+            this.paletteIndices.put(prototype, paletteIndex);
+            
+            if(prototype.isAnimated()) {
+                this.hasAnimation = true;
+            }
+        }
+        
+        return (char)paletteIndex.intValue();
+    }
+    
+    /**
+     * Sets the cell
+     * 
+     * @param x
+     * @param y
+     * @param prototype the tile, or null to empty the cell
+     * @param flips the {@link TilePrototype#FLIPS} bits
+     */
+    public void setTile(int x, int y, TilePrototype prototype, int flips) {
+        int index = y * this.numberOfColumns + x;
+        this.cells[index] = (prototype != null) ? toPaletteIndex(prototype) : 0;
+        this.flags[index] = (byte)(flips & TilePrototype.FLIPS);
+        
+        AtomicReferenceArray<Tile> tiles = this.tiles;
+        if(tiles != null) {
+            tiles.set(index, null);
+        }
+    }
+    
+    /**
+     * Sets the cell to a hand built {@link Tile}, the tile is kept as the {@link Tile} of the cell.  Tiles 
+     * without an image share a prototype for each {@link CollisionMask}.
+     * 
+     * @param x
+     * @param y
+     * @param tile the tile, or null to empty the cell
+     */
+    public void setTile(int x, int y, Tile tile) {
+        if(tile == null) {
+            setTile(x, y, null, 0);
+            return;
+        }
+        
+        if(this.tileWidth == 0) {
+            this.tileWidth = tile.getWidth();
+            this.tileHeight = tile.getHeight();
+        }
+        
+        TilePrototype prototype = null;
+        if(tile.getImage() == null && !(tile instanceof AnimatedTile)) {
+            if(this.handBuiltPrototypes == null) {
+                this.handBuiltPrototypes = new EnumMap<CollisionMask, TilePrototype>(CollisionMask.class);
+            }
+            
+            prototype = this.handBuiltPrototypes.get(tile.getCollisionMask());
+            if(prototype == null) {
+                prototype = new TilePrototype(tile);
+                this.handBuiltPrototypes.put(tile.getCollisionMask(), prototype);
+            }
+        }
+        else {
+            prototype = new TilePrototype(tile);
+        }
+        
+        int flips = (tile.isFlippedHorizontal() ? TilePrototype.FLIPPED_HORIZONTALLY : 0) |
+                    (tile.isFlippedVertical() ? TilePrototype.FLIPPED_VERTICALLY : 0) |
+                    (tile.isFlippedDiagnally() ? TilePrototype.FLIPPED_DIAGONALLY : 0);
+        setTile(x, y, prototype, flips);
+        
+        tile.setHeightMask(this.heightMask);
+        getTiles().set(y * this.numberOfColumns + x, tile);
+    }
+    
+    /**
+     * @param x
+     * @param y
+     * @return true if there is a tile in the cell, that hasn't been destroyed
+     */
+    public boolean hasTile(int x, int y) {
+        int index = y * this.numberOfColumns + x;
+        return this.cells[index] != 0 && (this.flags[index] & DESTROYED) == 0;
+    }
+    
+    /**
+     * @param x
+     * @param y
+     * @return the prototype of the tile in the cell, or null if there isn't one (or it has been destroyed)
+     */
+    public TilePrototype getPrototype(int x, int y) {
+        int index = y * this.numberOfColumns + x;
+        if((this.flags[index] & DESTROYED) != 0) {
+            return null;
+        }
+        return this.palette.get(this.cells[index]);
+    }
+    
+    /**
+     * @param x
+     * @param y
+     * @return the {@link TilePrototype#FLIPS} bits of the cell
+     */
+    public int getFlips(int x, int y) {
+        return this.flags[y * this.numberOfColumns + x] & TilePrototype.FLIPS;
+    }
+    
+    /**
+     * @return the prototypes used by this layer
+     */
+    public List<TilePrototype> getPrototypes() {
+        return this.palette.subList(1, this.palette.size());
     }
     
     /**
-     * Add a row.
+     * Get the {@link Tile} of a cell, this is created the first time it is asked for
+     * 
+     * @param x
+     * @param y
+     * @return the tile, or null if the cell is empty (or the tile has been destroyed)
+     */
+    public Tile getTile(int x, int y) {
+        int index = y * this.numberOfColumns + x;
+        if(this.cells[index] == 0 || (this.flags[index] & DESTROYED) != 0) {
+            return null;
+        }
+        
+        return getTile(index, x, y);
+    }
+    
+    private Tile getTile(int index, int x, int y) {
+        AtomicReferenceArray<Tile> tiles = getTiles();
+        Tile tile = tiles.get(index);
+        if(tile == null) {
+            TilePrototype prototype = this.palette.get(this.cells[index]);
+            tile = prototype.newTile(this.index, this.tileWidth, this.tileHeight, this.flags[index], this.canCollide);
+            tile.setPosition(x * this.tileWidth, y * this.tileHeight);
+            tile.setHeightMask(this.heightMask);
+            
+            /* another thread may have beaten us to it */
+            if(!tiles.compareAndSet(index, null, tile)) {
+                tile = tiles.get(index);
+            }
+        }
+        
+        return tile;
+    }
+    
+    private AtomicReferenceArray<Tile> getTiles() {
+        AtomicReferenceArray<Tile> tiles = this.tiles;
+        if(tiles == null) {
+            synchronized (this) {
+                tiles = this.tiles;
+                if(tiles == null) {
+                    tiles = new AtomicReferenceArray<Tile>(this.cells.length);
+                    this.tiles = tiles;
+                }
+            }
+        }
+        return tiles;
+    }
+    
+    /**
+     * Destroys the tile in the cell
+     * 
+     * @param x
+     * @param y
+     * @return the destroyed tile, or null if there wasn't one (or it was already destroyed)
+     */
+    public Tile destroyTile(int x, int y) {
+        Tile tile = getTile(x, y);
+        if(tile != null) {
+            this.flags[y * this.numberOfColumns + x] |= DESTROYED;
+            tile.setDestroyed(true);
+        }
+        return tile;
+    }
+    
+    /**
+     * Restores the tile in the cell, if it was destroyed
+     * 
+     * @param x
+     * @param y
+     */
+    public void restoreTile(int x, int y) {
+        int index = y * this.numberOfColumns + x;
+        if((this.flags[index] & DESTROYED) != 0) {
+            this.flags[index] &= ~DESTROYED;
+            
+            AtomicReferenceArray<Tile> tiles = this.tiles;
+            Tile tile = (tiles != null) ? tiles.get(index) : null;
+            if(tile != null) {
+                tile.setDestroyed(false);
+            }
+        }
+    }
+    
+    /**
+     * Add a row of hand built {@link Tile}s, see {@link #setTile(int, int, Tile)}.
      * 
      * @param row
      */
     public void addRow(int index, Tile[] row) {
-        this.rows[index] = row;        
+        if(this.cells == null) {
+            allocateCells(row.length);
+        }
+        
         for(int i = 0; i < row.length; i++) {
-            Tile t = row[i];
-            if(t != null) {
-                t.setHeightMask(heightMask);
-            }
+            setTile(i, index, row[i]);
         }
     }
     
@@ -216,13 +493,12 @@ public class Layer {
      * @param it
      */
     public void foreach(LayerTileIterator it) {
-        int worldHeight = this.rows.length;
+        int worldHeight = this.numberOfRows;
         for(int y = 0; y < worldHeight; y++) {
             
-            Tile[] row = getRow(y);
-            int worldWidth = row.length;
+            int worldWidth = this.numberOfColumns;
             for(int x = 0; x < worldWidth; x++) {
-                Tile tile = row[x];
+                Tile tile = getTile(x, y);
                 it.onTile(tile, x, y);
             }
         }
@@ -237,12 +513,14 @@ public class Layer {
     }
     
     public void destroy() {
-        for(int rowIndex = 0; rowIndex < this.rows.length; rowIndex++) {
-            Tile[] row = this.rows[rowIndex];
-            for(int i = 0; i < row.length;i++) {
-                row[i] = null;
-            }
-            this.rows[rowIndex] = null;
+        if(this.cells != null) {
+            java.util.Arrays.fill(this.cells, (char)0);
+            java.util.Arrays.fill(this.flags, (byte)0);
         }
+        
+        this.palette.subList(1, this.palette.size()).clear();
+        this.paletteIndices.clear();
+        this.handBuiltPrototypes = null;
+        this.tiles = null;
     }
 }
@@ -0,0 +1,399 @@
+/*
+ * see license.txt
+ */
+package seventh.map;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import leola.vm.types.LeoMap;
+import seventh.map.TiledMapData.LayerData;
+import seventh.map.TiledMapData.TilesetData;
+import seventh.shared.JSON;
+
+/**
+ * Compiles a "Tiled" json map into a compact binary file, which loads without having to parse the json.  The
+ * compiled file sits next to the map, with the {@link #COMPILED_MAP_EXTENSION} added to its name; and is
+ * memory mapped when loaded.
+ *
+ * <p>
+ * The file is the {@link TiledMapData} of the map: a header (the {@link #MAGIC} and {@link #VERSION}, and the
+ * size of the map and its tiles), the tilesets, and the layers; a tile layer being an int array of its tile ids,
+ * and an object layer its map objects.  All of the values are big endian, strings are their length followed by
+ * their UTF-8 bytes (a length of -1 being null), and lists and maps are their size followed by their elements (a
+ * size of -1 being null).
+ *
+ * <p>
+ * Compile maps with: <code>java seventh.map.MapCompiler [map files...]</code>
+ *
+ * @author Tony
+ *
+ */
+public class MapCompiler {
+
+    /**
+     * The extension added to the map file name for the compiled map
+     */
+    public static final String COMPILED_MAP_EXTENSION = ".bin";
+
+    /**
+     * "S7MP"
+     */
+    public static final int MAGIC = 0x53374D50;
+
+    /**
+     * The version of the file format, maps compiled with another version must be compiled again
+     */
+    public static final int VERSION = 1;
+
+    /*
+     * The fewest number of bytes each item takes up in the file: the fixed fields plus the
+     * length of each (empty) string and list
+     */
+    private static final int PROPERTY_MIN_SIZE = 4 + 4;
+    private static final int TILE_PROPERTIES_MIN_SIZE = 4 + 4;
+    private static final int TILESET_MIN_SIZE = 5 * 4 + 4 + 4 + 4;
+    private static final int LAYER_MIN_SIZE = 4 + 4 + 1 + 2 * 4 + 4 + 4 + 4;
+    private static final int OBJECT_MIN_SIZE = 4 + 4 + 5 * 4 + 4;
+
+    /**
+     * @param mapFile
+     * @return the compiled map file of the map file
+     */
+    public static File getCompiledFile(String mapFile) {
+        return new File(mapFile + COMPILED_MAP_EXTENSION);
+    }
+
+    /**
+     * @param mapFile
+     * @param compiledFile
+     * @return true if there is a compiled file, and the map hasn't been changed since it was compiled
+     */
+    public static boolean isUpToDate(File mapFile, File compiledFile) {
+        if(!compiledFile.exists()) {
+            return false;
+        }
+
+        return !mapFile.exists() || compiledFile.lastModified() >= mapFile.lastModified();
+    }
+
+    /**
+     * Compiles the "Tiled" json map file
+     *
+     * @param mapFile
+     * @return the compiled map file
+     * @throws Exception
+     */
+    public static File compile(String mapFile) throws Exception {
+        String contents = new String(Files.readAllBytes(new File(mapFile).toPath()), StandardCharsets.UTF_8);
+        LeoMap map = JSON.parseJson(contents).as();
+
+        File compiledFile = getCompiledFile(mapFile);
+        write(TiledMapData.fromJson(map), compiledFile);
+        return compiledFile;
+    }
+
+    /**
+     * Writes out the compiled map, the file is replaced once it has been completely written so that
+     * a partly written map is never loaded
+     *
+     * @param map
+     * @param compiledFile
+     * @throws IOException
+     */
+    public static void write(TiledMapData map, File compiledFile) throws IOException {
+        File tempFile = new File(compiledFile.getPath() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(map.width);
+            out.writeInt(map.height);
+            out.writeInt(map.tilewidth);
+            out.writeInt(map.tileheight);
+
+            out.writeInt(map.tilesets.size());
+            for(TilesetData tileset : map.tilesets) {
+                out.writeInt(tileset.firstgid);
+                out.writeInt(tileset.margin);
+                out.writeInt(tileset.spacing);
+                out.writeInt(tileset.tilewidth);
+                out.writeInt(tileset.tileheight);
+                writeString(out, tileset.name);
+                writeString(out, tileset.image);
+
+                if(tileset.tileproperties == null) {
+                    out.writeInt(-1);
+                }
+                else {
+                    out.writeInt(tileset.tileproperties.size());
+                    for(Entry<String, java.util.Map<String, String>> tile : tileset.tileproperties.entrySet()) {
+                        writeString(out, tile.getKey());
+                        writeProperties(out, tile.getValue());
+                    }
+                }
+            }
+
+            out.writeInt(map.layers.size());
+            for(LayerData layer : map.layers) {
+                writeString(out, layer.type);
+                writeString(out, layer.name);
+                out.writeBoolean(layer.visible);
+                out.writeInt(layer.width);
+                out.writeInt(layer.height);
+                writeProperties(out, layer.properties);
+
+                if(layer.data == null) {
+                    out.writeInt(-1);
+                }
+                else {
+                    out.writeInt(layer.data.length);
+                    for(int i = 0; i < layer.data.length; i++) {
+                        out.writeInt(layer.data[i]);
+                    }
+                }
+
+                if(layer.objects == null) {
+                    out.writeInt(-1);
+                }
+                else {
+                    out.writeInt(layer.objects.size());
+                    for(MapObjectData object : layer.objects) {
+                        writeString(out, object.type);
+                        writeString(out, object.name);
+                        out.writeFloat(object.rotation);
+                        out.writeFloat(object.x);
+                        out.writeFloat(object.y);
+                        out.writeFloat(object.width);
+                        out.writeFloat(object.height);
+                        writeProperties(out, object.properties);
+                    }
+                }
+            }
+        }
+
+        Files.move(tempFile.toPath(), compiledFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static OutputStream newOutputStream(File file) throws IOException {
+        return Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if(value == null) {
+            out.writeInt(-1);
+        }
+        else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void writeProperties(DataOutputStream out, java.util.Map<String, String> properties) throws IOException {
+        if(properties == null) {
+            out.writeInt(-1);
+        }
+        else {
+            out.writeInt(properties.size());
+            for(Entry<String, String> property : properties.entrySet()) {
+                writeString(out, property.getKey());
+                writeString(out, property.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads in a compiled map, the file is memory mapped
+     *
+     * @param compiledFile
+     * @return the map
+     * @throws IOException if the file is not a compiled map of this {@link #VERSION}, or is cut short or corrupt
+     */
+    public static TiledMapData read(File compiledFile) throws IOException {
+        try(FileChannel channel = FileChannel.open(compiledFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        }
+        catch(BufferUnderflowException e) {
+            throw new IOException("The compiled map is cut short: " + compiledFile, e);
+        }
+    }
+
+    private static TiledMapData read(ByteBuffer in) throws IOException {
+        int magic = in.getInt();
+        int version = in.getInt();
+        if(magic != MAGIC) {
+            throw new IOException("Not a compiled map");
+        }
+
+        if(version != VERSION) {
+            throw new IOException("The compiled map is version " + version + " and must be compiled again, the current version is " + VERSION);
+        }
+
+        TiledMapData map = new TiledMapData();
+        map.width = in.getInt();
+        map.height = in.getInt();
+        map.tilewidth = in.getInt();
+        map.tileheight = in.getInt();
+
+        int numberOfTilesets = readCount(in, TILESET_MIN_SIZE, false);
+        map.tilesets = new ArrayList<TilesetData>(numberOfTilesets);
+        for(int i = 0; i < numberOfTilesets; i++) {
+            TilesetData tileset = new TilesetData();
+            tileset.firstgid = in.getInt();
+            tileset.margin = in.getInt();
+            tileset.spacing = in.getInt();
+            tileset.tilewidth = in.getInt();
+            tileset.tileheight = in.getInt();
+            tileset.name = readString(in);
+            tileset.image = readString(in);
+
+            int numberOfTiles = readCount(in, TILE_PROPERTIES_MIN_SIZE, true);
+            if(numberOfTiles > -1) {
+                tileset.tileproperties = new HashMap<String, java.util.Map<String, String>>();
+                for(int j = 0; j < numberOfTiles; j++) {
+                    String tile = readString(in);
+                    tileset.tileproperties.put(tile, readProperties(in));
+                }
+            }
+
+            map.tilesets.add(tileset);
+        }
+
+        int numberOfLayers = readCount(in, LAYER_MIN_SIZE, false);
+        map.layers = new ArrayList<LayerData>(numberOfLayers);
+        for(int i = 0; i < numberOfLayers; i++) {
+            LayerData layer = new LayerData();
+            layer.type = readString(in);
+            layer.name = readString(in);
+            layer.visible = in.get() != 0;
+            layer.width = in.getInt();
+            layer.height = in.getInt();
+            layer.properties = readProperties(in);
+
+            int numberOfTiles = readCount(in, 4, true);
+            if(numberOfTiles > -1) {
+                layer.data = new int[numberOfTiles];
+                in.asIntBuffer().get(layer.data);
+                in.position(in.position() + numberOfTiles * 4);
+            }
+
+            int numberOfObjects = readCount(in, OBJECT_MIN_SIZE, true);
+            if(numberOfObjects > -1) {
+                layer.objects = new ArrayList<MapObjectData>(numberOfObjects);
+                for(int j = 0; j < numberOfObjects; j++) {
+                    MapObjectData object = new MapObjectData();
+                    object.type = readString(in);
+                    object.name = readString(in);
+                    object.rotation = in.getFloat();
+                    object.x = in.getFloat();
+                    object.y = in.getFloat();
+                    object.width = in.getFloat();
+                    object.height = in.getFloat();
+                    object.properties = readProperties(in);
+                    layer.objects.add(object);
+                }
+            }
+
+            map.layers.add(layer);
+        }
+
+        return map;
+    }
+
+    /**
+     * Reads the number of items that follow
+     *
+     * @param in
+     * @param minItemSize the fewest number of bytes each item takes up
+     * @param isNullable if -1, for no list at all, is allowed
+     * @return the number of items
+     * @throws IOException if the number is negative, or more than the bytes left can hold
+     */
+    private static int readCount(ByteBuffer in, int minItemSize, boolean isNullable) throws IOException {
+        int count = in.getInt();
+        if(count == -1 && isNullable) {
+            return count;
+        }
+
+        if(count < 0 || (long)count * minItemSize > in.remaining()) {
+            throw new IOException("The compiled map is corrupt, invalid count: " + count);
+        }
+
+        return count;
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = readCount(in, 1, true);
+        if(length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static java.util.Map<String, String> readProperties(ByteBuffer in) throws IOException {
+        int size = readCount(in, PROPERTY_MIN_SIZE, true);
+        if(size < 0) {
+            return null;
+        }
+
+        java.util.Map<String, String> properties = new HashMap<String, String>();
+        for(int i = 0; i < size; i++) {
+            String key = readString(in);
+            properties.put(key, readString(in));
+        }
+        return properties;
+    }
+
+    /**
+     * Compiles each of the supplied maps
+     *
+     * @param args the map files
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length == 0) {
+            System.out.println("<usage> java seventh.map.MapCompiler [map files...]");
+            return;
+        }
+
+        List<String> failed = new ArrayList<String>();
+        for(String mapFile : args) {
+            try {
+                long startTime = System.nanoTime();
+                File compiledFile = compile(mapFile);
+                long time = (System.nanoTime() - startTime) / 1_000_000L;
+
+                System.out.println("Compiled " + mapFile + " to " + compiledFile + " in " + time + " msec");
+            }
+            catch(Exception e) {
+                System.out.println("Unable to compile " + mapFile + ": " + e);
+                failed.add(mapFile);
+            }
+        }
+
+        if(!failed.isEmpty()) {
+            System.exit(1);
+        }
+    }
+}
@@ -9,7 +9,8 @@ import java.util.Random;
 
 import seventh.ai.basic.Zone;
 import seventh.game.Game;
-import seventh.graph.AStarGraphSearch;
+import seventh.graph.Edge;
+import seventh.graph.Edges;
 import seventh.graph.GraphNode;
 import seventh.graph.GraphSearchPath;
 import seventh.math.Vector2f;
@@ -28,6 +29,8 @@ public class MapGraph<T> {
     private Random random;
     private int width, height;
     private GraphSearchPath<Tile, T> defaultSearchPath;
+    private GridSearchSpace searchSpace;
+    private GridSearchSpace incrementalSearchSpace;
     /**
      * 
      */
@@ -40,12 +43,48 @@ public class MapGraph<T> {
         
         this.random = new Random();
         
-        this.defaultSearchPath = new AStarGraphSearch<>();
+        this.defaultSearchPath = new GridAStarGraphSearch<>(this);
+    }
+    
+    /**
+     * @return the scores and open set shared by the grid searches of this graph that run all at once, 
+     * these are only allocated once a search is run
+     */
+    GridSearchSpace getSearchSpace() {
+        if(this.searchSpace == null) {
+            this.searchSpace = new GridSearchSpace(this.width * this.height);
+        }
+        return this.searchSpace;
+    }
+    
+    /**
+     * @return the scores and open set shared by the grid searches of this graph that are spread out over 
+     * multiple frames, these are only allocated once such a search begins
+     */
+    GridSearchSpace getIncrementalSearchSpace() {
+        if(this.incrementalSearchSpace == null) {
+            this.incrementalSearchSpace = new GridSearchSpace(this.width * this.height);
+        }
+        return this.incrementalSearchSpace;
     }
     
     public void removeNode(int x, int y) {
         GraphNode<Tile, T> node = graph[y][x];
         if(node != null) {
+            
+            // remove the neighbors edges into this node, otherwise
+            // searches following the edges would still walk onto it
+            Edges<Tile, T> edges = node.edges();
+            for(int i = 0; i < edges.size(); i++) {
+                Edge<Tile, T> edge = edges.get(i);
+                if(edge != null && edge.getRight() != null) {
+                    Edge<Tile, T> inverted = edge.getRight().getEdge(node);
+                    if(inverted != null) {
+                        inverted.removeEdge();
+                    }
+                }
+            }
+            
             node.edges().removeEdges();
             graph[y][x] = null;
         }
@@ -4,10 +4,13 @@
 package seventh.map;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
 import java.nio.file.Files;
 
 import leola.vm.Leola;
 import leola.vm.types.LeoMap;
+import seventh.shared.Cons;
 import seventh.shared.JSON;
 
 /**
@@ -19,7 +22,8 @@ import seventh.shared.JSON;
 public class MapLoaderUtil {
 
     /**
-     * Loads a {@link Map}
+     * Loads a {@link Map}, from its compiled file if it has been compiled by the {@link MapCompiler} 
+     * (and hasn't changed since), otherwise from the json map file.
      * 
      * @param runtime
      * @param mapFile the map file
@@ -29,12 +33,28 @@ public class MapLoaderUtil {
      */
     public static Map loadMap(Leola runtime, String mapFile, boolean loadAssets) throws Exception {
         File file = new File(mapFile);        
-        String contents = new String(Files.readAllBytes(file.toPath()));
         
         MapObjectFactory factory = new DefaultMapObjectFactory(runtime, mapFile, loadAssets);
+        TiledMapLoader mapLoader = new TiledMapLoader();
+        
+        File compiledFile = MapCompiler.getCompiledFile(mapFile);
+        if(MapCompiler.isUpToDate(file, compiledFile)) {
+            try {
+                TiledMapData mapData = MapCompiler.read(compiledFile);
+                return mapLoader.loadMap(mapData, factory, loadAssets);
+            }
+            catch(ClosedByInterruptException e) {
+                /* the loading thread was interrupted, not a bad compiled map */
+                throw e;
+            }
+            catch(IOException e) {
+                Cons.println("*** Unable to load the compiled map " + compiledFile + ", loading the map file instead: " + e.getMessage());
+            }
+        }
+        
+        String contents = new String(Files.readAllBytes(file.toPath()));
         
         LeoMap mapData = JSON.parseJson(runtime, contents).as();
-        MapLoader mapLoader = new TiledMapLoader();
         Map map = mapLoader.loadMap(mapData, factory, loadAssets);
         return map;
     }
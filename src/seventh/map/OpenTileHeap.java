@@ -0,0 +1,153 @@
+/*
+ * see license.txt
+ */
+package seventh.map;
+
+/**
+ * The open set of the grid path searches.  An indexed binary heap of tile indexes, ordered by the f score 
+ * (on ties, favoring the tile closest to the goal).  The tile's position in the heap is tracked so that
+ * a tile's score can be lowered in place.
+ * 
+ * @author Tony
+ *
+ */
+public class OpenTileHeap {
+
+    private int[] fScores;      /* Sum of heuristic from node to goal */
+    private int[] hScores;      /* Heuristic scores */
+    
+    private int[] heap;         /* binary heap of tile indexes */
+    private int[] heapIndex;    /* the tile's position in the heap */
+    private int size;
+    
+    /**
+     * @param numberOfTiles the total number of tiles in the grid
+     */
+    public OpenTileHeap(int numberOfTiles) {
+        this.fScores = new int[numberOfTiles];
+        this.hScores = new int[numberOfTiles];
+        this.heap = new int[numberOfTiles];
+        this.heapIndex = new int[numberOfTiles];
+    }
+    
+    /**
+     * Removes all of the tiles
+     */
+    public void clear() {
+        this.size = 0;
+    }
+    
+    /**
+     * @return true if there are no open tiles
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+    
+    /**
+     * Adds the tile to the open set
+     * 
+     * @param index the tile index
+     * @param f the f score (g + h)
+     * @param h the heuristic score
+     */
+    public void push(int index, int f, int h) {
+        this.fScores[index] = f;
+        this.hScores[index] = h;
+        
+        this.heap[this.size] = index;
+        this.heapIndex[index] = this.size;
+        this.size++;
+        
+        siftUp(this.size - 1);
+    }
+    
+    /**
+     * Lowers the f score of a tile already in the open set
+     * 
+     * @param index the tile index
+     * @param f the new f score
+     */
+    public void decrease(int index, int f) {
+        this.fScores[index] = f;
+        siftUp(this.heapIndex[index]);
+    }
+    
+    /**
+     * @param index the tile index
+     * @return the heuristic score of the tile
+     */
+    public int getHScore(int index) {
+        return this.hScores[index];
+    }
+    
+    /**
+     * Removes the tile with the lowest f score
+     * 
+     * @return the tile index
+     */
+    public int pop() {
+        int index = this.heap[0];
+        
+        this.size--;
+        if(this.size > 0) {
+            int last = this.heap[this.size];
+            this.heap[0] = last;
+            this.heapIndex[last] = 0;
+            siftDown(0);
+        }
+        
+        return index;
+    }
+    
+    private boolean isLess(int a, int b) {
+        int fa = this.fScores[a];
+        int fb = this.fScores[b];
+        
+        return fa < fb || (fa == fb && this.hScores[a] < this.hScores[b]);
+    }
+    
+    private void swap(int i, int j) {
+        int a = this.heap[i];
+        int b = this.heap[j];
+        
+        this.heap[i] = b;
+        this.heap[j] = a;
+        this.heapIndex[b] = i;
+        this.heapIndex[a] = j;
+    }
+    
+    private void siftUp(int i) {
+        while(i > 0) {
+            int parent = (i - 1) >>> 1;
+            if(!isLess(this.heap[i], this.heap[parent])) {
+                break;
+            }
+            
+            swap(i, parent);
+            i = parent;
+        }
+    }
+    
+    private void siftDown(int i) {
+        while(true) {
+            int left = 2 * i + 1;
+            if(left >= this.size) {
+                break;
+            }
+            
+            int smallest = left;
+            int right = left + 1;
+            if(right < this.size && isLess(this.heap[right], this.heap[left])) {
+                smallest = right;
+            }
+            
+            if(!isLess(this.heap[smallest], this.heap[i])) {
+                break;
+            }
+            
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+}
@@ -83,14 +83,15 @@ public class OrthoMap implements Map {
     private TextureRegion backgroundImage;
     
     /**
-     * The surfaces
+     * The surfaces, the ordinal of each tiles {@link SurfaceType} (or -1 if there isn't one) in row major order
      */
-    private SurfaceType[][] surfaces;    
+    private byte[] surfaces;    
     private TilesetAtlas atlas;
     
     private java.util.Map<Integer, TextureRegion> shadeTilesLookup;
     
     private Vector2f collisionTilePos;
+    private Rectangle collisionBounds;
     private List<MapObject> mapObjects;
     
     /**
@@ -100,6 +101,7 @@ public class OrthoMap implements Map {
         this.currentFrameViewport = new Rectangle();
         this.destroyedTiles = new ArrayList<Tile>();
         this.collisionTilePos = new Vector2f();
+        this.collisionBounds = new Rectangle();
         
         if(loadAssets) {
             this.shadeTilesLookup = new HashMap<Integer, TextureRegion>();
@@ -289,16 +291,16 @@ public class OrthoMap implements Map {
         int wy = (tileOffset_y + y) / this.tileHeight;
         
         for (int i = 0; i < this.collidableLayers.length; i++) {        
-            //Tile tile = this.backgroundLayers[this.collidableLayers[i].getIndex()].getRow(wy)[wx];                     
-            Tile tile = this.collidableLayers[i].getRow(wy)[wx];
+            Layer layer = this.collidableLayers[i];
+            TilePrototype tile = layer.getPrototype(wx, wy);
             if (tile != null) {
-                int tileHeightMask = tile.getHeightMask();
+                int tileHeightMask = layer.getHeightMask();
                 if(tileHeightMask > 0) {
-                    if ((tileHeightMask & heightMask) == tileHeightMask && (tile.pointCollide(x, y))) {
+                    if ((tileHeightMask & heightMask) == tileHeightMask && (pointCollides(tile, wx, wy, x, y))) {
                         return true;
                     }
                 }
-                else if( tile.pointCollide(x, y) ) {
+                else if( pointCollides(tile, wx, wy, x, y) ) {
                     return true;
                 }
             }
@@ -307,6 +309,22 @@ public class OrthoMap implements Map {
         return false;
     }
     
+    /**
+     * @return true if the point collides with the tile at the tile index
+     */
+    private boolean pointCollides(TilePrototype tile, int tileX, int tileY, int x, int y) {
+        this.collisionBounds.set(tileX * this.tileWidth, tileY * this.tileHeight, this.tileWidth, this.tileHeight);
+        return tile.getCollisionMask().pointCollide(this.collisionBounds, x, y);
+    }
+    
+    /**
+     * @return true if the rectangle collides with the tile at the tile index
+     */
+    private boolean rectCollides(TilePrototype tile, int tileX, int tileY, Rectangle rect) {
+        this.collisionBounds.set(tileX * this.tileWidth, tileY * this.tileHeight, this.tileWidth, this.tileHeight);
+        return tile.getCollisionMask().rectCollide(this.collisionBounds, rect);
+    }
+    
     @Override
     public boolean rectCollides(Rectangle rect) {
         return rectCollides(rect, 1);
@@ -375,17 +393,17 @@ public class OrthoMap implements Map {
                     for (int i = 0; i < collidableLayers.length; i++) {
                         Layer layer = collidableLayers[i];
                             
-                        Tile tile = layer.getRow(indexY)[indexX];
+                        TilePrototype tile = layer.getPrototype(indexX, indexY);
                         if (tile != null) {
-                            int tileHeightMask = tile.getHeightMask();
+                            int tileHeightMask = layer.getHeightMask();
                             if(tileHeightMask > 0) {                            
-                                if ( (tileHeightMask & heightMask) == tileHeightMask && (tile.rectCollide(rect)) ) {
-                                    collisionTilePos.set(tile.getX(), tile.getY());
+                                if ( (tileHeightMask & heightMask) == tileHeightMask && (rectCollides(tile, indexX, indexY, rect)) ) {
+                                    collisionTilePos.set(indexX * this.tileWidth, indexY * this.tileHeight);
                                     return true;
                                 }
                             } 
-                            else if( tile.rectCollide(rect) ) {
-                                collisionTilePos.set(tile.getX(), tile.getY());
+                            else if( rectCollides(tile, indexX, indexY, rect) ) {
+                                collisionTilePos.set(indexX * this.tileWidth, indexY * this.tileHeight);
                                 return true;
                             }
                         }
@@ -416,62 +434,167 @@ public class OrthoMap implements Map {
     @Override
     public boolean lineCollides(Vector2f a, Vector2f b, int heightMask) {
         
-        // Uses the Bresenham Line Algorithm
+        /* Checks the same pixels as the Bresenham Line Algorithm, but
+         * walks the line a tile at a time (like an Amanatides-Woo traversal), so
+         * that only the tiles the line enters are looked up, and only the
+         * pixels in collidable tiles are tested (against the tile collision bitmaps)
+         */
         int x1 = (int)b.x;
         int y1 = (int)b.y;
         
         int x0 = (int)a.x;
         int y0 = (int)a.y;
         
+        // the line can't leave the box made up by its
+        // end points, so if they are in bounds, so is every pixel in between
+        if(checkBounds(x0, y0) || checkBounds(x1, y1)) {
+            return true;
+        }
+        
         int dx = Math.abs(x1 - x0);
         int dy = Math.abs(y1 - y0);
         
-        int sx = 0; 
-        int sy = 0;
+        int sx = (x0 < x1) ? 1 : -1;
+        int sy = (y0 < y1) ? 1 : -1;
         
-        if (x0 < x1) sx = 1; else sx = -1;
-        if (y0 < y1) sy = 1; else sy = -1;
+        boolean isXMajor = dx >= dy;
+        int major = isXMajor ? dx : dy;
+        int minor = isXMajor ? dy : dx;
         
-        int err = dx - dy;
-        
-                                
-        do {        
-            if(this.pointCollides(x0, y0, heightMask)) {
-                return true;
-            }
+        int step = 0;
+        while(step <= major) {
+            int x = x0 + sx * (isXMajor ? step : lineMinorOffset(step, major, minor));
+            int y = y0 + sy * (isXMajor ? lineMinorOffset(step, major, minor) : step);
             
-            if(x0 == x1 && y0 == y1) {
-                break;
-            }
+            int tileX = x / this.tileWidth;
+            int tileY = y / this.tileHeight;
             
-            int e2 = err * 2;
+            // the furthest the line can travel (from the start) on each 
+            // axis and still be in this tile
+            int maxOffsetX = (sx > 0) ? ((tileX + 1) * this.tileWidth - 1) - x0 : x0 - (tileX * this.tileWidth);
+            int maxOffsetY = (sy > 0) ? ((tileY + 1) * this.tileHeight - 1) - y0 : y0 - (tileY * this.tileHeight);
             
-            if(e2 > -dy) {
-                err = err - dy;
-                x0 = x0 + sx;
+            int lastStep = Math.min(major, isXMajor ? maxOffsetX : maxOffsetY);
+            if(minor > 0) {
+                int maxMinorOffset = isXMajor ? maxOffsetY : maxOffsetX;
+                lastStep = Math.min(lastStep, (2 * major * (maxMinorOffset + 1) - major) / (2 * minor));
             }
             
-            if(x0 == x1 && y0 == y1) {
-                if(this.pointCollides(x0, y0, heightMask)) {
-                    return true;
-                }
-                break;
+            if(lineCollidesInTile(tileX, tileY, heightMask, x0, y0, sx, sy, isXMajor, major, minor, step, lastStep)) {
+                return true;
             }
             
-            if(e2 < dx) {
-                err = err + dx;
-                y0 = y0 + sy;
+            step = lastStep + 1;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * The offset along the minor axis of the Bresenham line at the supplied step
+     * 
+     * @param step the step along the major axis
+     * @param major the length of the major axis
+     * @param minor the length of the minor axis
+     * @return the offset along the minor axis
+     */
+    private static int lineMinorOffset(int step, int major, int minor) {
+        if(major == 0) {
+            return 0;
+        }
+        return (2 * step * minor + major - 1) / (2 * major);
+    }
+    
+    /**
+     * Tests the pixels of the line from firstStep to lastStep, all of which are
+     * in the supplied tile
+     * 
+     * @return true if any of the pixels collide
+     */
+    private boolean lineCollidesInTile(int tileX, int tileY, int heightMask, 
+                                       int x0, int y0, int sx, int sy,
+                                       boolean isXMajor, int major, int minor, 
+                                       int firstStep, int lastStep) {
+        
+        int tileWorldX = tileX * this.tileWidth;
+        int tileWorldY = tileY * this.tileHeight;
+        
+        for (int i = 0; i < this.collidableLayers.length; i++) {
+            Layer layer = this.collidableLayers[i];
+            TilePrototype tile = layer.getPrototype(tileX, tileY);
+            if (tile == null) {
+                continue;
             }
             
-            if(checkBounds(x0, y0)) {                    
-                return true;
+            int tileHeightMask = layer.getHeightMask();
+            if(tileHeightMask > 0 && (tileHeightMask & heightMask) != tileHeightMask) {
+                continue;
             }
             
-        } while( true );
-        
+            long[] bitmap = tile.getCollisionBitmap(this.tileWidth, this.tileHeight);
+            for(int step = firstStep; step <= lastStep; step++) {
+                int x = x0 + sx * (isXMajor ? step : lineMinorOffset(step, major, minor));
+                int y = y0 + sy * (isXMajor ? lineMinorOffset(step, major, minor) : step);
+                
+                int index = (y - tileWorldY) * this.tileWidth + (x - tileWorldX);
+                if((bitmap[index >>> 6] & (1L << (index & 63))) != 0) {
+                    return true;
+                }
+            }
+        }
         
         return false;
+    }
+    
+    /**
+     * Creates the collision bitmaps for each of the collidable tile prototypes.  Prototypes with the same
+     * bitmap share the same instance, as most tiles are completely solid.
+     */
+    private void createCollisionBitmaps() {
+        java.util.Map<CollisionBitmapKey, long[]> bitmaps = new HashMap<>();
+        
+        for(int i = 0; i < this.collidableLayers.length; i++) {
+            Layer layer = this.collidableLayers[i];
+            for(TilePrototype tile : layer.getPrototypes()) {
+                CollisionBitmapKey key = new CollisionBitmapKey(tile.createCollisionBitmap(this.tileWidth, this.tileHeight));
+                long[] bitmap = bitmaps.get(key);
+                if(bitmap == null) {
+                    bitmap = key.bitmap;
+                    bitmaps.put(key, bitmap);
+                }
+                
+                tile.setCollisionBitmap(bitmap);
+            }
+        }
+    }
+    
+    /**
+     * Used for sharing the same collision bitmaps
+     * 
+     * @author Tony
+     *
+     */
+    private static class CollisionBitmapKey {
+        final long[] bitmap;
+        final int hashCode;
+        
+        CollisionBitmapKey(long[] bitmap) {
+            this.bitmap = bitmap;
+            this.hashCode = java.util.Arrays.hashCode(bitmap);
+        }
+        
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
         
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof CollisionBitmapKey)) {
+                return false;
+            }
+            return java.util.Arrays.equals(this.bitmap, ((CollisionBitmapKey)obj).bitmap);
+        }
     }
     
     /* (non-Javadoc)
@@ -502,9 +625,7 @@ public class OrthoMap implements Map {
                 }
                 
                 
-                for(int j = 0; j < this.backgroundLayers[i].numberOfRows(); j++) {
-                    this.backgroundLayers[i].destroy();
-                }
+                this.backgroundLayers[i].destroy();
                 this.backgroundLayers[i] = null;
             }
             
@@ -519,9 +640,7 @@ public class OrthoMap implements Map {
                     continue;
                 }
                 
-                for(int j = 0; j < this.foregroundLayers[i].numberOfRows(); j++) {
-                    this.foregroundLayers[i].destroy();
-                }
+                this.foregroundLayers[i].destroy();
                 
                 this.foregroundLayers[i] = null;
             }
@@ -661,8 +780,8 @@ public class OrthoMap implements Map {
                 continue;
             }
                         
-            Tile tile = this.collidableLayers[i].getRow(wy)[wx];
-            if(tile != null && tile.getHeightMask() > 0) {
+            Layer layer = this.collidableLayers[i];
+            if(layer.hasTile(wx, wy) && layer.getHeightMask() > 0) {
                 return true;
             }
         }
@@ -677,7 +796,7 @@ public class OrthoMap implements Map {
      */
     
     public Tile getTile(int layer, int x, int y) {
-        return this.backgroundLayers[layer].getRow(y)[x];
+        return this.backgroundLayers[layer].getTile(x, y);
     }
     
     @Override
@@ -687,7 +806,7 @@ public class OrthoMap implements Map {
                 continue;
             }
             
-            Tile tile = destructableLayer[i].getRow(y)[x];
+            Tile tile = destructableLayer[i].getTile(x, y);
             if(tile != null) {
                 return tile;
             }
@@ -702,7 +821,7 @@ public class OrthoMap implements Map {
     @Override
     public Tile getCollidableTile(int x, int y) {
         for(int i = 0; i < collidableLayers.length; i++) {
-            Tile tile = collidableLayers[i].getRow(y)[x];
+            Tile tile = collidableLayers[i].getTile(x, y);
             if(tile != null) {
                 return tile;
             }
@@ -771,6 +890,8 @@ public class OrthoMap implements Map {
         
         this.worldBounds = new Rectangle(0, 0, this.mapWidth, this.mapHeight);
         
+        createCollisionBitmaps();
+        
         this.atlas = info.getAtlas();
 
         this.mapObjects = info.getMapObjects();
@@ -794,13 +915,35 @@ public class OrthoMap implements Map {
 //            t.setMask(1);
 //        }
         
-        this.surfaces = info.getSurfaces();
+        this.surfaces = packSurfaces(info.getSurfaces());
         
         if(this.shadeTilesLookup != null) {
             this.shadeTilesLookup = createShadeLookup(75);
         }
     }
     
+    /**
+     * Packs the surfaces into a byte per tile
+     * 
+     * @param surfaces
+     * @return the packed surfaces, or null if there are none
+     */
+    private byte[] packSurfaces(SurfaceType[][] surfaces) {
+        if(surfaces == null) {
+            return null;
+        }
+        
+        byte[] packed = new byte[this.maxX * this.maxY];
+        for(int y = 0; y < this.maxY; y++) {
+            for(int x = 0; x < this.maxX; x++) {
+                SurfaceType surface = (y < surfaces.length && surfaces[y] != null && x < surfaces[y].length) 
+                        ? surfaces[y][x] : null;
+                packed[y * this.maxX + x] = (byte)((surface != null) ? surface.ordinal() : -1);
+            }
+        }
+        return packed;
+    }
+    
     /**
      * Creates the shade lookup table
      * @param startAlpha
@@ -840,7 +983,7 @@ public class OrthoMap implements Map {
     @SuppressWarnings("all")
     public <E> MapGraph<E> createMapGraph(GraphNodeFactory<E> factory) {        
         int numberOfRows = backgroundLayers[0].numberOfRows();
-        int numberOfColumns = backgroundLayers[0].getRow(0).length;
+        int numberOfColumns = backgroundLayers[0].numberOfColumns();
         
         GraphNode[][] nodes = new GraphNode[numberOfRows][numberOfColumns];
         for(int i = 0; i < numberOfRows; i++) {
@@ -853,8 +996,7 @@ public class OrthoMap implements Map {
                 boolean isCollidable = false;
                 for(int i = 0; i < collidableLayers.length; i++) {
                     if (collidableLayers[i] != null) {
-                        Tile tile = collidableLayers[i].getRow(y)[x];
-                        isCollidable = tile != null;
+                        isCollidable = collidableLayers[i].hasTile(x, y);
                         if(isCollidable) {
                             break;
                         }
@@ -893,7 +1035,7 @@ public class OrthoMap implements Map {
     @SuppressWarnings("all")
     private <E> void addNode(GraphNodeFactory<E> factory, GraphNode[][] nodes, GraphNode<Tile, E> node, int x, int y, boolean addAdjacent) {
         int numberOfRows = backgroundLayers[0].numberOfRows();
-        int numberOfColumns = backgroundLayers[0].getRow(0).length;
+        int numberOfColumns = backgroundLayers[0].numberOfColumns();
         
         
         nodes[y][x] = node;
@@ -1083,10 +1225,9 @@ public class OrthoMap implements Map {
                             continue;
                         }
                             
-                        Tile tile = layer.getRow(indexY)[indexX];
+                        TilePrototype tile = layer.getPrototype(indexX, indexY);
                         if (tile != null) {                                                
-                            tile.setRenderingPosition(pixelX + vx, pixelY + vy);
-                            tile.render(canvas, camera, alpha);
+                            tile.render(canvas, pixelX + vx, pixelY + vy, this.tileWidth, this.tileHeight, layer.getFlips(indexX, indexY));
                             
                             //break;
                             // helpful debug stuff
@@ -1157,10 +1298,9 @@ public class OrthoMap implements Map {
                             continue;
                         }
                         
-                        Tile tile = layer.getRow(indexY)[indexX];
+                        TilePrototype tile = layer.getPrototype(indexX, indexY);
                         if (tile != null) {
-                            tile.setRenderingPosition(pixelX + vx, pixelY + vy);
-                            tile.render(canvas, camera, alpha);
+                            tile.render(canvas, pixelX + vx, pixelY + vy, this.tileWidth, this.tileHeight, layer.getFlips(indexX, indexY));
                         }
                     }
                 }
@@ -1213,7 +1353,7 @@ public class OrthoMap implements Map {
                  pixelX += this.tileWidth, indexX++) {
                 
                 if ((indexY >= 0 && indexX >= 0) && (indexY < this.maxY && indexX < this.maxX)) {                                                                
-                    Tile tile = layer.getRow(indexY)[indexX];
+                    Tile tile = layer.getTile(indexX, indexY);
                     if (tile != null) {
                         int mask = tile.getMask();
                         if(mask == 0) {                            
@@ -1248,69 +1388,24 @@ public class OrthoMap implements Map {
         boolean doIt = false;
         if(!doIt) return;
         
-        Vector2f camPos = this.mapOffset;
-        Rectangle viewport = this.currentFrameViewport;
+        /* the animated tiles share their animation with every other tile of the same id */
+        for (Layer layer : this.backgroundLayers) {
+            updateAnimations(layer, timeStep);
+        }
         
-        // screen pixel x,y coordinate to draw the current tile to
-        int pixelX = 0;
-        int pixelY = 0;
-
-        int indexX = 0;
-        int indexY = 0;
-
-        int toIndex_x = 0, toIndex_y = 0;
+        for (Layer layer : this.foregroundLayers) {
+            updateAnimations(layer, timeStep);
+        }
+    }
+    
+    private void updateAnimations(Layer layer, TimeStep timeStep) {
+        if (layer == null || !layer.hasAnimations()) {
+            return;
+        }
         
-        // Current Tile offset (to pixels)
-        int tileOffset_x =  -((int)camPos.x % this.tileWidth);
-        // to next index
-        toIndex_x        = (tileOffset_x + (int)camPos.x) / this.tileWidth;
-
-        // current tile y offset (to pixels)
-        int tileOffset_y = -((int)camPos.y % this.tileHeight);
-        toIndex_y        = (tileOffset_y + (int)camPos.y) / this.tileHeight;
-
-        indexY = toIndex_y;
-        for (pixelY = tileOffset_x;
-             pixelY < viewport.getHeight() && indexY < this.maxY;              
-             pixelY += this.tileHeight, indexY++) {
-            
-            for (pixelX = toIndex_y, indexX = toIndex_x; 
-                 pixelX < viewport.getWidth() && indexX < this.maxX; 
-                 pixelX += this.tileWidth, indexX++) {
-                
-                if ((indexY >= 0 && indexX >= 0) && (indexY < this.maxY && indexX < this.maxX)) {
-                    for (Layer layer : this.backgroundLayers) {
-                        if (layer == null) {
-                            continue;
-                        }
-                        
-                        if (!layer.hasAnimations()) {
-                            continue;
-                        }
-                        
-                        Tile tile = layer.getRow(indexY)[indexX];
-                        if (tile != null) {
-                            tile.update(timeStep);
-                        }
-                    }
-                    
-                    for (Layer layer : this.foregroundLayers) {
-                        if (layer == null) {
-                            continue;
-                        }
-                        
-                        if (!layer.hasAnimations()) {
-                            continue;
-                        }
-                        
-                        Tile tile = layer.getRow(indexY)[indexX];
-                        if (tile != null) {
-                            tile.update(timeStep);
-                        }
-                    }
-                }
-
-            }
+        List<TilePrototype> tiles = layer.getPrototypes();
+        for(int i = 0; i < tiles.size(); i++) {
+            tiles.get(i).update(timeStep);
         }
     }
     
@@ -1350,7 +1445,7 @@ public class OrthoMap implements Map {
      */
     @Override
     public SurfaceType getSurfaceTypeByIndex(int x, int y) {
-        return this.surfaces[y][x];
+        return getSurfaceType(x, y);
     }
 
     /* (non-Javadoc)
@@ -1367,7 +1462,16 @@ public class OrthoMap implements Map {
 
         int tileOffset_y = 0;
         int wy = (tileOffset_y + y) / this.tileHeight;
-        return this.surfaces[wy][wx];
+        return getSurfaceType(wx, wy);
+    }
+    
+    private SurfaceType getSurfaceType(int x, int y) {
+        if(this.surfaces == null) {
+            return null;
+        }
+        
+        int surface = this.surfaces[y * this.maxX + x];
+        return (surface < 0) ? null : SurfaceType.fromId(surface);
     }
     
     
@@ -1423,14 +1527,10 @@ public class OrthoMap implements Map {
         boolean wasRemoved = false;
         for(int i = 0; i < this.destructableLayer.length; i++) {
             Layer layer = this.destructableLayer[i];
-            Tile tile = layer.getRow(tileY)[tileX];            
+            Tile tile = layer.destroyTile(tileX, tileY);            
             if(tile != null) {
-                if(!tile.isDestroyed()) {
-                    this.destroyedTiles.add(tile);
-                    tile.setDestroyed(true);
-                    layer.getRow(tileY)[tileX] = null;
-                    wasRemoved = true;
-                }
+                this.destroyedTiles.add(tile);
+                wasRemoved = true;
             }
         }
         
@@ -1444,9 +1544,9 @@ public class OrthoMap implements Map {
     public void restoreDestroyedTiles() {
         for(int index = 0; index < this.destroyedTiles.size(); index++) {
             Tile tile = this.destroyedTiles.get(index);
-            Layer layer = this.backgroundLayers[tile.getLayer()];
-            layer.getRow(tile.getYIndex())[tile.getXIndex()] = tile;
-            tile.setDestroyed(false);            
+            for(int i = 0; i < this.destructableLayer.length; i++) {
+                this.destructableLayer[i].restoreTile(tile.getXIndex(), tile.getYIndex());
+            }
         }
         
         this.destroyedTiles.clear();
@@ -1473,9 +1573,9 @@ public class OrthoMap implements Map {
         Layer[] layers = getCollidableLayers();
         for(int y = 0; y < getTileWorldHeight(); y++) {
             for(int x = 0; x < getTileWorldWidth(); x++) {
-                Tile topTile = null;
+                TilePrototype topTile = null;
                 for(int i = 0; i < layers.length; i++) {
-                    Tile tile = layers[i].getRow(y)[x]; 
+                    TilePrototype tile = layers[i].getPrototype(x, y); 
                     if(tile != null) {
                         topTile = tile;
                         break;
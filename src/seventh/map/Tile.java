@@ -1309,6 +1309,7 @@ public class Tile implements Renderable {
     private int heightMask;
     private int flipMask;
     private CollisionMask collisionMask;    
+    private long[] collisionBitmap;
     private Rectangle bounds;
     private Vector2f centerPos;
     
@@ -1316,8 +1317,6 @@ public class Tile implements Renderable {
     
     private boolean isDestroyed;
     
-    private float u,u2,v,v2;
-    
     
     /**
      * 
@@ -1333,35 +1332,42 @@ public class Tile implements Renderable {
         this.surfaceType = SurfaceType.CEMENT;
         this.isDestroyed = false;
         
+        if(image != null) {
+            this.sprite = newSprite(image, width, height);
+        }
+    }
+    
+    /**
+     * @param image
+     * @param width the width of the tile
+     * @param height the height of the tile
+     * @return a new sprite of the tile image
+     */
+    static Sprite newSprite(TextureRegion image, int width, int height) {
+        Sprite sprite = new Sprite(image);
+        
         /* Account for texture bleeding, 
          * we offset the u/v coordinates
          * to be nudged in ward of the sprite
-         * 
-         * u,u2,v,v2 are data members for now
-         * as this allows me to quickly move this
-         * code to the render() method for quick
-         * responsive feedback
          */
-        if(image != null) {
-            this.sprite = new Sprite(image);
-            this.u = image.getU();
-            this.u2 = image.getU2();
-            
-            this.v = image.getV();
-            this.v2 = image.getV2();
-                        
-            // this value is some what arbitrary
-            // as this looks the best
-            float adjustX = 0.0125f / width;
-            float adjustY = 0.0125f / height;
-            
-            sprite.setU(u + adjustX);
-            sprite.setU2(u2 - adjustX);
-            
-            sprite.setV(v - adjustY);
-            sprite.setV2(v2 + adjustY);
-            
-        }
+        float u = image.getU();
+        float u2 = image.getU2();
+        
+        float v = image.getV();
+        float v2 = image.getV2();
+                    
+        // this value is some what arbitrary
+        // as this looks the best
+        float adjustX = 0.0125f / width;
+        float adjustY = 0.0125f / height;
+        
+        sprite.setU(u + adjustX);
+        sprite.setU2(u2 - adjustX);
+        
+        sprite.setV(v - adjustY);
+        sprite.setV2(v2 + adjustY);
+        
+        return sprite;
     }
     
     /* (non-Javadoc)
@@ -1470,6 +1476,7 @@ public class Tile implements Renderable {
      */
     public void setCollisionMask(CollisionMask collisionMask) {
         this.collisionMask = collisionMask;
+        this.collisionBitmap = null;
     }
     
     /**
@@ -1484,6 +1491,7 @@ public class Tile implements Renderable {
         if(this.collisionMask == null) {
             this.collisionMask = CollisionMask.ALL_SOLID;
         }
+        this.collisionBitmap = null;
     }
     
     /**
@@ -1564,6 +1572,7 @@ public class Tile implements Renderable {
      */
     public void setPosition(int x, int y) {
         this.x = x; this.y = y;
+        this.collisionBitmap = null;
         
         this.xIndex = this.x / this.width;
         this.yIndex = this.y / this.height;
@@ -1598,6 +1607,67 @@ public class Tile implements Renderable {
         return this.collisionMask.pointCollide(bounds, x, y);
     }        
     
+    /**
+     * Creates a packed bitmap of which pixels of this tile collide, one bit per pixel
+     * in row major order.  This is the result of {@link #pointCollide(int, int)} for
+     * every pixel of the tile.
+     * 
+     * @return the collision bitmap
+     */
+    public long[] createCollisionBitmap() {
+        long[] bitmap = new long[(width * height + 63) / 64];
+        
+        /* use our own bounds, the collision masks alter them and this may be 
+         * called from multiple threads */
+        Rectangle tileBounds = new Rectangle();
+        for(int localY = 0; localY < height; localY++) {
+            for(int localX = 0; localX < width; localX++) {
+                tileBounds.set(this.x, this.y, width, height);
+                if(this.collisionMask.pointCollide(tileBounds, this.x + localX, this.y + localY)) {
+                    int index = localY * width + localX;
+                    bitmap[index >>> 6] |= 1L << (index & 63);
+                }
+            }
+        }
+        return bitmap;
+    }
+    
+    /**
+     * Sets the collision bitmap, this allows for tiles with the same collision
+     * bitmap to share the same instance.  The bitmap must have been created 
+     * by {@link #createCollisionBitmap()}.
+     * 
+     * @param collisionBitmap
+     */
+    public void setCollisionBitmap(long[] collisionBitmap) {
+        this.collisionBitmap = collisionBitmap;
+    }
+    
+    /**
+     * Determines if a point collides with this tile, by looking it up in the collision
+     * bitmap.  This gives the same result as {@link #pointCollide(int, int)}.
+     * 
+     * @param x
+     * @param y
+     * @return true if the point collides, false otherwise
+     */
+    public boolean bitmapCollide(int x, int y) {
+        int localX = x - this.x;
+        int localY = y - this.y;
+        if(localX < 0 || localY < 0 || localX >= width || localY >= height) {
+            return pointCollide(x, y);
+        }
+        
+        long[] bitmap = this.collisionBitmap;
+        if(bitmap == null) {
+            bitmap = createCollisionBitmap();
+            this.collisionBitmap = bitmap;
+        }
+        
+        int index = localY * width + localX;
+        return (bitmap[index >>> 6] & (1L << (index & 63))) != 0;
+    }
+    
     /**
      * Determines if the {@link Rectangle} collides with this tile
      * @param rect
@@ -0,0 +1,208 @@
+/*
+ * see license.txt
+ */
+package seventh.map;
+
+import com.badlogic.gdx.graphics.g2d.Sprite;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+
+import seventh.client.gfx.AnimatedImage;
+import seventh.client.gfx.Canvas;
+import seventh.client.gfx.TextureUtil;
+import seventh.map.Tile.CollisionMask;
+import seventh.math.Rectangle;
+import seventh.shared.TimeStep;
+
+/**
+ * The data shared by every cell of a {@link Layer} with the same tile id: its image and how it collides.  A
+ * {@link Layer} only stores which prototype each cell uses (along with the few bits that differ from cell to
+ * cell), rather than a whole {@link Tile} per cell.
+ *
+ * @author Tony
+ *
+ */
+public class TilePrototype {
+
+    /**
+     * The flip bits of a cell
+     */
+    public static final int FLIPPED_HORIZONTALLY = (1 << 0),
+                            FLIPPED_VERTICALLY   = (1 << 1),
+                            FLIPPED_DIAGONALLY   = (1 << 2),
+                            FLIPS                = FLIPPED_HORIZONTALLY | FLIPPED_VERTICALLY | FLIPPED_DIAGONALLY;
+
+    private final int id;
+    private final TextureRegion image;
+    private final AnimatedImage animatedImage;
+    private final CollisionMask collisionMask;
+
+    /* the sprites for each combination of flips, created when first rendered */
+    private final Sprite[] sprites;
+    private long[] collisionBitmap;
+
+    /**
+     * @param id the tile id
+     * @param image the image, null if the assets are not loaded
+     * @param animatedImage the animation, null if this isn't an animated tile
+     * @param collisionMask how the tile collides, when it is on a collidable {@link Layer}
+     */
+    public TilePrototype(int id, TextureRegion image, AnimatedImage animatedImage, CollisionMask collisionMask) {
+        this.id = id;
+        this.image = image;
+        this.animatedImage = animatedImage;
+        this.collisionMask = (collisionMask != null) ? collisionMask : CollisionMask.ALL_SOLID;
+        this.sprites = new Sprite[FLIPS + 1];
+
+        if(this.animatedImage != null) {
+            this.animatedImage.loop(true);
+        }
+    }
+
+    /**
+     * A prototype of a hand built {@link Tile}, its image is shared as is
+     *
+     * @param tile
+     */
+    TilePrototype(Tile tile) {
+        this(-1, null, (tile instanceof AnimatedTile) ? ((AnimatedTile)tile).getAnimatedImage() : null, tile.getCollisionMask());
+        for(int i = 0; i < this.sprites.length; i++) {
+            this.sprites[i] = tile.getImage();
+        }
+    }
+
+    /**
+     * @return the tile id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the image, null if the assets are not loaded
+     */
+    public TextureRegion getImage() {
+        return image;
+    }
+
+    /**
+     * @return true if this is an animated tile
+     */
+    public boolean isAnimated() {
+        return animatedImage != null;
+    }
+
+    /**
+     * @return the collisionMask
+     */
+    public CollisionMask getCollisionMask() {
+        return collisionMask;
+    }
+
+    /**
+     * @param width the width of the tiles
+     * @param height the height of the tiles
+     * @return the packed bitmap of which pixels of the tile collide, see {@link Tile#createCollisionBitmap()}
+     */
+    public long[] getCollisionBitmap(int width, int height) {
+        long[] bitmap = this.collisionBitmap;
+        if(bitmap == null) {
+            bitmap = createCollisionBitmap(width, height);
+            this.collisionBitmap = bitmap;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Sets the collision bitmap, this allows for prototypes with the same collision bitmap to share the
+     * same instance.
+     *
+     * @param collisionBitmap
+     */
+    public void setCollisionBitmap(long[] collisionBitmap) {
+        this.collisionBitmap = collisionBitmap;
+    }
+
+    /**
+     * @param width
+     * @param height
+     * @return a new collision bitmap, one bit per pixel in row major order
+     */
+    public long[] createCollisionBitmap(int width, int height) {
+        long[] bitmap = new long[(width * height + 63) / 64];
+
+        /* the collision masks alter the bounds */
+        Rectangle tileBounds = new Rectangle();
+        for(int localY = 0; localY < height; localY++) {
+            for(int localX = 0; localX < width; localX++) {
+                tileBounds.set(0, 0, width, height);
+                if(this.collisionMask.pointCollide(tileBounds, localX, localY)) {
+                    int index = localY * width + localX;
+                    bitmap[index >>> 6] |= 1L << (index & 63);
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Creates a {@link Tile} of this prototype, for the places that need a {@link Tile} object
+     *
+     * @param layer the layer index
+     * @param width
+     * @param height
+     * @param flips the flip bits
+     * @param isCollidable if the tile is on a collidable {@link Layer}, otherwise it doesn't collide
+     * @return the tile
+     */
+    public Tile newTile(int layer, int width, int height, int flips, boolean isCollidable) {
+        Tile tile = (this.animatedImage != null)
+                ? new AnimatedTile(this.animatedImage, layer, width, height)
+                : new Tile(this.image, layer, width, height);
+
+        tile.setFlips((flips & FLIPPED_HORIZONTALLY) != 0, (flips & FLIPPED_VERTICALLY) != 0, (flips & FLIPPED_DIAGONALLY) != 0);
+        if(isCollidable) {
+            tile.setCollisionMask(this.collisionMask);
+        }
+        return tile;
+    }
+
+    /**
+     * @param timeStep
+     */
+    public void update(TimeStep timeStep) {
+        if(this.animatedImage != null) {
+            this.animatedImage.update(timeStep);
+        }
+    }
+
+    /**
+     * Renders a cell of this prototype
+     *
+     * @param canvas
+     * @param x the screen position
+     * @param y the screen position
+     * @param width
+     * @param height
+     * @param flips the flip bits of the cell
+     */
+    public void render(Canvas canvas, int x, int y, int width, int height, int flips) {
+        if(this.animatedImage != null) {
+            canvas.drawScaledImage(this.animatedImage.getCurrentImage(), x, y, width, height, 0xFFFFFFFF);
+            return;
+        }
+
+        Sprite sprite = this.sprites[flips & FLIPS];
+        if(sprite == null) {
+            if(this.image == null) {
+                return;
+            }
+
+            sprite = Tile.newSprite(this.image, width, height);
+            TextureUtil.setFlips(sprite, (flips & FLIPPED_HORIZONTALLY) != 0, (flips & FLIPPED_VERTICALLY) != 0, (flips & FLIPPED_DIAGONALLY) != 0);
+            this.sprites[flips & FLIPS] = sprite;
+        }
+
+        sprite.setPosition(x, y);
+        canvas.drawRawSprite(sprite);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * see license.txt
+ */
+package seventh.map;
+
+import java.util.Arrays;
+
+/**
+ * A bitset over the tile grid, marking which tiles a viewer can see.  Unlike the {@link Tile#getMask()},
+ * which is shared by every viewer, each viewer can have its own {@link TileVisibility} so that line of
+ * sight can be calculated for many viewers at once.
+ *
+ * @author Tony
+ *
+ */
+public class TileVisibility {
+
+    private final long[] bits;
+    private final int tileWorldWidth, tileWorldHeight;
+    private final int tileWidth, tileHeight;
+
+    /**
+     * @param map
+     */
+    public TileVisibility(Map map) {
+        this(map.getTileWorldWidth(), map.getTileWorldHeight(), map.getTileWidth(), map.getTileHeight());
+    }
+
+    /**
+     * @param tileWorldWidth the number of tiles wide the map is
+     * @param tileWorldHeight the number of tiles high the map is
+     * @param tileWidth the width of a tile
+     * @param tileHeight the height of a tile
+     */
+    public TileVisibility(int tileWorldWidth, int tileWorldHeight, int tileWidth, int tileHeight) {
+        this.tileWorldWidth = tileWorldWidth;
+        this.tileWorldHeight = tileWorldHeight;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.bits = new long[(tileWorldWidth * tileWorldHeight + 63) / 64];
+    }
+
+    /**
+     * Marks every tile as not visible
+     */
+    public void clear() {
+        Arrays.fill(this.bits, 0L);
+    }
+
+    /**
+     * @param tile
+     * @param isVisible
+     */
+    public void setVisible(Tile tile, boolean isVisible) {
+        setVisible(tile.getXIndex(), tile.getYIndex(), isVisible);
+    }
+
+    /**
+     * @param tileX
+     * @param tileY
+     * @param isVisible
+     */
+    public void setVisible(int tileX, int tileY, boolean isVisible) {
+        if(tileX < 0 || tileY < 0 || tileX >= this.tileWorldWidth || tileY >= this.tileWorldHeight) {
+            return;
+        }
+
+        int index = tileY * this.tileWorldWidth + tileX;
+        if(isVisible) {
+            this.bits[index >>> 6] |= (1L << (index & 63));
+        }
+        else {
+            this.bits[index >>> 6] &= ~(1L << (index & 63));
+        }
+    }
+
+    /**
+     * @param tile
+     * @return true if the tile is visible
+     */
+    public boolean isVisible(Tile tile) {
+        return isVisible(tile.getXIndex(), tile.getYIndex());
+    }
+
+    /**
+     * @param tileX
+     * @param tileY
+     * @return true if the tile at the tile coordinates is visible
+     */
+    public boolean isVisible(int tileX, int tileY) {
+        if(tileX < 0 || tileY < 0 || tileX >= this.tileWorldWidth || tileY >= this.tileWorldHeight) {
+            return false;
+        }
+
+        int index = tileY * this.tileWorldWidth + tileX;
+        return (this.bits[index >>> 6] & (1L << (index & 63))) != 0;
+    }
+
+    /**
+     * @param worldX
+     * @param worldY
+     * @return true if the tile at the world coordinates is visible
+     */
+    public boolean isVisibleAtWorld(int worldX, int worldY) {
+        if(worldX < 0 || worldY < 0) {
+            return false;
+        }
+        return isVisible(worldX / this.tileWidth, worldY / this.tileHeight);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * see license.txt
+ */
+package seventh.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import leola.vm.types.LeoArray;
+import leola.vm.types.LeoMap;
+import leola.vm.types.LeoObject;
+import leola.vm.types.LeoString;
+
+/**
+ * The contents of a map created from the "Tiled" program, as plain data: the tile ids of each layer
+ * are an int array.  This is read either from the "Tiled" json file, or from a map compiled
+ * by the {@link MapCompiler}; and turned into a {@link Map} by the {@link TiledMapLoader}.
+ *
+ * @author Tony
+ *
+ */
+public class TiledMapData {
+
+    public static class TilesetData {
+        public int firstgid;
+        public int margin, spacing;
+        public int tilewidth, tileheight;
+        public String name;
+        public String image;
+
+        /**
+         * The properties of the tiles by the tiles index in the tileset, may be null
+         */
+        public java.util.Map<String, java.util.Map<String, String>> tileproperties;
+
+        /**
+         * @return the tile properties as the tileset expects them, null if there are none
+         */
+        public LeoMap getTileProperties() {
+            if(tileproperties == null) {
+                return null;
+            }
+
+            LeoMap props = new LeoMap();
+            for(Entry<String, java.util.Map<String, String>> tile : tileproperties.entrySet()) {
+                props.putByString(tile.getKey(), toLeoMap(tile.getValue()));
+            }
+            return props;
+        }
+    }
+
+    public static class LayerData {
+        public String type;
+        public String name;
+        public boolean visible;
+        public int width, height;
+
+        /**
+         * The layers properties, may be null
+         */
+        public java.util.Map<String, String> properties;
+
+        /**
+         * The tile id (with the flip bits) of each tile in row major order, only for the tile layers
+         */
+        public int[] data;
+
+        /**
+         * The map objects, only for the object layers
+         */
+        public List<MapObjectData> objects;
+
+        /**
+         * @param name
+         * @return the property value, or null if not set
+         */
+        public String getProperty(String name) {
+            return (properties != null) ? properties.get(name) : null;
+        }
+
+        /**
+         * @param name
+         * @return true if the property is set
+         */
+        public boolean hasProperty(String name) {
+            return properties != null && properties.containsKey(name);
+        }
+    }
+
+    public int width, height;
+    public int tilewidth, tileheight;
+    public List<TilesetData> tilesets;
+    public List<LayerData> layers;
+
+    /**
+     * Reads the "Tiled" json map
+     *
+     * @param map
+     * @return the map data
+     */
+    public static TiledMapData fromJson(LeoMap map) {
+        TiledMapData data = new TiledMapData();
+        data.width = map.getInt("width");
+        data.height = map.getInt("height");
+        data.tilewidth = map.getInt("tilewidth");
+        data.tileheight = map.getInt("tileheight");
+
+        LeoArray tilesets = map.getByString("tilesets").as();
+        data.tilesets = new ArrayList<TilesetData>(tilesets.size());
+        for(LeoObject t : tilesets) {
+            data.tilesets.add(readTileset(t.as()));
+        }
+
+        LeoArray layers = map.getByString("layers").as();
+        data.layers = new ArrayList<LayerData>(layers.size());
+        for(LeoObject l : layers) {
+            data.layers.add(readLayer(l.as()));
+        }
+
+        return data;
+    }
+
+    private static TilesetData readTileset(LeoMap tileset) {
+        // skip the sourced tilesets
+        if(tileset.hasObject("source")) {
+            // HACK: Updated version of Tiled which no longer supports inlining
+            // shared tilests (lame)
+            String source = tileset.getString("source");
+            if(source.endsWith("collidables.tsx")) {
+                tileset.putByString("image", LeoString.valueOf("./assets/gfx/tiles/collision_tileset.png"));
+                tileset.putByString("name", LeoString.valueOf("collidables"));
+            }
+            else if(source.endsWith("city.tsx")) {
+                tileset.putByString("image", LeoString.valueOf("./assets/gfx/tiles/cs2dnorm.png"));
+                tileset.putByString("name", LeoString.valueOf("city"));
+            }
+            else if(source.endsWith("surface_types.tsx")) {
+                tileset.putByString("image", LeoString.valueOf("./assets/gfx/tiles/surface_types.png"));
+                tileset.putByString("name", LeoString.valueOf("surfaces"));
+            }
+
+            tileset.putByString("tilewidth", LeoObject.valueOf(32));
+            tileset.putByString("tileheight", LeoObject.valueOf(32));
+        }
+
+        TilesetData data = new TilesetData();
+        data.firstgid = tileset.getInt("firstgid");
+        data.margin = tileset.getInt("margin");
+        data.spacing = tileset.getInt("spacing");
+        data.tilewidth = tileset.getInt("tilewidth");
+        data.tileheight = tileset.getInt("tileheight");
+        data.name = tileset.getString("name");
+        data.image = tileset.getString("image");
+
+        LeoObject props = tileset.getByString("tileproperties");
+        if(LeoObject.isTrue(props) && props.isMap()) {
+            data.tileproperties = new HashMap<String, java.util.Map<String, String>>();
+            for(Entry<LeoObject, LeoObject> tile : ((LeoMap)props.as()).entrySet()) {
+                if(tile.getValue() != null && tile.getValue().isMap()) {
+                    data.tileproperties.put(tile.getKey().toString(), toMap(tile.getValue().as()));
+                }
+            }
+        }
+
+        return data;
+    }
+
+    private static LayerData readLayer(LeoMap layer) {
+        LayerData data = new LayerData();
+        data.type = layer.getString("type");
+        data.name = layer.getString("name");
+        data.visible = layer.getBoolean("visible");
+
+        if(layer.has(LeoString.valueOf("properties"))) {
+            LeoObject properties = layer.getByString("properties");
+            if(properties.isMap()) {
+                data.properties = toMap(properties.as());
+            }
+        }
+
+        if("tilelayer".equalsIgnoreCase(data.type)) {
+            data.width = layer.getInt("width");
+            data.height = layer.getInt("height");
+
+            LeoArray tiles = layer.getByString("data").as();
+            data.data = new int[tiles.size()];
+            for(int i = 0; i < data.data.length; i++) {
+                data.data[i] = tiles.get(i).asInt();
+            }
+        }
+        else if("objectgroup".equalsIgnoreCase(data.type)) {
+            LeoArray objects = layer.getArray("objects");
+            data.objects = new ArrayList<MapObjectData>(objects.size());
+            for(LeoObject obj : objects) {
+                data.objects.add(LeoObject.fromLeoObject(obj, MapObjectData.class));
+            }
+        }
+
+        return data;
+    }
+
+    private static java.util.Map<String, String> toMap(LeoMap map) {
+        java.util.Map<String, String> result = new HashMap<String, String>();
+        for(Entry<LeoObject, LeoObject> entry : map.entrySet()) {
+            LeoObject value = entry.getValue();
+            result.put(entry.getKey().toString(), (value != null && !value.isNull()) ? value.toString() : null);
+        }
+        return result;
+    }
+
+    private static LeoMap toLeoMap(java.util.Map<String, String> map) {
+        LeoMap result = new LeoMap();
+        for(Entry<String, String> entry : map.entrySet()) {
+            result.putByString(entry.getKey(), (entry.getValue() != null) ? LeoString.valueOf(entry.getValue()) : LeoObject.NULL);
+        }
+        return result;
+    }
+}
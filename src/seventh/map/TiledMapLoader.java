@@ -6,19 +6,20 @@ package seventh.map;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.Texture.TextureWrap;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 
-import leola.vm.types.LeoArray;
 import leola.vm.types.LeoMap;
-import leola.vm.types.LeoObject;
-import leola.vm.types.LeoString;
 import seventh.client.gfx.TextureUtil;
 import seventh.map.Map.SceneDef;
+import seventh.map.Tile.CollisionMask;
 import seventh.map.Tile.SurfaceType;
+import seventh.map.TiledMapData.LayerData;
+import seventh.map.TiledMapData.TilesetData;
 
 /**
  * @author Tony
@@ -38,13 +39,24 @@ public class TiledMapLoader implements MapLoader {
      * @throws Exception
      */
     public Map loadMap(LeoMap map, MapObjectFactory mapObjectsFactory, boolean loadAssets) throws Exception {
+        return loadMap(TiledMapData.fromJson(map), mapObjectsFactory, loadAssets);
+    }
+    
+    /**
+     * Loads an {@link OrthoMap} created from the "Tiled" program.
+     * 
+     * @param map
+     * @return
+     * @throws Exception
+     */
+    public Map loadMap(TiledMapData map, MapObjectFactory mapObjectsFactory, boolean loadAssets) throws Exception {
         SceneDef def = new SceneDef();
         
-        int width = map.getInt("width");
-        int height = map.getInt("height");
+        int width = map.width;
+        int height = map.height;
         
-        int tileWidth = map.getInt("tilewidth");
-        int tileHeight = map.getInt("tileheight");
+        int tileWidth = map.tilewidth;
+        int tileHeight = map.tileheight;
         
         def.setDimensionX(width);
         def.setDimensionY(height);
@@ -55,12 +67,12 @@ public class TiledMapLoader implements MapLoader {
         SurfaceType[][] surfaces = new SurfaceType[height][width];
         def.setSurfaces(surfaces);
         
-        LeoArray tilesets = map.getByString("tilesets").as();
-        TilesetAtlas atlas = parseTilesets(tilesets, loadAssets);
+        TilesetAtlas atlas = parseTilesets(map.tilesets, loadAssets);
         
         
-        LeoArray layers = map.getByString("layers").as();
-        List<Layer> mapLayers = parseLayers(layers, atlas, loadAssets, tileWidth, tileHeight, surfaces);
+        List<LayerData> layers = map.layers;
+        java.util.Map<Integer, TilePrototype> prototypes = new HashMap<Integer, TilePrototype>();
+        List<Layer> mapLayers = parseLayers(layers, atlas, prototypes, loadAssets, tileWidth, tileHeight, surfaces);
         List<MapObject> mapObjects = parseMapObjects(layers, mapObjectsFactory);
         
         List<Layer> backgroundLayers = new ArrayList<Layer>();
@@ -95,15 +107,15 @@ public class TiledMapLoader implements MapLoader {
      * @param tileWidth
      * @param tileHeight
      */
-    private void parseSurfaces(SurfaceType[][] surfaces, TilesetAtlas atlas, LeoArray data, int width, int tileWidth, int tileHeight) {
+    private void parseSurfaces(SurfaceType[][] surfaces, TilesetAtlas atlas, int[] data, int width, int tileWidth, int tileHeight) {
         int y = -1; // account for zero
-        for(int x = 0; x < data.size(); x++) {
+        for(int x = 0; x < data.length; x++) {
                         
             if(x % width == 0) {                                    
                 y++;
             }
             
-            int tileId = data.get(x).asInt();
+            int tileId = data[x];
             int surfaceId = atlas.getTileId(tileId) - 1; /* minus one to get back to zero based */
             surfaces[y][x % width] = SurfaceType.fromId(surfaceId);
         }
@@ -111,17 +123,15 @@ public class TiledMapLoader implements MapLoader {
     
     
     
-    private List<Layer> parseLayers(LeoArray layers,TilesetAtlas atlas, boolean loadImages, int tileWidth, int tileHeight, SurfaceType[][] surfaces) throws Exception {
+    private List<Layer> parseLayers(List<LayerData> layers,TilesetAtlas atlas, java.util.Map<Integer, TilePrototype> prototypes, boolean loadImages, int tileWidth, int tileHeight, SurfaceType[][] surfaces) throws Exception {
         
         List<Layer> mapLayers = new ArrayList<Layer>(layers.size());
         
         int index = 0;
-        for(LeoObject l : layers) {            
-            LeoMap layer = l.as();
-            
-            String layerType = layer.getString("type");
+        for(LayerData layer : layers) {            
+            String layerType = layer.type;
             if("tilelayer".equalsIgnoreCase(layerType)) {
-                Layer mapLayer = parseLayer(layer, index, atlas, loadImages, tileWidth, tileHeight, surfaces);
+                Layer mapLayer = parseLayer(layer, index, atlas, prototypes, loadImages, tileWidth, tileHeight, surfaces);
                 if(mapLayer != null) {
                     mapLayers.add(mapLayer);
                     
@@ -135,17 +145,13 @@ public class TiledMapLoader implements MapLoader {
         return mapLayers;
     }
     
-    private List<MapObject> parseMapObjects(LeoArray layers, MapObjectFactory mapObjectsFactory) {
+    private List<MapObject> parseMapObjects(List<LayerData> layers, MapObjectFactory mapObjectsFactory) {
         List<MapObject> mapObjects = new ArrayList<>();
         
-        for(LeoObject l : layers) {            
-            LeoMap layer = l.as();
-            
-            String layerType = layer.getString("type");
+        for(LayerData layer : layers) {            
+            String layerType = layer.type;
             if ("objectgroup".equalsIgnoreCase(layerType)) {
-                LeoArray objects = layer.getArray("objects");
-                for(LeoObject obj : objects) {
-                    MapObjectData data = LeoObject.fromLeoObject(obj, MapObjectData.class);
+                for(MapObjectData data : layer.objects) {
                     MapObject object = mapObjectsFactory.createMapObject(data);
                     if(object != null) {
                         mapObjects.add(object);
@@ -157,35 +163,70 @@ public class TiledMapLoader implements MapLoader {
         return mapObjects;
     }
     
-    private Layer parseLayer(LeoMap layer, int index, TilesetAtlas atlas, boolean loadImages, int tileWidth, int tileHeight, SurfaceType[][] surfaces) {
-        LeoArray data = layer.getByString("data").as();
-        int width = layer.getInt("width");    
-        int height = layer.getInt("height");
+    /**
+     * Gets the {@link TilePrototype} of the tile id, creating it the first time the id is used; the prototypes are 
+     * shared by all of the layers
+     * 
+     * @param tileId
+     * @param atlas
+     * @param prototypes
+     * @param loadImages
+     * @return the prototype, or null if there is no tile
+     */
+    private TilePrototype getPrototype(int tileId, TilesetAtlas atlas, java.util.Map<Integer, TilePrototype> prototypes, boolean loadImages) {
+        TilePrototype prototype = prototypes.get(tileId);
+        if(prototype == null && !prototypes.containsKey(tileId)) {
+            TextureRegion image = null;
+            
+            boolean hasTile = tileId != 0;
+            if(loadImages) {
+                image = atlas.getTile(tileId);
+                hasTile = image != null;
+            }
+            
+            if(hasTile) {
+                Integer collisionId = atlas.getTileId(tileId);
+                CollisionMask collisionMask = (collisionId != null) ? CollisionMask.fromId(collisionId) : null;
+                prototype = new TilePrototype(tileId, 
+                                              image, 
+                                              (loadImages && atlas.isAnimatedTile(tileId)) ? atlas.getAnimatedTile(tileId) : null, 
+                                              collisionMask);
+            }
+            
+            prototypes.put(tileId, prototype);
+        }
+        
+        return prototype;
+    }
+    
+    private Layer parseLayer(LayerData layer, int index, TilesetAtlas atlas, java.util.Map<Integer, TilePrototype> prototypes, boolean loadImages, int tileWidth, int tileHeight, SurfaceType[][] surfaces) {
+        int[] data = layer.data;
+        int width = layer.width;    
+        int height = layer.height;
         
         boolean isCollidable = false;
         boolean isForeground = false;
         boolean isProperty = false;
         boolean isSurfaceTypes = false;
         boolean isDestructable = false;
-        boolean isVisible = layer.getBoolean("visible");
+        boolean isVisible = layer.visible;
         
         int heightMask = 0;
-        if (layer.has(LeoString.valueOf("properties"))) {
-            LeoMap properties = layer.getByString("properties").as();            
-            isCollidable = properties.getString("collidable").equals("true");
-            isForeground = properties.getString("foreground").equals("true");
-            isDestructable = properties.getString("destructable").equals("true");
+        if (layer.properties != null) {
+            isCollidable = "true".equals(layer.getProperty("collidable"));
+            isForeground = "true".equals(layer.getProperty("foreground"));
+            isDestructable = "true".equals(layer.getProperty("destructable"));
             
-            if(properties.containsKeyByString("heightMask")) {
-                String strMask = properties.getString("heightMask");
+            if(layer.hasProperty("heightMask")) {
+                String strMask = layer.getProperty("heightMask");
                 heightMask = Integer.parseInt(strMask);
             }
             
-            if(properties.containsKeyByString("lights")) {
+            if(layer.hasProperty("lights")) {
                 isProperty = true;
             }
             
-            if(properties.containsKeyByString("surfaces")) {
+            if(layer.hasProperty("surfaces")) {
                 isSurfaceTypes = true;
             }
                             
@@ -199,7 +240,7 @@ public class TiledMapLoader implements MapLoader {
             return null;
         }
         
-        Layer mapLayer = new Layer(layer.getString("name"),
+        Layer mapLayer = new Layer(layer.name,
                                    isCollidable, 
                                    isForeground, 
                                    isDestructable, 
@@ -207,70 +248,24 @@ public class TiledMapLoader implements MapLoader {
                                    isVisible,
                                    index, 
                                    heightMask,
-                                   height);
+                                   height,
+                                   width,
+                                   tileWidth,
+                                   tileHeight);
                     
-        Tile[] row = null; //new Tile[width];
-        
-        int y = -tileHeight; // account for zero
-        int rowIndex = 0;
-        for(int x = 0; x < data.size(); x++) {
-            int tileId = data.get(x).asInt();
-            boolean flippedHorizontally = (tileId & FLIPPED_HORIZONTALLY_FLAG) != 0;
-            boolean flippedVertically = (tileId & FLIPPED_VERTICALLY_FLAG) != 0; 
-            boolean flippedDiagonally = (tileId & FLIPPED_DIAGONALLY_FLAG) != 0;
+        for(int x = 0; x < data.length; x++) {
+            int tileId = data[x];
+            int flips = ((tileId & FLIPPED_HORIZONTALLY_FLAG) != 0 ? TilePrototype.FLIPPED_HORIZONTALLY : 0) |
+                        ((tileId & FLIPPED_VERTICALLY_FLAG) != 0 ? TilePrototype.FLIPPED_VERTICALLY : 0) |
+                        ((tileId & FLIPPED_DIAGONALLY_FLAG) != 0 ? TilePrototype.FLIPPED_DIAGONALLY : 0);
             
             tileId &= ~(FLIPPED_HORIZONTALLY_FLAG |
                         FLIPPED_VERTICALLY_FLAG |
                         FLIPPED_DIAGONALLY_FLAG);
             
-            if(x % width == 0) {                        
-                row = new Tile[width];
-                mapLayer.addRow(rowIndex++, row);
-                y+=tileHeight;
-            }
-            
-            if(loadImages) {
-                TextureRegion image = atlas.getTile(tileId);
-                if(image != null) {
-                    Tile tile = null;
-                    if(atlas.isAnimatedTile(tileId)) {
-                        tile = new AnimatedTile(atlas.getAnimatedTile(tileId), index, tileWidth, tileHeight); 
-                        mapLayer.setContainsAnimations(true);
-                    }
-                    else {
-                        tile = new Tile(image, index, tileWidth, tileHeight);
-                    }
-                                            
-                    tile.setPosition((x % width) * tileWidth, y);
-//                    tile.setSurfaceType(atlas.getTileSurfaceType(tileId));
-                    tile.setFlips(flippedHorizontally, flippedVertically, flippedDiagonally);
-                    
-                    if(isCollidable) {
-                        int collisionId = atlas.getTileId(tileId);
-                        tile.setCollisionMaskById(collisionId);
-                    }
-                    row[x % width] = tile;
-                }
-                else {
-                    row[x % width] = null;
-                }
-            }
-            // if we are headless...
-            else {
-                if(tileId != 0) {
-                    Tile tile = new Tile(null, index, tileWidth, tileHeight);
-                    tile.setPosition( (x % width) * tileWidth, y);
-//                    tile.setSurfaceType(atlas.getTileSurfaceType(tileId));
-                    
-                    if(isCollidable) {
-                        int collisionId = atlas.getTileId(tileId);
-                        tile.setCollisionMaskById(collisionId);
-                    }
-                    row[x % width] = tile;
-                }
-                else {
-                    row[x % width] = null;
-                }
+            TilePrototype prototype = getPrototype(tileId, atlas, prototypes, loadImages);
+            if(prototype != null) {
+                mapLayer.setTile(x % width, x / width, prototype, flips);
             }
         }
         
@@ -284,54 +279,26 @@ public class TiledMapLoader implements MapLoader {
         return mapLayer;
     }
     
-    private TilesetAtlas parseTilesets(LeoArray tilesets, boolean loadImages) throws Exception {
+    private TilesetAtlas parseTilesets(List<TilesetData> tilesets, boolean loadImages) throws Exception {
         if(tilesets.isEmpty()) {
             throw new IllegalArgumentException("There must be at least 1 tileset");
         }
         
         TilesetAtlas atlas = new  TilesetAtlas();
-        for(LeoObject t : tilesets) {
-            LeoMap tileset = t.as();
-                        
-            // skip the sourced tilesets
-            if(t.hasObject("source")) {
-                // HACK: Updated version of Tiled which no longer supports inlining
-                // shared tilests (lame)
-                String source = tileset.getString("source");
-                if(source.endsWith("collidables.tsx")) {
-                    tileset.putByString("image", LeoString.valueOf("./assets/gfx/tiles/collision_tileset.png"));
-                    tileset.putByString("name", LeoString.valueOf("collidables"));
-                }
-                else if(source.endsWith("city.tsx")) {
-                    tileset.putByString("image", LeoString.valueOf("./assets/gfx/tiles/cs2dnorm.png"));
-                    tileset.putByString("name", LeoString.valueOf("city"));
-                }
-                else if(source.endsWith("surface_types.tsx")) {
-                    tileset.putByString("image", LeoString.valueOf("./assets/gfx/tiles/surface_types.png"));
-                    tileset.putByString("name", LeoString.valueOf("surfaces"));
-                }
-                
-                tileset.putByString("tilewidth", LeoObject.valueOf(32));
-                tileset.putByString("tileheight", LeoObject.valueOf(32));
-            }
-            
-            int firstgid = tileset.getInt("firstgid");            
-            int margin = tileset.getInt("margin");
-            int spacing = tileset.getInt("spacing");
-            int tilewidth = tileset.getInt("tilewidth");
-            int tileheight = tileset.getInt("tileheight");
+        for(TilesetData tileset : tilesets) {
+            int firstgid = tileset.firstgid;            
+            int margin = tileset.margin;
+            int spacing = tileset.spacing;
+            int tilewidth = tileset.tilewidth;
+            int tileheight = tileset.tileheight;
             
-            LeoMap tilesetprops = null;
-            LeoObject props = tileset.getByString("tileproperties");
-            if(LeoObject.isTrue(props) && props.isMap()) {
-                tilesetprops = props.as();
-            }
+            LeoMap tilesetprops = tileset.getTileProperties();
 
             TextureRegion image = null;
             TextureRegion[] images = null;
                                                 
             if(loadImages) {
-                String imagePath = tileset.getString("image");
+                String imagePath = tileset.image;
                 
                 // override to local assets tile directory
                 if(!new File(imagePath).exists()) {
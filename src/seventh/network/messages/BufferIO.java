@@ -92,6 +92,22 @@ public class BufferIO {
      */
     public static class SeventhNetMessageFactory implements NetMessageFactory {
         
+        private GameUpdateMessagePool gameUpdates;
+        
+        /**
+         */
+        public SeventhNetMessageFactory() {
+            this(null);
+        }
+        
+        /**
+         * @param gameUpdates the pool the received {@link GameUpdateMessage}s are taken from, the receiver
+         * must release each message once it is done with it.  If null, a new message is created for each update.
+         */
+        public SeventhNetMessageFactory(GameUpdateMessagePool gameUpdates) {
+            this.gameUpdates = gameUpdates;
+        }
+        
         /*
          * (non-Javadoc)
          * @see harenet.messages.NetMessageFactory#readNetMessage(harenet.IOBuffer)
@@ -123,7 +139,7 @@ public class BufferIO {
                     break;
                 case GAME_PARTIAL_STATS: message = new GamePartialStatsMessage();
                     break;
-                case GAME_UPDATE: message = new GameUpdateMessage();
+                case GAME_UPDATE: message = (gameUpdates != null) ? gameUpdates.acquire() : new GameUpdateMessage();
                     break;
                 case PLAYER_CONNECTED: message = new PlayerConnectedMessage();
                     break;
@@ -190,11 +206,11 @@ public class BufferIO {
     }
     
     public static void writePos(IOBuffer buffer, int worldPos) {
-        buffer.putIntBits(worldPos, 13);
+        NetField.POSITION.write(buffer, worldPos);
     }
     
     public static int readPos(IOBuffer buffer) {
-        return buffer.getIntBits(13);
+        return NetField.POSITION.read(buffer);
     }
     
     public static void writeWeaponState(IOBuffer buffer, WeaponState state) {
@@ -226,7 +242,7 @@ public class BufferIO {
     }
     
     public static int numPlayerIdBits() {
-        return 5;
+        return NetField.PLAYER_ID.getNumberOfBits();
     }
     
     public static void writePlayerId(IOBuffer buffer, int playerId) {
@@ -238,22 +254,19 @@ public class BufferIO {
     }
     
     public static void writeTeamId(IOBuffer buffer, byte teamId) {
-        buffer.putByteBits(teamId, 2);
+        buffer.putByteBits(teamId, NetField.TEAM_ID.getNumberOfBits());
     }
     
     public static byte readTeamId(IOBuffer buffer) {
-        return buffer.getByteBits(2);
+        return buffer.getByteBits(NetField.TEAM_ID.getNumberOfBits());
     }
         
     public static void writeAngle(IOBuffer buffer, int degrees) {
-        int bangle = (degrees * 256) / 360;
-        buffer.putUnsignedByte(bangle);
+        NetAngle.ORIENTATION.writeDegrees(buffer, degrees);
     }
         
     public static short readAngle(IOBuffer buffer) {
-        int bangle = buffer.getUnsignedByte();
-        int degree = (bangle * 360) / 256;
-        return (short)degree;
+        return NetAngle.ORIENTATION.readDegrees(buffer);
     }
     
     public static Vector2f readVector2f(IOBuffer buffer) {
@@ -326,13 +339,31 @@ public class BufferIO {
     }
     
     public static NetEntity readEntity(IOBuffer buffer) {
-        NetEntity result = null;
-        
+        NetEntity result = newNetEntity(peekEntityType(buffer));
+        result.read(buffer);
+        return result;
+    }
+    
+    /**
+     * Reads the type of the next entity in the buffer, leaving the buffer as is
+     * so the entity can re-read the type
+     * 
+     * @param buffer
+     * @return the type of the next entity
+     */
+    public static Type peekEntityType(IOBuffer buffer) {
         byte type = buffer.getByteBits(Type.numOfBits());
-        /* so the entity can re-read the type */
         buffer.bitPosition(buffer.bitPosition() - Type.numOfBits());
         
-        Type entType = Type.fromNet(type);
+        return Type.fromNet(type);
+    }
+    
+    /**
+     * @param entType
+     * @return a new {@link NetEntity} that is able to read the supplied type
+     */
+    public static NetEntity newNetEntity(Type entType) {
+        NetEntity result = null;
         switch(entType) {
             case ROCKET:
                 result = new NetRocket();
@@ -405,7 +436,6 @@ public class BufferIO {
             }
         }
         
-        result.read(buffer);
         return result;
     }
 }
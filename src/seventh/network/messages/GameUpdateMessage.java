@@ -1,41 +1,131 @@
 /*
- * see license.txt 
+ * see license.txt
  */
 package seventh.network.messages;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import harenet.IOBuffer;
+import harenet.messages.ReferenceCountedNetMessage;
+import harenet.messages.SequencedNetMessage;
 import seventh.game.net.NetGameUpdate;
 
 /**
+ * The per frame game update.  These are reused, see {@link GameUpdateMessagePool}; on the server the
+ * message is serialized by the network thread some time after it is sent, and on the client it is applied
+ * some time after it is received, so it is only handed back to its pool once the last reference has been
+ * released.
+ *
  * @author Tony
  *
  */
-public class GameUpdateMessage extends AbstractNetMessage {
+public class GameUpdateMessage extends AbstractNetMessage implements SequencedNetMessage, ReferenceCountedNetMessage {
     public NetGameUpdate netUpdate;
-    
+
+    private GameUpdateMessagePool pool;
+    private final AtomicInteger references;
+
     /**
-     * 
+     *
      */
     public GameUpdateMessage() {
+        this(null);
+    }
+
+    /**
+     * @param pool the pool this message is returned to once it is released, may be null
+     */
+    GameUpdateMessage(GameUpdateMessagePool pool) {
         super(BufferIO.GAME_UPDATE);
+        this.pool = pool;
+        this.references = new AtomicInteger(1);
     }
-    
+
+    /**
+     * Readies this message for reuse, the caller holds the only reference
+     */
+    void reset() {
+        this.references.set(1);
+        if(this.netUpdate != null) {
+            this.netUpdate.clear();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see harenet.messages.ReferenceCountedNetMessage#retain()
+     */
+    @Override
+    public void retain() {
+        this.references.incrementAndGet();
+    }
+
+    /* (non-Javadoc)
+     * @see harenet.messages.ReferenceCountedNetMessage#release()
+     */
+    @Override
+    public boolean release() {
+        int count = this.references.decrementAndGet();
+        if(count < 0) {
+            throw new IllegalStateException("The game update message has already been released");
+        }
+
+        if(count == 0) {
+            if(this.pool != null) {
+                this.pool.free(this);
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of outstanding references
+     */
+    public int getReferenceCount() {
+        return this.references.get();
+    }
+
     /* (non-Javadoc)
      * @see seventh.network.messages.AbstractNetMessage#read(java.nio.ByteBuffer)
      */
     @Override
-    public void read(IOBuffer buffer) {    
+    public void read(IOBuffer buffer) {
         super.read(buffer);
-        netUpdate = new NetGameUpdate();
+        
+        /* pooled messages reuse their update */
+        if(netUpdate == null) {
+            netUpdate = new NetGameUpdate();
+        }
         netUpdate.read(buffer);
     }
-    
+
     /* (non-Javadoc)
      * @see seventh.network.messages.AbstractNetMessage#write(java.nio.ByteBuffer)
      */
     @Override
-    public void write(IOBuffer buffer) {    
+    public void write(IOBuffer buffer) {
         super.write(buffer);
         netUpdate.write(buffer);
     }
+
+    /* (non-Javadoc)
+     * @see harenet.messages.SequencedNetMessage#setSequenceNumberSent(int)
+     */
+    @Override
+    public void setSequenceNumberSent(int sequenceNumber) {
+        if(netUpdate != null) {
+            netUpdate.setSequenceNumberSent(sequenceNumber);
+        }
+    }
+    
+    /* (non-Javadoc)
+     * @see harenet.messages.SequencedNetMessage#setSequenceNumbersSent(int, int)
+     */
+    @Override
+    public void setSequenceNumbersSent(int firstSequenceNumber, int lastSequenceNumber) {
+        if(netUpdate != null) {
+            netUpdate.setSequenceNumbersSent(firstSequenceNumber, lastSequenceNumber);
+        }
+    }
 }
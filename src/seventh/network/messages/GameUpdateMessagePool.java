@@ -0,0 +1,91 @@
+/*
+ * see license.txt
+ */
+package seventh.network.messages;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+import seventh.game.net.NetGameUpdate;
+
+/**
+ * A pool of reusable {@link GameUpdateMessage}s (and their {@link NetGameUpdate}s).  The server keeps one for
+ * each client, and the client keeps one for the updates it receives.
+ *
+ * <p>
+ * A game update is serialized by the network thread some time after it has been sent, so a message can not
+ * simply be reused on the next frame.  Instead, each message is reference counted; the sender holds the first
+ * reference, the peer holds another until the message has been packed, and the message returns to this pool
+ * once both have been released.  On the client, the received message is released once it has been applied.
+ * If every pooled message is still in flight a new one is created, and the pool grows up to its capacity; once
+ * the pool is warmed up, sending (or receiving) a game update doesn't allocate.
+ *
+ * @author Tony
+ *
+ */
+public class GameUpdateMessagePool {
+
+    /**
+     * The default number of messages kept, enough to cover a few frames of the network thread falling behind
+     */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    private final ArrayBlockingQueue<GameUpdateMessage> freeMessages;
+    private int numberOfAllocations;
+
+    /**
+     *
+     */
+    public GameUpdateMessagePool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the max number of messages kept
+     */
+    public GameUpdateMessagePool(int capacity) {
+        this.freeMessages = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Takes a free message from the pool, or creates one if they are all in use.  The caller holds the only
+     * reference and must {@link GameUpdateMessage#release()} it once it has been sent.
+     *
+     * @return a cleared message, ready to be filled in
+     */
+    public GameUpdateMessage acquire() {
+        GameUpdateMessage message = this.freeMessages.poll();
+        if(message == null) {
+            message = new GameUpdateMessage(this);
+            message.netUpdate = new NetGameUpdate();
+            this.numberOfAllocations++;
+        }
+        else {
+            message.reset();
+        }
+
+        return message;
+    }
+
+    /**
+     * Returns the released message to the pool, if the pool is full the message is dropped
+     *
+     * @param message
+     */
+    void free(GameUpdateMessage message) {
+        this.freeMessages.offer(message);
+    }
+
+    /**
+     * @return the number of messages waiting to be reused
+     */
+    public int getNumberOfFreeMessages() {
+        return this.freeMessages.size();
+    }
+
+    /**
+     * @return the number of messages this pool has had to create
+     */
+    public int getNumberOfAllocations() {
+        return numberOfAllocations;
+    }
+}
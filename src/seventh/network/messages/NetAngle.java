@@ -0,0 +1,126 @@
+/*
+ * see license.txt
+ */
+package seventh.network.messages;
+
+import harenet.IOBuffer;
+
+/**
+ * Describes how an angle field of a network message is sent; a full turn is split into 2^numberOfBits steps.
+ *
+ * @author Tony
+ *
+ */
+public class NetAngle {
+
+    /**
+     * The orientation of an entity, in degrees
+     */
+    public static final NetAngle ORIENTATION = new NetAngle("orientation", 8);
+
+    /**
+     * The orientation the player is aiming at, this is what the server fires the players weapon at, so it
+     * keeps more precision than the orientation of the entities
+     */
+    public static final NetAngle AIM = new NetAngle("aim", 12);
+
+    private static final double FULL_TURN = Math.PI * 2;
+
+    private final String name;
+    private final int numberOfBits;
+    private final int numberOfSteps;
+
+    /**
+     * @param name the name of the field
+     * @param numberOfBits the number of bits this field takes
+     */
+    public NetAngle(String name, int numberOfBits) {
+        if(numberOfBits < 1 || numberOfBits > 16) {
+            throw new IllegalArgumentException("Invalid number of bits for " + name + ": " + numberOfBits);
+        }
+
+        this.name = name;
+        this.numberOfBits = numberOfBits;
+        this.numberOfSteps = 1 << numberOfBits;
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of bits this field takes
+     */
+    public int getNumberOfBits() {
+        return numberOfBits;
+    }
+
+    /**
+     * @param degrees
+     * @return the step the angle in degrees is sent as
+     */
+    public int quantizeDegrees(int degrees) {
+        return ((degrees * this.numberOfSteps) / 360) & (this.numberOfSteps - 1);
+    }
+
+    /**
+     * @param radians
+     * @return the step the angle in radians is sent as
+     */
+    public int quantizeRadians(float radians) {
+        return (int)Math.round((radians / FULL_TURN) * this.numberOfSteps) & (this.numberOfSteps - 1);
+    }
+
+    /**
+     * Writes the angle
+     *
+     * @param buffer
+     * @param degrees the angle in degrees
+     */
+    public void writeDegrees(IOBuffer buffer, int degrees) {
+        buffer.putIntBits(quantizeDegrees(degrees), this.numberOfBits);
+    }
+
+    /**
+     * @param buffer
+     * @return the angle in degrees, from 0 to 359
+     */
+    public short readDegrees(IOBuffer buffer) {
+        int step = buffer.getIntBits(this.numberOfBits);
+        return (short)((step * 360) / this.numberOfSteps);
+    }
+
+    /**
+     * Writes the angle
+     *
+     * @param buffer
+     * @param radians the angle in radians
+     */
+    public void writeRadians(IOBuffer buffer, float radians) {
+        buffer.putIntBits(quantizeRadians(radians), this.numberOfBits);
+    }
+
+    /**
+     * @param buffer
+     * @return the angle in radians, from -PI up to PI (the same range as {@link Math#atan2(double, double)})
+     */
+    public float readRadians(IOBuffer buffer) {
+        int step = buffer.getIntBits(this.numberOfBits);
+        if(step >= this.numberOfSteps / 2) {
+            step -= this.numberOfSteps;
+        }
+
+        return (float)((step * FULL_TURN) / this.numberOfSteps);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return this.name + " : " + this.numberOfBits + " bits";
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * see license.txt
+ */
+package seventh.network.messages;
+
+import harenet.IOBuffer;
+import seventh.game.entities.PlayerEntity.Keys;
+import seventh.shared.SeventhConstants;
+
+/**
+ * Describes how a whole number field of a network message is sent: the range of values it may take, and
+ * so the number of bits it takes on the wire.  Values outside of the range are clamped to it, unless the
+ * field is a set of flags, in which case the flags that do not fit are dropped.
+ *
+ * <p>
+ * These make up the schema of the net types (the {@link seventh.game.net.NetEntity}s and the player input),
+ * declared once here rather than as bit widths scattered through each of the read and write methods.
+ * The angles are described by {@link NetAngle}.
+ *
+ * @author Tony
+ *
+ */
+public class NetField {
+
+    /**
+     * A world position, max X & Y of 256x256 tiles (32x32 tiles) ~8191
+     */
+    public static final NetField POSITION = new NetField("position", 0, 8191);
+
+    /**
+     * A player id
+     */
+    public static final NetField PLAYER_ID = new NetField("player id", 0, 31);
+
+    /**
+     * A team id
+     */
+    public static final NetField TEAM_ID = new NetField("team id", 0, 3);
+
+    /**
+     * An entity id
+     */
+    public static final NetField ENTITY_ID = new NetField("entity id", 0, SeventhConstants.MAX_ENTITIES - 1);
+
+    /**
+     * The health of a player
+     */
+    public static final NetField HEALTH = new NetField("health", 0, 100);
+
+    /**
+     * The number of grenades a player has
+     */
+    public static final NetField GRENADES = new NetField("grenades", 0, 15);
+
+    /**
+     * The {@link seventh.game.net.NetPlayer} flags
+     */
+    public static final NetField PLAYER_FLAGS = flags("player flags", 4);
+
+    /**
+     * The {@link Keys} held down by the player
+     */
+    public static final NetField PLAYER_KEYS = flags("player keys", Keys.values().length);
+
+    /**
+     * The number of bullets in a weapons clip
+     */
+    public static final NetField AMMO_IN_CLIP = new NetField("ammo in clip", 0, 255);
+
+    /**
+     * The number of bullets a weapon has left, outside of its clip
+     */
+    public static final NetField TOTAL_AMMO = new NetField("total ammo", 0, 4095);
+
+    /**
+     * The time remaining before a bomb explodes, in msec
+     */
+    public static final NetField BOMB_TIME = new NetField("bomb time", 0, 65535);
+
+    /**
+     * A color component
+     */
+    public static final NetField COLOR = new NetField("color", 0, 255);
+
+    /**
+     * The size of a light
+     */
+    public static final NetField LIGHT_SIZE = new NetField("light size", 0, 4095);
+
+    /**
+     * The hinge of a door
+     */
+    public static final NetField DOOR_HINGE = new NetField("door hinge", 0, 7);
+
+    /**
+     * The servers game clock in msec, only the low bits are sent (so it wraps around about every minute),
+     * which is plenty to tell the time between updates and inputs apart
+     */
+    public static final NetField SERVER_TIME = new NetField("server time", 0, 65535);
+
+    /**
+     * The sequence number of a player input, this wraps around
+     */
+    public static final NetField INPUT_SEQUENCE = new NetField("input sequence", 0, 65535);
+
+    /**
+     * The number of previous inputs sent again along with a player input
+     */
+    public static final NetField PREVIOUS_INPUTS = new NetField("previous inputs", 0, 3);
+
+
+    private final String name;
+    private final int min;
+    private final int max;
+    private final int numberOfBits;
+    private final boolean isFlags;
+
+    /**
+     * @param name the name of the field
+     * @param numberOfBits the number of flags
+     * @return a field of bit flags
+     */
+    public static NetField flags(String name, int numberOfBits) {
+        if(numberOfBits < 1 || numberOfBits > 31) {
+            throw new IllegalArgumentException("Invalid number of flags for " + name + ": " + numberOfBits);
+        }
+
+        return new NetField(name, 0, (1 << numberOfBits) - 1, true);
+    }
+
+    /**
+     * @param name the name of the field
+     * @param min the smallest value
+     * @param max the largest value
+     */
+    public NetField(String name, int min, int max) {
+        this(name, min, max, false);
+    }
+
+    private NetField(String name, int min, int max, boolean isFlags) {
+        if(max < min) {
+            throw new IllegalArgumentException("Invalid range for " + name + ": " + min + " to " + max);
+        }
+
+        this.name = name;
+        this.min = min;
+        this.max = max;
+        this.isFlags = isFlags;
+        this.numberOfBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(max - min));
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the smallest value
+     */
+    public int getMin() {
+        return min;
+    }
+
+    /**
+     * @return the largest value
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @return the number of bits this field takes
+     */
+    public int getNumberOfBits() {
+        return numberOfBits;
+    }
+
+    /**
+     * @param value
+     * @return the value clamped to the range of this field, which is the value the receiver reads
+     */
+    public int clamp(int value) {
+        if(this.isFlags) {
+            return value & this.max;
+        }
+        
+        if(value < this.min) {
+            return this.min;
+        }
+        if(value > this.max) {
+            return this.max;
+        }
+        return value;
+    }
+
+    /**
+     * Writes the value, clamped to this fields range
+     *
+     * @param buffer
+     * @param value
+     */
+    public void write(IOBuffer buffer, int value) {
+        buffer.putIntBits(clamp(value) - this.min, this.numberOfBits);
+    }
+
+    /**
+     * @param buffer
+     * @return the value
+     */
+    public int read(IOBuffer buffer) {
+        return buffer.getIntBits(this.numberOfBits) + this.min;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return this.name + " [" + this.min + ", " + this.max + "] : " + this.numberOfBits + " bits";
+    }
+}
@@ -6,18 +6,96 @@ package seventh.network.messages;
 import harenet.IOBuffer;
 
 /**
+ * The keys the player is holding down and where they are aiming, the orientation is in radians.
+ * 
+ * <p>
+ * Each input is numbered, and carries the {@link NetField#SERVER_TIME} of the game update the client was 
+ * rendering when it was taken, so that the server can check the players shots against what it actually saw.
+ * The inputs are sent unreliably, so each message also carries the few inputs before it; the server only
+ * applies the ones newer than the last input it processed, and so a lost message doesn't lose a key press.
+ * 
+ * <p>
+ * If the client could not rebuild a delta compressed game update, because it never received the snapshot the
+ * update was compressed against, the inputs carry the id of that update until the client receives a full
+ * update, so that the server stops compressing against snapshots the client doesn't have.
+ * 
  * @author Tony
  *
  */
 public class PlayerInputMessage extends AbstractNetMessage {
+    
+    /**
+     * The max number of previous inputs sent again with each input
+     */
+    public static final int MAX_PREVIOUS_INPUTS = NetField.PREVIOUS_INPUTS.getMax();
+    
     public int keys;
     public float orientation;
+    public int sequence;
+    public int renderTime;
+    
+    /* the snapshot id of the game update the client failed to rebuild, -1 if none */
+    public int resyncSnapshotId = -1;
+    
+    /* the inputs before this one, the first being sequence-1 */
+    public int numberOfPreviousInputs;
+    public int[] previousKeys;
+    public float[] previousOrientations;
+    
+    /**
+     * @param sequence
+     * @param otherSequence
+     * @return true if the sequence number is newer than the other one, accounting for the sequence numbers
+     * wrapping around
+     */
+    public static boolean isNewerSequence(int sequence, int otherSequence) {
+        int delta = (sequence - otherSequence) & NetField.INPUT_SEQUENCE.getMax();
+        return delta > 0 && delta <= NetField.INPUT_SEQUENCE.getMax() / 2;
+    }
     
     /**
      * 
      */
     public PlayerInputMessage() {
         super(BufferIO.PLAYER_INPUT);
+        
+        this.previousKeys = new int[MAX_PREVIOUS_INPUTS];
+        this.previousOrientations = new float[MAX_PREVIOUS_INPUTS];
+    }
+    
+    /**
+     * Moves the current input into the previous inputs, so that it is sent again along with the next
+     * input, and numbers the next input
+     */
+    public void nextInput() {
+        for(int i = MAX_PREVIOUS_INPUTS - 1; i > 0; i--) {
+            previousKeys[i] = previousKeys[i - 1];
+            previousOrientations[i] = previousOrientations[i - 1];
+        }
+        
+        previousKeys[0] = keys;
+        previousOrientations[0] = orientation;
+        numberOfPreviousInputs = Math.min(numberOfPreviousInputs + 1, MAX_PREVIOUS_INPUTS);
+        
+        sequence = (sequence + 1) & NetField.INPUT_SEQUENCE.getMax();
+    }
+    
+    /**
+     * @param lastSequence the last input sequence that was processed, or -1 if none have been
+     * @return the number of inputs in this message that haven't been processed, counting this input; 0
+     * if this message is a duplicate or arrived out of order
+     */
+    public int getNumberOfNewInputs(int lastSequence) {
+        if(lastSequence < 0) {
+            return 1;
+        }
+        
+        if(!isNewerSequence(sequence, lastSequence)) {
+            return 0;
+        }
+        
+        int delta = (sequence - lastSequence) & NetField.INPUT_SEQUENCE.getMax();
+        return Math.min(delta, numberOfPreviousInputs + 1);
     }
     
     /* (non-Javadoc)
@@ -26,8 +104,17 @@ public class PlayerInputMessage extends AbstractNetMessage {
     @Override
     public void read(IOBuffer buffer) {    
         super.read(buffer);
-        keys = buffer.getInt();
-        orientation = buffer.getFloat();
+        keys = NetField.PLAYER_KEYS.read(buffer);
+        orientation = NetAngle.AIM.readRadians(buffer);
+        sequence = NetField.INPUT_SEQUENCE.read(buffer);
+        renderTime = NetField.SERVER_TIME.read(buffer);
+        resyncSnapshotId = buffer.getBooleanBit() ? buffer.getInt() : -1;
+        
+        numberOfPreviousInputs = NetField.PREVIOUS_INPUTS.read(buffer);
+        for(int i = 0; i < numberOfPreviousInputs; i++) {
+            previousKeys[i] = NetField.PLAYER_KEYS.read(buffer);
+            previousOrientations[i] = NetAngle.AIM.readRadians(buffer);
+        }
     }
     
     /* (non-Javadoc)
@@ -36,7 +123,20 @@ public class PlayerInputMessage extends AbstractNetMessage {
     @Override
     public void write(IOBuffer buffer) {    
         super.write(buffer);
-        buffer.putInt(keys);
-        buffer.putFloat(orientation);
+        NetField.PLAYER_KEYS.write(buffer, keys);
+        NetAngle.AIM.writeRadians(buffer, orientation);
+        NetField.INPUT_SEQUENCE.write(buffer, sequence & NetField.INPUT_SEQUENCE.getMax());
+        NetField.SERVER_TIME.write(buffer, renderTime & NetField.SERVER_TIME.getMax());
+        
+        buffer.putBooleanBit(resyncSnapshotId > -1);
+        if(resyncSnapshotId > -1) {
+            buffer.putInt(resyncSnapshotId);
+        }
+        
+        NetField.PREVIOUS_INPUTS.write(buffer, numberOfPreviousInputs);
+        for(int i = 0; i < numberOfPreviousInputs; i++) {
+            NetField.PLAYER_KEYS.write(buffer, previousKeys[i]);
+            NetAngle.AIM.writeRadians(buffer, previousOrientations[i]);
+        }
     }
 }
@@ -10,6 +10,7 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 import harenet.api.Server;
 import leola.vm.Leola;
@@ -34,6 +35,7 @@ import seventh.shared.MapList.MapEntry;
 import seventh.shared.State;
 import seventh.shared.StateMachine;
 import seventh.shared.StateMachine.StateMachineListener;
+import seventh.shared.TickScheduler;
 import seventh.shared.TimeStep;
 
 
@@ -64,6 +66,7 @@ public class GameServer {
     private LANServerRegistration lanRegistration;
     private OnServerReadyListener serverListener;
     private DebugableListener debugListener;
+    private TickScheduler tickScheduler;
     
     /**
      * A callback for when the server is loaded and is about to start
@@ -566,6 +569,19 @@ public class GameServer {
             }
         });
         
+        console.addCommand(new Command("sv_tickstats") {            
+            @Override
+            public void execute(Console console, String... args) {
+                TickScheduler scheduler = tickScheduler;
+                if(scheduler != null) {
+                    console.println(scheduler.getDebugInformation());
+                }
+                else {
+                    console.println("The server is not running.");
+                }
+            }
+        });
+        
         if(console.getCommand("exit") == null) {
             console.addCommand("exit", console.getCommand("sv_exit"));
             console.addCommand("quit", console.getCommand("sv_exit"));
@@ -768,15 +784,16 @@ public class GameServer {
         Cons.println("*** Listening on port: " + port + " ***");
         
         try {
-            long currentTime = System.currentTimeMillis();
-            long accumalator = 0;
-
             long gameClock = 0;
             
             final int maxIterations = 5;
-            final long maxDelta = 250;
             final long frameRate = Math.abs(serverContext.getConfig().getServerFrameRate());
             final long dt = 1000 / frameRate == 0 ? 20 : frameRate;
+            final long idleDt = serverContext.getConfig().getServerIdleFrameRate();
+            
+            final RemoteClients clients = serverContext.getClients();
+            final TickScheduler scheduler = new TickScheduler(TimeUnit.MILLISECONDS.toNanos(dt), maxIterations);
+            this.tickScheduler = scheduler;
 
             final TimeStep timeStep = new TimeStep();
             timeStep.setDeltaTime(dt);
@@ -784,30 +801,42 @@ public class GameServer {
             
             // flush pending console commands
             updateConsole(timeStep);
+            
+            final long dtNanos = TimeUnit.MILLISECONDS.toNanos(dt);
+            long lastFrameTime = System.nanoTime();
+            long idleTime = 0;
                         
-            while(this.isRunning) {                            
-                long newTime = System.currentTimeMillis();
-                long deltaTime = newTime - currentTime;
-
-                if(deltaTime > maxDelta) {
-                    deltaTime = maxDelta;
+            while(this.isRunning) {
+                
+                /* nobody to simulate for, so tick less often until a client connects */
+                boolean isIdle = idleDt > dt && clients.size() == 0;
+                scheduler.setTickPeriod(isIdle ? TimeUnit.MILLISECONDS.toNanos(idleDt) : dtNanos);
+                
+                int ticks = scheduler.waitForNextTick();
+                
+                long frameTime = System.nanoTime();
+                long elapsedTime = frameTime - lastFrameTime;
+                lastFrameTime = frameTime;
+                
+                if(isIdle) {
+                    /* the bots still need the same fixed steps, so run the steps for the time that really 
+                     * passed; capped like the catch up ticks, the time past the cap is dropped
+                     */
+                    idleTime += elapsedTime;
+                    ticks = (int)Math.min(idleTime / dtNanos, maxIterations);
+                    idleTime = (ticks < maxIterations) ? idleTime - ticks * dtNanos : 0;
                 }
-                                
-                if ( deltaTime >= dt ) {
-                    currentTime = newTime;
-
-                    accumalator += deltaTime;
-                    int iteration = 0;
-                    while( accumalator >= dt && iteration < maxIterations) {
-                        timeStep.setDeltaTime(dt);
-                        timeStep.setGameClock(gameClock);                        
-                        serverFrame(sm, timeStep);                        
+                else {
+                    idleTime = 0;
+                }
+                
+                for(int i = 0; i < ticks && this.isRunning; i++) {
+                    timeStep.setDeltaTime(dt);
+                    timeStep.setGameClock(gameClock);                        
+                    serverFrame(sm, timeStep);                        
 
-                        gameClock += dt;
-                        accumalator -= dt;
-                        iteration++;
-                    }
-                }                        
+                    gameClock += dt;
+                }
             }
         }
         catch(Exception e) {
@@ -821,6 +850,7 @@ public class GameServer {
             server.close();
             this.registration.shutdown();
             this.lanRegistration.shutdown();
+            this.serverContext.getMapPreloader().shutdown();
             
             if(this.debugListener != null) {
                 this.debugListener.shutdown();
@@ -4,6 +4,14 @@
 package seventh.server;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import harenet.api.Connection;
 import seventh.game.Game;
@@ -89,6 +97,11 @@ public class InGameState implements State {
      */
     private static final long GAME_END_DELAY = 20_000;
     
+    /**
+     * The smallest a clients update budget gets, no matter how much is being sent to it
+     */
+    private static final int MIN_UPDATE_BUDGET = 256;
+    
     private Game game;
     private GameSession gameSession;
     private ServerContext serverContext;
@@ -98,6 +111,9 @@ public class InGameState implements State {
     private final long netFullStatDelay;
     private final long netPartialStatDelay;
     private final long netUpdateRate;
+    private final boolean deltaSnapshots;
+    private final int updateBudget;
+    private final int maxClientRate;
     
     private long nextGameStatUpdate;
     private long nextGamePartialStatUpdate;
@@ -116,6 +132,13 @@ public class InGameState implements State {
     private RemoteClientIterator clientIterator;
     
     private ServerNetworkProtocol protocol;
+    
+    /**
+     * If enabled, the clients game updates are built at the same time on this pool
+     */
+    private ExecutorService netUpdateService;
+    private List<RemoteClient> netUpdateClients;
+    private List<Future<GameUpdateMessage>> netUpdates;
 
     /**
      * @param serverContext
@@ -136,6 +159,9 @@ public class InGameState implements State {
         ServerSeventhConfig config = serverContext.getConfig();
         this.netFullStatDelay = config.getServerNetFullStatDelay();
         this.netPartialStatDelay = config.getServerNetPartialStatDelay();
+        this.deltaSnapshots = config.isServerDeltaSnapshots();
+        this.updateBudget = config.getServerClientUpdateBudget();
+        this.maxClientRate = config.getServerClientMaxRate();
         
         final long netRate = Math.abs(config.getServerNetUpdateRate());        
         this.netUpdateRate = 1000 / netRate == 0 ? 20 : netRate;
@@ -147,18 +173,51 @@ public class InGameState implements State {
         this.statsMessage = new GameStatsMessage();
         this.partialStatsMessage = new GamePartialStatsMessage();
         
+        if(config.isServerParallelNetUpdates()) {
+            int numberOfThreads = config.getServerNetUpdateThreads();
+            if(numberOfThreads <= 0) {
+                numberOfThreads = Runtime.getRuntime().availableProcessors();
+            }
+            
+            this.netUpdateService = Executors.newFixedThreadPool(numberOfThreads, new ThreadFactory() {
+                
+                private int threadId;
+                
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "net-update-" + (threadId++));
+                    thread.setDaemon(true);
+                    
+                    return thread;
+                }
+            });
+            
+            this.netUpdateClients = new ArrayList<>();
+            this.netUpdates = new ArrayList<>();
+        }
+        
         this.clientIterator = new RemoteClientIterator() {
             
             @Override
             public void onRemoteClient(RemoteClient client) {
-                if(client.isReady()) {            
-                    sendGameUpdateMessage(client.getId());
+                if(client.isReady()) {
+                    if(netUpdateService != null) {
+                        final RemoteClient remoteClient = client;
+                        netUpdateClients.add(client);
+                        netUpdates.add(netUpdateService.submit(new Callable<GameUpdateMessage>() {
+                            
+                            @Override
+                            public GameUpdateMessage call() throws Exception {                                
+                                return buildGameUpdate(remoteClient);
+                            }
+                        }));
+                        return;
+                    }
+                    
+                    sendGameUpdateMessage(client.getId(), buildGameUpdate(client));
                 }
                 
-                if(calculatePing) {
-                    int ping = client.getConnection().getReturnTripTime();
-                    client.getPlayer().setPing(ping);
-                }                
+                updatePing(client);
             }
         };
         
@@ -394,6 +453,10 @@ public class InGameState implements State {
         
         this.game.startGame();
         
+        if(this.serverContext.getConfig().isServerPreloadMaps()) {
+            this.serverContext.getMapPreloader().preload(this.serverContext.getMapCycle().peekNextMap());
+        }
+        
         sendReadyMessage();
         
         Cons.println("Server InGameState initialiazed and ready for players");
@@ -404,6 +467,11 @@ public class InGameState implements State {
      */
     @Override
     public void exit() {        
+        if(this.netUpdateService != null) {
+            this.netUpdateService.shutdownNow();
+            this.netUpdateService = null;
+        }
+        
         this.gameSession.destroy();        
         this.serverContext.getConsole().removeCommand("sv_fow");
     }
@@ -416,7 +484,7 @@ public class InGameState implements State {
         this.protocol.updateNetwork(timeStep);
         this.game.update(timeStep);
         
-        this.dispatcher.processQueue();
+        this.dispatcher.processAllQueued();
         this.protocol.postQueuedMessages();
         
         /* only send a partial update if we did NOT send
@@ -448,12 +516,107 @@ public class InGameState implements State {
     private void sendClientGameUpdates(TimeStep timeStep) {
         this.nextGameUpdate -= timeStep.getDeltaTime();        
         if(this.nextGameUpdate <= 0) {
-            this.clients.foreach(this.clientIterator);
+            if(this.netUpdateService != null) {
+                sendClientGameUpdatesInParallel();
+            }
+            else {
+                this.clients.foreach(this.clientIterator);
+            }
             
             this.nextGameUpdate = this.netUpdateRate;
         }
     }
     
+    /**
+     * Builds each of the ready clients game updates at the same time on the worker pool, and
+     * then sends them out in order from this thread
+     */
+    private void sendClientGameUpdatesInParallel() {
+        this.game.prepareNetGameUpdates(this.updateBudget > 0);
+        
+        this.netUpdateClients.clear();
+        this.netUpdates.clear();
+        
+        this.clients.foreach(this.clientIterator);
+        
+        int size = this.netUpdateClients.size();
+        for(int i = 0; i < size; i++) {
+            RemoteClient client = this.netUpdateClients.get(i);
+            
+            try {
+                sendGameUpdateMessage(client.getId(), this.netUpdates.get(i).get());
+            }
+            catch(ExecutionException e) {
+                Cons.println("*** Error building game update for client: " + e.getCause());
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            
+            updatePing(client);
+        }
+        
+        this.netUpdateClients.clear();
+        this.netUpdates.clear();
+    }
+    
+    /**
+     * Builds the game update for the client, encoding the entities against the
+     * snapshots previously sent to the client.  The update is taken from the clients pool
+     * of reusable updates, and must be handed to {@link #sendGameUpdateMessage(int, GameUpdateMessage)}.
+     * 
+     * @param client
+     * @return the game update, or null if there isn't one for this client
+     */
+    private GameUpdateMessage buildGameUpdate(RemoteClient client) {
+        GameUpdateMessage updateMessage = client.getGameUpdates().acquire();
+        
+        NetGameUpdate netUpdate = this.game.getNetGameUpdateFor(client.getId(), updateMessage.netUpdate, getUpdateBudget(client));
+        if(netUpdate == null) {
+            updateMessage.release();
+            return null;
+        }
+        
+        client.getSnapshots().encode(netUpdate, client.getConnection(), this.deltaSnapshots);
+        return updateMessage;
+    }
+    
+    /**
+     * The budget shrinks in proportion to how far over the max rate the connection has been sending, so that 
+     * a client that is being sent too much gets the most important entities, rather than all of them late.
+     * 
+     * @param client
+     * @return the max number of bytes of entities in the clients next game update, 0 if there is no limit
+     */
+    private int getUpdateBudget(RemoteClient client) {
+        if(this.updateBudget <= 0) {
+            return 0;
+        }
+        
+        if(this.maxClientRate > 0) {
+            long bitsPerSec = client.getConnection().getAvgBitsPerSecSent();
+            if(bitsPerSec > this.maxClientRate) {
+                int budget = (int)((long)this.updateBudget * this.maxClientRate / bitsPerSec);
+                return Math.max(Math.min(MIN_UPDATE_BUDGET, this.updateBudget), budget);
+            }
+        }
+        
+        return this.updateBudget;
+    }
+    
+    /**
+     * Updates the clients ping, if it is time to do so
+     * 
+     * @param client
+     */
+    private void updatePing(RemoteClient client) {
+        if(this.calculatePing) {
+            int ping = client.getConnection().getReturnTripTime();
+            client.getPlayer().setPing(ping);
+        }
+    }
+    
     /**
      * Send out a message to all clients indicating that
      * the game is now ready for play
@@ -479,23 +642,23 @@ public class InGameState implements State {
     }
     
     /**
-     * Sends a game update to the client
+     * Sends a game update to the client, releasing this threads reference to the update; the 
+     * update goes back to the clients pool once it has been sent out
      * 
      * @param clientId
+     * @param updateMessage
      */
-    private void sendGameUpdateMessage(int clientId) {
-        NetGameUpdate netUpdate = this.game.getNetGameUpdateFor(clientId);
-        if(netUpdate != null) {
-            
-            GameUpdateMessage updateMessage = new GameUpdateMessage();
-            updateMessage.netUpdate = netUpdate;
-                        
+    private void sendGameUpdateMessage(int clientId, GameUpdateMessage updateMessage) {
+        if(updateMessage != null) {
             try {
                 protocol.sendGameUpdateMessage(updateMessage, clientId);
             }
             catch(Exception e) {
                 Cons.println("*** Error sending game update to client: " + e);
             }
+            finally {
+                updateMessage.release();
+            }
         }
     }
     
@@ -60,6 +60,12 @@ public class LoadingState implements State {
      * @throws Exception
      */
     private GameMap loadMap(MapEntry file) throws Exception {        
+        GameMap preloadedMap = this.serverContext.getMapPreloader().take(file);
+        if(preloadedMap != null) {
+            Cons.println("Using the preloaded " + file.getFileName() + " map");
+            return preloadedMap;
+        }
+        
         Cons.println("Loading " + file.getFileName() + " map...");
         
         Map map = MapLoaderUtil.loadMap(this.runtime, file.getFileName(), false);
@@ -151,6 +151,13 @@ public class MapCycle {
         return this.maps.get(currentMap);
     }
     
+    /**
+     * @return the map that comes after the current map, without moving on to it
+     */
+    public MapEntry peekNextMap() {
+        return this.maps.get((this.currentMap + 1) % maps.size());
+    }
+    
     /**
      * @return the current map
      */
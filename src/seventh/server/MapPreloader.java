@@ -0,0 +1,182 @@
+/*
+ * see license.txt
+ */
+package seventh.server;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import leola.vm.Leola;
+import seventh.ai.basic.Zones;
+import seventh.game.GameMap;
+import seventh.map.Map;
+import seventh.map.MapGraph;
+import seventh.map.MapLoaderUtil;
+import seventh.shared.Cons;
+import seventh.shared.MapList.MapEntry;
+import seventh.shared.Scripting;
+
+/**
+ * Loads the next map of the {@link MapCycle} on a background thread while the current round is
+ * still being played; the map, its path finding graph and its AI {@link Zones} are all built ahead of
+ * time, so that the {@link LoadingState} only has to take them once the round is over.
+ *
+ * <p>
+ * Only one map is preloaded at a time, preloading another map (or loading a map that wasn't the one
+ * being preloaded, such as when an admin changes the map) cancels the current preload.
+ *
+ * @author Tony
+ *
+ */
+public class MapPreloader {
+
+    private ExecutorService service;
+
+    private MapEntry map;
+    private Future<GameMap> preload;
+
+    public MapPreloader() {
+        this.service = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "map-preloader");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param map
+     * @return true if the supplied map is the one being preloaded (or that has been preloaded)
+     */
+    public synchronized boolean isPreloading(MapEntry map) {
+        return this.map != null && this.map.getFileName().equals(map.getFileName());
+    }
+
+    /**
+     * Starts preloading the supplied map in the background, cancelling the map currently being preloaded.
+     * Does nothing if the map is already being preloaded.
+     *
+     * @param map
+     */
+    public synchronized void preload(final MapEntry map) {
+        if(isPreloading(map)) {
+            return;
+        }
+
+        cancel();
+
+        this.map = map;
+        this.preload = this.service.submit(new Callable<GameMap>() {
+
+            @Override
+            public GameMap call() throws Exception {
+                return loadMap(map);
+            }
+        });
+    }
+
+    /**
+     * Cancels the current preload, if there is one
+     */
+    public synchronized void cancel() {
+        if(this.preload != null) {
+            this.preload.cancel(true);
+        }
+
+        this.map = null;
+        this.preload = null;
+    }
+
+    /**
+     * Takes the preloaded map, waiting for it to finish loading if it hasn't yet.  If another map
+     * is being preloaded, that preload is cancelled.
+     *
+     * @param map
+     * @return the preloaded map, or null if the supplied map wasn't preloaded (or failed to load)
+     */
+    public GameMap take(MapEntry map) {
+        Future<GameMap> preload = null;
+        synchronized (this) {
+            if(isPreloading(map)) {
+                preload = this.preload;
+                this.map = null;
+                this.preload = null;
+            }
+            else {
+                cancel();
+            }
+        }
+
+        if(preload == null) {
+            return null;
+        }
+
+        try {
+            return preload.get();
+        }
+        catch(InterruptedException e) {
+            preload.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+        catch(CancellationException e) {
+        }
+        catch(ExecutionException e) {
+            Cons.println("*** Unable to preload map: " + map + " -> " + e.getCause());
+        }
+
+        return null;
+    }
+
+    /**
+     * Cancels the current preload and stops the background thread
+     */
+    public synchronized void shutdown() {
+        cancel();
+        this.service.shutdownNow();
+    }
+
+    /**
+     * Loads the map along with its graph and {@link Zones}, checking between each step if the
+     * preload was cancelled
+     *
+     * @param file
+     * @return the loaded map
+     * @throws Exception
+     */
+    private GameMap loadMap(MapEntry file) throws Exception {
+        long startTime = System.nanoTime();
+
+        Leola runtime = Scripting.newRuntime();
+        Map map = MapLoaderUtil.loadMap(runtime, file.getFileName(), false);
+        checkCancelled();
+
+        GameMap gameMap = new GameMap(file.getFileName(), "Unknown", map);
+
+        /* the game has no edge data */
+        MapGraph<Void> graph = map.createMapGraph(null);
+        checkCancelled();
+
+        Zones zones = new Zones(map);
+        checkCancelled();
+
+        gameMap.setPreloaded(graph, zones);
+
+        Cons.println("Preloaded " + file.getFileName() + " map in " + (System.nanoTime() - startTime) / 1_000_000L + " msec");
+        return gameMap;
+    }
+
+    private static void checkCancelled() throws InterruptedException {
+        if(Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+}
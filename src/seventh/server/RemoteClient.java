@@ -5,6 +5,8 @@ package seventh.server;
 
 import harenet.api.Connection;
 import seventh.game.Player;
+import seventh.game.net.NetSnapshots;
+import seventh.network.messages.GameUpdateMessagePool;
 
 
 
@@ -23,6 +25,9 @@ public class RemoteClient {
     private long rconToken;
     private boolean isRconAuthenticated;
     
+    private NetSnapshots snapshots;
+    private GameUpdateMessagePool gameUpdates;
+    
     /**
      * @param network
      */
@@ -33,6 +38,9 @@ public class RemoteClient {
         
         this.rconToken = ServerContext.INVALID_RCON_TOKEN;
         this.isRconAuthenticated = false;
+        
+        this.snapshots = new NetSnapshots();
+        this.gameUpdates = new GameUpdateMessagePool();
     }
     
     /**
@@ -88,6 +96,20 @@ public class RemoteClient {
         return this.conn;
     }
     
+    /**
+     * @return the snapshots sent to this client
+     */
+    public NetSnapshots getSnapshots() {
+        return snapshots;
+    }
+    
+    /**
+     * @return the reusable game update messages sent to this client
+     */
+    public GameUpdateMessagePool getGameUpdates() {
+        return gameUpdates;
+    }
+    
     public int getId() {
         return player.getId();
     }
@@ -25,12 +25,16 @@ public class RemoteClients {
     private Map<Integer, RemoteClient> clients;
     private int maxClients;
     
+    /* a copy of the registered clients, so iterating doesn't allocate */
+    private volatile RemoteClient[] clientArray;
+    
     /**
      * @param maxClients the max number of clients allowed
      */
     public RemoteClients(int maxClients) {
         this.maxClients = maxClients;
         this.clients = new ConcurrentHashMap<>();
+        this.clientArray = new RemoteClient[0];
     }
     
     /**
@@ -40,14 +44,22 @@ public class RemoteClients {
         return maxClients;
     }
     
+    /**
+     * @return the number of registered clients
+     */
+    public int size() {
+        return this.clients.size();
+    }
+    
     /**
      * Iterates through each registered client
      * 
      * @param it
      */
     public void foreach(RemoteClientIterator it) {
-        for(RemoteClient client : this.clients.values()) {
-            it.onRemoteClient(client);
+        RemoteClient[] clients = this.clientArray;
+        for(int i = 0; i < clients.length; i++) {
+            it.onRemoteClient(clients[i]);
         }
     }
     
@@ -63,7 +75,7 @@ public class RemoteClients {
         }
         
         this.clients.put(clientId, client);
-        
+        updateClientArray();
     }
     
     /**
@@ -83,6 +95,14 @@ public class RemoteClients {
      */
     public void removeClient(int clientId) {
         this.clients.remove(clientId);
+        updateClientArray();
+    }
+    
+    /**
+     * Copies the registered clients for {@link #foreach(RemoteClientIterator)}
+     */
+    private synchronized void updateClientArray() {
+        this.clientArray = this.clients.values().toArray(new RemoteClient[0]);
     }
 
 }
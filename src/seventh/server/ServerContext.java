@@ -44,6 +44,7 @@ public class ServerContext {
     private String rconPassword;
 
     private MapCycle mapCycle;
+    private MapPreloader mapPreloader;
     private ServerSeventhConfig config;
     
     private Random random;
@@ -104,6 +105,7 @@ public class ServerContext {
         
         this.gameSession = new AtomicReference<>();
         this.mapCycle = new MapCycle(config.getMapListings());
+        this.mapPreloader = new MapPreloader();
     }
     
     /**
@@ -208,6 +210,13 @@ public class ServerContext {
         return mapCycle;
     }
     
+    /**
+     * @return the mapPreloader
+     */
+    public MapPreloader getMapPreloader() {
+        return mapPreloader;
+    }
+    
     /**
      * @return the random
      */
@@ -321,6 +321,13 @@ public class ServerNetworkProtocol extends NetworkProtocol implements GameSessio
      */
     @Override
     public void receivePlayerInputMessage(Connection conn, PlayerInputMessage msg) {        
+        if(msg.resyncSnapshotId > -1) {
+            RemoteClient client = this.clients.getClient(conn.getId());
+            if(client != null) {
+                client.getSnapshots().resync(msg.resyncSnapshotId);
+            }
+        }
+        
         this.game.applyPlayerInput(conn.getId(), msg);
     }
     
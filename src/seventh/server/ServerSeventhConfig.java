@@ -226,6 +226,15 @@ public class ServerSeventhConfig extends SeventhConfig {
         this.config.set(fps, "sv_framerate");
     }
     
+    /**
+     * @return the time, in milliseconds, between server wake ups while no clients are connected, each wake up
+     * runs the normal frames for the time that passed.  A value of zero (or less) keeps the server running at 
+     * the normal frame rate.
+     */
+    public int getServerIdleFrameRate() {
+        return this.config.getInt(250, "sv_idle_framerate");
+    }
+    
     public int getServerNetUpdateRate() {
         return this.config.getInt(20, "sv_netupdaterate");
     }
@@ -238,6 +247,53 @@ public class ServerSeventhConfig extends SeventhConfig {
         return this.config.getInt(5_000, "sv_netpartialstatdelay");
     }
     
+    /**
+     * @return true if the clients game updates should be delta compressed against the last game update
+     * the client acknowledged
+     */
+    public boolean isServerDeltaSnapshots() {
+        return this.config.getBool(true, "sv_delta_snapshots");
+    }
+    
+    /**
+     * @return the max number of bytes of entities in each clients game update, the entities that don't
+     * fit are sent in a later update.  If 0 or less, there is no limit.
+     */
+    public int getServerClientUpdateBudget() {
+        return this.config.getInt(1000, "sv_client_update_budget");
+    }
+    
+    /**
+     * @return the number of bits per second the server aims to send to each client, the clients update budget 
+     * shrinks while more than this is being sent.  If 0 or less, the update budget is not adjusted.
+     */
+    public int getServerClientMaxRate() {
+        return this.config.getInt(256_000, "sv_client_max_rate");
+    }
+    
+    /**
+     * @return true if the clients game updates should be built at the same time on a pool of threads
+     */
+    public boolean isServerParallelNetUpdates() {
+        return this.config.getBool(false, "sv_parallel_netupdates");
+    }
+    
+    /**
+     * @return the number of threads used to build the clients game updates, if 0 or less, the
+     * number of available processors is used
+     */
+    public int getServerNetUpdateThreads() {
+        return this.config.getInt(0, "sv_netupdate_threads");
+    }
+    
+    /**
+     * @return true if the next map in the map cycle should be loaded in the background while the 
+     * current round is being played
+     */
+    public boolean isServerPreloadMaps() {
+        return this.config.getBool(true, "sv_preload_maps");
+    }
+    
     public String getStartupScript() {
         return this.config.getStr(null, "sv_startupscript");
     }
@@ -5,8 +5,17 @@
 */
 package seventh.shared;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
@@ -18,6 +27,11 @@ import leola.vm.util.ClassUtil;
 /**
  * Dispatches events.  This implementation is thread safe. 
  * 
+ * <p>
+ * The listeners {@link EventMethod}s are bound when they are added, into calls generated with the 
+ * {@link LambdaMetafactory} that invoke the listener interface directly; so sending an event doesn't 
+ * go through reflection.
+ * 
  * @author Tony
  *
  */
@@ -26,7 +40,7 @@ public class EventDispatcher {
     /**
      * Handle to all listeners
      */
-    private Map<Class<?>, Collection<EventListener>> eventListenerMap;
+    private Map<Class<?>, Collection<Binding>> eventListenerMap;
     
     /**
      * Queue of events
@@ -34,96 +48,191 @@ public class EventDispatcher {
     private Queue<Event> eventQueue;        
     
     /**
-     * Cache for method look up.
+     * Cache of the bound {@link EventMethod}s, by listener class and then event class
      */
-    private Map<Class<?>, EventMethodEntry> eventMethodMap;
+    private Map<Class<?>, Map<Class<?>, EventInvoker>> eventInvokerMap;
     
     /**
+     * A direct call to a listeners {@link EventMethod}, bound once when a listener class is first
+     * added rather than looked up and invoked reflectively for each event.
+     * 
      * @author Tony
      */
-    private class EventMethodEntry {        
-        Map<Class<?>, Method> invokables;
-                
-        /**
-         * @param aListenerClass
-         * @param eventMethod
-         */
-        EventMethodEntry() {
-            this.invokables = new ConcurrentHashMap<Class<?>, Method>();
+    interface EventInvoker {
+        void invoke(EventListener listener, Event event);
+    }
+    
+    /**
+     * Used for listeners that have no {@link EventMethod} for the event
+     */
+    private static final EventInvoker NO_EVENT_METHOD = new EventInvoker() {
+        @Override
+        public void invoke(EventListener listener, Event event) {
         }
+    };
+    
+    /**
+     * A listener with its bound {@link EventMethod}
+     * 
+     * @author Tony
+     */
+    private static class Binding {
+        final EventListener listener;
+        final EventInvoker invoker;
         
-        /**
-         * Adds an event listener.
-         * 
-         * @param aListenerClass
-         * @param eventType
-         */
-        void addListener(Class<?> aListenerClass, Class<?> eventType) {
-            scan(aListenerClass, eventType);
+        Binding(EventListener listener, EventInvoker invoker) {
+            this.listener = listener;
+            this.invoker = invoker;
+        }
+    }
+    
+    /**
+     * Binds the listener classes {@link EventMethod} for the event type
+     * 
+     * @param aListenerClass
+     * @param eventType
+     * @return the bound {@link EventMethod}, or {@link #NO_EVENT_METHOD} if there isn't one
+     */
+    static EventInvoker bind(Class<?> aListenerClass, Class<?> eventType) {
+        Method method = findEventMethod(aListenerClass, eventType);
+        if ( method == null ) {
+            return NO_EVENT_METHOD;
         }
         
-        /**
-         * Remove a listener type
-         * @param aListenerClass
-         * @param eventType
+        /* the listeners are mostly anonymous classes, which can't be called directly from here,
+         * so call the method as it is declared on the public listener interface instead
          */
-        void removeListener(Class<?> eventType) {
-            this.invokables.remove(eventType);
+        Method publicMethod = findPublicDeclaration(aListenerClass, method);
+        if ( publicMethod != null ) {
+            try {
+                return compile(publicMethod);
+            }
+            catch(Throwable e) {
+                Cons.println("*** Unable to bind event method " + publicMethod + ", using reflection instead - " + e);
+            }
         }
         
-        /**
-         * Scan the listener class for EventMethods.
-         * 
-         * @param aListenerClass
-         */
-        void scan(Class<?> aListenerClass, Class<?> eventType) {            
-            /* Only get the public members */
-            Method[] methods = aListenerClass.getDeclaredMethods();            
-            if ( methods.length > 0 ) {                            
-                for ( Method method : methods) {
-                    /* Query for the event method annotation */
-                    EventMethod eventMethod = ClassUtil.getAnnotation(EventMethod.class, aListenerClass, method);
-                    if ( eventMethod != null ) {
+        return reflect(method);
+    }
+    
+    /**
+     * Scan the listener class for EventMethods.
+     * 
+     * @param aListenerClass
+     * @param eventType
+     * @return the event method, or null if there isn't one
+     */
+    private static Method findEventMethod(Class<?> aListenerClass, Class<?> eventType) {
+        /* Only get the public members */
+        Method[] methods = aListenerClass.getDeclaredMethods();            
+        for ( Method method : methods) {
+            /* Query for the event method annotation */
+            EventMethod eventMethod = ClassUtil.getAnnotation(EventMethod.class, aListenerClass, method);
+            if ( eventMethod != null ) {
 
-                        /* Verify this only has one parameter, the Event */
-                        Class<?>[] paramTypes = method.getParameterTypes();
-                        if ( paramTypes.length == 1 && paramTypes[0].equals(eventType) ) { 
-                             //ClassUtil.inheritsFrom(paramTypes[0], eventType) ) {
-                            method.setAccessible(true);
-                            this.invokables.put(eventType, method);
-                            break;
-                        }
-                    }
-                    
+                /* Verify this only has one parameter, the Event */
+                Class<?>[] paramTypes = method.getParameterTypes();
+                if ( paramTypes.length == 1 && paramTypes[0].equals(eventType) ) { 
+                    return method;
                 }
             }
-            
         }
         
-        /**
-         * Invoke the method
-         * 
-         * @param event
-         */
-        void invoke(EventListener aListener, Event event) {
+        return null;
+    }
+    
+    /**
+     * @param aClass
+     * @param method
+     * @return the declaration of the method on a public class or interface the supplied class 
+     * inherits from, or null if there isn't one
+     */
+    private static Method findPublicDeclaration(Class<?> aClass, Method method) {
+        if ( aClass == null ) {
+            return null;
+        }
+        
+        if ( Modifier.isPublic(aClass.getModifiers()) ) {
             try {
-                Method method = this.invokables.get(event.getClass());
-                if ( method != null ) {
-                    method.invoke(aListener, event);
+                Method declared = aClass.getDeclaredMethod(method.getName(), method.getParameterTypes());
+                if ( Modifier.isPublic(declared.getModifiers()) ) {
+                    return declared;
                 }
             }
-            catch(Exception e) {        
-                System.err.println("Error invoking listener method - " + e);
-                e.printStackTrace(System.err);
+            catch(NoSuchMethodException e) {
+                /* keep looking */
             }
         }
+        
+        for(Class<?> anInterface : aClass.getInterfaces()) {
+            Method declared = findPublicDeclaration(anInterface, method);
+            if ( declared != null ) {
+                return declared;
+            }
+        }
+        
+        return findPublicDeclaration(aClass.getSuperclass(), method);
+    }
+    
+    /**
+     * Generates an {@link EventInvoker} that calls the method directly
+     * 
+     * @param method
+     * @return the {@link EventInvoker}
+     * @throws Throwable
+     */
+    private static EventInvoker compile(Method method) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle target = lookup.unreflect(method);
+        
+        CallSite site = LambdaMetafactory.metafactory(lookup, 
+                "invoke", 
+                MethodType.methodType(EventInvoker.class), 
+                MethodType.methodType(void.class, EventListener.class, Event.class), 
+                target, 
+                MethodType.methodType(void.class, method.getDeclaringClass(), method.getParameterTypes()[0]));
+        
+        return (EventInvoker) site.getTarget().invokeExact();
+    }
+    
+    /**
+     * Creates an {@link EventInvoker} that calls the method by reflection, for the methods that can't
+     * be called directly
+     * 
+     * @param method
+     * @return the {@link EventInvoker}
+     */
+    private static EventInvoker reflect(final Method method) {
+        method.setAccessible(true);
+        return new EventInvoker() {
+            
+            @Override
+            public void invoke(EventListener listener, Event event) {
+                try {
+                    method.invoke(listener, event);
+                }
+                catch(InvocationTargetException e) {
+                    Throwable cause = e.getCause();
+                    if ( cause instanceof RuntimeException ) {
+                        throw (RuntimeException) cause;
+                    }
+                    if ( cause instanceof Error ) {
+                        throw (Error) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+                catch(IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
     }
     
     /**
      */
     public EventDispatcher() {
-        this.eventListenerMap = new ConcurrentHashMap<Class<?>, Collection<EventListener>>();
-        this.eventMethodMap = new ConcurrentHashMap<Class<?>, EventMethodEntry>();
+        this.eventListenerMap = new ConcurrentHashMap<Class<?>, Collection<Binding>>();
+        this.eventInvokerMap = new ConcurrentHashMap<Class<?>, Map<Class<?>, EventInvoker>>();
         this.eventQueue = new ConcurrentLinkedQueue<Event>();
     }
     
@@ -165,21 +274,43 @@ public class EventDispatcher {
     }
     
     /**
-     * Sends the supplied event now, bypassing the queue.
+     * Processes all of the events that are in the event queue.  Events queued by the listeners while
+     * the queue is being processed are left for the next call.
+     * 
+     * @return the number of events processed
+     */
+    public int processAllQueued() {
+        int numberOfEvents = this.eventQueue.size();
+        int eventsProcessed = 0;
+        
+        Event event = null;
+        while ( eventsProcessed < numberOfEvents && (event = this.eventQueue.poll()) != null ) {
+            sendNow(event);
+            eventsProcessed++;
+        }
+        
+        return eventsProcessed;
+    }
+    
+    /**
+     * Sends the supplied event now, bypassing the queue.  A listener that fails is logged, along with
+     * its stack trace, and doesn't stop the event from being sent to the rest of the listeners.
+     * 
      * @param event
      */
     public <E extends Event> void sendNow(E event) {
-        Class<?> eventClass = event.getClass();
-        if ( this.eventListenerMap.containsKey(eventClass)) {
-            Collection<EventListener> eventListeners = this.eventListenerMap.get(eventClass);
-            for(EventListener listener : eventListeners) {
-                Class<?> listenerClass = listener.getClass();                
-                
-                /* Get the method lookup cache */
-                EventMethodEntry entry = this.eventMethodMap.get(listenerClass);
+        Collection<Binding> bindings = this.eventListenerMap.get(event.getClass());
+        if ( bindings != null ) {
+            for(Binding binding : bindings) {
                 
                 /* Send out the event */
-                entry.invoke(listener, event);
+                try {
+                    binding.invoker.invoke(binding.listener, event);
+                }
+                catch(RuntimeException e) {
+                    Cons.println("*** Error sending " + event.getClass().getSimpleName() + " to listener " + binding.listener + " - " + e);
+                    Cons.println("*** Stack trace: " + Arrays.toString(e.getStackTrace()));
+                }
                 
                 /* If its been consumed, don't continue */
                 if ( event.isConsumed() ) {
@@ -196,22 +327,28 @@ public class EventDispatcher {
      * @param eventListener
      */
     public void addEventListener(Class<?> eventClass, EventListener eventListener) {         
-        if ( ! this.eventListenerMap.containsKey(eventClass)) {
-            this.eventListenerMap.put(eventClass, new ConcurrentLinkedQueue<EventListener>());
+        Collection<Binding> bindings = this.eventListenerMap.get(eventClass);
+        if ( bindings == null ) {
+            this.eventListenerMap.putIfAbsent(eventClass, new ConcurrentLinkedQueue<Binding>());
+            bindings = this.eventListenerMap.get(eventClass);
         }
         
-        /* Place the method lookup cache in place */
+        /* Bind the event method, once per listener class */
         Class<?> listenerClass = eventListener.getClass();
-        if ( ! this.eventMethodMap.containsKey(listenerClass) ) {
-            this.eventMethodMap.put(listenerClass, new EventMethodEntry());    
+        Map<Class<?>, EventInvoker> invokers = this.eventInvokerMap.get(listenerClass);
+        if ( invokers == null ) {
+            this.eventInvokerMap.putIfAbsent(listenerClass, new ConcurrentHashMap<Class<?>, EventInvoker>());
+            invokers = this.eventInvokerMap.get(listenerClass);
         }
         
-        EventMethodEntry methodEntry = this.eventMethodMap.get(listenerClass);
-        methodEntry.addListener(listenerClass, eventClass);
+        EventInvoker invoker = invokers.get(eventClass);
+        if ( invoker == null ) {
+            invoker = bind(listenerClass, eventClass);
+            invokers.put(eventClass, invoker);
+        }
         
         /* Add the listener object */
-        Collection<EventListener> eventListeners = this.eventListenerMap.get(eventClass);
-        eventListeners.add(eventListener);                
+        bindings.add(new Binding(eventListener, invoker));
     }
     
     /**
@@ -221,15 +358,14 @@ public class EventDispatcher {
      * @param eventListener
      */
     public void removeEventListener(Class<?> eventClass, EventListener eventListener) {         
-        if ( this.eventListenerMap.containsKey(eventClass)) {
-            Collection<EventListener> eventListeners = this.eventListenerMap.get(eventClass);
-            eventListeners.remove(eventListener);
-            
-            Class<?> listenerClass = eventListener.getClass();
-            
-            EventMethodEntry methodEntry = this.eventMethodMap.get(listenerClass);
-            if ( methodEntry != null ) {
-                methodEntry.removeListener(eventClass);
+        Collection<Binding> bindings = this.eventListenerMap.get(eventClass);
+        if ( bindings != null ) {
+            Iterator<Binding> it = bindings.iterator();
+            while ( it.hasNext() ) {
+                if ( it.next().listener.equals(eventListener) ) {
+                    it.remove();
+                    break;
+                }
             }
         }            
     }
@@ -240,7 +376,7 @@ public class EventDispatcher {
      */
     public void removeAllEventListeners() {
         this.eventListenerMap.clear();
-        this.eventMethodMap.clear();
+        this.eventInvokerMap.clear();
     }
     
     /**
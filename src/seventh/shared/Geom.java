@@ -14,6 +14,7 @@ import java.util.List;
 
 import seventh.map.Map;
 import seventh.map.Tile;
+import seventh.map.TileVisibility;
 import seventh.math.Vector2f;
 
 /**
@@ -68,7 +69,37 @@ public class Geom {
         }
         return tiles;
     }
-    
+
+    /**
+     * Utility function for calculating entity line of sight.  Unlike {@link #calculateLineOfSight(List, Vector2f, Vector2f, int, Map, int, Vector2f)}
+     * this does not touch the {@link Tile#getMask()}, the results are stored in the supplied {@link TileVisibility}, which
+     * allows for line of sight to be calculated for multiple viewers at the same time.
+     *
+     * @param tiles the tiles in view
+     * @param visibility the visibility of the tiles
+     * @param pos
+     * @param facing
+     * @param radius
+     * @param map
+     * @param heightMask
+     * @param cache
+     * @return the tiles in view
+     */
+    public static List<Tile> calculateLineOfSight(List<Tile> tiles, TileVisibility visibility, Vector2f pos, Vector2f facing, int radius, Map map, int heightMask, Vector2f cache) {
+        visibility.clear();
+
+        tiles = map.getTilesInCircle((int)(pos.x + facing.x * radius), (int)(pos.y + facing.y * radius), radius, tiles);
+        Vector2f tilePos = cache; // avoid allocation
+
+        int size = tiles.size();
+        for(int i = 0; i < size; i++) {
+            Tile tile = tiles.get(i);
+            tilePos.set(tile.getX() + (tile.getWidth()/2), tile.getY() + (tile.getHeight()/2));
+            visibility.setVisible(tile, !map.lineCollides(tilePos, pos, heightMask));
+        }
+        return tiles;
+    }
+
     public static List<Tile> addFadeEffect(Map map, List<Tile> tiles) {
         int size = tiles.size();
                 
@@ -17,6 +17,11 @@ public interface SeventhConstants {
     public static final int DEFAULT_PORT = 9844;
     
     public static final int MAX_PRIMARY_WEAPONS = 2;
+    
+    /**
+     * @deprecated {@link seventh.game.Timers} no longer has a limit on the number of timers
+     */
+    @Deprecated
     public static final int MAX_TIMERS = 32;    
     public static final int MAX_ENTITIES = 256;
     public static final int MAX_PLAYERS = 24;
@@ -0,0 +1,260 @@
+/*
+ * see license.txt
+ */
+package seventh.shared;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a fixed time step loop.  Rather than busy polling the clock, the calling thread is parked until
+ * just before the next tick deadline and then spins for the remaining (short) tail, which keeps the
+ * wake up precise without burning a core between ticks.
+ *
+ * <p>
+ * If a tick runs long, the next call to {@link #waitForNextTick()} returns the number of ticks that are due so
+ * the caller can catch up.  When the loop falls further behind than the maximum number of catch up ticks, the
+ * remaining ticks are dropped and the schedule is reset from the current time.
+ *
+ * @author Tony
+ *
+ */
+public class TickScheduler implements Debugable {
+
+    /**
+     * The default amount of time to spin (rather than park) before a deadline
+     */
+    public static final long DEFAULT_SPIN_THRESHOLD = TimeUnit.MICROSECONDS.toNanos(1_000);
+
+    private long tickPeriod;
+    private final long spinThreshold;
+    private final int maxCatchUpTicks;
+
+    private long lastTickTime;
+    private long nextTickTime;
+    private boolean isStarted;
+
+    private long lastJitter;
+    private long maxJitter;
+    private long totalJitter;
+    private long numberOfWaits;
+
+    private long numberOfTicks;
+    private long numberOfOverruns;
+    private long numberOfCatchUpTicks;
+    private long numberOfDroppedTicks;
+
+    /**
+     * @param tickPeriod the time between ticks, in nanoseconds
+     * @param maxCatchUpTicks the maximum number of ticks {@link #waitForNextTick()} returns when behind
+     */
+    public TickScheduler(long tickPeriod, int maxCatchUpTicks) {
+        this(tickPeriod, maxCatchUpTicks, DEFAULT_SPIN_THRESHOLD);
+    }
+
+    /**
+     * @param tickPeriod the time between ticks, in nanoseconds
+     * @param maxCatchUpTicks the maximum number of ticks {@link #waitForNextTick()} returns when behind
+     * @param spinThreshold how close to the deadline, in nanoseconds, to stop parking and start spinning
+     */
+    public TickScheduler(long tickPeriod, int maxCatchUpTicks, long spinThreshold) {
+        if(tickPeriod <= 0) {
+            throw new IllegalArgumentException("The tick period must be greater than zero: " + tickPeriod);
+        }
+
+        this.tickPeriod = tickPeriod;
+        this.maxCatchUpTicks = Math.max(1, maxCatchUpTicks);
+        this.spinThreshold = Math.max(0, spinThreshold);
+    }
+
+    /**
+     * Changes the time between ticks.  The next deadline is measured from the last tick, so
+     * switching from a long period to a short one takes effect right away.
+     *
+     * @param tickPeriod the time between ticks, in nanoseconds
+     */
+    public void setTickPeriod(long tickPeriod) {
+        if(tickPeriod <= 0) {
+            throw new IllegalArgumentException("The tick period must be greater than zero: " + tickPeriod);
+        }
+
+        if(this.tickPeriod != tickPeriod) {
+            this.tickPeriod = tickPeriod;
+            if(this.isStarted) {
+                this.nextTickTime = this.lastTickTime + tickPeriod;
+            }
+        }
+    }
+
+    /**
+     * @return the time between ticks, in nanoseconds
+     */
+    public long getTickPeriod() {
+        return tickPeriod;
+    }
+
+    /**
+     * @return the maximum number of ticks returned by {@link #waitForNextTick()}
+     */
+    public int getMaxCatchUpTicks() {
+        return maxCatchUpTicks;
+    }
+
+    /**
+     * Blocks until the next tick is due.  The first call returns right away.
+     *
+     * @return the number of ticks that are due, between 1 and {@link #getMaxCatchUpTicks()}
+     */
+    public int waitForNextTick() {
+        long now = currentTime();
+        if(!this.isStarted) {
+            this.isStarted = true;
+            this.nextTickTime = now;
+        }
+
+        if(now < this.nextTickTime) {
+            while(now < this.nextTickTime) {
+                long remaining = this.nextTickTime - now;
+                if(remaining > this.spinThreshold) {
+                    park(remaining - this.spinThreshold);
+                }
+                else {
+                    spin();
+                }
+                now = currentTime();
+            }
+
+            this.lastJitter = now - this.nextTickTime;
+            this.maxJitter = Math.max(this.maxJitter, this.lastJitter);
+            this.totalJitter += this.lastJitter;
+            this.numberOfWaits++;
+        }
+        else if(now - this.nextTickTime >= this.tickPeriod) {
+            /* the last tick(s) ran past the following deadline */
+            this.numberOfOverruns++;
+        }
+
+        long behind = (now - this.nextTickTime) / this.tickPeriod;
+        int ticks = 1;
+        if(behind > 0) {
+            if(behind >= this.maxCatchUpTicks) {
+                ticks = this.maxCatchUpTicks;
+                this.numberOfDroppedTicks += (behind + 1) - ticks;
+
+                /* too far behind to catch up, start the schedule over from now */
+                this.lastTickTime = now;
+                this.nextTickTime = now + this.tickPeriod;
+            }
+            else {
+                ticks = (int)behind + 1;
+            }
+        }
+
+        if(this.nextTickTime <= now) {
+            this.lastTickTime = this.nextTickTime + (ticks - 1) * this.tickPeriod;
+            this.nextTickTime += ticks * this.tickPeriod;
+        }
+
+        this.numberOfTicks += ticks;
+        this.numberOfCatchUpTicks += ticks - 1;
+
+        return ticks;
+    }
+
+    /**
+     * @return the current time, in nanoseconds
+     */
+    protected long currentTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Parks the current thread
+     *
+     * @param nanos
+     */
+    protected void park(long nanos) {
+        LockSupport.parkNanos(nanos);
+    }
+
+    /**
+     * Spins the current thread for a brief moment
+     */
+    protected void spin() {
+        Thread.yield();
+    }
+
+    /**
+     * @return how late, in nanoseconds, the last wait woke up past its deadline
+     */
+    public long getLastJitter() {
+        return lastJitter;
+    }
+
+    /**
+     * @return the latest any wait woke up past its deadline, in nanoseconds
+     */
+    public long getMaxJitter() {
+        return maxJitter;
+    }
+
+    /**
+     * @return the average time, in nanoseconds, waits woke up past their deadline
+     */
+    public long getAverageJitter() {
+        return this.numberOfWaits > 0 ? this.totalJitter / this.numberOfWaits : 0;
+    }
+
+    /**
+     * @return the total number of ticks handed out
+     */
+    public long getNumberOfTicks() {
+        return numberOfTicks;
+    }
+
+    /**
+     * @return the number of times a tick ran past the following deadline
+     */
+    public long getNumberOfOverruns() {
+        return numberOfOverruns;
+    }
+
+    /**
+     * @return the number of extra ticks handed out to catch up
+     */
+    public long getNumberOfCatchUpTicks() {
+        return numberOfCatchUpTicks;
+    }
+
+    /**
+     * @return the number of ticks that were dropped because the loop was too far behind
+     */
+    public long getNumberOfDroppedTicks() {
+        return numberOfDroppedTicks;
+    }
+
+    /* (non-Javadoc)
+     * @see seventh.shared.Debugable#getDebugInformation()
+     */
+    @Override
+    public DebugInformation getDebugInformation() {
+        DebugInformation me = new DebugInformation();
+        me.add("tick_period_us", TimeUnit.NANOSECONDS.toMicros(this.tickPeriod))
+          .add("ticks", this.numberOfTicks)
+          .add("last_jitter_us", TimeUnit.NANOSECONDS.toMicros(this.lastJitter))
+          .add("avg_jitter_us", TimeUnit.NANOSECONDS.toMicros(getAverageJitter()))
+          .add("max_jitter_us", TimeUnit.NANOSECONDS.toMicros(this.maxJitter))
+          .add("overruns", this.numberOfOverruns)
+          .add("catch_up_ticks", this.numberOfCatchUpTicks)
+          .add("dropped_ticks", this.numberOfDroppedTicks);
+        return me;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return getDebugInformation().toString();
+    }
+}
@@ -10,10 +10,36 @@ package seventh.shared;
  */
 public class Timer implements Updatable {
 
+    /**
+     * Keeps a {@link Timer} that isn't updated every frame (such as by {@link seventh.game.Timers}) in step 
+     * with the changes made to it: the timer is caught up before it is changed, and rescheduled after.
+     * 
+     * @author Tony
+     *
+     */
+    public static interface Scheduler {
+        
+        /**
+         * The timer is about to be changed
+         * 
+         * @param timer
+         */
+        public void beforeChange(Timer timer);
+        
+        /**
+         * The timer has been changed, and may now go off at a different time
+         * 
+         * @param timer
+         */
+        public void afterChange(Timer timer);
+    }
+    
     private long currentTime;
     private long endTime;
 
     private boolean update, loop, isTime, onFirstTime;
+    
+    private Scheduler scheduler;
 
     /**
      * @param loop
@@ -27,19 +53,49 @@ public class Timer implements Updatable {
     }
 
     public void set(Timer timer) {
+        beforeChange();
         this.currentTime = timer.currentTime;
         this.endTime = timer.endTime;
         this.update = timer.update;
         this.loop = timer.loop;
         this.isTime = timer.isTime;
         this.onFirstTime = timer.onFirstTime;
+        afterChange();
+    }
+    
+    /**
+     * @param scheduler the {@link Scheduler} told about changes made to this timer, may be null
+     */
+    public void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+    
+    /**
+     * @return the {@link Scheduler} told about changes made to this timer, or null if there isn't one
+     */
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+    
+    private void beforeChange() {
+        if(this.scheduler != null) {
+            this.scheduler.beforeChange(this);
+        }
+    }
+    
+    private void afterChange() {
+        if(this.scheduler != null) {
+            this.scheduler.afterChange(this);
+        }
     }
     
     /**
      * @param endTime the endTime to set
      */
     public Timer setEndTime(long endTime) {
+        beforeChange();
         this.endTime = endTime;
+        afterChange();
         return this;
     }
     
@@ -79,26 +135,34 @@ public class Timer implements Updatable {
     }
     
     public Timer reset() {
+        beforeChange();
         this.currentTime = 0;
         this.update = true;
         this.isTime = false;
+        afterChange();
         return this;
     }
     
     public Timer stop() {
+        beforeChange();
         this.currentTime = 0;
         this.isTime = false;
         this.update = false;
+        afterChange();
         return this;
     }
 
     public Timer start() {
+        beforeChange();
         this.update = true;
+        afterChange();
         return this;
     }
 
     public Timer pause() {
+        beforeChange();
         this.update = false;
+        afterChange();
         return this;
     }
 
@@ -110,7 +174,9 @@ public class Timer implements Updatable {
      * Move the remaining time to 0
      */
     public Timer expire() {
+        beforeChange();
         this.currentTime = this.endTime;
+        afterChange();
         return this;
     }
     
@@ -0,0 +1,143 @@
+package test.ai;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import seventh.ai.basic.ZoneGraph;
+import seventh.graph.GraphNode;
+import seventh.map.GridAStarGraphSearch;
+import seventh.map.MapGraph;
+import seventh.map.OrthoMap;
+import seventh.map.Tile;
+import test.map.TestMaps;
+
+public class ZoneGraphTest {
+
+    private static final int TILE_SIZE = 32;
+    private static final int MAP_TILES_X = 40;
+    private static final int MAP_TILES_Y = 30;
+
+    /* same sizing as Zones */
+    private static final int ZONE_WIDTH = MAP_TILES_X * TILE_SIZE / 12;
+    private static final int ZONE_HEIGHT = MAP_TILES_Y * TILE_SIZE / 12;
+    private static final int ZONE_COLS = MAP_TILES_X * TILE_SIZE / ZONE_WIDTH;
+    private static final int ZONE_ROWS = MAP_TILES_Y * TILE_SIZE / ZONE_HEIGHT;
+
+    private Random random;
+    private OrthoMap map;
+    private MapGraph<Void> graph;
+
+    @Before
+    public void setUp() throws Exception {
+        this.random = new Random(9);
+        this.map = TestMaps.newSolidTileMap(this.random, MAP_TILES_X, MAP_TILES_Y, 0.2f);
+        this.graph = this.map.createMapGraph(null);
+    }
+
+    private ZoneGraph newZoneGraph() {
+        return new ZoneGraph(this.graph, TILE_SIZE, TILE_SIZE, ZONE_WIDTH, ZONE_HEIGHT, ZONE_COLS, ZONE_ROWS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private GraphNode<Tile, Void> randomNode() {
+        while(true) {
+            GraphNode<Tile, Void> node = this.graph.graph[this.random.nextInt(MAP_TILES_Y)][this.random.nextInt(MAP_TILES_X)];
+            if(node != null) {
+                return node;
+            }
+        }
+    }
+
+    /*
+     * purpose : a route over the zones exists exactly when a full resolution path exists, and refining it leg by leg reaches the goal
+     * input : random start and goal tiles over a map with random solid tiles
+     * expected output : the route ends at the goal, each leg can be searched, and the refined path is close to the optimal cost
+     */
+    @Test
+    public void testRoute() {
+        ZoneGraph zoneGraph = newZoneGraph();
+        GridAStarGraphSearch<Void> search = new GridAStarGraphSearch<Void>(this.graph);
+        List<Tile> route = new ArrayList<Tile>();
+
+        assertTrue(zoneGraph.getNumberOfPortals() > 0);
+
+        int numberOfRoutes = 0;
+        long optimalCost = 0, routeCost = 0;
+        for(int i = 0; i < 300; i++) {
+            GraphNode<Tile, Void> start = randomNode();
+            GraphNode<Tile, Void> goal = randomNode();
+
+            List<GraphNode<Tile, Void>> path = search.search(start, goal);
+            int cost = zoneGraph.findRoute(start.getValue(), goal.getValue(), route);
+            if(path == null) {
+                assertEquals("Search: " + i, -1, cost);
+                continue;
+            }
+
+            assertTrue("Search: " + i, cost > -1);
+            if(start == goal) {
+                continue;
+            }
+            assertEquals(goal.getValue(), route.get(route.size() - 1));
+
+            GraphNode<Tile, Void> from = start;
+            int refinedSteps = 0;
+            for(Tile tile : route) {
+                GraphNode<Tile, Void> to = this.graph.getNodeByIndex(tile.getXIndex(), tile.getYIndex());
+                List<GraphNode<Tile, Void>> leg = search.search(from, to);
+                assertNotNull(leg);
+                refinedSteps += leg.size();
+                from = to;
+            }
+
+            numberOfRoutes++;
+            optimalCost += path.size();
+            routeCost += refinedSteps;
+        }
+
+        /* the routes are not optimal, but they should not be far off */
+        assertTrue(numberOfRoutes > 0);
+        assertTrue("Route steps " + routeCost + " vs optimal " + optimalCost, routeCost < optimalCost * 1.3);
+    }
+
+    /*
+     * purpose : updating the tiles incrementally ends up with the same graph as building it from scratch
+     * input : randomly removing and adding graph nodes, updating the zone graph for each
+     * expected output : the same number of portals, and the same route costs as a freshly built zone graph
+     */
+    @Test
+    public void testUpdateTile() {
+        ZoneGraph zoneGraph = newZoneGraph();
+        List<Tile> route = new ArrayList<Tile>();
+
+        for(int i = 0; i < 10; i++) {
+            for(int j = 0; j < 15; j++) {
+                Tile tile = randomNode().getValue();
+                this.graph.removeNode(tile.getXIndex(), tile.getYIndex());
+                zoneGraph.updateTile(tile.getXIndex(), tile.getYIndex());
+
+                int x = this.random.nextInt(MAP_TILES_X);
+                int y = this.random.nextInt(MAP_TILES_Y);
+                if(this.graph.getNodeByIndex(x, y) == null) {
+                    this.graph.addNode(x, y);
+                    zoneGraph.updateTile(x, y);
+                }
+            }
+
+            ZoneGraph expected = newZoneGraph();
+            assertEquals(expected.getNumberOfPortals(), zoneGraph.getNumberOfPortals());
+
+            for(int j = 0; j < 30; j++) {
+                Tile start = randomNode().getValue();
+                Tile goal = randomNode().getValue();
+                assertEquals(expected.findRoute(start, goal, route), zoneGraph.findRoute(start, goal, route));
+            }
+        }
+    }
+}
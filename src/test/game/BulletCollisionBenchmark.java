@@ -0,0 +1,210 @@
+package test.game;
+
+import java.util.Random;
+
+import seventh.game.SpatialHash;
+import seventh.game.SweptCollision;
+import seventh.map.OrthoMap;
+import seventh.math.Rectangle;
+import seventh.math.Vector2f;
+
+/**
+ * Microbenchmark comparing the per pixel bullet stepping against the swept bullet collision.  Each
+ * step does the same work a bullet does in the game: two tile collision checks, and four broadphase
+ * touch queries (players, vehicles, doors and map objects).
+ *
+ * <p>
+ * Run with: <code>java test.game.BulletCollisionBenchmark [iterations]</code>
+ *
+ * @author Tony
+ *
+ */
+public class BulletCollisionBenchmark {
+
+    private static final int TILE_SIZE = 32;
+    private static final int MAP_TILES = 40;
+    private static final int NUMBER_OF_TARGETS = 48;
+    private static final int NUMBER_OF_BULLETS = 2_000;
+
+    private final OrthoMap map;
+    private final Rectangle[] targets;
+    private final SpatialHash targetIndex;
+    private final int[] candidates;
+    private final SweptCollision sweep;
+
+    private final int[] paths;
+    private final Vector2f origin;
+
+    private int stepsChecked;
+
+    public BulletCollisionBenchmark(long seed) throws Exception {
+        Random random = new Random(seed);
+        int mapSize = MAP_TILES * TILE_SIZE;
+
+        this.map = SweptCollisionTest.newMap(random, 0.05f);
+        this.targets = new Rectangle[NUMBER_OF_TARGETS];
+        this.targetIndex = new SpatialHash(NUMBER_OF_TARGETS, TILE_SIZE, TILE_SIZE, MAP_TILES, MAP_TILES, 2);
+        this.candidates = new int[NUMBER_OF_TARGETS];
+        for(int i = 0; i < NUMBER_OF_TARGETS; i++) {
+            this.targets[i] = new Rectangle(random.nextInt(mapSize), random.nextInt(mapSize), 16, 24);
+            this.targetIndex.add(i, this.targets[i]);
+        }
+
+        this.sweep = new SweptCollision();
+        this.origin = new Vector2f(mapSize / 2, mapSize / 2);
+
+        /* bullets travel 75 to 120 pixels a frame */
+        this.paths = new int[NUMBER_OF_BULLETS * 4];
+        for(int i = 0; i < NUMBER_OF_BULLETS; i++) {
+            int x = random.nextInt(mapSize);
+            int y = random.nextInt(mapSize);
+            double angle = random.nextDouble() * Math.PI * 2;
+            int length = 75 + random.nextInt(46);
+            this.paths[i*4 + 0] = x;
+            this.paths[i*4 + 1] = y;
+            this.paths[i*4 + 2] = x + (int)Math.round(Math.cos(angle) * length);
+            this.paths[i*4 + 3] = y + (int)Math.round(Math.sin(angle) * length);
+        }
+    }
+
+    private boolean touches(Rectangle bounds) {
+        boolean isTouching = false;
+
+        /* the game does a query for each type of thing a bullet can hit */
+        for(int query = 0; query < 4; query++) {
+            int size = this.targetIndex.query(bounds, this.candidates);
+            for(int i = 0; i < size; i++) {
+                if(bounds.intersects(this.targets[this.candidates[i]])) {
+                    isTouching = true;
+                }
+            }
+        }
+
+        return isTouching;
+    }
+
+    private boolean stepOnce(Rectangle bounds, int newX, int newY) {
+        this.stepsChecked++;
+
+        int dx = Integer.signum(newX - bounds.x);
+        int dy = Integer.signum(newY - bounds.y);
+
+        if(dx != 0) {
+            bounds.x += dx;
+            if(this.map.rectCollides(bounds, 1)) {
+                bounds.x -= dx;
+                return true;
+            }
+        }
+
+        if(dy != 0) {
+            bounds.y += dy;
+            if(this.map.rectCollides(bounds, 1)) {
+                bounds.y -= dy;
+                return true;
+            }
+        }
+
+        return touches(bounds);
+    }
+
+    private long runStepped(Rectangle bounds) {
+        long checksum = 0;
+        for(int i = 0; i < NUMBER_OF_BULLETS; i++) {
+            bounds.set(this.paths[i*4], this.paths[i*4 + 1], 4, 4);
+            int newX = this.paths[i*4 + 2];
+            int newY = this.paths[i*4 + 3];
+
+            while(bounds.x != newX || bounds.y != newY) {
+                if(stepOnce(bounds, newX, newY)) {
+                    break;
+                }
+            }
+
+            checksum = checksum * 31 + bounds.x * 7919 + bounds.y;
+        }
+        return checksum;
+    }
+
+    private long runSwept(Rectangle bounds) {
+        long checksum = 0;
+        for(int i = 0; i < NUMBER_OF_BULLETS; i++) {
+            int startX = this.paths[i*4];
+            int startY = this.paths[i*4 + 1];
+            int newX = this.paths[i*4 + 2];
+            int newY = this.paths[i*4 + 3];
+            bounds.set(startX, startY, 4, 4);
+
+            this.sweep.begin(bounds, newX, newY);
+            this.sweep.addWorldBounds(this.map);
+            this.sweep.addCollidableTiles(this.map);
+            this.sweep.addMaxDistance(this.origin, 5000);
+
+            int size = this.targetIndex.query(this.sweep.getSweptBounds(), this.candidates);
+            for(int j = 0; j < size; j++) {
+                this.sweep.addTarget(this.targets[this.candidates[j]]);
+            }
+
+            boolean isHit = false;
+            int numberOfIntervals = this.sweep.resolve();
+            for(int j = 0; j < numberOfIntervals && !isHit; j++) {
+                int first = this.sweep.getIntervalStart(j);
+                bounds.x = SweptCollision.stepPosition(startX, newX, first - 1);
+                bounds.y = SweptCollision.stepPosition(startY, newY, first - 1);
+
+                for(int k = first; k <= this.sweep.getIntervalEnd(j); k++) {
+                    if(stepOnce(bounds, newX, newY)) {
+                        isHit = true;
+                        break;
+                    }
+                }
+            }
+
+            if(!isHit) {
+                bounds.x = newX;
+                bounds.y = newY;
+            }
+
+            checksum = checksum * 31 + bounds.x * 7919 + bounds.y;
+        }
+        return checksum;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        BulletCollisionBenchmark benchmark = new BulletCollisionBenchmark(42);
+        Rectangle bounds = new Rectangle();
+
+        /* warm up, and make sure both modes end up in the same spot */
+        for(int i = 0; i < iterations / 4 + 1; i++) {
+            long stepped = benchmark.runStepped(bounds);
+            long swept = benchmark.runSwept(bounds);
+            if(stepped != swept) {
+                throw new IllegalStateException("Swept collision does not match stepped collision");
+            }
+        }
+
+        benchmark.stepsChecked = 0;
+        long startTime = System.nanoTime();
+        for(int i = 0; i < iterations; i++) {
+            benchmark.runStepped(bounds);
+        }
+        long steppedTime = System.nanoTime() - startTime;
+        int steppedChecks = benchmark.stepsChecked;
+
+        benchmark.stepsChecked = 0;
+        startTime = System.nanoTime();
+        for(int i = 0; i < iterations; i++) {
+            benchmark.runSwept(bounds);
+        }
+        long sweptTime = System.nanoTime() - startTime;
+        int sweptChecks = benchmark.stepsChecked;
+
+        long numberOfBullets = (long)iterations * NUMBER_OF_BULLETS;
+        System.out.printf("Stepped: %8.1f ns/bullet, %6.1f checked steps/bullet%n",
+                (double)steppedTime / numberOfBullets, (double)steppedChecks / numberOfBullets);
+        System.out.printf("Swept:   %8.1f ns/bullet, %6.1f checked steps/bullet%n",
+                (double)sweptTime / numberOfBullets, (double)sweptChecks / numberOfBullets);
+    }
+}
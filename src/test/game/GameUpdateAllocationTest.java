@@ -0,0 +1,379 @@
+/*
+ * see license.txt
+ */
+package test.game;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import harenet.ByteBufferIOBuffer;
+import harenet.ByteCounterIOBuffer;
+import harenet.Host;
+import harenet.Host.MessageListener;
+import harenet.IOBuffer;
+import harenet.NetConfig;
+import harenet.Peer;
+import harenet.Protocol;
+import harenet.api.Connection;
+import harenet.api.ConnectionListener;
+import harenet.messages.Message;
+import harenet.messages.NetMessage;
+import harenet.messages.UnReliableNetMessage;
+import leola.vm.Leola;
+import seventh.game.Game;
+import seventh.game.GameMap;
+import seventh.game.Player;
+import seventh.game.Players;
+import seventh.game.SoundEventPool;
+import seventh.game.net.NetBullet;
+import seventh.game.net.NetGameUpdate;
+import seventh.game.net.NetSnapshots;
+import seventh.game.net.NetSoundByEntity;
+import seventh.game.type.tdm.TeamDeathMatchGameType;
+import seventh.math.Vector2f;
+import seventh.network.messages.BufferIO.SeventhNetMessageFactory;
+import seventh.network.messages.GameUpdateMessage;
+import seventh.network.messages.GameUpdateMessagePool;
+import seventh.shared.Config;
+import seventh.shared.EventDispatcher;
+import seventh.shared.SeventhConfig;
+import seventh.shared.SeventhConstants;
+import seventh.shared.SoundType;
+import seventh.shared.TimeStep;
+import test.map.TestMaps;
+
+/**
+ * @author Tony
+ *
+ */
+public class GameUpdateAllocationTest {
+
+    /**
+     * A connection that acknowledges every packet up to the last one sent
+     */
+    private static class AckConnection implements Connection {
+        int lastAcknowledged = -1;
+
+        @Override public boolean isAcknowledged(int sequenceNumber) { return sequenceNumber <= lastAcknowledged; }
+        @Override public int getId() { return 0; }
+        @Override public boolean isConnected() { return true; }
+        @Override public int getReturnTripTime() { return 0; }
+        @Override public long getNumberOfBytesSent() { return 0; }
+        @Override public long getNumberOfBytesReceived() { return 0; }
+        @Override public long getAvgBitsPerSecRecv() { return 0; }
+        @Override public long getAvgBitsPerSecSent() { return 0; }
+        @Override public long getNumberOfDroppedPackets() { return 0; }
+        @Override public long getNumberOfBytesCompressed() { return 0; }
+        @Override public void send(int protocolFlags, NetMessage msg) throws IOException {}
+        @Override public InetSocketAddress getRemoteAddress() { return null; }
+        @Override public void run() {}
+        @Override public void close() {}
+        @Override public void update(int timeout) throws IOException {}
+        @Override public void start() {}
+        @Override public void stop() {}
+        @Override public void addConnectionListener(ConnectionListener listener) {}
+        @Override public void removeConnectionListener(ConnectionListener listener) {}
+    }
+
+    private GameUpdateMessagePool pool = new GameUpdateMessagePool();
+    private NetSnapshots snapshots = new NetSnapshots();
+    private AckConnection conn = new AckConnection();
+    private IOBuffer packet = new ByteBufferIOBuffer(16 * 1024);
+    private NetBullet[] bullets = new NetBullet[64];
+    private SoundEventPool sounds = new SoundEventPool(SeventhConstants.MAX_SOUNDS);
+    private int sequence;
+
+    public GameUpdateAllocationTest() {
+        for(int i = 0; i < this.bullets.length; i++) {
+            this.bullets[i] = new NetBullet();
+            this.bullets[i].posX = i * 10;
+            this.bullets[i].posY = i * 20;
+        }
+
+        this.sounds.emitSound(1, SoundType.EXPLOSION, new Vector2f(100, 100));
+        this.sounds.emitSound(2, SoundType.M1_GARAND_RELOAD, new Vector2f(200, 200), 2);
+        this.sounds.emitSound(3, SoundType.BOMB_TICK, new Vector2f());
+    }
+
+    /**
+     * Builds, sends and packs a game update the same way the server does: the game thread builds the
+     * update, the peer retains it when it is queued, the game thread releases it after sending, and the
+     * network thread packs it and releases the peers reference
+     */
+    private void tick() {
+        GameUpdateMessage msg = this.pool.acquire();
+        NetGameUpdate netUpdate = msg.netUpdate;
+
+        for(int i = 0; i < this.bullets.length; i++) {
+            this.bullets[i].posX++;
+            netUpdate.entities[i] = this.bullets[i];
+        }
+        netUpdate.addNetSounds(this.sounds);
+        netUpdate.time = this.sequence;
+
+        this.snapshots.encode(netUpdate, this.conn, true);
+
+        /* queued to the peer */
+        msg.retain();
+        msg.release();
+
+        /* packed by the network thread */
+        this.sequence++;
+        msg.setSequenceNumberSent(this.sequence);
+        this.packet.clear();
+        msg.write(this.packet);
+        msg.release();
+
+        this.conn.lastAcknowledged = this.sequence;
+    }
+
+    /**
+     * @return the threads allocation counter, the test is skipped if the JVM can't count allocations
+     */
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("Allocation counting is not supported", threadBean instanceof com.sun.management.ThreadMXBean);
+
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)threadBean;
+        Assume.assumeTrue("Allocation counting is not supported", bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        return bean;
+    }
+
+    /**
+     * Builds a team death match game on an open map, without any of the map or script assets
+     *
+     * @param dispatcher
+     * @return the game
+     */
+    private static Game newGame(EventDispatcher dispatcher) throws Exception {
+        File configFile = File.createTempFile("game_update_test", ".leola");
+        configFile.deleteOnExit();
+        try(Writer writer = new FileWriter(configFile)) {
+            writer.write("var test_config = { net -> { mtu -> 1400 } }\n");
+        }
+
+        SeventhConfig config = new SeventhConfig(new Config(configFile.getPath(), "test_config"));
+        GameMap gameMap = new GameMap("test", "test", TestMaps.newSolidTileMap(new Random(7), 64, 64, 0.0f));
+
+        List<Vector2f> alliedSpawns = new ArrayList<Vector2f>();
+        alliedSpawns.add(new Vector2f(200, 200));
+        List<Vector2f> axisSpawns = new ArrayList<Vector2f>();
+        axisSpawns.add(new Vector2f(300, 200));
+
+        TeamDeathMatchGameType gameType = new TeamDeathMatchGameType(new Leola(), alliedSpawns, axisSpawns, 50, 10 * 60 * 1000);
+        return new Game(config, new Players(), gameType, gameMap, dispatcher);
+    }
+
+    /*
+     * purpose : once warmed up, building and sending game updates does not allocate
+     * input : 1,000 delta compressed game updates with moving entities and sounds
+     * expected output : no bytes allocated by the thread
+     */
+    @Test
+    public void testSteadyStateDoesNotAllocate() {
+        com.sun.management.ThreadMXBean bean = allocationCounter();
+
+        long threadId = Thread.currentThread().getId();
+        for(int i = 0; i < 2_000; i++) {
+            tick();
+        }
+
+        long before = bean.getThreadAllocatedBytes(threadId);
+        for(int i = 0; i < 1_000; i++) {
+            tick();
+        }
+        long allocated = bean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(1, this.pool.getNumberOfAllocations());
+
+        /* allow for the bean itself */
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    /*
+     * purpose : the game updates the server builds for a player, and sends through the peer, are reused
+     * input : 3,000 game frames of two players, each building the players update with a budget, delta compressing
+     *         it, sending it to a connected peer and packing it
+     * expected output : one pooled game update is used, the update contains the players entity and is delta
+     *                   compressed, and only the queued message and the datagram send allocate
+     */
+    @Test
+    public void testGameUpdatesThroughPeer() throws Exception {
+        com.sun.management.ThreadMXBean bean = allocationCounter();
+        long threadId = Thread.currentThread().getId();
+
+        EventDispatcher dispatcher = new EventDispatcher();
+        Game game = newGame(dispatcher);
+        game.playerJoined(new Player(0));
+        game.playerJoined(new Player(1));
+        dispatcher.processAllQueued();
+        game.spawnPlayerEntity(0, new Vector2f(200, 200));
+        game.spawnPlayerEntity(1, new Vector2f(300, 200));
+
+        int port = 0;
+        try(DatagramSocket socket = new DatagramSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        InetSocketAddress hostAddress = new InetSocketAddress("127.0.0.1", port);
+
+        NetConfig config = new NetConfig(new SeventhNetMessageFactory());
+        config.enableLog(false);
+        config.setMaxReceiveTime(0);
+        Host host = new Host(config, hostAddress);
+
+        MessageListener listener = new MessageListener() {
+            @Override public void onConnected(Peer peer) {}
+            @Override public void onDisconnected(Peer peer) {}
+            @Override public void onServerFull(Peer peer) {}
+            @Override public void onMessage(Peer peer, Message message) {}
+        };
+
+        TimeStep timeStep = new TimeStep();
+        timeStep.setDeltaTime(33);
+
+        ByteCounterIOBuffer byteCounter = new ByteCounterIOBuffer();
+        boolean hasPlayerEntity = false;
+        int baselineSnapshotId = -1;
+        long allocated = 0;
+
+        try(DatagramChannel client = DatagramChannel.open()) {
+            client.connect(hostAddress);
+
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            buffer.put(Protocol.PROTOCOL_ID).put((byte)0).put(Host.INVALID_PEER_ID).put((byte)0);
+            buffer.putInt(1).putInt(0).putInt(0);
+            buffer.flip();
+            client.write(buffer);
+            Thread.sleep(100);
+
+            /* connects the peer, which takes the first slot */
+            host.update(listener, 0);
+
+            for(int i = 0; i < 3_000; i++) {
+                timeStep.setGameClock(timeStep.getGameClock() + timeStep.getDeltaTime());
+                game.update(timeStep);
+                dispatcher.processAllQueued();
+
+                long before = bean.getThreadAllocatedBytes(threadId);
+
+                /* built and sent as the InGameState and HareNetServer do */
+                GameUpdateMessage msg = this.pool.acquire();
+                NetGameUpdate netUpdate = game.getNetGameUpdateFor(0, msg.netUpdate, 600);
+                this.snapshots.encode(netUpdate, this.conn, true);
+                hasPlayerEntity = netUpdate.entities[0] != null;
+                baselineSnapshotId = netUpdate.getBaselineSnapshotId();
+
+                byteCounter.clear();
+                msg.write(byteCounter);
+                host.sendTo(new UnReliableNetMessage(msg, (short)byteCounter.capacity()), (byte)0);
+                msg.release();
+
+                /* packed by the network thread */
+                host.update(listener, 0);
+
+                if(i >= 2_000) {
+                    allocated += bean.getThreadAllocatedBytes(threadId) - before;
+                }
+
+                game.postUpdate();
+
+                /* everything that went out is acknowledged */
+                this.conn.lastAcknowledged = Integer.MAX_VALUE;
+            }
+        }
+        finally {
+            host.destroy();
+        }
+
+        assertEquals(1, this.pool.getNumberOfAllocations());
+        assertTrue(hasPlayerEntity);
+        assertTrue(baselineSnapshotId >= 0);
+
+        /* the message queued to the peer, and what the JDK allocates to send the datagram */
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1_000 * 256);
+    }
+
+    /*
+     * purpose : a message only returns to the pool once both the sender and the peer have released it
+     * input : a message still queued to the peer while the next update is built
+     * expected output : a second message is created for the next update, and both are reused afterwards
+     */
+    @Test
+    public void testInFlightMessagesAreNotReused() {
+        GameUpdateMessage first = this.pool.acquire();
+        first.retain();
+        assertFalse(first.release());
+        assertEquals(0, this.pool.getNumberOfFreeMessages());
+
+        GameUpdateMessage second = this.pool.acquire();
+        assertNotSame(first, second);
+        assertEquals(2, this.pool.getNumberOfAllocations());
+
+        assertTrue(second.release());
+        assertTrue(first.release());
+        assertEquals(2, this.pool.getNumberOfFreeMessages());
+
+        GameUpdateMessage reused = this.pool.acquire();
+        assertTrue(reused == first || reused == second);
+        assertEquals(1, reused.getReferenceCount());
+        assertEquals(2, this.pool.getNumberOfAllocations());
+    }
+
+    /*
+     * purpose : reused sounds do not carry over state from a previous update
+     * input : an update with sounds, then the same message reused with a different set of sounds
+     * expected output : the client reads back exactly the second set of sounds
+     */
+    @Test
+    public void testReusedSounds() {
+        GameUpdateMessage msg = this.pool.acquire();
+        msg.netUpdate.addNetSounds(this.sounds);
+        ((NetSoundByEntity)msg.netUpdate.sounds[1]).enablePosition();
+        msg.release();
+
+        SoundEventPool otherSounds = new SoundEventPool(SeventhConstants.MAX_SOUNDS);
+        otherSounds.emitSound(5, SoundType.M1_GARAND_RELOAD, new Vector2f(64, 64), 5);
+        otherSounds.emitSound(6, SoundType.WEAPON_PICKUP, new Vector2f(96, 32));
+
+        GameUpdateMessage reused = this.pool.acquire();
+        assertSame(msg, reused);
+        assertEquals(0, reused.netUpdate.numberOfSounds);
+
+        reused.netUpdate.addNetSounds(otherSounds);
+        assertEquals(2, reused.netUpdate.numberOfSounds);
+
+        this.packet.clear();
+        reused.netUpdate.write(this.packet);
+        this.packet.bitPosition(0);
+
+        NetGameUpdate received = new NetGameUpdate();
+        received.read(this.packet);
+
+        assertEquals(2, received.numberOfSounds);
+        assertEquals(SoundType.M1_GARAND_RELOAD, received.sounds[0].getSoundType());
+        assertFalse(received.sounds[0].hasPositionalInformation());
+        assertEquals(5, ((NetSoundByEntity)received.sounds[0]).entityId);
+
+        assertEquals(SoundType.WEAPON_PICKUP, received.sounds[1].getSoundType());
+        assertTrue(received.sounds[1].hasPositionalInformation());
+        assertEquals(96, received.sounds[1].posX);
+        assertEquals(32, received.sounds[1].posY);
+    }
+}
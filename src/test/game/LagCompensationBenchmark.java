@@ -0,0 +1,157 @@
+/*
+ * see license.txt
+ */
+package test.game;
+
+import java.util.Random;
+
+import seventh.game.LagCompensation;
+import seventh.game.entities.Entity;
+import seventh.game.net.NetEntity;
+import seventh.math.Rectangle;
+import seventh.math.Vector2f;
+import seventh.shared.SeventhConstants;
+
+/**
+ * Microbenchmark of the cost of lag compensation with 24 players.  Each frame the players move and their
+ * history is recorded, as the game does after its update; and then each bullet in flight rewinds the players
+ * to what its owner saw, checks them for a touch, and puts them back, as a {@link seventh.game.weapons.Bullet}
+ * does each frame.
+ *
+ * <p>
+ * Run with: <code>java test.game.LagCompensationBenchmark [frames]</code>
+ *
+ * @author Tony
+ *
+ */
+public class LagCompensationBenchmark {
+
+    private static final int NUMBER_OF_PLAYERS = 24;
+    private static final int NUMBER_OF_BULLETS = 100;
+    private static final int FRAME_TIME = 20;
+    private static final int MAP_SIZE = 40 * 32;
+
+    private final LagCompensation lagCompensation;
+    private final Entity[] players;
+    private final Vector2f[] velocities;
+    private final int[] rewindTimes;
+    private final Rectangle[] bullets;
+
+    private long gameClock;
+
+    public LagCompensationBenchmark(long seed) {
+        Random random = new Random(seed);
+
+        this.lagCompensation = new LagCompensation(SeventhConstants.MAX_PLAYERS, 500);
+        this.players = new Entity[SeventhConstants.MAX_PLAYERS];
+        this.velocities = new Vector2f[NUMBER_OF_PLAYERS];
+        for(int i = 0; i < NUMBER_OF_PLAYERS; i++) {
+            Vector2f pos = new Vector2f(random.nextInt(MAP_SIZE), random.nextInt(MAP_SIZE));
+            this.players[i] = new Entity(i, pos, 100, null, Entity.Type.PLAYER) {
+                @Override
+                public NetEntity getNetEntity() {
+                    return null;
+                }
+            };
+            this.players[i].getBounds().set((int)pos.x, (int)pos.y, 16, 24);
+            this.velocities[i] = new Vector2f(random.nextInt(7) - 3, random.nextInt(7) - 3);
+        }
+
+        /* the players pings are anywhere from 20 to 300 msec */
+        this.rewindTimes = new int[NUMBER_OF_PLAYERS];
+        for(int i = 0; i < NUMBER_OF_PLAYERS; i++) {
+            this.rewindTimes[i] = 20 + random.nextInt(281);
+        }
+
+        this.bullets = new Rectangle[NUMBER_OF_BULLETS];
+        for(int i = 0; i < NUMBER_OF_BULLETS; i++) {
+            this.bullets[i] = new Rectangle(random.nextInt(MAP_SIZE), random.nextInt(MAP_SIZE), 4, 4);
+        }
+    }
+
+    private void movePlayers() {
+        for(int i = 0; i < NUMBER_OF_PLAYERS; i++) {
+            Entity player = this.players[i];
+            Vector2f pos = player.getPos();
+            Vector2f vel = this.velocities[i];
+            if(pos.x + vel.x < 0 || pos.x + vel.x > MAP_SIZE) {
+                vel.x = -vel.x;
+            }
+            if(pos.y + vel.y < 0 || pos.y + vel.y > MAP_SIZE) {
+                vel.y = -vel.y;
+            }
+
+            pos.x += vel.x;
+            pos.y += vel.y;
+            player.getBounds().setLocation(pos);
+        }
+    }
+
+    private void record() {
+        this.lagCompensation.record(this.gameClock, this.players);
+        this.gameClock += FRAME_TIME;
+    }
+
+    private int checkBullets(boolean isRewound) {
+        int touches = 0;
+        for(int i = 0; i < NUMBER_OF_BULLETS; i++) {
+            Entity shooter = this.players[i % NUMBER_OF_PLAYERS];
+            boolean rewound = isRewound && this.lagCompensation.rewind(this.rewindTimes[i % NUMBER_OF_PLAYERS], this.players, shooter);
+
+            Rectangle bullet = this.bullets[i];
+            for(int j = 0; j < NUMBER_OF_PLAYERS; j++) {
+                if(this.players[j] != shooter && bullet.intersects(this.players[j].getBounds())) {
+                    touches++;
+                }
+            }
+
+            if(rewound) {
+                this.lagCompensation.restore();
+            }
+        }
+        return touches;
+    }
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        LagCompensationBenchmark benchmark = new LagCompensationBenchmark(42);
+
+        /* warm up, and fill the history */
+        for(int i = 0; i < frames / 4 + LagCompensation.HISTORY_SIZE; i++) {
+            benchmark.movePlayers();
+            benchmark.record();
+            benchmark.checkBullets(true);
+            benchmark.checkBullets(false);
+        }
+
+        long recordTime = 0;
+        long rewoundTime = 0;
+        long currentTime = 0;
+        int rewoundTouches = 0;
+        int currentTouches = 0;
+        for(int i = 0; i < frames; i++) {
+            benchmark.movePlayers();
+
+            long startTime = System.nanoTime();
+            benchmark.record();
+            recordTime += System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            rewoundTouches += benchmark.checkBullets(true);
+            rewoundTime += System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            currentTouches += benchmark.checkBullets(false);
+            currentTime += System.nanoTime() - startTime;
+        }
+
+        long rewindCost = rewoundTime - currentTime;
+        System.out.printf("%d players, %d bullets per frame (%d touches rewound, %d not rewound)%n", 
+                NUMBER_OF_PLAYERS, NUMBER_OF_BULLETS, rewoundTouches, currentTouches);
+        System.out.printf("Record history:   %8.1f ns/frame%n", (double)recordTime / frames);
+        System.out.printf("Bullet checks:    %8.1f ns/frame rewound, %8.1f ns/frame not rewound%n",
+                (double)rewoundTime / frames, (double)currentTime / frames);
+        System.out.printf("Rewind + restore: %8.1f ns/bullet%n", (double)rewindCost / ((long)frames * NUMBER_OF_BULLETS));
+    }
+}
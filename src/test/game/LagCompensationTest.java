@@ -0,0 +1,154 @@
+/*
+ * see license.txt
+ */
+package test.game;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import seventh.game.LagCompensation;
+import seventh.game.entities.Entity;
+import seventh.game.net.NetEntity;
+import seventh.math.Vector2f;
+
+/**
+ * @author Tony
+ *
+ */
+public class LagCompensationTest {
+
+    private static final int FRAME_TIME = 20;
+
+    private static Entity newEntity(int id, float x, float y) {
+        Entity ent = new Entity(id, new Vector2f(x, y), 100, null, Entity.Type.PLAYER) {
+            @Override
+            public NetEntity getNetEntity() {
+                return null;
+            }
+        };
+        ent.getBounds().set((int)x, (int)y, 16, 24);
+        return ent;
+    }
+
+    private static void moveTo(Entity ent, float x, float y) {
+        ent.getPos().set(x, y);
+        ent.getBounds().setLocation((int)x, (int)y);
+    }
+
+    /**
+     * Records 10 frames, with the entity moving 10 pixels to the right each frame
+     */
+    private static Entity[] recordMovement(LagCompensation lag) {
+        Entity[] entities = new Entity[4];
+        entities[1] = newEntity(1, 0, 100);
+        entities[2] = newEntity(2, 500, 500);
+
+        for(int frame = 0; frame < 10; frame++) {
+            moveTo(entities[1], frame * 10, 100);
+            lag.record(frame * FRAME_TIME, entities);
+        }
+        return entities;
+    }
+
+    /*
+     * purpose : entities are rewound to where they were, in between recorded frames, and put back afterwards
+     * input : an entity moving 10 pixels every 20 msec, rewound by 40 and 50 msec
+     * expected output : rewound 20 and 25 pixels back, then back at its current position; the shooter doesn't move
+     */
+    @Test
+    public void testRewindAndRestore() {
+        LagCompensation lag = new LagCompensation(4, 500);
+        Entity[] entities = recordMovement(lag);
+        Entity target = entities[1];
+        Entity shooter = entities[2];
+        moveTo(shooter, 520, 500);
+
+        assertTrue(lag.rewind(40, entities, shooter));
+        assertTrue(lag.isRewound());
+        assertEquals(70f, target.getPos().x, 0.001f);
+        assertEquals(70, target.getBounds().x);
+        assertEquals(520f, shooter.getPos().x, 0.001f);
+
+        /* can't rewind again until restored */
+        assertFalse(lag.rewind(40, entities, shooter));
+
+        lag.restore();
+        assertFalse(lag.isRewound());
+        assertEquals(90f, target.getPos().x, 0.001f);
+        assertEquals(90, target.getBounds().x);
+        assertEquals(16, target.getBounds().width);
+        assertEquals(24, target.getBounds().height);
+
+        assertTrue(lag.rewind(50, entities, shooter));
+        assertEquals(65f, target.getPos().x, 0.001f);
+        assertEquals(65, target.getBounds().x);
+        lag.restore();
+        assertEquals(90f, target.getPos().x, 0.001f);
+    }
+
+    /*
+     * purpose : a client can't rewind past the max rewind time, or past the oldest recorded frame
+     * input : a max rewind of 100 msec, asking for 1 second; and a max rewind of 0
+     * expected output : rewound by 100 msec; and not rewound at all
+     */
+    @Test
+    public void testMaxRewindTime() {
+        LagCompensation lag = new LagCompensation(4, 100);
+        Entity[] entities = recordMovement(lag);
+
+        assertTrue(lag.rewind(1000, entities, null));
+        assertEquals(40f, entities[1].getPos().x, 0.001f);
+        lag.restore();
+
+        lag = new LagCompensation(4, 1000);
+        entities = recordMovement(lag);
+        assertTrue(lag.rewind(1000, entities, null));
+        assertEquals(0f, entities[1].getPos().x, 0.001f);
+        lag.restore();
+
+        lag = new LagCompensation(4, 0);
+        entities = recordMovement(lag);
+        assertFalse(lag.rewind(100, entities, null));
+        assertEquals(90f, entities[1].getPos().x, 0.001f);
+    }
+
+    /*
+     * purpose : an entity that has replaced another one with the same id isn't moved to where the other one was
+     * input : a new entity in the slot of the recorded entity
+     * expected output : the new entity stays where it is
+     */
+    @Test
+    public void testReplacedEntity() {
+        LagCompensation lag = new LagCompensation(4, 500);
+        Entity[] entities = recordMovement(lag);
+        entities[1] = newEntity(1, 300, 300);
+
+        lag.rewind(40, entities, null);
+        assertEquals(300f, entities[1].getPos().x, 0.001f);
+        assertEquals(300, entities[1].getBounds().x);
+        lag.restore();
+    }
+
+    /*
+     * purpose : the rewind time is worked out from the truncated server time the client echoes back
+     * input : render times before and after the 16 bit server time wraps around, and a render time from long ago
+     * expected output : the time between the game clock and the render time; capped to the max rewind time
+     */
+    @Test
+    public void testRenderTime() {
+        LagCompensation lag = new LagCompensation(4, 500);
+
+        lag.setRenderTime(1, 10_000, 9_880);
+        assertEquals(120, lag.getRewindTime(1));
+
+        lag.setRenderTime(1, 65_536 + 40, 65_500);
+        assertEquals(76, lag.getRewindTime(1));
+
+        lag.setRenderTime(1, 10_000, 2_000);
+        assertEquals(500, lag.getRewindTime(1));
+
+        assertEquals(0, lag.getRewindTime(2));
+        assertEquals(0, lag.getRewindTime(100));
+    }
+}
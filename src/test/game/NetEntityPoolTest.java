@@ -0,0 +1,221 @@
+/*
+ * see license.txt
+ */
+package test.game;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+import harenet.ByteBufferIOBuffer;
+import harenet.IOBuffer;
+import seventh.game.entities.Entity.State;
+import seventh.game.entities.Entity.Type;
+import seventh.game.net.NetBullet;
+import seventh.game.net.NetEntity;
+import seventh.game.net.NetEntityPool;
+import seventh.game.net.NetGameUpdate;
+import seventh.game.net.NetPlayer;
+import seventh.game.net.NetSnapshots;
+import seventh.game.net.NetWeapon;
+import seventh.game.weapons.Weapon.WeaponState;
+import seventh.network.messages.BufferIO.SeventhNetMessageFactory;
+import seventh.network.messages.GameUpdateMessage;
+import seventh.network.messages.GameUpdateMessagePool;
+import seventh.shared.SeventhConstants;
+
+/**
+ * @author Tony
+ *
+ */
+public class NetEntityPoolTest {
+
+    private NetSnapshots server = new NetSnapshots();
+    private NetSnapshots client = new NetSnapshots();
+    private IOBuffer packet = new ByteBufferIOBuffer(16 * 1024);
+    private SeventhNetMessageFactory factory = new SeventhNetMessageFactory(new GameUpdateMessagePool());
+    private GameUpdateMessage serverMessage = new GameUpdateMessage();
+
+    public NetEntityPoolTest() {
+        this.client.setEntityPool(new NetEntityPool(SeventhConstants.MAX_ENTITIES));
+        this.serverMessage.netUpdate = new NetGameUpdate();
+    }
+
+    private static NetBullet bullet(int x, int y, int ownerId) {
+        NetBullet bullet = new NetBullet();
+        bullet.posX = x;
+        bullet.posY = y;
+        bullet.ownerId = ownerId;
+        return bullet;
+    }
+
+    /**
+     * Sends the entities from the server to the client, returning the received (resolved) message; the
+     * updates are sent in full, as the test connection never acknowledges anything
+     */
+    private GameUpdateMessage send(NetEntity[] entities) {
+        NetGameUpdate netUpdate = this.serverMessage.netUpdate;
+        netUpdate.clear();
+        System.arraycopy(entities, 0, netUpdate.entities, 0, entities.length);
+        this.server.encode(netUpdate, null, false);
+
+        this.packet.clear();
+        this.serverMessage.write(this.packet);
+        this.packet.bitPosition(0);
+
+        GameUpdateMessage received = (GameUpdateMessage)this.factory.readNetMessage(this.packet);
+        assertTrue(received.netUpdate.resolve(this.client));
+        return received;
+    }
+
+    /**
+     * Applies the message, as the client does
+     */
+    private void apply(GameUpdateMessage received) {
+        this.client.setAppliedSnapshotId(received.netUpdate.getSnapshotId());
+        received.release();
+    }
+
+    /*
+     * purpose : once the client has applied newer states, the older entities are reused for the same slot
+     * input : a bullet moving over 20 applied updates
+     * expected output : the client sees the right positions, and after the first lap of the ring no entities are created
+     */
+    @Test
+    public void testReusesAppliedEntities() {
+        NetEntityPool pool = this.client.getEntityPool();
+        NetEntity[] entities = new NetEntity[10];
+        entities[7] = bullet(0, 0, 3);
+
+        for(int i = 0; i < 20; i++) {
+            ((NetBullet)entities[7]).posX = i * 10;
+
+            GameUpdateMessage received = send(entities);
+            NetBullet bullet = (NetBullet)received.netUpdate.entities[7];
+            assertEquals(7, bullet.id);
+            assertEquals(i * 10, bullet.posX);
+            assertEquals(3, bullet.ownerId);
+            apply(received);
+        }
+
+        assertEquals(NetEntityPool.DEFAULT_DEPTH, pool.getNumberOfAllocated());
+        assertEquals(20 - NetEntityPool.DEFAULT_DEPTH, pool.getNumberOfReused());
+    }
+
+    /*
+     * purpose : the states a client entity holds on to, and updates that have not been applied, are never overwritten
+     * input : 10 updates that are received but not applied, then the latest of them applied followed by more updates that are not applied
+     * expected output : every received state keeps its values, and the states of the last two applied snapshots are not reused
+     */
+    @Test
+    public void testHeldEntitiesAreNotReused() {
+        NetEntityPool pool = this.client.getEntityPool();
+        NetEntity[] entities = new NetEntity[10];
+        entities[2] = bullet(0, 0, 1);
+
+        NetBullet[] states = new NetBullet[10];
+        for(int i = 0; i < states.length; i++) {
+            ((NetBullet)entities[2]).posX = i;
+            GameUpdateMessage received = send(entities);
+            states[i] = (NetBullet)received.netUpdate.entities[2];
+        }
+
+        for(int i = 0; i < states.length; i++) {
+            assertEquals(i, states[i].posX);
+        }
+        assertEquals(10, pool.getNumberOfAllocated());
+
+        /* the client entity now holds the states of the last two snapshots */
+        pool.setAppliedSnapshotId(9);
+        for(int i = 0; i < 20; i++) {
+            ((NetBullet)entities[2]).posX = 100 + i;
+            GameUpdateMessage received = send(entities);
+
+            NetEntity entity = received.netUpdate.entities[2];
+            assertNotSame(states[8], entity);
+            assertNotSame(states[9], entity);
+            received.release();
+        }
+
+        assertEquals(8, states[8].posX);
+        assertEquals(9, states[9].posX);
+    }
+
+    /*
+     * purpose : a reused player does not keep the optional fields of its previous state
+     * input : a player in a vehicle with smoke grenades, followed by the same player on foot with a weapon
+     * expected output : the reused player is not operating a vehicle, has no smoke grenades and has the new weapon
+     */
+    @Test
+    public void testReusedPlayerIsReset() {
+        NetPlayer player = new NetPlayer();
+        player.state = State.OPERATING_VEHICLE;
+        player.isOperatingVehicle = true;
+        player.vehicleId = 12;
+        player.isSmokeGrenades = true;
+
+        NetEntity[] entities = new NetEntity[1];
+        entities[0] = player;
+
+        for(int i = 0; i < NetEntityPool.DEFAULT_DEPTH; i++) {
+            apply(send(entities));
+        }
+
+        player.state = State.IDLE;
+        player.isOperatingVehicle = false;
+        player.isSmokeGrenades = false;
+        player.weapon = new NetWeapon();
+        player.weapon.type = Type.THOMPSON;
+        player.weapon.weaponState = WeaponState.READY;
+        player.weapon.ammoInClip = 30;
+
+        NetPlayer received = (NetPlayer)send(entities).netUpdate.entities[0];
+        assertEquals(NetEntityPool.DEFAULT_DEPTH, this.client.getEntityPool().getNumberOfAllocated());
+        assertFalse(received.isOperatingVehicle);
+        assertFalse(received.isSmokeGrenades);
+        assertNotNull(received.weapon);
+        assertEquals(30, received.weapon.ammoInClip);
+    }
+
+    /*
+     * purpose : once warmed up, receiving and applying game updates does not allocate
+     * input : 1,000 updates of 64 moving bullets, each applied before the next is received
+     * expected output : no bytes allocated by the thread
+     */
+    @Test
+    public void testSteadyStateDoesNotAllocate() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if(!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)threadBean;
+        if(!bean.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        NetEntity[] entities = new NetEntity[64];
+        for(int i = 0; i < entities.length; i++) {
+            entities[i] = bullet(i, i, 1);
+        }
+
+        for(int i = 0; i < 2_000; i++) {
+            ((NetBullet)entities[i % entities.length]).posX++;
+            apply(send(entities));
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(threadId);
+        for(int i = 0; i < 1_000; i++) {
+            ((NetBullet)entities[i % entities.length]).posX++;
+            apply(send(entities));
+        }
+        long allocated = bean.getThreadAllocatedBytes(threadId) - before;
+
+        /* allow for the bean itself */
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
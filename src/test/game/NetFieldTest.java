@@ -0,0 +1,307 @@
+/*
+ * see license.txt
+ */
+package test.game;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import harenet.ByteBufferIOBuffer;
+import harenet.IOBuffer;
+import harenet.messages.NetMessage;
+import seventh.game.entities.Entity.State;
+import seventh.game.entities.Entity.Type;
+import seventh.game.entities.PlayerEntity.Keys;
+import seventh.game.net.NetBomb;
+import seventh.game.net.NetBombTarget;
+import seventh.game.net.NetBullet;
+import seventh.game.net.NetDoor;
+import seventh.game.net.NetDroppedItem;
+import seventh.game.net.NetEntity;
+import seventh.game.net.NetExplosion;
+import seventh.game.net.NetFire;
+import seventh.game.net.NetFlag;
+import seventh.game.net.NetLight;
+import seventh.game.net.NetPlayer;
+import seventh.game.net.NetPlayerPartial;
+import seventh.game.net.NetRocket;
+import seventh.game.net.NetTank;
+import seventh.game.net.NetWeapon;
+import seventh.game.weapons.Weapon.WeaponState;
+import seventh.network.messages.BufferIO;
+import seventh.network.messages.BufferIO.SeventhNetMessageFactory;
+import seventh.network.messages.NetAngle;
+import seventh.network.messages.NetField;
+import seventh.network.messages.PlayerInputMessage;
+
+/**
+ * @author Tony
+ *
+ */
+public class NetFieldTest {
+
+    private IOBuffer buffer = new ByteBufferIOBuffer(1024);
+
+    /**
+     * @return the bits written to the buffer, one bit per char
+     */
+    private String encode(NetMessage message) {
+        this.buffer.clear();
+        message.write(this.buffer);
+
+        int numberOfBits = this.buffer.bitPosition();
+        StringBuilder sb = new StringBuilder(numberOfBits);
+        this.buffer.bitPosition(0);
+        for(int i = 0; i < numberOfBits; i++) {
+            sb.append(this.buffer.getBooleanBit() ? '1' : '0');
+        }
+        this.buffer.bitPosition(0);
+        return sb.toString();
+    }
+
+    /**
+     * Writes the entity, reads it back and writes the read entity again; both must be bit for bit the same
+     */
+    private NetEntity roundTrip(NetEntity entity, int expectedNumberOfBits) {
+        String bits = encode(entity);
+        assertEquals(entity.type.name(), expectedNumberOfBits, bits.length());
+
+        NetEntity read = BufferIO.readEntity(this.buffer);
+        assertEquals(entity.type.name(), bits.length(), this.buffer.bitPosition());
+        assertEquals(entity.type, read.type);
+        assertEquals(entity.posX, read.posX);
+        assertEquals(entity.posY, read.posY);
+
+        assertEquals(entity.type.name(), bits, encode(read));
+        return read;
+    }
+
+    private static <T extends NetEntity> T place(T entity) {
+        entity.posX = 4321;
+        entity.posY = 17;
+        return entity;
+    }
+
+    private static int bits(NetField ... fields) {
+        int sum = 0;
+        for(NetField field : fields) {
+            sum += field.getNumberOfBits();
+        }
+        return sum;
+    }
+
+    private static final int ENTITY_BITS = Type.numOfBits() + bits(NetField.POSITION, NetField.POSITION);
+    private static final int ANGLE_BITS = NetAngle.ORIENTATION.getNumberOfBits();
+
+    /*
+     * purpose : each entity type is encoded with the bits its schema declares, and round trips bit for bit
+     * input : one of each net entity type, with values inside of their ranges
+     * expected output : the declared number of bits, the same values read back and the same bits written again
+     */
+    @Test
+    public void testEntitiesRoundTrip() {
+        NetPlayer player = place(new NetPlayer());
+        player.orientation = 90;
+        player.state = State.RUNNING;
+        player.grenades = 3;
+        player.health = 100;
+        player.isSmokeGrenades = true;
+        player.inputSequence = 65_535;
+        player.weapon = new NetWeapon();
+        player.weapon.type = Type.MP40;
+        player.weapon.ammoInClip = 32;
+        player.weapon.totalAmmo = 190;
+        player.weapon.weaponState = WeaponState.FIRING;
+        int weaponBits = Type.numOfBits() + bits(NetField.AMMO_IN_CLIP, NetField.TOTAL_AMMO) + WeaponState.numOfBits();
+
+        NetPlayer readPlayer = (NetPlayer)roundTrip(player, ENTITY_BITS + bits(NetField.PLAYER_FLAGS) + ANGLE_BITS
+                + State.numOfBits() + bits(NetField.GRENADES, NetField.HEALTH, NetField.INPUT_SEQUENCE) + weaponBits);
+        assertEquals(90, readPlayer.orientation);
+        assertEquals(State.RUNNING, readPlayer.state);
+        assertEquals(3, readPlayer.grenades);
+        assertEquals(100, readPlayer.health);
+        assertTrue(readPlayer.isSmokeGrenades);
+        assertEquals(65_535, readPlayer.inputSequence);
+        assertEquals(32, readPlayer.weapon.ammoInClip);
+        assertEquals(190, readPlayer.weapon.totalAmmo);
+        assertEquals(WeaponState.FIRING, readPlayer.weapon.weaponState);
+
+        NetPlayer driver = place(new NetPlayer());
+        driver.state = State.OPERATING_VEHICLE;
+        driver.isOperatingVehicle = true;
+        driver.vehicleId = 255;
+        NetPlayer readDriver = (NetPlayer)roundTrip(driver, ENTITY_BITS + bits(NetField.PLAYER_FLAGS) + ANGLE_BITS
+                + State.numOfBits() + bits(NetField.GRENADES, NetField.HEALTH, NetField.INPUT_SEQUENCE, NetField.ENTITY_ID));
+        assertEquals(255, readDriver.vehicleId);
+
+        NetPlayerPartial partial = place(new NetPlayerPartial());
+        partial.orientation = 180;
+        partial.state = State.IDLE;
+        partial.health = 42;
+        partial.weapon = new NetWeapon();
+        partial.weapon.type = Type.KAR98;
+        partial.weapon.weaponState = WeaponState.RELOADING;
+        NetPlayerPartial readPartial = (NetPlayerPartial)roundTrip(partial, ENTITY_BITS + ANGLE_BITS + State.numOfBits()
+                + bits(NetField.HEALTH) + Type.numOfBits() + WeaponState.numOfBits());
+        assertEquals(42, readPartial.health);
+        assertEquals(Type.KAR98, readPartial.weapon.type);
+
+        NetBullet bullet = place(new NetBullet());
+        bullet.ownerId = 23;
+        assertEquals(23, ((NetBullet)roundTrip(bullet, ENTITY_BITS + bits(NetField.PLAYER_ID))).ownerId);
+
+        NetRocket rocket = place(new NetRocket());
+        rocket.ownerId = 2;
+        rocket.orientation = 45;
+        assertEquals(45, roundTrip(rocket, ENTITY_BITS + bits(NetField.PLAYER_ID) + ANGLE_BITS).orientation);
+
+        NetTank tank = place(new NetTank(Type.PANZER_TANK));
+        tank.state = State.OPERATING_VEHICLE.netValue();
+        tank.orientation = 270;
+        tank.turretOrientation = 135;
+        tank.primaryWeaponState = WeaponState.FIRING.netValue();
+        tank.secondaryWeaponState = WeaponState.RELOADING.netValue();
+        tank.operatorId = 7;
+        NetTank readTank = (NetTank)roundTrip(tank, ENTITY_BITS + State.numOfBits() + ANGLE_BITS * 2
+                + WeaponState.numOfBits() * 2 + bits(NetField.PLAYER_ID));
+        assertEquals(tank.state, readTank.state);
+        assertEquals(135, readTank.turretOrientation);
+        assertEquals(tank.primaryWeaponState, readTank.primaryWeaponState);
+        assertEquals(tank.secondaryWeaponState, readTank.secondaryWeaponState);
+        assertEquals(7, readTank.operatorId);
+
+        NetBomb bomb = place(new NetBomb());
+        bomb.timeRemaining = 29_876;
+        assertEquals(29_876, ((NetBomb)roundTrip(bomb, ENTITY_BITS + bits(NetField.BOMB_TIME))).timeRemaining);
+
+        NetLight light = place(new NetLight());
+        light.r = 255;
+        light.g = 128;
+        light.b = 0;
+        light.luminacity = 200;
+        light.size = 512;
+        NetLight readLight = (NetLight)roundTrip(light, ENTITY_BITS + bits(NetField.COLOR) * 4 + bits(NetField.LIGHT_SIZE));
+        assertEquals(128, readLight.g);
+        assertEquals(512, readLight.size);
+
+        NetDoor door = place(new NetDoor());
+        door.orientation = 315;
+        door.hinge = 5;
+        assertEquals(5, ((NetDoor)roundTrip(door, ENTITY_BITS + ANGLE_BITS + bits(NetField.DOOR_HINGE))).hinge);
+
+        NetBombTarget target = place(new NetBombTarget());
+        target.isRotated = true;
+        assertTrue(((NetBombTarget)roundTrip(target, ENTITY_BITS + 1)).isRotated);
+
+        NetDroppedItem item = place(new NetDroppedItem());
+        item.droppedItem = Type.SHOTGUN;
+        assertEquals(Type.SHOTGUN, ((NetDroppedItem)roundTrip(item, ENTITY_BITS + Type.numOfBits())).droppedItem);
+
+        NetFlag flag = place(new NetFlag(Type.AXIS_FLAG));
+        flag.carriedBy = 24;
+        assertEquals(24, ((NetFlag)roundTrip(flag, ENTITY_BITS + bits(NetField.PLAYER_ID))).carriedBy);
+
+        NetExplosion explosion = place(new NetExplosion());
+        explosion.ownerId = 1;
+        roundTrip(explosion, ENTITY_BITS + bits(NetField.PLAYER_ID));
+
+        NetFire fire = place(new NetFire());
+        fire.ownerId = 1;
+        roundTrip(fire, ENTITY_BITS + bits(NetField.PLAYER_ID));
+    }
+
+    /*
+     * purpose : the fields take the fewest bits for their range, and values outside of the range are clamped
+     * input : positions, health and ammo outside of their ranges
+     * expected output : the number of bits for each range, and the clamped values read back
+     */
+    @Test
+    public void testRanges() {
+        assertEquals(13, NetField.POSITION.getNumberOfBits());
+        assertEquals(7, NetField.HEALTH.getNumberOfBits());
+        assertEquals(8, NetField.ENTITY_ID.getNumberOfBits());
+        assertEquals(Keys.values().length, NetField.PLAYER_KEYS.getNumberOfBits());
+        assertEquals(4, new NetField("offset", -8, 7).getNumberOfBits());
+
+        this.buffer.clear();
+        NetField.POSITION.write(this.buffer, -40);
+        NetField.POSITION.write(this.buffer, 10_000);
+        NetField.HEALTH.write(this.buffer, 120);
+        NetField.TOTAL_AMMO.write(this.buffer, 5_000);
+        new NetField("offset", -8, 7).write(this.buffer, -5);
+        NetField.PLAYER_KEYS.write(this.buffer, Keys.FIRE.getValue() | (1 << 20));
+
+        this.buffer.bitPosition(0);
+        assertEquals(0, NetField.POSITION.read(this.buffer));
+        assertEquals(8191, NetField.POSITION.read(this.buffer));
+        assertEquals(100, NetField.HEALTH.read(this.buffer));
+        assertEquals(4095, NetField.TOTAL_AMMO.read(this.buffer));
+        assertEquals(-5, new NetField("offset", -8, 7).read(this.buffer));
+        assertEquals(Keys.FIRE.getValue(), NetField.PLAYER_KEYS.read(this.buffer));
+    }
+
+    /*
+     * purpose : the entity orientation is sent bit for bit as it was before it was declared as a field
+     * input : every angle from -360 to 720 degrees
+     * expected output : the same byte angle as (degrees * 256) / 360, and the same degrees read back
+     */
+    @Test
+    public void testOrientationMatchesByteAngle() {
+        for(int degrees = -360; degrees <= 720; degrees++) {
+            int bangle = ((degrees * 256) / 360) & 0xFF;
+
+            this.buffer.clear();
+            BufferIO.writeAngle(this.buffer, degrees);
+            assertEquals(8, this.buffer.bitPosition());
+
+            this.buffer.bitPosition(0);
+            assertEquals(bangle, this.buffer.getUnsignedByte());
+
+            this.buffer.bitPosition(0);
+            assertEquals((bangle * 360) / 256, BufferIO.readAngle(this.buffer));
+        }
+    }
+
+    /*
+     * purpose : the player input is sent in fewer bits, and the aim stays within half a step of the players aim
+     * input : player inputs with keys, orientations all the way around, and sequences and render times that wrap around
+     * expected output : the keys, orientations from -PI to PI within half a step of the sent orientation, and the 
+     * low 16 bits of the sequence and render time
+     */
+    @Test
+    public void testPlayerInput() {
+        SeventhNetMessageFactory factory = new SeventhNetMessageFactory();
+        double halfStep = Math.PI / (1 << NetAngle.AIM.getNumberOfBits());
+
+        PlayerInputMessage msg = new PlayerInputMessage();
+        msg.keys = Keys.UP.getValue() | Keys.FIRE.getValue() | Keys.IRON_SIGHTS.getValue();
+
+        for(int i = -1000; i <= 1000; i++) {
+            msg.orientation = (float)((i / 1000.0) * Math.PI);
+            msg.sequence = 65_000 + i;
+            msg.renderTime = i * 100;
+
+            String bits = encode(msg);
+
+            /* 6 bits for the message type and 1 for the resync request, this used to be 32 bits for the 
+             * keys and 32 for the orientation 
+             */
+            assertEquals(6 + Keys.values().length + NetAngle.AIM.getNumberOfBits() + 
+                         NetField.INPUT_SEQUENCE.getNumberOfBits() + NetField.SERVER_TIME.getNumberOfBits() + 
+                         NetField.PREVIOUS_INPUTS.getNumberOfBits() + 1, bits.length());
+
+            PlayerInputMessage read = (PlayerInputMessage)factory.readNetMessage(this.buffer);
+            assertEquals(msg.keys, read.keys);
+            assertEquals(msg.sequence & 0xFFFF, read.sequence);
+            assertEquals(msg.renderTime & 0xFFFF, read.renderTime);
+            assertTrue(read.orientation >= (float)-Math.PI && read.orientation < (float)Math.PI);
+
+            double error = Math.abs(read.orientation - msg.orientation);
+            error = Math.min(error, Math.PI * 2 - error);
+            assertTrue("Orientation " + msg.orientation + " read as " + read.orientation, error <= halfStep + 1e-6);
+
+            assertEquals(bits, encode(read));
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package test.game;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import harenet.ByteBufferIOBuffer;
+import harenet.Host;
+import harenet.Host.MessageListener;
+import harenet.IOBuffer;
+import harenet.NetConfig;
+import harenet.Peer;
+import harenet.Protocol;
+import harenet.api.Connection;
+import harenet.api.ConnectionListener;
+import harenet.messages.EncodedNetMessage;
+import harenet.messages.Message;
+import harenet.messages.NetMessage;
+import harenet.messages.UnReliableNetMessage;
+import seventh.game.net.NetBullet;
+import seventh.game.net.NetGameUpdate;
+import seventh.game.net.NetSnapshots;
+import seventh.network.messages.BufferIO.SeventhNetMessageFactory;
+import seventh.network.messages.GameUpdateMessage;
+
+public class NetSnapshotTest {
+
+    /**
+     * A connection that acknowledges the packets it is told to
+     */
+    private static class AckConnection implements Connection {
+        Set<Integer> acked = new HashSet<Integer>();
+        
+        @Override public boolean isAcknowledged(int sequenceNumber) { return acked.contains(sequenceNumber); }
+        @Override public int getId() { return 0; }
+        @Override public boolean isConnected() { return true; }
+        @Override public int getReturnTripTime() { return 0; }
+        @Override public long getNumberOfBytesSent() { return 0; }
+        @Override public long getNumberOfBytesReceived() { return 0; }
+        @Override public long getAvgBitsPerSecRecv() { return 0; }
+        @Override public long getAvgBitsPerSecSent() { return 0; }
+        @Override public long getNumberOfDroppedPackets() { return 0; }
+        @Override public long getNumberOfBytesCompressed() { return 0; }
+        @Override public void send(int protocolFlags, NetMessage msg) throws IOException {}
+        @Override public InetSocketAddress getRemoteAddress() { return null; }
+        @Override public void run() {}
+        @Override public void close() {}
+        @Override public void update(int timeout) throws IOException {}
+        @Override public void start() {}
+        @Override public void stop() {}
+        @Override public void addConnectionListener(ConnectionListener listener) {}
+        @Override public void removeConnectionListener(ConnectionListener listener) {}
+    }
+    
+    private static NetBullet bullet(int x, int y, int ownerId) {
+        NetBullet bullet = new NetBullet();
+        bullet.posX = x;
+        bullet.posY = y;
+        bullet.ownerId = ownerId;
+        return bullet;
+    }
+    
+    private static NetGameUpdate update(NetBullet[] bullets) {
+        NetGameUpdate netUpdate = new NetGameUpdate();
+        System.arraycopy(bullets, 0, netUpdate.entities, 0, bullets.length);
+        netUpdate.time = 1000;
+        return netUpdate;
+    }
+    
+    /**
+     * Sends the update over the 'wire', returning the number of bits written
+     */
+    private static int send(NetGameUpdate netUpdate, NetGameUpdate received) {
+        IOBuffer buffer = new ByteBufferIOBuffer(16 * 1024);
+        netUpdate.write(buffer);
+        int numberOfBits = buffer.bitPosition();
+        
+        buffer.bitPosition(0);
+        received.read(buffer);
+        assertEquals(numberOfBits, buffer.bitPosition());
+        return numberOfBits;
+    }
+    
+    private static void assertBullet(NetBullet expected, int id, NetGameUpdate received) {
+        assertTrue(received.entities[id] instanceof NetBullet);
+        NetBullet bullet = (NetBullet)received.entities[id];
+        assertEquals(id, bullet.id);
+        assertEquals(expected.posX, bullet.posX);
+        assertEquals(expected.posY, bullet.posY);
+        assertEquals(expected.ownerId, bullet.ownerId);
+    }
+
+    /*
+     * purpose : an update without an acknowledged snapshot is sent in full, and rebuilt by the client
+     * input : a couple of bullets, nothing acknowledged by the client
+     * expected output : the update has no baseline, and the client rebuilds the same bullets
+     */
+    @Test
+    public void testFullSnapshot() {
+        NetSnapshots server = new NetSnapshots();
+        NetSnapshots client = new NetSnapshots();
+        AckConnection conn = new AckConnection();
+        
+        NetBullet[] bullets = new NetBullet[64];
+        bullets[3] = bullet(100, 200, 1);
+        bullets[40] = bullet(8000, 12, 23);
+        
+        NetGameUpdate netUpdate = update(bullets);
+        server.encode(netUpdate, conn, true);
+        assertEquals(0, netUpdate.getSnapshotId());
+        assertEquals(-1, netUpdate.getBaselineSnapshotId());
+        
+        NetGameUpdate received = new NetGameUpdate();
+        send(netUpdate, received);
+        assertTrue(received.resolve(client));
+        
+        assertEquals(1000, received.time);
+        assertBullet(bullets[3], 3, received);
+        assertBullet(bullets[40], 40, received);
+        for(int i = 0; i < received.entities.length; i++) {
+            if(i != 3 && i != 40) {
+                assertNull(received.entities[i]);
+            }
+        }
+    }
+    
+    /*
+     * purpose : once the client acknowledges a snapshot, the following updates are delta compressed against it
+     * input : a moving bullet, an idle bullet, and a new bullet
+     * expected output : the update uses the acknowledged baseline, is smaller than a full update and is rebuilt correctly
+     */
+    @Test
+    public void testDeltaSnapshot() {
+        NetSnapshots server = new NetSnapshots();
+        NetSnapshots client = new NetSnapshots();
+        AckConnection conn = new AckConnection();
+        
+        NetBullet[] bullets = new NetBullet[64];
+        for(int i = 0; i < 20; i++) {
+            bullets[i] = bullet(i * 100, i * 50, i);
+        }
+        
+        NetGameUpdate first = update(bullets);
+        server.encode(first, conn, true);
+        first.setSequenceNumberSent(7);
+        
+        NetGameUpdate received = new NetGameUpdate();
+        int fullSize = send(first, received);
+        assertTrue(received.resolve(client));
+        
+        /* not acknowledged yet */
+        NetGameUpdate second = update(bullets);
+        server.encode(second, conn, true);
+        assertEquals(-1, second.getBaselineSnapshotId());
+        received = new NetGameUpdate();
+        send(second, received);
+        assertTrue(received.resolve(client));
+        
+        conn.acked.add(7);
+        
+        bullets[2] = bullet(250, 100, 2);
+        bullets[30] = bullet(10, 10, 4);
+        bullets[5] = null;
+        
+        NetGameUpdate third = update(bullets);
+        server.encode(third, conn, true);
+        assertEquals(first.getSnapshotId(), third.getBaselineSnapshotId());
+        
+        received = new NetGameUpdate();
+        int deltaSize = send(third, received);
+        assertTrue(received.resolve(client));
+        assertTrue(deltaSize < fullSize);
+        
+        for(int i = 0; i < bullets.length; i++) {
+            if(bullets[i] != null) {
+                assertBullet(bullets[i], i, received);
+            }
+            else {
+                assertNull(received.entities[i]);
+            }
+        }
+    }
+    
+    /*
+     * purpose : the client can not rebuild an update if it never received the baseline
+     * input : a delta compressed update, to a client that did not receive the acknowledged snapshot
+     * expected output : the update is not resolved
+     */
+    @Test
+    public void testMissingBaseline() {
+        NetSnapshots server = new NetSnapshots();
+        NetSnapshots client = new NetSnapshots();
+        AckConnection conn = new AckConnection();
+        
+        NetBullet[] bullets = new NetBullet[64];
+        bullets[0] = bullet(1, 2, 3);
+        
+        NetGameUpdate first = update(bullets);
+        server.encode(first, conn, true);
+        first.setSequenceNumberSent(1);
+        conn.acked.add(1);
+        
+        NetGameUpdate second = update(bullets);
+        server.encode(second, conn, true);
+        assertEquals(first.getSnapshotId(), second.getBaselineSnapshotId());
+        
+        NetGameUpdate received = new NetGameUpdate();
+        send(second, received);
+        assertFalse(received.resolve(client));
+        
+        /* without delta compression, the update is always resolved */
+        NetGameUpdate third = update(bullets);
+        server.encode(third, conn, false);
+        assertEquals(-1, third.getBaselineSnapshotId());
+        
+        received = new NetGameUpdate();
+        send(third, received);
+        assertTrue(received.resolve(client));
+        assertBullet(bullets[0], 0, received);
+    }
+    
+    /*
+     * purpose : a client that acknowledged a snapshot it could not rebuild asks for a resync, after which 
+     *           the snapshots already sent are not used as baselines
+     * input : a delta compressed update against a snapshot the client never rebuilt, then a resync request, 
+     *         and the same request again
+     * expected output : the update after the request is sent in full and resolved, the repeated request is 
+     *                   ignored and the following update is delta compressed against the full one
+     */
+    @Test
+    public void testResync() {
+        NetSnapshots server = new NetSnapshots();
+        NetSnapshots client = new NetSnapshots();
+        AckConnection conn = new AckConnection();
+        
+        NetBullet[] bullets = new NetBullet[64];
+        bullets[0] = bullet(1, 2, 3);
+        
+        NetGameUpdate first = update(bullets);
+        server.encode(first, conn, true);
+        first.setSequenceNumberSent(1);
+        conn.acked.add(1);
+        
+        NetGameUpdate second = update(bullets);
+        server.encode(second, conn, true);
+        second.setSequenceNumberSent(2);
+        conn.acked.add(2);
+        
+        NetGameUpdate received = new NetGameUpdate();
+        send(second, received);
+        assertFalse(received.resolve(client));
+        
+        server.resync(second.getSnapshotId());
+        
+        NetGameUpdate third = update(bullets);
+        server.encode(third, conn, true);
+        third.setSequenceNumberSent(3);
+        assertEquals(-1, third.getBaselineSnapshotId());
+        
+        received = new NetGameUpdate();
+        send(third, received);
+        assertTrue(received.resolve(client));
+        conn.acked.add(3);
+        
+        /* the inputs in flight still carry the request */
+        server.resync(second.getSnapshotId());
+        
+        bullets[0] = bullet(5, 2, 3);
+        NetGameUpdate fourth = update(bullets);
+        server.encode(fourth, conn, true);
+        assertEquals(third.getSnapshotId(), fourth.getBaselineSnapshotId());
+        
+        received = new NetGameUpdate();
+        send(fourth, received);
+        assertTrue(received.resolve(client));
+        assertBullet(bullets[0], 0, received);
+    }
+    
+    /*
+     * purpose : an update too large for a single packet is split up, once every packet it went out in is 
+     *           acknowledged it is used as the baseline
+     * input : a full update with every entity, sent to a peer and packed by the host, with every packet acknowledged
+     * expected output : the game update message is released, and the next update is delta compressed against it
+     */
+    @Test
+    public void testFragmentedSnapshot() throws Exception {
+        NetSnapshots server = new NetSnapshots();
+        AckConnection conn = new AckConnection();
+        
+        NetBullet[] bullets = new NetBullet[256];
+        for(int i = 0; i < bullets.length; i++) {
+            bullets[i] = bullet(i * 1000 + 7, i * 300 + 3, i);
+        }
+        
+        GameUpdateMessage message = new GameUpdateMessage();
+        message.netUpdate = update(bullets);
+        server.encode(message.netUpdate, conn, true);
+        
+        int port = 0;
+        try(DatagramSocket socket = new DatagramSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        InetSocketAddress hostAddress = new InetSocketAddress("127.0.0.1", port);
+        
+        NetConfig config = new NetConfig(new SeventhNetMessageFactory());
+        config.enableLog(false);
+        config.setMaxReceiveTime(0);
+        config.setMtu(400);
+        Host host = new Host(config, hostAddress);
+        
+        MessageListener listener = new MessageListener() {            
+            @Override public void onConnected(Peer peer) {}
+            @Override public void onDisconnected(Peer peer) {}
+            @Override public void onServerFull(Peer peer) {}
+            @Override public void onMessage(Peer peer, Message message) {}
+        };
+        
+        try(DatagramChannel client = DatagramChannel.open()) {
+            client.connect(hostAddress);
+            
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            buffer.put(Protocol.PROTOCOL_ID).put((byte)0).put(Host.INVALID_PEER_ID).put((byte)0);
+            buffer.putInt(1).putInt(0).putInt(0);
+            buffer.flip();
+            client.write(buffer);
+            Thread.sleep(100);
+            
+            /* connects the peer */
+            host.update(listener, 0);
+            
+            IOBuffer encoded = new ByteBufferIOBuffer(16 * 1024);
+            message.write(encoded);
+            assertTrue(encoded.position() > config.getMtu());
+            
+            Message msg = new UnReliableNetMessage(message, (short)encoded.position());
+            host.sendToAll(msg);
+            EncodedNetMessage.release(msg);
+            
+            /* the host keeps the message until every fragment has been packed */
+            assertEquals(1, message.getReferenceCount());
+            
+            for(int i = 0; i < 10; i++) {
+                host.update(listener, 0);
+            }
+            assertEquals(0, message.getReferenceCount());
+        }
+        finally {
+            host.destroy();
+        }
+        
+        /* not every packet acknowledged */
+        for(int i = 0; i < 2; i++) {
+            conn.acked.add(i);
+        }
+        NetGameUpdate second = update(bullets);
+        server.encode(second, conn, true);
+        assertEquals(-1, second.getBaselineSnapshotId());
+        
+        for(int i = 0; i < 32; i++) {
+            conn.acked.add(i);
+        }
+        
+        NetGameUpdate third = update(bullets);
+        server.encode(third, conn, true);
+        assertEquals(message.netUpdate.getSnapshotId(), third.getBaselineSnapshotId());
+    }
+}
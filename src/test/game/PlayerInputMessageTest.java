@@ -0,0 +1,116 @@
+/*
+ * see license.txt
+ */
+package test.game;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import harenet.ByteBufferIOBuffer;
+import harenet.IOBuffer;
+import seventh.network.messages.BufferIO.SeventhNetMessageFactory;
+import seventh.network.messages.PlayerInputMessage;
+
+/**
+ * @author Tony
+ *
+ */
+public class PlayerInputMessageTest {
+
+    /*
+     * purpose : input sequence numbers are compared across them wrapping around
+     * input : pairs of sequences either side of the wrap around
+     * expected output : the later sequence is newer, and a sequence is not newer than itself
+     */
+    @Test
+    public void testIsNewerSequence() {
+        assertTrue(PlayerInputMessage.isNewerSequence(2, 1));
+        assertFalse(PlayerInputMessage.isNewerSequence(1, 2));
+        assertFalse(PlayerInputMessage.isNewerSequence(7, 7));
+
+        assertTrue(PlayerInputMessage.isNewerSequence(3, 65_530));
+        assertFalse(PlayerInputMessage.isNewerSequence(65_530, 3));
+        assertTrue(PlayerInputMessage.isNewerSequence(0, 65_535));
+    }
+
+    /*
+     * purpose : each input is sent along with the inputs before it, up to the max number of previous inputs
+     * input : 5 inputs, each written and read back
+     * expected output : the sequence numbers count up, and each message carries the previous inputs newest first
+     */
+    @Test
+    public void testPreviousInputsAreSentAgain() {
+        SeventhNetMessageFactory factory = new SeventhNetMessageFactory();
+        IOBuffer buffer = new ByteBufferIOBuffer(256);
+
+        PlayerInputMessage msg = new PlayerInputMessage();
+        for(int i = 1; i <= 5; i++) {
+            msg.nextInput();
+            msg.keys = i;
+            msg.orientation = 0.5f;
+
+            buffer.clear();
+            msg.write(buffer);
+            buffer.bitPosition(0);
+            PlayerInputMessage read = (PlayerInputMessage)factory.readNetMessage(buffer);
+
+            assertEquals(i, read.sequence);
+            assertEquals(i, read.keys);
+            assertEquals(Math.min(i, PlayerInputMessage.MAX_PREVIOUS_INPUTS), read.numberOfPreviousInputs);
+            for(int j = 0; j < read.numberOfPreviousInputs; j++) {
+                assertEquals(i - 1 - j, read.previousKeys[j]);
+            }
+        }
+    }
+
+    /*
+     * purpose : the client asks for a resync by sending the snapshot it couldn't rebuild along with its inputs
+     * input : an input with no resync request, and one with a request
+     * expected output : the request is read back as sent
+     */
+    @Test
+    public void testResyncSnapshotId() {
+        SeventhNetMessageFactory factory = new SeventhNetMessageFactory();
+        IOBuffer buffer = new ByteBufferIOBuffer(256);
+
+        PlayerInputMessage msg = new PlayerInputMessage();
+        msg.keys = 3;
+        for(int resyncSnapshotId : new int[] { -1, 70_000 }) {
+            msg.resyncSnapshotId = resyncSnapshotId;
+
+            buffer.clear();
+            msg.write(buffer);
+            buffer.bitPosition(0);
+            PlayerInputMessage read = (PlayerInputMessage)factory.readNetMessage(buffer);
+
+            assertEquals(resyncSnapshotId, read.resyncSnapshotId);
+            assertEquals(3, read.keys);
+        }
+    }
+
+    /*
+     * purpose : the server only handles the inputs it hasn't already handled
+     * input : a message with sequence 10 and 3 previous inputs, against different last handled sequences
+     * expected output : 1 for the first input ever, 0 for duplicates and old inputs, otherwise the number of
+     * missed inputs (including this one) up to the number in the message
+     */
+    @Test
+    public void testNumberOfNewInputs() {
+        PlayerInputMessage msg = new PlayerInputMessage();
+        for(int i = 0; i < 10; i++) {
+            msg.nextInput();
+        }
+
+        assertEquals(10, msg.sequence);
+        assertEquals(3, msg.numberOfPreviousInputs);
+
+        assertEquals(1, msg.getNumberOfNewInputs(-1));
+        assertEquals(0, msg.getNumberOfNewInputs(10));
+        assertEquals(0, msg.getNumberOfNewInputs(12));
+        assertEquals(1, msg.getNumberOfNewInputs(9));
+        assertEquals(3, msg.getNumberOfNewInputs(7));
+        assertEquals(4, msg.getNumberOfNewInputs(6));
+        assertEquals(4, msg.getNumberOfNewInputs(1));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * see license.txt
+ */
+package test.game;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import seventh.game.PriorityAccumulator;
+import seventh.game.Team;
+import seventh.game.entities.Entity;
+import seventh.game.entities.PlayerEntity;
+import seventh.game.net.NetEntity;
+import seventh.math.Vector2f;
+import seventh.shared.SeventhConstants;
+
+/**
+ * @author Tony
+ *
+ */
+public class PriorityAccumulatorTest {
+
+    private static final int ENTITY_BITS = 100;
+
+    private NetEntity[] netEntities = new NetEntity[SeventhConstants.MAX_ENTITIES];
+    private int[] entityBits = new int[SeventhConstants.MAX_ENTITIES];
+
+    private Entity newEntity(int id, float x, float y) {
+        Entity ent = new Entity(id, new Vector2f(x, y), 100, null, Entity.Type.DROPPED_ITEM) {
+            @Override
+            public NetEntity getNetEntity() {
+                return null;
+            }
+        };
+        ent.getBounds().set((int)x, (int)y, 16, 16);
+
+        this.netEntities[id] = new NetEntity();
+        this.entityBits[id] = ENTITY_BITS;
+        return ent;
+    }
+
+    private PlayerEntity newPlayer(int id, float x, float y, Team team) {
+        PlayerEntity player = new PlayerEntity(id, new Vector2f(x, y), null) {
+            @Override
+            public void setWeaponClass(Entity.Type weaponClass) {
+                /* no game to create the weapons for */
+            }
+        };
+        player.setTeam(team);
+
+        this.netEntities[id] = new NetEntity();
+        this.entityBits[id] = ENTITY_BITS;
+        return player;
+    }
+
+    private NetEntity[] update(PriorityAccumulator priorities, PlayerEntity viewer, List<Entity> entities, int budgetBits) {
+        NetEntity[] results = new NetEntity[SeventhConstants.MAX_ENTITIES];
+        priorities.accumulate(viewer, entities);
+        priorities.select(this.netEntities, this.entityBits, budgetBits, results);
+        return results;
+    }
+
+    /*
+     * purpose : closer entities and teammates are sent first
+     * input : a budget of one entity; a far entity, a close entity, and a teammate in between
+     * expected output : the teammate has the most priority, then the close entity, then the far one
+     */
+    @Test
+    public void testPriority() {
+        Team allies = Team.newAlliedTeam();
+        PlayerEntity viewer = newPlayer(0, 0, 0, allies);
+
+        List<Entity> entities = new ArrayList<Entity>();
+        entities.add(newEntity(30, 1500, 0));
+        entities.add(newEntity(31, 100, 0));
+        entities.add(newPlayer(1, 1000, 0, allies));
+
+        PriorityAccumulator priorities = new PriorityAccumulator();
+        priorities.accumulate(viewer, entities);
+        assertTrue(priorities.getPriority(1) > priorities.getPriority(31));
+        assertTrue(priorities.getPriority(31) > priorities.getPriority(30));
+        assertEquals(0f, priorities.getPriority(0), 0.0001f);
+
+        NetEntity[] results = new NetEntity[SeventhConstants.MAX_ENTITIES];
+        int usedBits = priorities.select(this.netEntities, this.entityBits, ENTITY_BITS, results);
+        assertEquals(ENTITY_BITS, usedBits);
+        assertNotNull(results[1]);
+        assertNull(results[30]);
+        assertNull(results[31]);
+        assertEquals(0f, priorities.getPriority(1), 0.0001f);
+    }
+
+    /*
+     * purpose : entities that are left out build up priority until they are sent
+     * input : 3 entities at different distances, a budget of one entity per update, for 3 updates
+     * expected output : each entity is sent once, the closest first
+     */
+    @Test
+    public void testLeftOutEntitiesAreSentLater() {
+        PlayerEntity viewer = newPlayer(0, 0, 0, Team.newAlliedTeam());
+
+        List<Entity> entities = new ArrayList<Entity>();
+        entities.add(newEntity(30, 1000, 0));
+        entities.add(newEntity(31, 100, 0));
+        entities.add(newEntity(32, 500, 0));
+
+        PriorityAccumulator priorities = new PriorityAccumulator();
+
+        NetEntity[] results = update(priorities, viewer, entities, ENTITY_BITS);
+        assertNotNull(results[31]);
+        assertNull(results[30]);
+        assertNull(results[32]);
+
+        results = update(priorities, viewer, entities, ENTITY_BITS);
+        assertNotNull(results[32]);
+        assertNull(results[30]);
+        assertNull(results[31]);
+
+        results = update(priorities, viewer, entities, ENTITY_BITS);
+        assertNotNull(results[30]);
+        assertNull(results[31]);
+        assertNull(results[32]);
+    }
+
+    /*
+     * purpose : an entity that leaves the view loses its priority, and with no budget everything is sent
+     * input : an entity left out of an update, then out of view, then back in view with no budget
+     * expected output : no priority carried over, and all entities sent
+     */
+    @Test
+    public void testOutOfViewAndNoBudget() {
+        PlayerEntity viewer = newPlayer(0, 0, 0, Team.newAlliedTeam());
+
+        Entity close = newEntity(30, 100, 0);
+        Entity far = newEntity(31, 1000, 0);
+
+        List<Entity> entities = new ArrayList<Entity>();
+        entities.add(close);
+        entities.add(far);
+
+        PriorityAccumulator priorities = new PriorityAccumulator();
+        update(priorities, viewer, entities, ENTITY_BITS);
+        float priority = priorities.getPriority(31);
+        assertTrue(priority > 0);
+
+        entities.remove(far);
+        update(priorities, viewer, entities, ENTITY_BITS);
+        assertEquals(0f, priorities.getPriority(31), 0.0001f);
+
+        entities.add(far);
+        NetEntity[] results = update(priorities, viewer, entities, 0);
+        assertEquals(0f, priorities.getPriority(31), 0.0001f);
+        assertNotNull(results[30]);
+        assertNotNull(results[31]);
+    }
+
+    /*
+     * purpose : the entities that are not persistent are never left out, as the client would remove them
+     * input : a budget of one entity; a close persistent entity, and two far bullets (non-persistent ids)
+     * expected output : both bullets are sent and counted against the budget, leaving no room for the persistent entity
+     */
+    @Test
+    public void testNonPersistantEntitiesAlwaysSent() {
+        PlayerEntity viewer = newPlayer(0, 0, 0, Team.newAlliedTeam());
+
+        int bulletId = SeventhConstants.MAX_PERSISTANT_ENTITIES;
+
+        List<Entity> entities = new ArrayList<Entity>();
+        entities.add(newEntity(30, 100, 0));
+        entities.add(newEntity(bulletId, 1500, 0));
+        entities.add(newEntity(bulletId + 1, 1500, 0));
+
+        PriorityAccumulator priorities = new PriorityAccumulator();
+        priorities.accumulate(viewer, entities);
+
+        NetEntity[] results = new NetEntity[SeventhConstants.MAX_ENTITIES];
+        int usedBits = priorities.select(this.netEntities, this.entityBits, ENTITY_BITS, results);
+        assertEquals(2 * ENTITY_BITS, usedBits);
+        assertNotNull(results[bulletId]);
+        assertNotNull(results[bulletId + 1]);
+        assertNull(results[30]);
+        assertTrue(priorities.getPriority(30) > 0);
+    }
+}
@@ -0,0 +1,133 @@
+package test.game;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import seventh.game.SpatialHash;
+import seventh.math.Rectangle;
+
+public class SpatialHashTest {
+
+    private static final int TILE_SIZE = 32;
+    private static final int MAP_TILES = 40;
+
+    private SpatialHash newHash(int capacity) {
+        return new SpatialHash(capacity, TILE_SIZE, TILE_SIZE, MAP_TILES, MAP_TILES, 2);
+    }
+
+    /*
+     * purpose : an empty index returns no candidates
+     * input : query over the whole map
+     * expected output : 0 candidates
+     */
+    @Test
+    public void testEmptyQuery() {
+        SpatialHash hash = newHash(8);
+        int[] results = new int[8];
+        assertEquals(0, hash.query(new Rectangle(0, 0, MAP_TILES*TILE_SIZE, MAP_TILES*TILE_SIZE), results));
+    }
+
+    /*
+     * purpose : added ids are found only near their bounds, and no longer found once removed
+     * input : two ids at opposite ends of the map
+     * expected output : queries return only the local id
+     */
+    @Test
+    public void testAddQueryRemove() {
+        SpatialHash hash = newHash(8);
+        int[] results = new int[8];
+
+        hash.add(3, new Rectangle(10, 10, 24, 24));
+        hash.add(5, new Rectangle(1000, 1000, 24, 24));
+
+        assertTrue(hash.contains(3));
+        assertEquals(1, hash.query(new Rectangle(0, 0, 40, 40), results));
+        assertEquals(3, results[0]);
+
+        assertEquals(1, hash.query(new Rectangle(990, 990, 40, 40), results));
+        assertEquals(5, results[0]);
+
+        hash.remove(3);
+        assertFalse(hash.contains(3));
+        assertEquals(0, hash.query(new Rectangle(0, 0, 40, 40), results));
+    }
+
+    /*
+     * purpose : moving an id across cells updates which cells it is found in; and an
+     * id that spans multiple cells is only reported once
+     * input : a large rectangle spanning many cells, moved across the map
+     * expected output : single candidate per query, found at the new location only
+     */
+    @Test
+    public void testUpdateAndSpanning() {
+        SpatialHash hash = newHash(4);
+        int[] results = new int[4];
+
+        Rectangle tank = new Rectangle(100, 100, 250, 250);
+        hash.add(1, tank);
+
+        assertEquals(1, hash.query(tank, results));
+
+        tank.setLocation(900, 900);
+        hash.update(1, tank);
+
+        assertEquals(0, hash.query(new Rectangle(100, 100, 10, 10), results));
+        assertEquals(1, hash.query(new Rectangle(1000, 1000, 10, 10), results));
+        assertEquals(1, results[0]);
+    }
+
+    /*
+     * purpose : the candidates must be a superset of a brute force intersection test, and
+     * be reported in ascending id order
+     * input : random rectangles, including some outside of the map bounds
+     * expected output : every intersecting id is reported, in order
+     */
+    @Test
+    public void testRandomSupersetOfBruteForce() {
+        final int capacity = 256;
+        Random random = new Random(7);
+        SpatialHash hash = newHash(capacity);
+        Rectangle[] bounds = new Rectangle[capacity];
+        int[] results = new int[capacity];
+
+        for(int i = 0; i < capacity; i++) {
+            bounds[i] = new Rectangle(random.nextInt(MAP_TILES*TILE_SIZE + 100) - 50,
+                                      random.nextInt(MAP_TILES*TILE_SIZE + 100) - 50,
+                                      1 + random.nextInt(120), 1 + random.nextInt(120));
+            hash.add(i, bounds[i]);
+        }
+
+        for(int q = 0; q < 500; q++) {
+
+            // move some of them around
+            int moved = random.nextInt(capacity);
+            bounds[moved].setLocation(random.nextInt(MAP_TILES*TILE_SIZE), random.nextInt(MAP_TILES*TILE_SIZE));
+            hash.update(moved, bounds[moved]);
+
+            Rectangle region = new Rectangle(random.nextInt(MAP_TILES*TILE_SIZE), random.nextInt(MAP_TILES*TILE_SIZE),
+                                             1 + random.nextInt(200), 1 + random.nextInt(200));
+            int count = hash.query(region, results);
+
+            for(int i = 1; i < count; i++) {
+                assertTrue(results[i-1] < results[i]);
+            }
+
+            for(int i = 0; i < capacity; i++) {
+                if(region.intersects(bounds[i])) {
+                    boolean found = false;
+                    for(int j = 0; j < count; j++) {
+                        if(results[j] == i) {
+                            found = true;
+                            break;
+                        }
+                    }
+                    assertTrue("Missing id: " + i, found);
+                }
+            }
+        }
+    }
+
+}
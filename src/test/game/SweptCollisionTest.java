@@ -0,0 +1,216 @@
+package test.game;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import seventh.game.SweptCollision;
+import seventh.map.OrthoMap;
+import seventh.math.Rectangle;
+import seventh.math.Vector2f;
+import test.map.TestMaps;
+
+public class SweptCollisionTest {
+
+    private static final int TILE_SIZE = 32;
+    private static final int MAP_TILES = 40;
+
+    private OrthoMap map;
+    private Random random;
+
+    @Before
+    public void setUp() throws Exception {
+        this.random = new Random(11);
+        this.map = newMap(this.random, 0.08f);
+    }
+
+    /**
+     * Builds a map with randomly placed solid tiles
+     */
+    static OrthoMap newMap(Random random, float solidChance) throws Exception {
+        return TestMaps.newMap(MAP_TILES, MAP_TILES, TILE_SIZE, TILE_SIZE,
+                               TestMaps.newSolidLayer(random, 0, MAP_TILES, MAP_TILES, TILE_SIZE, TILE_SIZE, solidChance));
+    }
+
+    /**
+     * Moves the bounds a single step, the same way a bullet does
+     *
+     * @return true if the step hit something
+     */
+    static boolean stepOnce(OrthoMap map, Rectangle bounds, int newX, int newY, Rectangle[] targets, Vector2f origin, int maxDistance) {
+        int dx = Integer.signum(newX - bounds.x);
+        int dy = Integer.signum(newY - bounds.y);
+
+        if(dx != 0) {
+            bounds.x += dx;
+            if(map.rectCollides(bounds, 1)) {
+                bounds.x -= dx;
+                return true;
+            }
+        }
+
+        if(dy != 0) {
+            bounds.y += dy;
+            if(map.rectCollides(bounds, 1)) {
+                bounds.y -= dy;
+                return true;
+            }
+        }
+
+        for(int i = 0; i < targets.length; i++) {
+            if(bounds.intersects(targets[i])) {
+                return true;
+            }
+        }
+
+        return Vector2f.Vector2fDistanceSq(origin, new Vector2f(bounds.x, bounds.y)) > maxDistance*maxDistance;
+    }
+
+    /**
+     * Moves the bounds one step at a time until it hits something or reaches its destination
+     *
+     * @return true if it hit something
+     */
+    static boolean step(OrthoMap map, Rectangle bounds, int newX, int newY, Rectangle[] targets, Vector2f origin, int maxDistance) {
+        while(bounds.x != newX || bounds.y != newY) {
+            if(stepOnce(map, bounds, newX, newY, targets, origin, maxDistance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the bounds to its destination, only stepping in the intervals reported by the sweep
+     *
+     * @return true if it hit something
+     */
+    static boolean sweep(SweptCollision sweep, OrthoMap map, Rectangle bounds, int newX, int newY, Rectangle[] targets, Vector2f origin, int maxDistance) {
+        int startX = bounds.x;
+        int startY = bounds.y;
+
+        sweep.begin(bounds, newX, newY);
+        sweep.addWorldBounds(map);
+        sweep.addCollidableTiles(map);
+        sweep.addMaxDistance(origin, maxDistance);
+        for(int i = 0; i < targets.length; i++) {
+            sweep.addTarget(targets[i]);
+        }
+
+        int numberOfIntervals = sweep.resolve();
+        for(int i = 0; i < numberOfIntervals; i++) {
+            int first = sweep.getIntervalStart(i);
+            bounds.x = SweptCollision.stepPosition(startX, newX, first - 1);
+            bounds.y = SweptCollision.stepPosition(startY, newY, first - 1);
+
+            for(int j = first; j <= sweep.getIntervalEnd(i); j++) {
+                if(stepOnce(map, bounds, newX, newY, targets, origin, maxDistance)) {
+                    return true;
+                }
+            }
+        }
+
+        bounds.x = newX;
+        bounds.y = newY;
+        return false;
+    }
+
+    /*
+     * purpose : the position along the path moves one pixel per step on each axis, until that axis is done
+     * input : a path of 5 on the X axis and -2 on the Y axis
+     * expected output : the diagonal leg followed by the X leg
+     */
+    @Test
+    public void testStepPosition() {
+        assertEquals(10, SweptCollision.stepPosition(10, 15, 0));
+        assertEquals(12, SweptCollision.stepPosition(10, 15, 2));
+        assertEquals(15, SweptCollision.stepPosition(10, 15, 7));
+
+        assertEquals(9, SweptCollision.stepPosition(10, 8, 1));
+        assertEquals(8, SweptCollision.stepPosition(10, 8, 5));
+    }
+
+    /*
+     * purpose : an open path only needs to check the steps around a target
+     * input : a horizontal path across an empty map, with a target in the middle of it
+     * expected output : a single interval around the target
+     */
+    @Test
+    public void testTargetInterval() throws Exception {
+        OrthoMap emptyMap = newMap(new Random(0), 0f);
+
+        SweptCollision sweep = new SweptCollision();
+        sweep.begin(new Rectangle(100, 100, 4, 4), 220, 100);
+        sweep.addWorldBounds(emptyMap);
+        sweep.addCollidableTiles(emptyMap);
+        sweep.addTarget(new Rectangle(150, 90, 10, 20));
+
+        assertEquals(120, sweep.getNumberOfSteps());
+        assertEquals(1, sweep.resolve());
+        assertTrue(sweep.getIntervalStart(0) <= 150 - 4 - 100);
+        assertTrue(sweep.getIntervalEnd(0) >= 160 - 100);
+        assertTrue(sweep.getIntervalEnd(0) - sweep.getIntervalStart(0) < 30);
+    }
+
+    /*
+     * purpose : overlapping intervals are merged, and the intervals are kept within the path
+     * input : out of order and overlapping intervals
+     * expected output : sorted, merged intervals
+     */
+    @Test
+    public void testResolveMerges() {
+        SweptCollision sweep = new SweptCollision();
+        sweep.begin(new Rectangle(0, 0, 4, 4), 100, 0);
+        sweep.addInterval(50, 60);
+        sweep.addInterval(-10, 5);
+        sweep.addInterval(55, 70);
+        sweep.addInterval(90, 200);
+
+        assertEquals(3, sweep.resolve());
+        assertEquals(1, sweep.getIntervalStart(0));
+        assertEquals(5, sweep.getIntervalEnd(0));
+        assertEquals(50, sweep.getIntervalStart(1));
+        assertEquals(70, sweep.getIntervalEnd(1));
+        assertEquals(90, sweep.getIntervalStart(2));
+        assertEquals(100, sweep.getIntervalEnd(2));
+    }
+
+    /*
+     * purpose : only stepping through the swept intervals must give the same results as stepping
+     * through every pixel
+     * input : random bullet paths over a map with random solid tiles and targets
+     * expected output : the same hit result and final position for both
+     */
+    @Test
+    public void testSweepMatchesStepping() {
+        SweptCollision sweep = new SweptCollision();
+        int mapSize = MAP_TILES * TILE_SIZE;
+
+        for(int i = 0; i < 5000; i++) {
+            Rectangle[] targets = new Rectangle[random.nextInt(4)];
+            for(int j = 0; j < targets.length; j++) {
+                targets[j] = new Rectangle(random.nextInt(mapSize), random.nextInt(mapSize), 8 + random.nextInt(40), 8 + random.nextInt(40));
+            }
+
+            int x = random.nextInt(mapSize + 40) - 20;
+            int y = random.nextInt(mapSize + 40) - 20;
+            int newX = x + random.nextInt(241) - 120;
+            int newY = y + random.nextInt(241) - 120;
+            Vector2f origin = new Vector2f(x + random.nextInt(600) - 300, y + random.nextInt(600) - 300);
+            int maxDistance = 100 + random.nextInt(500);
+
+            Rectangle stepped = new Rectangle(x, y, 4, 4);
+            Rectangle swept = new Rectangle(x, y, 4, 4);
+
+            boolean steppedHit = step(map, stepped, newX, newY, targets, origin, maxDistance);
+            boolean sweptHit = sweep(sweep, map, swept, newX, newY, targets, origin, maxDistance);
+
+            assertEquals("Path: " + i, steppedHit, sweptHit);
+            assertEquals("Path: " + i, stepped.x, swept.x);
+            assertEquals("Path: " + i, stepped.y, swept.y);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * see license.txt
+ */
+package test.game;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import seventh.game.Timers;
+import seventh.shared.TimeStep;
+import seventh.shared.Timer;
+
+/**
+ * @author Tony
+ *
+ */
+public class TimersTest {
+
+    /**
+     * A timer as the scripts add them, counting how many times it went off
+     */
+    private static class CountingTimer extends Timer {
+        final Random random;
+        final long minStartTime, maxEndTime;
+        int count;
+
+        CountingTimer(boolean loop, long minStartTime, long maxEndTime, long seed) {
+            super(loop, minStartTime);
+            this.minStartTime = minStartTime;
+            this.maxEndTime = maxEndTime;
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public void onFinish(Timer timer) {
+            this.count++;
+
+            /* the same as Game.addRandomGameTimer */
+            if(this.maxEndTime > this.minStartTime) {
+                long delta = this.maxEndTime - this.minStartTime;
+                int millis = Math.max(1, (int)delta / 100);
+                timer.setEndTime(this.minStartTime + this.random.nextInt(millis) * 100);
+            }
+        }
+    }
+
+    private static TimeStep timeStep(long deltaTime) {
+        TimeStep timeStep = new TimeStep();
+        timeStep.setDeltaTime(deltaTime);
+        return timeStep;
+    }
+
+    /*
+     * purpose : there is no limit to the number of timers
+     * input : 1,000 timers of 50 msec
+     * expected output : all are added, and all go off after 50 msec
+     */
+    @Test
+    public void testNoLimit() {
+        Timers timers = new Timers();
+        List<CountingTimer> added = new ArrayList<>();
+        for(int i = 0; i < 1000; i++) {
+            CountingTimer timer = new CountingTimer(false, 50, 50, i);
+            assertTrue(timers.addTimer(timer));
+            added.add(timer);
+        }
+        assertFalse(timers.addTimer(added.get(0)));
+        assertEquals(1000, timers.size());
+
+        timers.update(timeStep(33));
+        assertEquals(0, added.get(0).count);
+
+        timers.update(timeStep(33));
+        for(CountingTimer timer : added) {
+            assertEquals(1, timer.count);
+        }
+        assertEquals(0, timers.size());
+    }
+
+    /*
+     * purpose : removed timers don't go off, including when removed by a timer going off
+     * input : three timers due on the same update, the first removes the second; a fourth removed before it is due
+     * expected output : only the first and third go off
+     */
+    @Test
+    public void testRemoveTimer() {
+        final Timers timers = new Timers();
+        final CountingTimer second = new CountingTimer(false, 10, 10, 2);
+        CountingTimer first = new CountingTimer(false, 10, 10, 1) {
+            @Override
+            public void onFinish(Timer timer) {
+                super.onFinish(timer);
+                timers.removeTimer(second);
+            }
+        };
+        CountingTimer third = new CountingTimer(false, 10, 10, 3);
+        CountingTimer fourth = new CountingTimer(false, 5_000, 5_000, 4);
+
+        /* the last one added is the first in its slot */
+        timers.addTimer(third);
+        timers.addTimer(second);
+        timers.addTimer(first);
+        timers.addTimer(fourth);
+
+        assertTrue(timers.removeTimer(fourth));
+        assertFalse(timers.removeTimer(fourth));
+
+        timers.update(timeStep(16));
+        assertEquals(1, first.count);
+        assertEquals(0, second.count);
+        assertEquals(1, third.count);
+
+        timers.update(timeStep(10_000));
+        assertEquals(0, fourth.count);
+        assertEquals(0, timers.size());
+    }
+
+    /*
+     * purpose : a looping timer keeps going off, at most once per update, until the timers are removed
+     * input : a looping timer of 0 msec and one of 100 msec, updated 10 times by 33 msec
+     * expected output : 10 and 2 times, then none after removing the timers
+     */
+    @Test
+    public void testLoopingTimers() {
+        Timers timers = new Timers();
+        CountingTimer everyUpdate = new CountingTimer(true, 0, 0, 1);
+        CountingTimer every100 = new CountingTimer(true, 100, 100, 2);
+        timers.addTimer(everyUpdate);
+        timers.addTimer(every100);
+
+        for(int i = 0; i < 10; i++) {
+            timers.update(timeStep(33));
+        }
+        assertEquals(10, everyUpdate.count);
+
+        /* the time left over is dropped when a timer loops, so it goes off every 4 updates */
+        assertEquals(2, every100.count);
+
+        timers.removeTimers();
+        timers.update(timeStep(1_000));
+        assertEquals(10, everyUpdate.count);
+        assertEquals(0, timers.size());
+    }
+
+    /*
+     * purpose : the time before a reset, and the time spent paused or stopped, is not counted
+     * input : 10 second timers, one reset at 9 seconds, one paused from 2 to 7 seconds, and one stopped at 4 seconds
+     *         and started again at 6 seconds; updated by 1 second
+     * expected output : they go off at 19, 15 and 16 seconds, the same as timers updated each frame
+     */
+    @Test
+    public void testResetPauseAndStop() {
+        Timers timers = new Timers();
+        CountingTimer reset = new CountingTimer(false, 10_000, 10_000, 1);
+        CountingTimer paused = new CountingTimer(false, 10_000, 10_000, 2);
+        CountingTimer stopped = new CountingTimer(false, 10_000, 10_000, 3);
+
+        CountingTimer[] wheelTimers = { reset, paused, stopped };
+        CountingTimer[] frameTimers = { new CountingTimer(false, 10_000, 10_000, 1),
+                                        new CountingTimer(false, 10_000, 10_000, 2),
+                                        new CountingTimer(false, 10_000, 10_000, 3) };
+        for(CountingTimer timer : wheelTimers) {
+            timers.addTimer(timer);
+        }
+
+        int[] wentOff = new int[wheelTimers.length];
+        for(int second = 1; second <= 25; second++) {
+            timers.update(timeStep(1_000));
+            for(CountingTimer timer : frameTimers) {
+                timer.update(timeStep(1_000));
+            }
+
+            for(int i = 0; i < wheelTimers.length; i++) {
+                assertEquals("timer " + i + " at " + second, frameTimers[i].count, wheelTimers[i].count);
+                if(wheelTimers[i].count > 0 && wentOff[i] == 0) {
+                    wentOff[i] = second;
+                }
+            }
+
+            switch(second) {
+                case 2: paused.pause(); frameTimers[1].pause(); break;
+                case 4: stopped.stop(); frameTimers[2].stop(); break;
+                case 6: stopped.start(); frameTimers[2].start(); break;
+                case 7: paused.start(); frameTimers[1].start(); break;
+                case 9: reset.reset(); frameTimers[0].reset(); break;
+            }
+        }
+
+        assertEquals(19, wentOff[0]);
+        assertEquals(15, wentOff[1]);
+        assertEquals(16, wentOff[2]);
+        assertEquals(0, timers.size());
+
+        /* a removed timer is no longer placed by its changes */
+        CountingTimer removed = new CountingTimer(false, 100, 100, 4);
+        timers.addTimer(removed);
+        timers.removeTimer(removed);
+        removed.reset();
+        timers.update(timeStep(1_000));
+        assertEquals(0, removed.count);
+        assertEquals(0, timers.size());
+    }
+
+    /*
+     * purpose : thousands of scripted timers go off on the same updates as when every timer is updated each frame
+     * input : 5,000 one shot, looping and random timers of up to 20 minutes, some added while running, updated with
+     *         frames of 10 to 50 msec for 25 minutes
+     * expected output : each timer goes off the same number of times, on the same frames, as its copy updated each frame
+     */
+    @Test
+    public void testThousandsOfTimers() {
+        Random random = new Random(25);
+        Timers timers = new Timers();
+
+        List<CountingTimer> wheelTimers = new ArrayList<>();
+        List<CountingTimer> frameTimers = new ArrayList<>();
+
+        final int numberOfTimers = 5_000;
+        long gameTime = 0;
+        while(gameTime < 25 * 60 * 1000) {
+            if(wheelTimers.size() < numberOfTimers) {
+                int toAdd = (wheelTimers.isEmpty()) ? numberOfTimers / 2 : random.nextInt(20);
+                for(int i = 0; i < toAdd; i++) {
+                    boolean loop = random.nextInt(3) == 0;
+                    long endTime = (random.nextInt(4) == 0) ? random.nextInt(20 * 60 * 1000) : random.nextInt(10_000);
+                    long maxEndTime = (random.nextBoolean()) ? endTime + random.nextInt(5_000) : endTime;
+                    long seed = random.nextLong();
+
+                    CountingTimer wheelTimer = new CountingTimer(loop, endTime, maxEndTime, seed);
+                    assertTrue(timers.addTimer(wheelTimer));
+                    wheelTimers.add(wheelTimer);
+                    frameTimers.add(new CountingTimer(loop, endTime, maxEndTime, seed));
+                }
+            }
+
+            TimeStep timeStep = timeStep(10 + random.nextInt(41));
+            gameTime += timeStep.getDeltaTime();
+
+            timers.update(timeStep);
+            for(CountingTimer timer : frameTimers) {
+                if(!timer.isExpired()) {
+                    timer.update(timeStep);
+                }
+            }
+
+            for(int i = 0; i < wheelTimers.size(); i++) {
+                if(frameTimers.get(i).count != wheelTimers.get(i).count) {
+                    assertEquals("timer " + i + " at " + gameTime, frameTimers.get(i).count, wheelTimers.get(i).count);
+                }
+            }
+        }
+
+        int numberOfExpired = 0;
+        for(CountingTimer timer : frameTimers) {
+            if(timer.isExpired()) {
+                numberOfExpired++;
+            }
+        }
+        assertEquals(frameTimers.size() - numberOfExpired, timers.size());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * see license.txt
+ */
+package test.harenet;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import harenet.BitArray;
+import harenet.BitPacker;
+
+/**
+ * Microbenchmark comparing the word backed {@link BitPacker} against the previous bit at a time packing.  Each
+ * run does what a packet does on its way through the {@link harenet.ByteBufferIOBuffer}: the fields are packed,
+ * synced out to a {@link ByteBuffer}, synced back in on the other side and read back.  The fields are a mix of
+ * the protocol header, bit packed entity fields and raw bytes (as in <code>BitArrayTest</code> and
+ * <code>ByteBufferIOBufferTest</code>), and both packers must put the exact same bytes on the wire.
+ *
+ * <p>
+ * Run with: <code>java test.harenet.BitPackerBenchmark [iterations]</code>
+ *
+ * @author Tony
+ *
+ */
+public class BitPackerBenchmark {
+
+    private static final int PACKET_SIZE = 1500;
+    private static final int NUMBER_OF_FIELDS = 600;
+
+    /**
+     * The previous packing, one {@link BitArray} operation per bit
+     */
+    private static class BitAtATimePacker {
+        private final BitArray data = new BitArray(PACKET_SIZE * 8);
+        private int numBits;
+        private int position;
+
+        void clear() {
+            this.data.clear();
+            this.numBits = 0;
+            this.position = 0;
+        }
+
+        void putBits(long value, int numberOfBits) {
+            for(int i = 0; i < numberOfBits; i++) {
+                this.data.setBit(this.position++, ((value >> i) & 1) == 1);
+            }
+            if(this.position > this.numBits) {
+                this.numBits = this.position;
+            }
+        }
+
+        long getBits(int numberOfBits) {
+            long value = 0;
+            for(int i = 0; i < numberOfBits; i++) {
+                value |= (this.data.getBit(this.position++) ? 1L : 0L) << i;
+            }
+            return value;
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            int numberOfBytes = (this.numBits + 7) / 8;
+            this.position = 0;
+            for(int i = 0; i < numberOfBytes; i++) {
+                buffer.put((byte)getBits(8));
+            }
+        }
+
+        void readFrom(ByteBuffer buffer) {
+            clear();
+            while(buffer.hasRemaining()) {
+                putBits(buffer.get(), 8);
+            }
+            this.position = 0;
+        }
+    }
+
+    private final int[] widths;
+    private final long[] values;
+    private final byte[] payload;
+
+    private final ByteBuffer wire;
+
+    public BitPackerBenchmark(long seed) {
+        Random random = new Random(seed);
+
+        this.widths = new int[NUMBER_OF_FIELDS];
+        this.values = new long[NUMBER_OF_FIELDS];
+        for(int i = 0; i < NUMBER_OF_FIELDS; i++) {
+            switch(random.nextInt(4)) {
+                case 0:  this.widths[i] = 1; break;
+                case 1:  this.widths[i] = 8; break;
+                case 2:  this.widths[i] = 32; break;
+                default: this.widths[i] = 2 + random.nextInt(16); break;
+            }
+            this.values[i] = random.nextLong();
+        }
+
+        this.payload = new byte[256];
+        random.nextBytes(this.payload);
+
+        this.wire = ByteBuffer.allocate(PACKET_SIZE);
+    }
+
+    private long runBitAtATime(BitAtATimePacker out, BitAtATimePacker in) {
+        out.clear();
+        for(int i = 0; i < NUMBER_OF_FIELDS; i++) {
+            out.putBits(this.values[i], this.widths[i]);
+        }
+        for(int i = 0; i < this.payload.length; i++) {
+            out.putBits(this.payload[i], 8);
+        }
+
+        this.wire.clear();
+        out.writeTo(this.wire);
+        this.wire.flip();
+        in.readFrom(this.wire);
+
+        long checksum = 0;
+        for(int i = 0; i < NUMBER_OF_FIELDS; i++) {
+            checksum = checksum * 31 + in.getBits(this.widths[i]);
+        }
+        for(int i = 0; i < this.payload.length; i++) {
+            checksum = checksum * 31 + (byte)in.getBits(8);
+        }
+        return checksum;
+    }
+
+    private long runWords(BitPacker out, BitPacker in, byte[] bytes) {
+        out.clear();
+        for(int i = 0; i < NUMBER_OF_FIELDS; i++) {
+            out.putLong(this.values[i], this.widths[i]);
+        }
+        out.putBytes(this.payload);
+
+        this.wire.clear();
+        out.rewind();
+        out.writeTo(this.wire);
+        this.wire.flip();
+
+        in.clear();
+        in.readFrom(this.wire);
+        in.flip();
+
+        long checksum = 0;
+        for(int i = 0; i < NUMBER_OF_FIELDS; i++) {
+            checksum = checksum * 31 + in.getLong(this.widths[i]);
+        }
+        in.getBytes(bytes, 0, bytes.length);
+        for(int i = 0; i < bytes.length; i++) {
+            checksum = checksum * 31 + bytes[i];
+        }
+        return checksum;
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+
+        BitPackerBenchmark benchmark = new BitPackerBenchmark(42);
+        BitAtATimePacker oldOut = new BitAtATimePacker();
+        BitAtATimePacker oldIn = new BitAtATimePacker();
+        BitPacker newOut = new BitPacker(PACKET_SIZE * 8, PACKET_SIZE * 8);
+        BitPacker newIn = new BitPacker(PACKET_SIZE * 8, PACKET_SIZE * 8);
+        byte[] bytes = new byte[benchmark.payload.length];
+
+        /* warm up, and make sure both put the same bytes on the wire and read back the same values */
+        byte[] oldWire = new byte[PACKET_SIZE];
+        for(int i = 0; i < iterations / 4 + 1; i++) {
+            long oldChecksum = benchmark.runBitAtATime(oldOut, oldIn);
+            int oldLength = benchmark.wire.limit();
+            benchmark.wire.rewind();
+            benchmark.wire.get(oldWire, 0, oldLength);
+
+            long newChecksum = benchmark.runWords(newOut, newIn, bytes);
+            if(oldChecksum != newChecksum || oldLength != benchmark.wire.limit()) {
+                throw new IllegalStateException("Word packing does not match bit packing");
+            }
+            for(int j = 0; j < oldLength; j++) {
+                if(oldWire[j] != benchmark.wire.get(j)) {
+                    throw new IllegalStateException("Word packing wrote a different byte at: " + j);
+                }
+            }
+        }
+
+        long startTime = System.nanoTime();
+        for(int i = 0; i < iterations; i++) {
+            benchmark.runBitAtATime(oldOut, oldIn);
+        }
+        long oldTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        for(int i = 0; i < iterations; i++) {
+            benchmark.runWords(newOut, newIn, bytes);
+        }
+        long newTime = System.nanoTime() - startTime;
+
+        System.out.printf("Packet of %d bytes%n", benchmark.wire.limit());
+        System.out.printf("Bit at a time: %8.1f ns/packet%n", (double)oldTime / iterations);
+        System.out.printf("Words:         %8.1f ns/packet (%.1fx)%n", (double)newTime / iterations, (double)oldTime / newTime);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * see license.txt
+ */
+package test.harenet;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import harenet.BitPacker;
+import harenet.ByteBufferIOBuffer;
+import harenet.IOBuffer;
+
+/**
+ * @author Tony
+ *
+ */
+public class BitPackerTest {
+
+    /*
+     * purpose : values of any width round trip at any bit offset, including across word boundaries
+     * input : 5,000 random values of 1 to 64 bits written one after the other
+     * expected output : each value read back matches the value written, masked to its width
+     */
+    @Test
+    public void testRoundTripAnyWidth() {
+        Random random = new Random(7);
+        int[] widths = new int[5_000];
+        long[] values = new long[widths.length];
+
+        BitPacker packer = new BitPacker(widths.length * 64, widths.length * 64);
+        for(int i = 0; i < widths.length; i++) {
+            widths[i] = 1 + random.nextInt(64);
+            values[i] = random.nextLong();
+            packer.putLong(values[i], widths[i]);
+        }
+
+        packer.flip();
+        for(int i = 0; i < widths.length; i++) {
+            long expected = widths[i] == 64 ? values[i] : values[i] & ((1L << widths[i]) - 1);
+            assertEquals("value " + i, expected, packer.getLong(widths[i]));
+        }
+    }
+
+    /*
+     * purpose : the typed getters keep their sign behaviour
+     * input : negative byte, short, int, float and double values written at their full width
+     * expected output : the same values read back
+     */
+    @Test
+    public void testSignedValues() {
+        BitPacker packer = new BitPacker();
+        packer.putBoolean(true);
+        packer.putByte((byte)-3);
+        packer.putShort((short)-1234);
+        packer.putInteger(-99_999);
+        packer.putFloat(-1.5f);
+        packer.putDouble(-2.25);
+        packer.putByte((byte)0x7F, 3);
+
+        packer.flip();
+        assertTrue(packer.getBoolean());
+        assertEquals(-3, packer.getByte());
+        assertEquals(-1234, packer.getShort());
+        assertEquals(-99_999, packer.getInteger());
+        assertEquals(-1.5f, packer.getFloat(), 0f);
+        assertEquals(-2.25, packer.getDouble(), 0);
+        assertEquals(7, packer.getByte(3));
+    }
+
+    /*
+     * purpose : absolute puts only change the bits they cover
+     * input : a packer filled with ones, then values written over a word boundary and in the middle of a word
+     * expected output : the new values read back, and every bit around them is still set
+     */
+    @Test
+    public void testAbsolutePutKeepsNeighbours() {
+        BitPacker packer = new BitPacker(256, 256);
+        for(int i = 0; i < 4; i++) {
+            packer.putLong(-1L);
+        }
+
+        packer.putInteger(60, 0, 10);
+        packer.putShort(100, (short)0x5, 4);
+        packer.putBoolean(130, false);
+
+        packer.position(0);
+        assertEquals(-1L >>> 4, packer.getLong(60));
+        assertEquals(0, packer.getInteger(10));
+        assertEquals(-1L >>> 34, packer.getLong(30));
+        assertEquals(0x5, packer.getShort(4));
+        assertEquals((1L << 26) - 1, packer.getLong(26));
+        assertFalse(packer.getBoolean());
+        assertEquals(-1L >>> 3, packer.getLong(61));
+    }
+
+    /*
+     * purpose : byte arrays round trip whether or not they start on a byte boundary
+     * input : 37 random bytes written after 0 to 9 bits of padding
+     * expected output : the same bytes read back
+     */
+    @Test
+    public void testUnalignedBytes() {
+        Random random = new Random(11);
+        byte[] data = new byte[37];
+        random.nextBytes(data);
+
+        for(int offset = 0; offset < 10; offset++) {
+            BitPacker packer = new BitPacker();
+            packer.putInteger(0x155, offset);
+            packer.putBytes(data);
+
+            packer.flip();
+            assertEquals(0x155 & ((1 << offset) - 1), packer.getInteger(offset));
+
+            byte[] read = new byte[data.length];
+            packer.getBytes(read, 0, read.length);
+            assertArrayEquals(data, read);
+        }
+    }
+
+    /*
+     * purpose : the bytes sent on the wire keep the original layout, the first bit written being the lowest bit of the first byte
+     * input : a packet of bits and bytes of an odd length, synced to its ByteBuffer and received into another buffer
+     * expected output : the expected bytes on the wire, and the same values read back on the other side
+     */
+    @Test
+    public void testSyncToByteBuffer() {
+        IOBuffer out = new ByteBufferIOBuffer(64);
+        out.putBooleanBit(true);
+        out.putIntBits(0x2A, 7);
+        out.putInt(0x01020304);
+        for(int i = 0; i < 13; i++) {
+            out.putByte((byte)(i * 17));
+        }
+        out.putIntBits(0x3, 3);
+
+        ByteBuffer wire = out.sendSync().asByteBuffer();
+        wire.flip();
+        assertEquals(1 + 4 + 13 + 1, wire.limit());
+        assertEquals((byte)0x55, wire.get(0));
+        assertEquals((byte)0x04, wire.get(1));
+        assertEquals((byte)0x01, wire.get(4));
+        assertEquals((byte)0x03, wire.get(18));
+
+        IOBuffer in = new ByteBufferIOBuffer(64);
+        ByteBuffer received = in.clear().asByteBuffer();
+        received.clear();
+        received.put(wire);
+        received.flip();
+        in.receiveSync();
+
+        assertTrue(in.getBooleanBit());
+        assertEquals(0x2A, in.getIntBits(7));
+        assertEquals(0x01020304, in.getInt());
+        for(int i = 0; i < 13; i++) {
+            assertEquals((byte)(i * 17), in.getByte());
+        }
+        assertEquals(0x3, in.getIntBits(3));
+    }
+
+    /*
+     * purpose : reading past the written bits is still an error
+     * input : 10 bits written, then an int read
+     * expected output : IllegalStateException
+     */
+    @Test(expected=IllegalStateException.class)
+    public void testReadPastWrittenBits() {
+        BitPacker packer = new BitPacker();
+        packer.putInteger(1, 10);
+        packer.rewind();
+        packer.getInteger();
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * see license.txt
+ */
+package test.harenet;
+
+import static org.junit.Assert.*;
+
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+
+import org.junit.Test;
+
+import harenet.Host;
+import harenet.IOBuffer;
+import harenet.MessageHeader;
+import harenet.NetConfig;
+import harenet.Protocol;
+import harenet.messages.EncodedNetMessage;
+import harenet.messages.Message;
+import harenet.messages.NetMessage;
+import harenet.messages.UnReliableNetMessage;
+import test.harenet.MessageFragmentsTest.BlobMessage;
+
+/**
+ * @author Tony
+ *
+ */
+public class EncodedNetMessageTest {
+
+    /**
+     * A message with fields that do not line up on byte boundaries
+     */
+    static class BitsMessage implements NetMessage {
+        boolean flag;
+        int small;
+        long big;
+        int[] values;
+
+        @Override
+        public void read(IOBuffer buffer) {
+            flag = buffer.getBooleanBit();
+            small = buffer.getIntBits(5);
+            big = buffer.getLongBits(61);
+            values = new int[buffer.getIntBits(7)];
+            for(int i = 0; i < values.length; i++) {
+                values[i] = buffer.getIntBits(13);
+            }
+        }
+
+        @Override
+        public void write(IOBuffer buffer) {
+            buffer.putBooleanBit(flag);
+            buffer.putIntBits(small, 5);
+            buffer.putLongBits(big, 61);
+            buffer.putIntBits(values.length, 7);
+            for(int i = 0; i < values.length; i++) {
+                buffer.putIntBits(values[i], 13);
+            }
+        }
+    }
+
+    private static BitsMessage newBitsMessage(Random random) {
+        BitsMessage msg = new BitsMessage();
+        msg.flag = random.nextBoolean();
+        msg.small = random.nextInt(32);
+        msg.big = random.nextLong() & ((1L << 61) - 1);
+        msg.values = new int[random.nextInt(100)];
+        for(int i = 0; i < msg.values.length; i++) {
+            msg.values[i] = random.nextInt(1 << 13);
+        }
+        return msg;
+    }
+
+    /*
+     * purpose : the encoded bits are exactly what the message would have written, no matter where in the packet they land
+     * input : messages with odd sized fields, copied in after 0 to 7 bits of other data
+     * expected output : the original message type reads back the same values
+     */
+    @Test
+    public void testEncodeMatchesWrite() {
+        Random random = new Random(11);
+        IOBuffer scratch = IOBuffer.Factory.allocate(1500);
+
+        for(int i = 0; i < 50; i++) {
+            BitsMessage original = newBitsMessage(random);
+            EncodedNetMessage encoded = EncodedNetMessage.encode(original, scratch);
+            int offset = i % 8;
+
+            IOBuffer packet = IOBuffer.Factory.allocate(1500);
+            packet.clear();
+            packet.putIntBits(0x55, offset);
+            encoded.write(packet);
+            assertEquals(offset + encoded.getNumberOfBits(), packet.bitPosition());
+
+            packet.bitPosition(offset);
+            BitsMessage decoded = new BitsMessage();
+            decoded.read(packet);
+
+            assertEquals(original.flag, decoded.flag);
+            assertEquals(original.small, decoded.small);
+            assertEquals(original.big, decoded.big);
+            assertArrayEquals(original.values, decoded.values);
+        }
+    }
+
+    /*
+     * purpose : messages that do not fit in the scratch buffer are still encoded
+     * input : a 4KB blob with a 1500 byte scratch buffer
+     * expected output : the blob is encoded in full and reads back the same
+     */
+    @Test
+    public void testEncodeLargerThanScratch() {
+        byte[] data = new byte[4096];
+        new Random(5).nextBytes(data);
+
+        BlobMessage blob = new BlobMessage();
+        blob.data = data;
+
+        EncodedNetMessage encoded = EncodedNetMessage.encode(blob, IOBuffer.Factory.allocate(1500));
+        assertEquals((4 + data.length) * 8, encoded.getNumberOfBits());
+
+        IOBuffer buffer = IOBuffer.Factory.allocate(encoded.getNumberOfBytes());
+        buffer.clear();
+        encoded.write(buffer);
+        buffer.bitPosition(0);
+
+        BlobMessage decoded = new BlobMessage();
+        decoded.read(buffer);
+        assertArrayEquals(data, decoded.data);
+    }
+
+    /*
+     * purpose : reading an encoded message reads into the original message, as the receiver would
+     * input : the bits of one message read into the encoded copy of another, then read after it is released
+     * expected output : the original message takes the values read, and the released message can not be read
+     */
+    @Test
+    public void testRead() {
+        Random random = new Random(13);
+        IOBuffer scratch = IOBuffer.Factory.allocate(1500);
+
+        BitsMessage sent = newBitsMessage(random);
+        BitsMessage original = newBitsMessage(random);
+        EncodedNetMessage encoded = EncodedNetMessage.encode(original, scratch);
+        int numberOfBits = encoded.getNumberOfBits();
+
+        IOBuffer packet = IOBuffer.Factory.allocate(1500);
+        packet.clear();
+        sent.write(packet);
+        packet.bitPosition(0);
+        encoded.read(packet);
+
+        assertEquals(sent.big, original.big);
+        assertArrayEquals(sent.values, original.values);
+        assertEquals(numberOfBits, encoded.getNumberOfBits());
+
+        assertTrue(encoded.release());
+        try {
+            packet.bitPosition(0);
+            encoded.read(packet);
+            fail("Should not be able to read a released message");
+        }
+        catch(IllegalStateException e) {
+        }
+    }
+
+    /*
+     * purpose : the encoded bits live until the last reference is released
+     * input : a creator reference plus two peer references, released in turn
+     * expected output : the message is only released after the third release, after which it can not be written or retained
+     */
+    @Test
+    public void testReferenceCounting() {
+        EncodedNetMessage encoded = EncodedNetMessage.encode(newBitsMessage(new Random(1)), IOBuffer.Factory.allocate(1500));
+        assertEquals(1, encoded.getReferenceCount());
+
+        encoded.retain();
+        encoded.retain();
+        assertEquals(3, encoded.getReferenceCount());
+
+        assertFalse(encoded.release());
+        assertFalse(encoded.release());
+        assertFalse(encoded.isReleased());
+        assertNotNull(encoded.getMessage());
+
+        assertTrue(encoded.release());
+        assertTrue(encoded.isReleased());
+        assertNull(encoded.getMessage());
+
+        try {
+            encoded.write(IOBuffer.Factory.allocate(1500));
+            fail("Should not be able to write a released message");
+        }
+        catch(IllegalStateException e) {
+        }
+
+        try {
+            encoded.retain();
+            fail("Should not be able to retain a released message");
+        }
+        catch(IllegalStateException e) {
+        }
+    }
+
+    /*
+     * purpose : a broadcast is encoded once and shared by every peer, each peer releasing it once it has gone out
+     * input : an unreliable encoded message sent to two connected peers
+     * expected output : each peer holds a reference until its packet is sent, and each peer receives the message
+     */
+    @Test
+    public void testBroadcastToPeers() throws Exception {
+        int port = 0;
+        try(DatagramSocket socket = new DatagramSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        InetSocketAddress hostAddress = new InetSocketAddress("127.0.0.1", port);
+
+        NetConfig config = new NetConfig(MessageFragmentsTest.FACTORY);
+        config.enableLog(false);
+        config.setMaxReceiveTime(0);
+        Host host = new Host(config, hostAddress);
+
+        DatagramChannel[] clients = new DatagramChannel[2];
+        try {
+            for(int i = 0; i < clients.length; i++) {
+                clients[i] = DatagramChannel.open();
+                clients[i].connect(hostAddress);
+                clients[i].configureBlocking(false);
+
+                ByteBuffer buffer = ByteBuffer.allocate(16);
+                buffer.put(Protocol.PROTOCOL_ID).put((byte)0).put(Host.INVALID_PEER_ID).put((byte)0);
+                buffer.putInt(1).putInt(0).putInt(0);
+                buffer.flip();
+                clients[i].write(buffer);
+            }
+            Thread.sleep(100);
+
+            /* connects the peers */
+            host.update(HostReceiveTest.LISTENER, 0);
+
+            byte[] data = "the bomb has been planted".getBytes();
+            BlobMessage blob = new BlobMessage();
+            blob.data = data;
+
+            EncodedNetMessage encoded = EncodedNetMessage.encode(blob, IOBuffer.Factory.allocate(1500));
+            Message message = new UnReliableNetMessage(encoded, (short)encoded.getNumberOfBytes());
+
+            host.sendToAll(message);
+            EncodedNetMessage.release(message);
+            assertEquals(2, encoded.getReferenceCount());
+
+            host.update(HostReceiveTest.LISTENER, 0);
+            assertTrue(encoded.isReleased());
+
+            Thread.sleep(100);
+            for(DatagramChannel client : clients) {
+                ByteBuffer packet = ByteBuffer.allocate(1500);
+                int size = client.read(packet);
+                assertTrue(size > 0);
+
+                packet.flip();
+                IOBuffer buffer = IOBuffer.Factory.allocate(config.getMtu());
+                ByteBuffer received = buffer.clear().asByteBuffer();
+                received.clear();
+                received.put(packet);
+                received.flip();
+                buffer.receiveSync();
+                Protocol protocol = new Protocol(config.getCompressionThreshold(), config.getMtu());
+                protocol.readFrom(buffer, MessageFragmentsTest.FACTORY);
+                assertTrue(protocol.isValid());
+
+                /* the first packet to a peer also carries a ping */
+                BlobMessage blobReceived = null;
+                for(int i = 0; i < protocol.getNumberOfMessages(); i++) {
+                    Message msg = MessageHeader.readMessageHeader(buffer, MessageFragmentsTest.FACTORY);
+                    if(msg.getMessage() instanceof BlobMessage) {
+                        blobReceived = (BlobMessage)msg.getMessage();
+                    }
+                }
+
+                assertNotNull(blobReceived);
+                assertArrayEquals(data, blobReceived.data);
+            }
+        }
+        finally {
+            host.destroy();
+            for(DatagramChannel client : clients) {
+                if(client != null) {
+                    client.close();
+                }
+            }
+        }
+    }
+}
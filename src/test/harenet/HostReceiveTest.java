@@ -0,0 +1,170 @@
+/*
+ * see license.txt
+ */
+package test.harenet;
+
+import static org.junit.Assert.*;
+
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import harenet.BatchHistogram;
+import harenet.Host;
+import harenet.Host.MessageListener;
+import harenet.NetConfig;
+import harenet.Peer;
+import harenet.Protocol;
+import harenet.messages.Message;
+
+/**
+ * @author Tony
+ *
+ */
+public class HostReceiveTest {
+
+    static final MessageListener LISTENER = new MessageListener() {
+        @Override
+        public void onConnected(Peer peer) {
+        }
+
+        @Override
+        public void onDisconnected(Peer peer) {
+        }
+
+        @Override
+        public void onServerFull(Peer peer) {
+        }
+
+        @Override
+        public void onMessage(Peer peer, Message message) {
+        }
+    };
+
+    private NetConfig config;
+    private Host host;
+    private InetSocketAddress hostAddress;
+    private DatagramChannel sender;
+    private int sequence;
+
+    @Before
+    public void setUp() throws Exception {
+        int port = 0;
+        try(DatagramSocket socket = new DatagramSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        this.hostAddress = new InetSocketAddress("127.0.0.1", port);
+
+        this.config = new NetConfig(MessageFragmentsTest.FACTORY);
+        this.config.enableLog(false);
+        this.host = new Host(this.config, this.hostAddress);
+
+        this.sender = DatagramChannel.open();
+        this.sender.connect(this.hostAddress);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.host.destroy();
+        this.sender.close();
+    }
+
+    /**
+     * Sends packets with just the protocol header, each one with the next sequence number
+     */
+    private void sendPackets(int numberOfPackets) throws Exception {
+        for(int i = 0; i < numberOfPackets; i++) {
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            buffer.put(Protocol.PROTOCOL_ID);
+            buffer.put((byte)0);                // flags
+            buffer.put(Host.INVALID_PEER_ID);
+            buffer.put((byte)0);                // number of messages
+            buffer.putInt(++this.sequence);
+            buffer.putInt(0);                   // acknowledge
+            buffer.putInt(0);                   // ack history
+            buffer.flip();
+
+            this.sender.write(buffer);
+        }
+
+        /* give the loopback a moment to deliver */
+        Thread.sleep(100);
+    }
+
+    /*
+     * purpose : a single update reads every datagram that is waiting on the socket
+     * input : 20 datagrams sent before the update
+     * expected output : all 20 are received in one batch
+     */
+    @Test
+    public void testDrainsAllPackets() throws Exception {
+        this.config.setMaxReceiveTime(0);
+        sendPackets(20);
+
+        this.host.update(LISTENER, 0);
+
+        BatchHistogram batches = this.host.getReceiveBatches();
+        assertEquals(1, batches.getNumberOfBatches());
+        assertEquals(20, batches.getLastSize());
+        assertEquals(0, batches.getNumberOfBudgetHits());
+        assertEquals(1, batches.getBucketCount(BatchHistogram.bucketIndex(20)));
+
+        this.host.update(LISTENER, 0);
+        assertEquals(0, batches.getLastSize());
+        assertEquals(1, batches.getBucketCount(0));
+    }
+
+    /*
+     * purpose : the packet budget caps how many datagrams are read in an update, leaving the rest for the next
+     * input : 20 datagrams with a budget of 8 packets per update
+     * expected output : batches of 8, 8 and 4, with the first two marked as hitting the budget
+     */
+    @Test
+    public void testPacketBudget() throws Exception {
+        this.config.setMaxReceivePackets(8);
+        this.config.setMaxReceiveTime(0);
+        sendPackets(20);
+
+        BatchHistogram batches = this.host.getReceiveBatches();
+
+        this.host.update(LISTENER, 0);
+        assertEquals(8, batches.getLastSize());
+
+        this.host.update(LISTENER, 0);
+        assertEquals(8, batches.getLastSize());
+
+        this.host.update(LISTENER, 0);
+        assertEquals(4, batches.getLastSize());
+
+        assertEquals(3, batches.getNumberOfBatches());
+        assertEquals(2, batches.getNumberOfBudgetHits());
+        assertEquals(8, batches.getMaxSize());
+        assertEquals(20, batches.getTotalSize());
+    }
+
+    /*
+     * purpose : batch sizes land in power of two buckets
+     * input : sizes on and around the bucket edges
+     * expected output : the matching bucket, with large sizes in the last bucket
+     */
+    @Test
+    public void testBucketIndex() {
+        assertEquals(0, BatchHistogram.bucketIndex(0));
+        assertEquals(1, BatchHistogram.bucketIndex(1));
+        assertEquals(2, BatchHistogram.bucketIndex(2));
+        assertEquals(2, BatchHistogram.bucketIndex(3));
+        assertEquals(3, BatchHistogram.bucketIndex(4));
+        assertEquals(3, BatchHistogram.bucketIndex(7));
+        assertEquals(BatchHistogram.NUMBER_OF_BUCKETS - 1, BatchHistogram.bucketIndex(100_000));
+
+        for(int i = 1; i < BatchHistogram.NUMBER_OF_BUCKETS; i++) {
+            assertEquals(i, BatchHistogram.bucketIndex(BatchHistogram.bucketLowerBound(i)));
+        }
+    }
+}
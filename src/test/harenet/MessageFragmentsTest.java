@@ -0,0 +1,221 @@
+/*
+ * see license.txt 
+ */
+package test.harenet;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import org.junit.Test;
+
+import harenet.IOBuffer;
+import harenet.MessageFragments;
+import harenet.MessageHeader;
+import harenet.SysoutLog;
+import harenet.messages.FragmentMessage;
+import harenet.messages.Message;
+import harenet.messages.NetMessage;
+import harenet.messages.NetMessageFactory;
+import harenet.messages.ReliableNetMessage;
+import harenet.messages.UnReliableNetMessage;
+
+/**
+ * @author Tony
+ *
+ */
+public class MessageFragmentsTest {
+
+    static class BlobMessage implements NetMessage {
+        byte[] data;
+        
+        @Override
+        public void read(IOBuffer buffer) {
+            data = new byte[buffer.getInt()];
+            buffer.getBytes(data);
+        }
+        
+        @Override
+        public void write(IOBuffer buffer) {
+            buffer.putInt(data.length);
+            buffer.putBytes(data);
+        }
+    }
+    
+    static final NetMessageFactory FACTORY = new NetMessageFactory() {
+        @Override
+        public NetMessage readNetMessage(IOBuffer buffer) {
+            BlobMessage msg = new BlobMessage();
+            msg.read(buffer);
+            return msg;
+        }
+    };
+    
+    private static Message newMessage(byte[] data) {
+        BlobMessage blob = new BlobMessage();
+        blob.data = data;
+        return new ReliableNetMessage(blob, Short.MAX_VALUE);
+    }
+    
+    private static Message newUnReliableMessage(byte[] data) {
+        BlobMessage blob = new BlobMessage();
+        blob.data = data;
+        return new UnReliableNetMessage(blob, Short.MAX_VALUE);
+    }
+    
+    /**
+     * Sends the fragment over the 'wire'
+     */
+    private static FragmentMessage transmit(Message fragment) {
+        IOBuffer buffer = IOBuffer.Factory.allocate(1500);
+        fragment.writeTo(buffer);
+        assertTrue(buffer.position() <= fragment.getSize());
+        
+        buffer.position(0);
+        return (FragmentMessage)MessageHeader.readMessageHeader(buffer, FACTORY);
+    }
+    
+    /*
+     * purpose : a message larger than a packet is split up, and put back together in any order
+     * input : a 40KB message of random bytes, and a 40KB message that compresses well
+     * expected output : the received message matches the sent message, and the compressible message uses fewer fragments
+     */
+    @Test
+    public void testFragmentAndReassemble() {
+        Random random = new Random(3);
+        
+        byte[] noise = new byte[40 * 1024];
+        random.nextBytes(noise);
+        
+        byte[] text = new byte[40 * 1024];
+        for(int i = 0; i < text.length; i++) {
+            text[i] = (byte)('a' + (i % 7));
+        }
+        
+        int[] numberOfFragments = new int[2];
+        byte[][] messages = { noise, text };
+        for(int m = 0; m < messages.length; m++) {
+            MessageFragments sender = new MessageFragments(new SysoutLog(), 1024 * 1024);
+            MessageFragments receiver = new MessageFragments(new SysoutLog(), 1024 * 1024);
+            
+            Queue<Message> fragments = new LinkedList<Message>();
+            numberOfFragments[m] = sender.fragment(newMessage(messages[m]), 1400, fragments);
+            assertEquals(numberOfFragments[m], fragments.size());
+            
+            List<Message> shuffled = new ArrayList<Message>(fragments);
+            Collections.shuffle(shuffled, random);
+            
+            Message received = null;
+            for(int i = 0; i < shuffled.size(); i++) {
+                assertNull(received);
+                received = receiver.reassemble(transmit(shuffled.get(i)), FACTORY);
+            }
+            
+            assertNotNull(received);
+            assertTrue(received.isReliable());
+            assertArrayEquals(messages[m], ((BlobMessage)received.getMessage()).data);
+            assertEquals(0, receiver.getNumberOfBytesBuffered());
+        }
+        
+        assertTrue(numberOfFragments[0] >= (40 * 1024) / 1400);
+        assertTrue(numberOfFragments[1] < numberOfFragments[0]);
+    }
+    
+    /*
+     * purpose : the reassembly buffer is bounded, and partial messages time out
+     * input : a message larger than the reassembly buffer, and a partially received message that times out
+     * expected output : the large message is dropped, and the buffered bytes never exceed the limit
+     */
+    @Test
+    public void testBoundedReassembly() {
+        Random random = new Random(5);
+        byte[] noise = new byte[20 * 1024];
+        random.nextBytes(noise);
+        
+        MessageFragments sender = new MessageFragments(new SysoutLog(), 1024 * 1024);
+        MessageFragments receiver = new MessageFragments(new SysoutLog(), 30 * 1024);
+        
+        Queue<Message> fragments = new LinkedList<Message>();
+        sender.fragment(newMessage(noise), 1000, fragments);
+        sender.fragment(newMessage(noise), 1000, fragments);
+        
+        for(Message fragment : fragments) {
+            Message received = receiver.reassemble(transmit(fragment), FACTORY);
+            assertTrue(receiver.getNumberOfBytesBuffered() <= 30 * 1024);
+            if(received != null) {
+                assertArrayEquals(noise, ((BlobMessage)received.getMessage()).data);
+            }
+        }
+        
+        byte[] tooLarge = new byte[40 * 1024];
+        random.nextBytes(tooLarge);
+        
+        fragments.clear();
+        sender.fragment(newMessage(tooLarge), 1000, fragments);
+        fragments.poll();
+        for(Message fragment : fragments) {
+            assertNull(receiver.reassemble(transmit(fragment), FACTORY));
+            assertTrue(receiver.getNumberOfBytesBuffered() <= 30 * 1024);
+        }
+        
+        /* partially received */
+        fragments.clear();
+        sender.fragment(newMessage(noise), 1000, fragments);
+        fragments.poll();
+        for(Message fragment : fragments) {
+            assertNull(receiver.reassemble(transmit(fragment), FACTORY));
+        }
+        assertTrue(receiver.getNumberOfBytesBuffered() > 0);
+        
+        receiver.timeoutFragments(System.currentTimeMillis() + 10_000, 5_000);
+        assertEquals(0, receiver.getNumberOfBytesBuffered());
+    }
+    
+    /*
+     * purpose : the pieces of an unreliable message are sent unreliably, and a lost piece drops the message
+     * input : a 20KB unreliable message received whole, and one with a lost fragment
+     * expected output : unreliable fragments and message, and nothing received for the lost fragment until it times out
+     */
+    @Test
+    public void testUnReliableFragments() {
+        Random random = new Random(7);
+        byte[] noise = new byte[20 * 1024];
+        random.nextBytes(noise);
+        
+        MessageFragments sender = new MessageFragments(new SysoutLog(), 1024 * 1024);
+        MessageFragments receiver = new MessageFragments(new SysoutLog(), 1024 * 1024);
+        
+        Queue<Message> fragments = new LinkedList<Message>();
+        sender.fragment(newUnReliableMessage(noise), 1000, fragments);
+        
+        Message received = null;
+        for(Message fragment : fragments) {
+            assertFalse(fragment.isReliable());
+            
+            FragmentMessage piece = transmit(fragment);
+            assertFalse(piece.isReliable());
+            assertNull(received);
+            received = receiver.reassemble(piece, FACTORY);
+        }
+        
+        assertNotNull(received);
+        assertFalse(received.isReliable());
+        assertArrayEquals(noise, ((BlobMessage)received.getMessage()).data);
+        
+        /* a lost fragment is never resent */
+        fragments.clear();
+        sender.fragment(newUnReliableMessage(noise), 1000, fragments);
+        fragments.poll();
+        for(Message fragment : fragments) {
+            assertNull(receiver.reassemble(transmit(fragment), FACTORY));
+        }
+        
+        receiver.timeoutFragments(System.currentTimeMillis() + 10_000, 5_000);
+        assertEquals(0, receiver.getNumberOfBytesBuffered());
+    }
+}
@@ -0,0 +1,306 @@
+package test.map;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import seventh.ai.basic.PathPlanner.AvoidSearchPath;
+import seventh.ai.basic.PathPlanner.SearchPath;
+import seventh.ai.basic.Zone;
+import seventh.graph.Edge;
+import seventh.graph.Edges;
+import seventh.graph.Edges.Directions;
+import seventh.graph.GraphNode;
+import seventh.map.GridAStarGraphSearch;
+import seventh.map.JumpPointGraphSearch;
+import seventh.map.MapGraph;
+import seventh.map.Tile;
+import seventh.math.Rectangle;
+
+public class GridAStarGraphSearchTest {
+
+    private static final int TILE_SIZE = 32;
+    private static final int MAP_TILES_X = 40;
+    private static final int MAP_TILES_Y = 30;
+
+    private Random random;
+    private MapGraph<Void> graph;
+
+    @Before
+    public void setUp() throws Exception {
+        this.random = new Random(3);
+        this.graph = TestMaps.newSolidTileMap(this.random, MAP_TILES_X, MAP_TILES_Y, 0.25f).createMapGraph(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private GraphNode<Tile, Void> randomNode() {
+        while(true) {
+            GraphNode<Tile, Void> node = this.graph.graph[this.random.nextInt(MAP_TILES_Y)][this.random.nextInt(MAP_TILES_X)];
+            if(node != null) {
+                return node;
+            }
+        }
+    }
+
+    private static int stepCost(GraphNode<Tile, Void> from, GraphNode<Tile, Void> to) {
+        Edges<Tile, Void> edges = from.edges();
+        for(int i = 0; i < edges.size(); i++) {
+            Edge<Tile, Void> edge = edges.get(i);
+            if(edge != null && edge.getRight() == to) {
+                return Directions.isCardinal(i) ? GridAStarGraphSearch.STRAIGHT_COST : GridAStarGraphSearch.DIAGONAL_COST;
+            }
+        }
+
+        fail("Path does not follow the graph edges");
+        return -1;
+    }
+
+    /**
+     * @return the cost of the path, verifying each step follows an edge
+     */
+    private static int pathCost(GraphNode<Tile, Void> start, List<GraphNode<Tile, Void>> path) {
+        int cost = 0;
+        GraphNode<Tile, Void> current = start;
+        for(GraphNode<Tile, Void> node : path) {
+            cost += stepCost(current, node);
+            current = node;
+        }
+        return cost;
+    }
+
+    /**
+     * A simple, slow, Dijkstra search using the same movement rules as the grid search
+     *
+     * @return the cost of the shortest path, or -1 if there is no path
+     */
+    @SuppressWarnings("unchecked")
+    private int shortestPathCost(GraphNode<Tile, Void> start, GraphNode<Tile, Void> goal, List<Tile> tilesToAvoid) {
+        int[] dist = new int[MAP_TILES_X * MAP_TILES_Y];
+        boolean[] done = new boolean[dist.length];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+
+        Tile startTile = start.getValue();
+        dist[startTile.getYIndex() * MAP_TILES_X + startTile.getXIndex()] = 0;
+
+        while(true) {
+            int best = -1;
+            for(int i = 0; i < dist.length; i++) {
+                if(!done[i] && dist[i] != Integer.MAX_VALUE && (best < 0 || dist[i] < dist[best])) {
+                    best = i;
+                }
+            }
+
+            if(best < 0) {
+                return -1;
+            }
+
+            GraphNode<Tile, Void> node = this.graph.graph[best / MAP_TILES_X][best % MAP_TILES_X];
+            if(node == goal) {
+                return dist[best];
+            }
+            done[best] = true;
+
+            Edges<Tile, Void> edges = node.edges();
+            int skipMask = 0;
+            for(int i = 0; i < edges.size(); i++) {
+                Edge<Tile, Void> edge = edges.get(i);
+                if(edge == null) {
+                    continue;
+                }
+
+                Tile tile = edge.getRight().getValue();
+                Directions dir = Directions.fromIndex(i);
+                if(tilesToAvoid.contains(tile)) {
+                    switch(dir) {
+                        case N: skipMask |= Directions.NE.getMask() | Directions.NW.getMask(); break;
+                        case E: skipMask |= Directions.NE.getMask() | Directions.SE.getMask(); break;
+                        case S: skipMask |= Directions.SE.getMask() | Directions.SW.getMask(); break;
+                        case W: skipMask |= Directions.NW.getMask() | Directions.SW.getMask(); break;
+                        default:
+                    }
+                    continue;
+                }
+
+                if((dir.getMask() & skipMask) != 0) {
+                    continue;
+                }
+
+                int index = tile.getYIndex() * MAP_TILES_X + tile.getXIndex();
+                int cost = dist[best] + (Directions.isCardinal(i) ? GridAStarGraphSearch.STRAIGHT_COST : GridAStarGraphSearch.DIAGONAL_COST);
+                if(cost < dist[index]) {
+                    dist[index] = cost;
+                }
+            }
+        }
+    }
+
+    /*
+     * purpose : the grid A* finds the optimal path between two tiles
+     * input : random start and goal tiles over a map with random solid tiles
+     * expected output : the path follows the graph edges, ends at the goal and costs the same as the Dijkstra path
+     */
+    @Test
+    public void testOptimalPath() {
+        GridAStarGraphSearch<Void> search = new GridAStarGraphSearch<Void>(this.graph);
+        List<Tile> noTiles = new ArrayList<Tile>();
+
+        for(int i = 0; i < 200; i++) {
+            GraphNode<Tile, Void> start = randomNode();
+            GraphNode<Tile, Void> goal = randomNode();
+
+            int expectedCost = shortestPathCost(start, goal, noTiles);
+            List<GraphNode<Tile, Void>> path = search.search(start, goal);
+            if(expectedCost < 0) {
+                assertNull(path);
+                continue;
+            }
+
+            assertNotNull(path);
+            if(start == goal) {
+                assertTrue(path.isEmpty());
+            }
+            else {
+                assertEquals(goal, path.get(path.size() - 1));
+            }
+            assertEquals("Search: " + i, expectedCost, pathCost(start, path));
+        }
+    }
+
+    /*
+     * purpose : tiles to avoid are never walked through, nor are their corners cut
+     * input : random searches with a random set of tiles to avoid
+     * expected output : the path never contains an avoided tile, and costs the same as the Dijkstra path
+     */
+    @Test
+    public void testTilesToAvoid() {
+        SearchPath<Void> search = new SearchPath<Void>(this.graph);
+
+        for(int i = 0; i < 100; i++) {
+            search.tilesToAvoid.clear();
+            for(int j = 0; j < 30; j++) {
+                search.tilesToAvoid.add(randomNode().getValue());
+            }
+
+            GraphNode<Tile, Void> start = randomNode();
+            GraphNode<Tile, Void> goal = randomNode();
+            if(search.tilesToAvoid.contains(start.getValue()) || search.tilesToAvoid.contains(goal.getValue())) {
+                continue;
+            }
+
+            int expectedCost = shortestPathCost(start, goal, search.tilesToAvoid);
+            List<GraphNode<Tile, Void>> path = search.search(start, goal);
+            if(expectedCost < 0) {
+                assertNull(path);
+                continue;
+            }
+
+            assertNotNull(path);
+            for(GraphNode<Tile, Void> node : path) {
+                assertFalse(search.tilesToAvoid.contains(node.getValue()));
+            }
+            assertEquals("Search: " + i, expectedCost, pathCost(start, path));
+        }
+    }
+
+    /*
+     * purpose : the avoidance search goes around zones, unless the goal is in the zone
+     * input : an open map with a zone between the start and goal
+     * expected output : the path skirts the zone; with the goal inside the zone the direct path is taken
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testZonesToAvoid() throws Exception {
+        MapGraph<Void> openGraph = TestMaps.newSolidTileMap(this.random, MAP_TILES_X, MAP_TILES_Y, 0f).createMapGraph(null);
+        AvoidSearchPath<Void> search = new AvoidSearchPath<Void>(openGraph);
+
+        Zone zone = new Zone(0, new Rectangle(15 * TILE_SIZE + 1, 5 * TILE_SIZE + 1, 10 * TILE_SIZE - 2, 10 * TILE_SIZE - 2), true);
+        search.zonesToAvoid = new ArrayList<Zone>();
+        search.zonesToAvoid.add(zone);
+
+        GraphNode<Tile, Void> start = openGraph.graph[10][5];
+        GraphNode<Tile, Void> goal = openGraph.graph[10][35];
+
+        List<GraphNode<Tile, Void>> path = search.search(start, goal);
+        assertNotNull(path);
+        assertEquals(goal, path.get(path.size() - 1));
+        for(GraphNode<Tile, Void> node : path) {
+            assertFalse(zone.getBounds().intersects(node.getValue().getBounds()));
+        }
+
+        GraphNode<Tile, Void> goalInZone = openGraph.graph[10][20];
+        path = search.search(start, goalInZone);
+        assertNotNull(path);
+        assertEquals(15 * GridAStarGraphSearch.STRAIGHT_COST, pathCost(start, path));
+    }
+
+    /*
+     * purpose : a search run a few nodes at a time finds the same path as running it all at once
+     * input : random searches, continued 7 node expansions at a time
+     * expected output : the same path, and the search stops once the expansions run out
+     */
+    @Test
+    public void testIncrementalSearch() {
+        GridAStarGraphSearch<Void> search = new GridAStarGraphSearch<Void>(this.graph);
+        GridAStarGraphSearch<Void> incremental = new GridAStarGraphSearch<Void>(this.graph);
+
+        for(int i = 0; i < 100; i++) {
+            GraphNode<Tile, Void> start = randomNode();
+            GraphNode<Tile, Void> goal = randomNode();
+
+            List<GraphNode<Tile, Void>> expected = search.search(start, goal);
+
+            incremental.beginSearch(start, goal);
+            assertTrue(incremental.isSearching());
+            while(incremental.isSearching()) {
+                int numberOfExpansions = incremental.continueSearch(7);
+                assertTrue(numberOfExpansions <= 7);
+                assertTrue(numberOfExpansions == 7 || !incremental.isSearching());
+            }
+
+            assertEquals(expected, incremental.getSearchResult());
+        }
+    }
+
+    /*
+     * purpose : the searches of a graph share their scores, a search run in between the steps of an incremental 
+     *           search doesn't change the incremental search's path
+     * input : random incremental searches, with an A* and a jump point search of other tiles after every step, 
+     *         and another incremental search that takes over part way through
+     * expected output : the same path as running the incremental search all at once
+     */
+    @Test
+    public void testSharedSearchSpace() {
+        GridAStarGraphSearch<Void> search = new GridAStarGraphSearch<Void>(this.graph);
+        GridAStarGraphSearch<Void> incremental = new GridAStarGraphSearch<Void>(this.graph);
+        JumpPointGraphSearch<Void> jps = new JumpPointGraphSearch<Void>(this.graph);
+        GridAStarGraphSearch<Void> other = new GridAStarGraphSearch<Void>(this.graph);
+
+        for(int i = 0; i < 50; i++) {
+            GraphNode<Tile, Void> start = randomNode();
+            GraphNode<Tile, Void> goal = randomNode();
+
+            List<GraphNode<Tile, Void>> expected = search.search(start, goal);
+
+            incremental.beginSearch(start, goal);
+            incremental.continueSearch(20);
+            
+            /* the incremental search starts over */
+            other.beginSearch(randomNode(), randomNode());
+            other.continueSearch(20);
+            
+            while(incremental.isSearching()) {
+                incremental.continueSearch(20);
+                search.search(randomNode(), randomNode());
+                jps.search(randomNode(), randomNode());
+            }
+
+            assertEquals(expected, incremental.getSearchResult());
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package test.map;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import seventh.graph.GraphNode;
+import seventh.map.GridAStarGraphSearch;
+import seventh.map.JumpPointGraphSearch;
+import seventh.map.MapGraph;
+import seventh.map.Tile;
+
+public class JumpPointGraphSearchTest {
+
+    private static final int MAP_TILES_X = 40;
+    private static final int MAP_TILES_Y = 30;
+
+    private Random random;
+    private MapGraph<Void> graph;
+
+    @Before
+    public void setUp() throws Exception {
+        this.random = new Random(5);
+        this.graph = TestMaps.newSolidTileMap(this.random, MAP_TILES_X, MAP_TILES_Y, 0.25f).createMapGraph(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private GraphNode<Tile, Void> randomNode() {
+        while(true) {
+            GraphNode<Tile, Void> node = this.graph.graph[this.random.nextInt(MAP_TILES_Y)][this.random.nextInt(MAP_TILES_X)];
+            if(node != null) {
+                return node;
+            }
+        }
+    }
+
+    private boolean isWalkable(int x, int y) {
+        return x >= 0 && y >= 0 && x < MAP_TILES_X && y < MAP_TILES_Y && this.graph.graph[y][x] != null;
+    }
+
+    /**
+     * @return the cost of the path, verifying each step is to a walkable neighbor without cutting corners
+     */
+    private int pathCost(GraphNode<Tile, Void> start, List<GraphNode<Tile, Void>> path) {
+        int cost = 0;
+        int x = start.getValue().getXIndex();
+        int y = start.getValue().getYIndex();
+        for(GraphNode<Tile, Void> node : path) {
+            int nx = node.getValue().getXIndex();
+            int ny = node.getValue().getYIndex();
+            int dx = nx - x;
+            int dy = ny - y;
+
+            assertTrue(Math.abs(dx) <= 1 && Math.abs(dy) <= 1 && (dx != 0 || dy != 0));
+            assertTrue(isWalkable(nx, ny));
+            if(dx != 0 && dy != 0) {
+                assertTrue(isWalkable(x + dx, y) && isWalkable(x, y + dy));
+                cost += GridAStarGraphSearch.DIAGONAL_COST;
+            }
+            else {
+                cost += GridAStarGraphSearch.STRAIGHT_COST;
+            }
+
+            x = nx;
+            y = ny;
+        }
+        return cost;
+    }
+
+    /**
+     * A simple, slow, Dijkstra search over the walkable tiles, not allowing corners to be cut
+     *
+     * @return the cost of the shortest path, or -1 if there is no path
+     */
+    private int shortestPathCost(GraphNode<Tile, Void> start, GraphNode<Tile, Void> goal) {
+        int[] dist = new int[MAP_TILES_X * MAP_TILES_Y];
+        boolean[] done = new boolean[dist.length];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        dist[start.getValue().getYIndex() * MAP_TILES_X + start.getValue().getXIndex()] = 0;
+
+        int goalIndex = goal.getValue().getYIndex() * MAP_TILES_X + goal.getValue().getXIndex();
+        while(true) {
+            int best = -1;
+            for(int i = 0; i < dist.length; i++) {
+                if(!done[i] && dist[i] != Integer.MAX_VALUE && (best < 0 || dist[i] < dist[best])) {
+                    best = i;
+                }
+            }
+
+            if(best < 0) {
+                return -1;
+            }
+            if(best == goalIndex) {
+                return dist[best];
+            }
+            done[best] = true;
+
+            int x = best % MAP_TILES_X;
+            int y = best / MAP_TILES_X;
+            for(int dy = -1; dy <= 1; dy++) {
+                for(int dx = -1; dx <= 1; dx++) {
+                    if((dx == 0 && dy == 0) || !isWalkable(x + dx, y + dy)) {
+                        continue;
+                    }
+
+                    int cost = GridAStarGraphSearch.STRAIGHT_COST;
+                    if(dx != 0 && dy != 0) {
+                        if(!isWalkable(x + dx, y) || !isWalkable(x, y + dy)) {
+                            continue;
+                        }
+                        cost = GridAStarGraphSearch.DIAGONAL_COST;
+                    }
+
+                    int index = (y + dy) * MAP_TILES_X + (x + dx);
+                    dist[index] = Math.min(dist[index], dist[best] + cost);
+                }
+            }
+        }
+    }
+
+    private void assertOptimalPaths(JumpPointGraphSearch<Void> search, int numberOfSearches) {
+        for(int i = 0; i < numberOfSearches; i++) {
+            GraphNode<Tile, Void> start = randomNode();
+            GraphNode<Tile, Void> goal = randomNode();
+
+            int expectedCost = shortestPathCost(start, goal);
+            List<GraphNode<Tile, Void>> path = search.search(start, goal);
+            if(expectedCost < 0) {
+                assertNull(path);
+                continue;
+            }
+
+            assertNotNull(path);
+            if(start == goal) {
+                assertTrue(path.isEmpty());
+            }
+            else {
+                assertEquals(goal, path.get(path.size() - 1));
+            }
+            assertEquals("Search: " + i, expectedCost, pathCost(start, path));
+        }
+    }
+
+    /*
+     * purpose : jump point search finds the optimal path, filling in the tiles between jump points
+     * input : random start and goal tiles over a map with random solid tiles
+     * expected output : every step of the path is to a walkable neighbor, and it costs the same as the Dijkstra path
+     */
+    @Test
+    public void testOptimalPath() {
+        assertOptimalPaths(new JumpPointGraphSearch<Void>(this.graph), 200);
+    }
+
+    /*
+     * purpose : tiles removed and added at runtime are picked up by the next search
+     * input : randomly removing and adding graph nodes between searches
+     * expected output : the paths never walk through removed tiles, and remain optimal
+     */
+    @Test
+    public void testRemovedAndAddedNodes() {
+        JumpPointGraphSearch<Void> search = new JumpPointGraphSearch<Void>(this.graph);
+
+        for(int i = 0; i < 10; i++) {
+            for(int j = 0; j < 20; j++) {
+                Tile tile = randomNode().getValue();
+                this.graph.removeNode(tile.getXIndex(), tile.getYIndex());
+            }
+
+            for(int j = 0; j < 20; j++) {
+                int x = this.random.nextInt(MAP_TILES_X);
+                int y = this.random.nextInt(MAP_TILES_Y);
+                if(!isWalkable(x, y)) {
+                    this.graph.addNode(x, y);
+                }
+            }
+
+            assertOptimalPaths(search, 20);
+        }
+    }
+
+    /*
+     * purpose : removing a node also removes the edges into it
+     * input : a node removed from the graph
+     * expected output : none of its former neighbors have an edge to it, and the A* search never walks onto it
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testRemoveNodeEdges() {
+        GridAStarGraphSearch<Void> search = new GridAStarGraphSearch<Void>(this.graph);
+
+        for(int i = 0; i < 50; i++) {
+            GraphNode<Tile, Void> removed = randomNode();
+            int x = removed.getValue().getXIndex();
+            int y = removed.getValue().getYIndex();
+            this.graph.removeNode(x, y);
+
+            for(int dy = -1; dy <= 1; dy++) {
+                for(int dx = -1; dx <= 1; dx++) {
+                    if(isWalkable(x + dx, y + dy)) {
+                        assertNull(((GraphNode<Tile, Void>)this.graph.graph[y + dy][x + dx]).getEdge(removed));
+                    }
+                }
+            }
+
+            List<GraphNode<Tile, Void>> path = search.search(randomNode(), randomNode());
+            if(path != null) {
+                for(GraphNode<Tile, Void> node : path) {
+                    assertTrue(isWalkable(node.getValue().getXIndex(), node.getValue().getYIndex()));
+                }
+            }
+        }
+    }
+
+    /*
+     * purpose : a search run a few nodes at a time finds the same path as running it all at once
+     * input : random searches, continued 3 jump points at a time
+     * expected output : the same path
+     */
+    @Test
+    public void testIncrementalSearch() {
+        JumpPointGraphSearch<Void> search = new JumpPointGraphSearch<Void>(this.graph);
+        JumpPointGraphSearch<Void> incremental = new JumpPointGraphSearch<Void>(this.graph);
+
+        for(int i = 0; i < 100; i++) {
+            GraphNode<Tile, Void> start = randomNode();
+            GraphNode<Tile, Void> goal = randomNode();
+
+            List<GraphNode<Tile, Void>> expected = search.search(start, goal);
+
+            incremental.beginSearch(start, goal);
+            while(incremental.isSearching()) {
+                assertTrue(incremental.continueSearch(3) <= 3);
+            }
+
+            assertEquals(expected, incremental.getSearchResult());
+        }
+    }
+}
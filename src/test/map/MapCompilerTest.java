@@ -0,0 +1,254 @@
+/*
+ * see license.txt
+ */
+package test.map;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import leola.vm.types.LeoMap;
+import seventh.map.Map;
+import seventh.map.MapCompiler;
+import seventh.map.MapObject;
+import seventh.map.MapObjectData;
+import seventh.map.MapObjectFactory;
+import seventh.map.TiledMapData;
+import seventh.map.TiledMapData.LayerData;
+import seventh.map.TiledMapData.TilesetData;
+import seventh.map.TiledMapLoader;
+import seventh.shared.JSON;
+
+/**
+ * @author Tony
+ *
+ */
+public class MapCompilerTest {
+
+    private static final MapObjectFactory NO_MAP_OBJECTS = new MapObjectFactory() {
+        @Override
+        public MapObject createMapObject(MapObjectData data) {
+            return null;
+        }
+    };
+
+    private TiledMapData newMapData() {
+        TiledMapData map = new TiledMapData();
+        map.width = 3;
+        map.height = 2;
+        map.tilewidth = 32;
+        map.tileheight = 32;
+
+        TilesetData tileset = new TilesetData();
+        tileset.firstgid = 1;
+        tileset.tilewidth = 32;
+        tileset.tileheight = 32;
+        tileset.name = "city";
+        tileset.image = "city.png";
+        tileset.tileproperties = new HashMap<String, java.util.Map<String, String>>();
+        tileset.tileproperties.put("4", new HashMap<String, String>());
+        tileset.tileproperties.get("4").put("surface", "grass");
+
+        map.tilesets = new ArrayList<TilesetData>();
+        map.tilesets.add(tileset);
+
+        LayerData tiles = new LayerData();
+        tiles.type = "tilelayer";
+        tiles.name = "ground";
+        tiles.visible = true;
+        tiles.width = 3;
+        tiles.height = 2;
+        tiles.properties = new HashMap<String, String>();
+        tiles.properties.put("collidable", "true");
+        tiles.properties.put("heightMask", null);
+        tiles.data = new int[] { 1, 0, 5, 0x80000002, 0, 3 };
+
+        MapObjectData object = new MapObjectData();
+        object.type = "tree";
+        object.rotation = 45f;
+        object.x = 10;
+        object.y = 20;
+        object.width = 30;
+        object.height = 40;
+
+        LayerData objects = new LayerData();
+        objects.type = "objectgroup";
+        objects.name = "objects";
+        objects.objects = new ArrayList<MapObjectData>();
+        objects.objects.add(object);
+
+        map.layers = new ArrayList<LayerData>();
+        map.layers.add(tiles);
+        map.layers.add(objects);
+        return map;
+    }
+
+    /*
+     * purpose : a compiled map reads back the same as it was written
+     * input : map data with a tileset with tile properties, a tile layer and an object layer
+     * expected output : the same values, including the nulls
+     */
+    @Test
+    public void testWriteRead() throws Exception {
+        File file = File.createTempFile("map", MapCompiler.COMPILED_MAP_EXTENSION);
+        try {
+            MapCompiler.write(newMapData(), file);
+            TiledMapData map = MapCompiler.read(file);
+
+            assertEquals(3, map.width);
+            assertEquals(2, map.height);
+            assertEquals(32, map.tilewidth);
+            assertEquals(32, map.tileheight);
+
+            assertEquals(1, map.tilesets.size());
+            TilesetData tileset = map.tilesets.get(0);
+            assertEquals(1, tileset.firstgid);
+            assertEquals("city", tileset.name);
+            assertEquals("city.png", tileset.image);
+            assertEquals("grass", tileset.tileproperties.get("4").get("surface"));
+            assertEquals("grass", tileset.getTileProperties().getByString("4").getObject("surface").toString());
+
+            assertEquals(2, map.layers.size());
+            LayerData tiles = map.layers.get(0);
+            assertEquals("ground", tiles.name);
+            assertTrue(tiles.visible);
+            assertEquals("true", tiles.getProperty("collidable"));
+            assertTrue(tiles.hasProperty("heightMask"));
+            assertNull(tiles.getProperty("heightMask"));
+            assertArrayEquals(new int[] { 1, 0, 5, 0x80000002, 0, 3 }, tiles.data);
+            assertNull(tiles.objects);
+
+            LayerData objects = map.layers.get(1);
+            assertNull(objects.data);
+            assertNull(objects.properties);
+            assertEquals(1, objects.objects.size());
+
+            MapObjectData object = objects.objects.get(0);
+            assertEquals("tree", object.type);
+            assertNull(object.name);
+            assertEquals(45f, object.rotation, 0.0001f);
+            assertEquals(40f, object.height, 0.0001f);
+            assertNull(object.properties);
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    /*
+     * purpose : a map loaded from its compiled file is the same as the map loaded from the json
+     * input : a generated "Tiled" json map, and the map compiled from it
+     * expected output : the same tiles collide, and the surfaces are the same
+     */
+    @Test
+    public void testCompiledMapIsTheSame() throws Exception {
+        File mapFile = File.createTempFile("map", ".json");
+        File compiledFile = MapCompiler.getCompiledFile(mapFile.getPath());
+        try {
+            String contents = MapHeapBenchmark.generateMap(3);
+            Files.write(mapFile.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+
+            assertFalse(MapCompiler.isUpToDate(mapFile, compiledFile));
+            assertEquals(compiledFile, MapCompiler.compile(mapFile.getPath()));
+            assertTrue(MapCompiler.isUpToDate(mapFile, compiledFile));
+
+            LeoMap json = JSON.parseJson(contents).as();
+            Map jsonMap = new TiledMapLoader().loadMap(json, NO_MAP_OBJECTS, false);
+            Map compiledMap = new TiledMapLoader().loadMap(MapCompiler.read(compiledFile), NO_MAP_OBJECTS, false);
+
+            assertEquals(jsonMap.getTileWorldWidth(), compiledMap.getTileWorldWidth());
+            assertEquals(jsonMap.getTileWorldHeight(), compiledMap.getTileWorldHeight());
+            for(int y = 0; y < jsonMap.getTileWorldHeight(); y++) {
+                for(int x = 0; x < jsonMap.getTileWorldWidth(); x++) {
+                    assertEquals(jsonMap.hasCollidableTile(x, y), compiledMap.hasCollidableTile(x, y));
+                    assertEquals(jsonMap.getSurfaceTypeByIndex(x, y), compiledMap.getSurfaceTypeByIndex(x, y));
+                }
+            }
+
+            /* the map changed since it was compiled */
+            assertTrue(mapFile.setLastModified(compiledFile.lastModified() + 2000));
+            assertFalse(MapCompiler.isUpToDate(mapFile, compiledFile));
+        }
+        finally {
+            mapFile.delete();
+            compiledFile.delete();
+        }
+    }
+
+    /*
+     * purpose : files that are not compiled maps of this version, or are corrupt, are not read
+     * input : a file with the wrong magic, one with the wrong version, one cut short, and ones with negative
+     *         or too large counts of tilesets and layers
+     * expected output : an IOException for each
+     */
+    @Test
+    public void testBadFiles() throws Exception {
+        File file = File.createTempFile("map", MapCompiler.COMPILED_MAP_EXTENSION);
+        try {
+            writeHeader(file, 0x12345678, MapCompiler.VERSION);
+            assertReadFails(file);
+
+            writeHeader(file, MapCompiler.MAGIC, MapCompiler.VERSION + 1);
+            assertReadFails(file);
+
+            writeHeader(file, MapCompiler.MAGIC, MapCompiler.VERSION);
+            assertReadFails(file);
+
+            /* corrupt counts */
+            writeCounts(file, -2, 0);
+            assertReadFails(file);
+
+            writeCounts(file, Integer.MAX_VALUE, 0);
+            assertReadFails(file);
+
+            writeCounts(file, 0, -1);
+            assertReadFails(file);
+
+            writeCounts(file, 0, 1_000_000);
+            assertReadFails(file);
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    private void writeHeader(File file, int magic, int version) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+        }
+    }
+
+    /**
+     * Writes a compiled map with the supplied number of tilesets and layers, but none of the tilesets or layers
+     */
+    private void writeCounts(File file, int numberOfTilesets, int numberOfLayers) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(MapCompiler.MAGIC);
+            out.writeInt(MapCompiler.VERSION);
+            for(int i = 0; i < 4; i++) {
+                out.writeInt(32);
+            }
+            out.writeInt(numberOfTilesets);
+            out.writeInt(numberOfLayers);
+        }
+    }
+
+    private void assertReadFails(File file) {
+        try {
+            MapCompiler.read(file);
+            fail("Expected an IOException");
+        }
+        catch(IOException e) {
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * see license.txt
+ */
+package test.map;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import leola.vm.types.LeoMap;
+import seventh.map.Map;
+import seventh.map.MapObject;
+import seventh.map.MapObjectData;
+import seventh.map.MapObjectFactory;
+import seventh.map.TiledMapLoader;
+import seventh.shared.JSON;
+
+/**
+ * Measures the heap a loaded map holds on to, as the server loads it (without the assets); both right after
+ * it is loaded, and after the AI path finding graph has been built from it.  The maps given on the command line
+ * are measured, or if there are none, a generated 200x200 "Tiled" map with a ground layer, a collidable layer
+ * with walls on a fifth of the tiles, a foreground layer and a surfaces layer.
+ *
+ * <p>
+ * Run with: <code>java test.map.MapHeapBenchmark [map files...]</code>
+ *
+ * @author Tony
+ *
+ */
+public class MapHeapBenchmark {
+
+    private static final int MAP_TILES = 200;
+    private static final int TILE_SIZE = 32;
+
+    private static final int CITY_GID = 1;
+    private static final int COLLIDABLES_GID = 1001;
+    private static final int SURFACES_GID = 2001;
+
+    private static final MapObjectFactory NO_MAP_OBJECTS = new MapObjectFactory() {
+        @Override
+        public MapObject createMapObject(MapObjectData data) {
+            return null;
+        }
+    };
+
+    private static String layer(String name, int[] data, boolean collidable, boolean foreground, String extraProperty) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"type\":\"tilelayer\",\"name\":\"").append(name).append("\",\"visible\":true,")
+          .append("\"width\":").append(MAP_TILES).append(",\"height\":").append(MAP_TILES).append(",")
+          .append("\"properties\":{\"collidable\":\"").append(collidable).append("\",")
+          .append("\"foreground\":\"").append(foreground).append("\",")
+          .append("\"destructable\":\"false\"");
+        if(extraProperty != null) {
+            sb.append(",\"").append(extraProperty).append("\":\"true\"");
+        }
+        sb.append("},\"data\":[");
+        for(int i = 0; i < data.length; i++) {
+            if(i > 0) {
+                sb.append(',');
+            }
+            sb.append(data[i]);
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String tileset(String name, int firstgid) {
+        return "{\"name\":\"" + name + "\",\"firstgid\":" + firstgid + ",\"margin\":0,\"spacing\":0," +
+               "\"tilewidth\":" + TILE_SIZE + ",\"tileheight\":" + TILE_SIZE + ",\"image\":\"" + name + ".png\"}";
+    }
+
+    /**
+     * @return a generated map in the "Tiled" json format
+     */
+    static String generateMap(long seed) {
+        Random random = new Random(seed);
+        int size = MAP_TILES * MAP_TILES;
+
+        int[] ground = new int[size];
+        int[] walls = new int[size];
+        int[] foreground = new int[size];
+        int[] surfaces = new int[size];
+        for(int i = 0; i < size; i++) {
+            ground[i] = CITY_GID + random.nextInt(64);
+            walls[i] = (random.nextInt(5) == 0) ? COLLIDABLES_GID + random.nextInt(16) : 0;
+            foreground[i] = (random.nextInt(10) == 0) ? CITY_GID + 64 + random.nextInt(32) : 0;
+            surfaces[i] = SURFACES_GID + random.nextInt(8);
+        }
+
+        return "{\"width\":" + MAP_TILES + ",\"height\":" + MAP_TILES + "," +
+               "\"tilewidth\":" + TILE_SIZE + ",\"tileheight\":" + TILE_SIZE + "," +
+               "\"tilesets\":[" + tileset("city", CITY_GID) + "," + tileset("collidables", COLLIDABLES_GID) + "," +
+                                  tileset("surfaces", SURFACES_GID) + "]," +
+               "\"layers\":[" + layer("ground", ground, false, false, null) + "," +
+                                layer("walls", walls, true, false, null) + "," +
+                                layer("roofs", foreground, false, true, null) + "," +
+                                layer("surfaces", surfaces, false, false, "surfaces") + "]}";
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void measure(String name, String contents) throws Exception {
+        LeoMap mapData = JSON.parseJson(contents).as();
+
+        long before = usedHeap();
+        Map map = new TiledMapLoader().loadMap(mapData, NO_MAP_OBJECTS, false);
+        long loaded = usedHeap();
+
+        Object graph = map.createMapGraph(null);
+        long withGraph = usedHeap();
+
+        System.out.printf("%s (%dx%d tiles): map %,d KiB, map and graph %,d KiB%n",
+                name, map.getTileWorldWidth(), map.getTileWorldHeight(),
+                (loaded - before) / 1024, (withGraph - before) / 1024);
+
+        /* keep them reachable until measured */
+        if(map.hashCode() == graph.hashCode()) {
+            System.out.println();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length == 0) {
+            measure("generated", generateMap(7));
+        }
+
+        for(String mapFile : args) {
+            measure(mapFile, new String(Files.readAllBytes(new File(mapFile).toPath())));
+        }
+    }
+}
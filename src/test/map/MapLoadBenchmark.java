@@ -0,0 +1,84 @@
+/*
+ * see license.txt
+ */
+package test.map;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import leola.vm.Leola;
+import seventh.map.MapCompiler;
+import seventh.map.MapLoaderUtil;
+import seventh.shared.Scripting;
+
+/**
+ * Times loading a map as the server does (without the assets), through {@link MapLoaderUtil#loadMap}: from the
+ * "Tiled" json file, and from the file compiled by the {@link MapCompiler}.  The maps given on the command line
+ * are timed, or if there are none, the generated map of the {@link MapHeapBenchmark}.
+ *
+ * <p>
+ * Run with: <code>java test.map.MapLoadBenchmark [map files...]</code>
+ *
+ * @author Tony
+ *
+ */
+public class MapLoadBenchmark {
+
+    private static final int WARMUP_LOADS = 5;
+    private static final int LOADS = 10;
+
+    private static double timeLoads(Leola runtime, String mapFile) throws Exception {
+        for(int i = 0; i < WARMUP_LOADS; i++) {
+            MapLoaderUtil.loadMap(runtime, mapFile, false);
+        }
+
+        long startTime = System.nanoTime();
+        for(int i = 0; i < LOADS; i++) {
+            MapLoaderUtil.loadMap(runtime, mapFile, false);
+        }
+        return (System.nanoTime() - startTime) / (LOADS * 1_000_000.0);
+    }
+
+    private static void measure(String mapFile) throws Exception {
+        Leola runtime = Scripting.newSandboxedRuntime();
+        File compiledFile = MapCompiler.getCompiledFile(mapFile);
+        boolean wasCompiled = compiledFile.exists();
+        File movedFile = new File(compiledFile.getPath() + ".benchmark");
+        try {
+            if(wasCompiled) {
+                Files.move(compiledFile.toPath(), movedFile.toPath());
+            }
+            double jsonTime = timeLoads(runtime, mapFile);
+
+            MapCompiler.compile(mapFile);
+            double compiledTime = timeLoads(runtime, mapFile);
+
+            System.out.printf("%s: json %.1f msec, compiled %.1f msec (%,d bytes -> %,d bytes)%n",
+                    mapFile, jsonTime, compiledTime, new File(mapFile).length(), compiledFile.length());
+        }
+        finally {
+            compiledFile.delete();
+            if(wasCompiled) {
+                Files.move(movedFile.toPath(), compiledFile.toPath());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length == 0) {
+            File mapFile = File.createTempFile("generated", ".json");
+            try {
+                Files.write(mapFile.toPath(), MapHeapBenchmark.generateMap(7).getBytes(StandardCharsets.UTF_8));
+                measure(mapFile.getPath());
+            }
+            finally {
+                mapFile.delete();
+            }
+        }
+
+        for(String mapFile : args) {
+            measure(mapFile);
+        }
+    }
+}
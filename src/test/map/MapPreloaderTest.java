@@ -0,0 +1,90 @@
+/*
+ * see license.txt
+ */
+package test.map;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import seventh.game.GameMap;
+import seventh.server.MapPreloader;
+import seventh.shared.MapList.MapEntry;
+
+/**
+ * @author Tony
+ *
+ */
+public class MapPreloaderTest {
+
+    private MapPreloader preloader;
+    private File mapFile;
+
+    @Before
+    public void setUp() throws Exception {
+        this.preloader = new MapPreloader();
+        this.mapFile = File.createTempFile("map", ".json");
+        Files.write(mapFile.toPath(), MapHeapBenchmark.generateMap(5).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() {
+        this.preloader.shutdown();
+        this.mapFile.delete();
+    }
+
+    /*
+     * purpose : a preloaded map is taken with its graph and zones already built
+     * input : preload a generated map, then take it twice
+     * expected output : the map with its graph and zones, and null the second time
+     */
+    @Test
+    public void testPreloadAndTake() {
+        MapEntry map = new MapEntry(mapFile.getPath());
+        preloader.preload(map);
+        assertTrue(preloader.isPreloading(map));
+
+        GameMap gameMap = preloader.take(map);
+        assertNotNull(gameMap);
+        assertEquals(mapFile.getPath(), gameMap.getMapFileName());
+        assertEquals(200, gameMap.getMap().getTileWorldWidth());
+        assertNotNull(gameMap.getGraph());
+        assertNotNull(gameMap.getZones());
+
+        assertFalse(preloader.isPreloading(map));
+        assertNull(preloader.take(map));
+    }
+
+    /*
+     * purpose : taking a map other than the one being preloaded cancels the preload
+     * input : preload a generated map, then take another map
+     * expected output : null, and the generated map is no longer being preloaded
+     */
+    @Test
+    public void testTakeOtherMapCancels() {
+        MapEntry map = new MapEntry(mapFile.getPath());
+        preloader.preload(map);
+
+        assertNull(preloader.take(new MapEntry("./assets/maps/other.json")));
+        assertFalse(preloader.isPreloading(map));
+        assertNull(preloader.take(map));
+    }
+
+    /*
+     * purpose : a map that fails to preload isn't taken
+     * input : preload a map file that doesn't exist
+     * expected output : null
+     */
+    @Test
+    public void testFailedPreload() {
+        MapEntry map = new MapEntry(mapFile.getPath() + ".missing");
+        preloader.preload(map);
+        assertNull(preloader.take(map));
+    }
+}
@@ -0,0 +1,184 @@
+package test.map;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import seventh.map.Layer;
+import seventh.map.OrthoMap;
+import seventh.map.Tile;
+import seventh.map.Tile.CollisionMask;
+import seventh.math.Vector2f;
+
+public class OrthoMapLineCollidesTest {
+
+    private static final int MAP_TILES_X = 30;
+    private static final int MAP_TILES_Y = 20;
+
+    /**
+     * Builds a map with two collidable layers, filled with random collision
+     * masks and height masks
+     */
+    private OrthoMap newMap(Random random, int tileWidth, int tileHeight, float solidChance) throws Exception {
+        CollisionMask[] masks = CollisionMask.values();
+        Layer[] layers = new Layer[2];
+        for(int i = 0; i < layers.length; i++) {
+            layers[i] = new Layer("collidables" + i, true, false, false, false, true, i, 0, MAP_TILES_Y);
+            for(int y = 0; y < MAP_TILES_Y; y++) {
+                Tile[] row = new Tile[MAP_TILES_X];
+                for(int x = 0; x < MAP_TILES_X; x++) {
+                    if(random.nextFloat() < solidChance) {
+                        Tile tile = new Tile(null, i, tileWidth, tileHeight);
+                        tile.setPosition(x * tileWidth, y * tileHeight);
+                        tile.setCollisionMask(masks[random.nextInt(masks.length)]);
+                        tile.setHeightMask(random.nextInt(4));
+                        row[x] = tile;
+                    }
+                }
+                layers[i].addRow(y, row);
+            }
+        }
+
+        return TestMaps.newMap(MAP_TILES_X, MAP_TILES_Y, tileWidth, tileHeight, layers);
+    }
+
+    /**
+     * The pixel by pixel Bresenham walk, which is what {@link OrthoMap#lineCollides(Vector2f, Vector2f, int)}
+     * must match
+     */
+    private boolean pixelLineCollides(OrthoMap map, Vector2f a, Vector2f b, int heightMask) {
+        int x1 = (int)b.x;
+        int y1 = (int)b.y;
+
+        int x0 = (int)a.x;
+        int y0 = (int)a.y;
+
+        int dx = Math.abs(x1 - x0);
+        int dy = Math.abs(y1 - y0);
+
+        int sx = (x0 < x1) ? 1 : -1;
+        int sy = (y0 < y1) ? 1 : -1;
+
+        int err = dx - dy;
+
+        do {
+            if(map.pointCollides(x0, y0, heightMask)) {
+                return true;
+            }
+
+            if(x0 == x1 && y0 == y1) {
+                break;
+            }
+
+            int e2 = err * 2;
+
+            if(e2 > -dy) {
+                err = err - dy;
+                x0 = x0 + sx;
+            }
+
+            if(x0 == x1 && y0 == y1) {
+                if(map.pointCollides(x0, y0, heightMask)) {
+                    return true;
+                }
+                break;
+            }
+
+            if(e2 < dx) {
+                err = err + dx;
+                y0 = y0 + sy;
+            }
+
+            if(map.checkBounds(x0, y0)) {
+                return true;
+            }
+
+        } while( true );
+
+        return false;
+    }
+
+    private void assertMatchesPixelWalk(OrthoMap map, Random random, int numberOfLines, int maxLength) {
+        int width = map.getMapWidth();
+        int height = map.getMapHeight();
+
+        for(int i = 0; i < numberOfLines; i++) {
+            Vector2f a = new Vector2f(random.nextFloat() * (width + 20) - 10, random.nextFloat() * (height + 20) - 10);
+            Vector2f b = new Vector2f(a.x + (random.nextFloat() * 2 - 1) * maxLength,
+                                      a.y + (random.nextFloat() * 2 - 1) * maxLength);
+
+            /* include the axis aligned and perfectly diagonal lines */
+            switch(random.nextInt(8)) {
+                case 0: b.x = a.x; break;
+                case 1: b.y = a.y; break;
+                case 2: b.y = a.y + (b.x - a.x); break;
+                case 3: b.set(a); break;
+                default:
+            }
+
+            int heightMask = random.nextInt(4);
+            boolean expected = pixelLineCollides(map, a, b, heightMask);
+            assertEquals("Line from " + a + " to " + b + " mask: " + heightMask, expected, map.lineCollides(a, b, heightMask));
+        }
+    }
+
+    /*
+     * purpose : the tile walk must give the same results as the pixel walk
+     * input : random lines over a map with random tile collision masks and height masks
+     * expected output : the same result for every line
+     */
+    @Test
+    public void testMatchesPixelWalk() throws Exception {
+        Random random = new Random(3);
+        OrthoMap map = newMap(random, 32, 32, 0.15f);
+
+        assertMatchesPixelWalk(map, random, 20000, 100);
+        assertMatchesPixelWalk(map, random, 5000, 700);
+    }
+
+    /*
+     * purpose : the tile walk must give the same results for tiles that aren't square
+     * input : random lines over a map with 24x16 tiles
+     * expected output : the same result for every line
+     */
+    @Test
+    public void testMatchesPixelWalkNonSquareTiles() throws Exception {
+        Random random = new Random(5);
+        OrthoMap map = newMap(random, 24, 16, 0.1f);
+
+        assertMatchesPixelWalk(map, random, 20000, 300);
+    }
+
+    /*
+     * purpose : destroyed and restored tiles must be picked up by the tile walk
+     * input : a wall that is removed, and then restored
+     * expected output : the line is blocked, then clear, then blocked again
+     */
+    @Test
+    public void testDestroyedTiles() throws Exception {
+        Layer layer = new Layer("destructables", true, false, true, false, true, 0, 0, MAP_TILES_Y);
+        for(int y = 0; y < MAP_TILES_Y; y++) {
+            layer.addRow(y, new Tile[MAP_TILES_X]);
+        }
+
+        Tile wall = new Tile(null, 0, 32, 32);
+        wall.setPosition(5 * 32, 5 * 32);
+        wall.setCollisionMask(CollisionMask.ALL_SOLID);
+        layer.setTile(5, 5, wall);
+
+        OrthoMap map = TestMaps.newMap(MAP_TILES_X, MAP_TILES_Y, 32, 32, layer);
+
+        Vector2f a = new Vector2f(10, 170);
+        Vector2f b = new Vector2f(400, 180);
+
+        assertTrue(map.lineCollides(a, b));
+
+        assertTrue(map.removeDestructableTileAtWorld(170, 170));
+        assertFalse(map.lineCollides(a, b));
+
+        map.restoreDestroyedTiles();
+        assertTrue(map.lineCollides(a, b));
+    }
+}
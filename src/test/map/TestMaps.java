@@ -0,0 +1,114 @@
+/*
+ * see license.txt
+ */
+package test.map;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import seventh.map.Layer;
+import seventh.map.Map.SceneDef;
+import seventh.map.MapObject;
+import seventh.map.OrthoMap;
+import seventh.map.Tile;
+import seventh.map.Tile.CollisionMask;
+
+/**
+ * Builds {@link OrthoMap}s in memory for the tests, without any map file or textures
+ *
+ * @author Tony
+ *
+ */
+public class TestMaps {
+
+    public static final int TILE_SIZE = 32;
+
+    /**
+     * Builds a map with a ground layer, and a collidable layer with randomly placed solid tiles
+     *
+     * @param random
+     * @param tilesX
+     * @param tilesY
+     * @param solidChance the chance of each tile being solid
+     * @return the map
+     */
+    public static OrthoMap newSolidTileMap(Random random, int tilesX, int tilesY, float solidChance) throws Exception {
+        return newMap(tilesX, tilesY, TILE_SIZE, TILE_SIZE,
+                      newGroundLayer(tilesX, tilesY, TILE_SIZE, TILE_SIZE),
+                      newSolidLayer(random, 1, tilesX, tilesY, TILE_SIZE, TILE_SIZE, solidChance));
+    }
+
+    /**
+     * @param tilesX
+     * @param tilesY
+     * @param tileWidth
+     * @param tileHeight
+     * @return a layer of ground tiles that don't collide
+     */
+    public static Layer newGroundLayer(int tilesX, int tilesY, int tileWidth, int tileHeight) {
+        Layer ground = new Layer("ground", false, false, false, false, true, 0, 0, tilesY);
+        for(int y = 0; y < tilesY; y++) {
+            Tile[] row = new Tile[tilesX];
+            for(int x = 0; x < tilesX; x++) {
+                row[x] = new Tile(null, 0, tileWidth, tileHeight);
+                row[x].setPosition(x * tileWidth, y * tileHeight);
+            }
+            ground.addRow(y, row);
+        }
+
+        return ground;
+    }
+
+    /**
+     * @param random
+     * @param index the index of the layer
+     * @param tilesX
+     * @param tilesY
+     * @param tileWidth
+     * @param tileHeight
+     * @param solidChance the chance of each tile being solid
+     * @return a collidable layer with randomly placed solid tiles
+     */
+    public static Layer newSolidLayer(Random random, int index, int tilesX, int tilesY, int tileWidth, int tileHeight, float solidChance) {
+        Layer layer = new Layer("collidables", true, false, false, false, true, index, 0, tilesY);
+        for(int y = 0; y < tilesY; y++) {
+            Tile[] row = new Tile[tilesX];
+            for(int x = 0; x < tilesX; x++) {
+                if(random.nextFloat() < solidChance) {
+                    Tile tile = new Tile(null, index, tileWidth, tileHeight);
+                    tile.setPosition(x * tileWidth, y * tileHeight);
+                    tile.setCollisionMask(CollisionMask.ALL_SOLID);
+                    row[x] = tile;
+                }
+            }
+            layer.addRow(y, row);
+        }
+
+        return layer;
+    }
+
+    /**
+     * Builds a map out of the layers, with no foreground layers or map objects
+     *
+     * @param tilesX
+     * @param tilesY
+     * @param tileWidth
+     * @param tileHeight
+     * @param backgroundLayers
+     * @return the map
+     */
+    public static OrthoMap newMap(int tilesX, int tilesY, int tileWidth, int tileHeight, Layer... backgroundLayers) throws Exception {
+        SceneDef def = new SceneDef();
+        def.setBackgroundLayers(backgroundLayers);
+        def.setForegroundLayers(new Layer[0]);
+        def.setDimensionX(tilesX);
+        def.setDimensionY(tilesY);
+        def.setTileWidth(tileWidth);
+        def.setTileHeight(tileHeight);
+        def.setMapObjects(new ArrayList<MapObject>());
+
+        OrthoMap map = new OrthoMap(false);
+        map.init(def);
+        return map;
+    }
+}
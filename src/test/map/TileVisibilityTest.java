@@ -0,0 +1,100 @@
+package test.map;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import seventh.map.OrthoMap;
+import seventh.map.Tile;
+import seventh.map.TileVisibility;
+import seventh.math.Vector2f;
+import seventh.shared.Geom;
+
+public class TileVisibilityTest {
+
+    private static final int TILE_SIZE = 32;
+    private static final int MAP_TILES_X = 30;
+    private static final int MAP_TILES_Y = 20;
+
+    /*
+     * purpose : tiles can be marked visible and hidden, and looked up by tile or world coordinates
+     * input : a handful of visible tiles, including the edges of the grid, and out of bounds coordinates
+     * expected output : only the marked tiles are visible
+     */
+    @Test
+    public void testSetVisible() {
+        TileVisibility visibility = new TileVisibility(MAP_TILES_X, MAP_TILES_Y, TILE_SIZE, TILE_SIZE);
+        assertFalse(visibility.isVisible(0, 0));
+
+        visibility.setVisible(0, 0, true);
+        visibility.setVisible(MAP_TILES_X - 1, MAP_TILES_Y - 1, true);
+        visibility.setVisible(5, 3, true);
+        visibility.setVisible(-1, 3, true);
+        visibility.setVisible(MAP_TILES_X, 3, true);
+
+        assertTrue(visibility.isVisible(0, 0));
+        assertTrue(visibility.isVisible(MAP_TILES_X - 1, MAP_TILES_Y - 1));
+        assertTrue(visibility.isVisible(5, 3));
+        assertFalse(visibility.isVisible(4, 3));
+        assertFalse(visibility.isVisible(0, 4));
+        assertFalse(visibility.isVisible(-1, 3));
+        assertFalse(visibility.isVisible(MAP_TILES_X, 3));
+
+        assertTrue(visibility.isVisibleAtWorld(5 * TILE_SIZE, 3 * TILE_SIZE));
+        assertTrue(visibility.isVisibleAtWorld(6 * TILE_SIZE - 1, 4 * TILE_SIZE - 1));
+        assertFalse(visibility.isVisibleAtWorld(6 * TILE_SIZE, 3 * TILE_SIZE));
+        assertFalse(visibility.isVisibleAtWorld(-1, 0));
+
+        visibility.setVisible(5, 3, false);
+        assertFalse(visibility.isVisible(5, 3));
+        assertTrue(visibility.isVisible(0, 0));
+
+        visibility.clear();
+        assertFalse(visibility.isVisible(0, 0));
+        assertFalse(visibility.isVisible(MAP_TILES_X - 1, MAP_TILES_Y - 1));
+    }
+
+    /*
+     * purpose : the per viewer line of sight must see the same tiles as the tile mask line of sight
+     * input : random viewers over a map with random solid tiles
+     * expected output : a tile is visible exactly when its mask is visible, and the tile masks are left untouched
+     */
+    @Test
+    public void testLineOfSightMatchesTileMasks() throws Exception {
+        Random random = new Random(7);
+        OrthoMap map = TestMaps.newSolidTileMap(random, MAP_TILES_X, MAP_TILES_Y, 0.1f);
+
+        TileVisibility visibility = new TileVisibility(map);
+        List<Tile> maskTiles = new ArrayList<Tile>();
+        List<Tile> viewTiles = new ArrayList<Tile>();
+        Vector2f cache = new Vector2f();
+
+        for(int i = 0; i < 200; i++) {
+            Vector2f pos = new Vector2f(random.nextInt(MAP_TILES_X * TILE_SIZE), random.nextInt(MAP_TILES_Y * TILE_SIZE));
+            Vector2f facing = new Vector2f(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1);
+            Vector2f.Vector2fNormalize(facing, facing);
+            int radius = 100 + random.nextInt(300);
+
+            viewTiles = Geom.calculateLineOfSight(viewTiles, visibility, pos, facing, radius, map, 1, cache);
+            for(Tile tile : viewTiles) {
+                assertEquals(Tile.TILE_INVISIBLE, tile.getMask());
+            }
+
+            maskTiles = Geom.calculateLineOfSight(maskTiles, pos, facing, radius, map, 1, cache);
+            assertEquals(maskTiles, viewTiles);
+
+            for(int y = 0; y < MAP_TILES_Y; y++) {
+                for(int x = 0; x < MAP_TILES_X; x++) {
+                    Tile tile = map.getTile(0, x, y);
+                    assertEquals("Viewer: " + i, tile.getMask() > 0, visibility.isVisible(tile));
+                }
+            }
+
+            map.setMask(maskTiles, 0);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * see license.txt
+ */
+package test.shared;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import seventh.game.events.RoundStartedEvent;
+import seventh.game.events.RoundStartedListener;
+import seventh.shared.Event;
+import seventh.shared.EventDispatcher;
+import seventh.shared.EventListener;
+
+/**
+ * Microbenchmark comparing the {@link EventDispatcher}, which calls the bound listener methods directly, against
+ * sending the events the way it used to: looking up the listeners {@link Method} for each event and calling it
+ * with {@link Method#invoke}.  Each event is sent to a handful of anonymous listeners, as the game types and
+ * scripts register them.
+ *
+ * <p>
+ * Run with: <code>java test.shared.EventDispatcherBenchmark [iterations]</code>
+ *
+ * @author Tony
+ *
+ */
+public class EventDispatcherBenchmark {
+
+    private static final int NUMBER_OF_LISTENERS = 4;
+    private static final int EVENTS_PER_ITERATION = 100_000;
+
+    /**
+     * The old reflective dispatch
+     */
+    private static class ReflectiveDispatcher {
+        private final List<EventListener> listeners = new ArrayList<>();
+        private final Map<Class<?>, Method> methods = new HashMap<>();
+
+        void addEventListener(Class<?> eventClass, EventListener listener) throws Exception {
+            Method method = listener.getClass().getDeclaredMethod("onRoundStarted", eventClass);
+            method.setAccessible(true);
+            this.methods.put(listener.getClass(), method);
+            this.listeners.add(listener);
+        }
+
+        void sendNow(Event event) {
+            for(EventListener listener : this.listeners) {
+                try {
+                    this.methods.get(listener.getClass()).invoke(listener, event);
+                }
+                catch(Exception e) {
+                    e.printStackTrace(System.err);
+                }
+            }
+        }
+    }
+
+    private long count;
+
+    private RoundStartedListener newListener(final int weight) {
+        return new RoundStartedListener() {
+            @Override
+            public void onRoundStarted(RoundStartedEvent event) {
+                count += weight;
+            }
+        };
+    }
+
+    private long runCompiled(EventDispatcher dispatcher, Event event) {
+        for(int i = 0; i < EVENTS_PER_ITERATION; i++) {
+            dispatcher.sendNow(event);
+        }
+        return this.count;
+    }
+
+    private long runReflective(ReflectiveDispatcher dispatcher, Event event) {
+        for(int i = 0; i < EVENTS_PER_ITERATION; i++) {
+            dispatcher.sendNow(event);
+        }
+        return this.count;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+
+        EventDispatcherBenchmark benchmark = new EventDispatcherBenchmark();
+        EventDispatcher compiled = new EventDispatcher();
+        ReflectiveDispatcher reflective = new ReflectiveDispatcher();
+        for(int i = 0; i < NUMBER_OF_LISTENERS; i++) {
+            RoundStartedListener listener = benchmark.newListener(i + 1);
+            compiled.addEventListener(RoundStartedEvent.class, listener);
+            reflective.addEventListener(RoundStartedEvent.class, listener);
+        }
+
+        RoundStartedEvent event = new RoundStartedEvent(benchmark);
+
+        /* warm up, and make sure both send the event to every listener */
+        for(int i = 0; i < iterations / 4 + 1; i++) {
+            benchmark.count = 0;
+            long compiledCount = benchmark.runCompiled(compiled, event);
+            benchmark.count = 0;
+            long reflectiveCount = benchmark.runReflective(reflective, event);
+            if(compiledCount != reflectiveCount) {
+                throw new IllegalStateException("Compiled dispatch does not match reflective dispatch");
+            }
+        }
+
+        long startTime = System.nanoTime();
+        for(int i = 0; i < iterations; i++) {
+            benchmark.runReflective(reflective, event);
+        }
+        long reflectiveTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        for(int i = 0; i < iterations; i++) {
+            benchmark.runCompiled(compiled, event);
+        }
+        long compiledTime = System.nanoTime() - startTime;
+
+        double events = (double)iterations * EVENTS_PER_ITERATION;
+        System.out.printf("%d listeners, %,.0f events%n", NUMBER_OF_LISTENERS, events);
+        System.out.printf("reflective: %.1f nsec/event%n", reflectiveTime / events);
+        System.out.printf("compiled:   %.1f nsec/event%n", compiledTime / events);
+        System.out.printf("speedup:    %.2fx%n", (double)reflectiveTime / compiledTime);
+    }
+}
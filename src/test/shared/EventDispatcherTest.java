@@ -0,0 +1,178 @@
+/*
+ * see license.txt
+ */
+package test.shared;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import seventh.game.events.RoundStartedEvent;
+import seventh.game.events.RoundStartedListener;
+import seventh.shared.Cons;
+import seventh.shared.Event;
+import seventh.shared.EventDispatcher;
+import seventh.shared.EventListener;
+import seventh.shared.EventMethod;
+import seventh.shared.Logger;
+
+/**
+ * @author Tony
+ *
+ */
+public class EventDispatcherTest {
+
+    private static class PingEvent extends Event {
+        PingEvent(Object source) {
+            super(source);
+        }
+    }
+
+    private interface PingListener extends EventListener {
+        @EventMethod
+        void onPing(PingEvent event);
+    }
+
+    private EventDispatcher dispatcher;
+    private List<Object> received;
+
+    @Before
+    public void setUp() {
+        this.dispatcher = new EventDispatcher();
+        this.received = new ArrayList<>();
+    }
+
+    private RoundStartedListener newListener(final String name) {
+        return new RoundStartedListener() {
+            @Override
+            public void onRoundStarted(RoundStartedEvent event) {
+                received.add(name);
+            }
+        };
+    }
+
+    /*
+     * purpose : events are sent to the listeners of the event class, in the order they were added
+     * input : two listeners of a public listener interface, and one of a private listener interface
+     * expected output : each listener receives only its events
+     */
+    @Test
+    public void testSendNow() {
+        dispatcher.addEventListener(RoundStartedEvent.class, newListener("a"));
+        dispatcher.addEventListener(RoundStartedEvent.class, newListener("b"));
+        dispatcher.addEventListener(PingEvent.class, new PingListener() {
+            @Override
+            public void onPing(PingEvent event) {
+                received.add("ping");
+            }
+        });
+
+        dispatcher.sendNow(new RoundStartedEvent(this));
+        assertEquals(2, received.size());
+        assertEquals("a", received.get(0));
+        assertEquals("b", received.get(1));
+
+        dispatcher.sendNow(new PingEvent(this));
+        assertEquals(3, received.size());
+        assertEquals("ping", received.get(2));
+    }
+
+    /*
+     * purpose : all of the queued events are processed at once
+     * input : three queued events, one of which queues another event when received
+     * expected output : three events processed, and the event queued while processing is left for the next call
+     */
+    @Test
+    public void testProcessAllQueued() {
+        dispatcher.addEventListener(RoundStartedEvent.class, newListener("a"));
+        dispatcher.addEventListener(PingEvent.class, new PingListener() {
+            @Override
+            public void onPing(PingEvent event) {
+                received.add("ping");
+                dispatcher.queueEvent(new RoundStartedEvent(this));
+            }
+        });
+
+        dispatcher.queueEvent(new RoundStartedEvent(this));
+        dispatcher.queueEvent(new PingEvent(this));
+        dispatcher.queueEvent(new RoundStartedEvent(this));
+
+        assertEquals(3, dispatcher.processAllQueued());
+        assertEquals(3, received.size());
+
+        assertEquals(1, dispatcher.processAllQueued());
+        assertEquals(4, received.size());
+        assertEquals(0, dispatcher.processAllQueued());
+    }
+
+    /*
+     * purpose : a failing listener is logged with its stack trace and doesn't stop the event from reaching
+     *           the other listeners, and a consumed event isn't sent any further
+     * input : a listener that throws, a listener that consumes the event, and a third listener
+     * expected output : the failure and where it was thrown are logged, and only the second listener receives the event
+     */
+    @Test
+    public void testFailingAndConsumingListeners() {
+        final List<String> logged = new ArrayList<>();
+        Logger logger = new Logger() {
+            @Override public void print(Object msg) { logged.add(msg.toString()); }
+            @Override public void println(Object msg) { logged.add(msg.toString()); }
+            @Override public void printf(Object msg, Object... args) { logged.add(msg.toString()); }
+        };
+
+        dispatcher.addEventListener(RoundStartedEvent.class, new RoundStartedListener() {
+            @Override
+            public void onRoundStarted(RoundStartedEvent event) {
+                throw new IllegalStateException("failed");
+            }
+        });
+        dispatcher.addEventListener(RoundStartedEvent.class, new RoundStartedListener() {
+            @Override
+            public void onRoundStarted(RoundStartedEvent event) {
+                received.add("consumer");
+                event.consume();
+            }
+        });
+        dispatcher.addEventListener(RoundStartedEvent.class, newListener("c"));
+
+        Cons.addLogger(logger);
+        try {
+            dispatcher.sendNow(new RoundStartedEvent(this));
+        }
+        finally {
+            Cons.getImpl().removeLogger(logger);
+        }
+
+        assertEquals(1, received.size());
+        assertEquals("consumer", received.get(0));
+
+        assertEquals(2, logged.size());
+        assertTrue(logged.get(0).contains("IllegalStateException: failed"));
+        assertTrue(logged.get(1).contains(EventDispatcherTest.class.getName()));
+    }
+
+    /*
+     * purpose : removing a listener only removes that listener
+     * input : two listeners of the same class, the first removed
+     * expected output : only the second listener receives the event
+     */
+    @Test
+    public void testRemoveEventListener() {
+        RoundStartedListener a = newListener("a");
+        dispatcher.addEventListener(RoundStartedEvent.class, a);
+        dispatcher.addEventListener(RoundStartedEvent.class, newListener("b"));
+
+        dispatcher.removeEventListener(RoundStartedEvent.class, a);
+        dispatcher.sendNow(new RoundStartedEvent(this));
+        assertEquals(1, received.size());
+        assertEquals("b", received.get(0));
+
+        dispatcher.removeAllEventListeners();
+        dispatcher.sendNow(new RoundStartedEvent(this));
+        assertEquals(1, received.size());
+    }
+}
@@ -0,0 +1,164 @@
+package test.shared;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import seventh.shared.TickScheduler;
+
+public class TickSchedulerTest {
+
+    private static final long PERIOD = 20_000_000L;
+    private static final long SPIN = 1_000_000L;
+
+    /**
+     * A {@link TickScheduler} driven by a fake clock; parking moves the clock forward by the requested
+     * amount plus some oversleep, and spinning moves it forward in small steps
+     */
+    static class FakeClockScheduler extends TickScheduler {
+        long time;
+        long oversleep;
+        long parkedTime;
+        int numberOfSpins;
+
+        FakeClockScheduler(long period, int maxCatchUpTicks) {
+            super(period, maxCatchUpTicks, SPIN);
+        }
+
+        @Override
+        protected long currentTime() {
+            return time;
+        }
+
+        @Override
+        protected void park(long nanos) {
+            parkedTime += nanos;
+            time += nanos + oversleep;
+        }
+
+        @Override
+        protected void spin() {
+            numberOfSpins++;
+            time += 100_000L;
+        }
+    }
+
+    /*
+     * purpose : a loop that finishes its work early waits out the rest of the tick, mostly parked
+     * input : ticks that take 5ms of a 20ms period
+     * expected output : one tick per wait, each starting on its deadline, with the thread parked until the spin threshold
+     */
+    @Test
+    public void testWaitsForDeadline() {
+        FakeClockScheduler scheduler = new FakeClockScheduler(PERIOD, 5);
+        assertEquals(1, scheduler.waitForNextTick());
+        assertEquals(0, scheduler.time);
+
+        for(int i = 1; i <= 10; i++) {
+            scheduler.time += 5_000_000L;
+            assertEquals(1, scheduler.waitForNextTick());
+            assertEquals(i * PERIOD, scheduler.time);
+        }
+
+        assertEquals(10 * (PERIOD - 5_000_000L - SPIN), scheduler.parkedTime);
+        assertEquals(10 * (SPIN / 100_000L), scheduler.numberOfSpins);
+        assertEquals(0, scheduler.getMaxJitter());
+        assertEquals(0, scheduler.getNumberOfOverruns());
+        assertEquals(11, scheduler.getNumberOfTicks());
+    }
+
+    /*
+     * purpose : oversleeping past the spin tail shows up as jitter
+     * input : a park that wakes up 3ms late
+     * expected output : the jitter is the time past the deadline
+     */
+    @Test
+    public void testJitter() {
+        FakeClockScheduler scheduler = new FakeClockScheduler(PERIOD, 5);
+        scheduler.waitForNextTick();
+
+        scheduler.oversleep = 3_000_000L;
+        assertEquals(1, scheduler.waitForNextTick());
+        assertEquals(2_000_000L, scheduler.getLastJitter());
+        assertEquals(2_000_000L, scheduler.getMaxJitter());
+
+        scheduler.oversleep = 0;
+        assertEquals(1, scheduler.waitForNextTick());
+        assertEquals(0, scheduler.getLastJitter());
+        assertEquals(2_000_000L, scheduler.getMaxJitter());
+        assertEquals(1_000_000L, scheduler.getAverageJitter());
+    }
+
+    /*
+     * purpose : a tick that runs long is made up for on the next wait, keeping the original schedule
+     * input : a tick that takes 2.5 periods
+     * expected output : the 2 missed ticks are due right away, then the next tick lands back on the schedule
+     */
+    @Test
+    public void testCatchUp() {
+        FakeClockScheduler scheduler = new FakeClockScheduler(PERIOD, 5);
+        scheduler.waitForNextTick();
+
+        scheduler.time += PERIOD * 5 / 2;
+        assertEquals(2, scheduler.waitForNextTick());
+        assertEquals(1, scheduler.getNumberOfOverruns());
+        assertEquals(1, scheduler.getNumberOfCatchUpTicks());
+        assertEquals(0, scheduler.getNumberOfDroppedTicks());
+
+        assertEquals(1, scheduler.waitForNextTick());
+        assertEquals(3 * PERIOD, scheduler.time);
+    }
+
+    /*
+     * purpose : falling too far behind drops the backlog instead of spiraling
+     * input : a stall of 10 periods with a max of 3 catch up ticks
+     * expected output : of the 10 ticks due 3 are handed out, the rest are dropped, and the schedule restarts from the current time
+     */
+    @Test
+    public void testDropsBacklog() {
+        FakeClockScheduler scheduler = new FakeClockScheduler(PERIOD, 3);
+        scheduler.waitForNextTick();
+
+        scheduler.time += PERIOD * 10;
+        assertEquals(3, scheduler.waitForNextTick());
+        assertEquals(7, scheduler.getNumberOfDroppedTicks());
+
+        long resyncTime = scheduler.time;
+        assertEquals(1, scheduler.waitForNextTick());
+        assertEquals(resyncTime + PERIOD, scheduler.time);
+    }
+
+    /*
+     * purpose : changing the period (idle mode) is measured from the last tick
+     * input : a 250ms idle period, then back to the normal 20ms period
+     * expected output : the idle tick lands 250ms after the last tick and the normal tick 20ms after that
+     */
+    @Test
+    public void testChangePeriod() {
+        FakeClockScheduler scheduler = new FakeClockScheduler(PERIOD, 5);
+        scheduler.waitForNextTick();
+
+        scheduler.setTickPeriod(250_000_000L);
+        assertEquals(1, scheduler.waitForNextTick());
+        assertEquals(250_000_000L, scheduler.time);
+
+        scheduler.setTickPeriod(PERIOD);
+        assertEquals(1, scheduler.waitForNextTick());
+        assertEquals(250_000_000L + PERIOD, scheduler.time);
+    }
+
+    /*
+     * purpose : invalid tick periods are rejected
+     * input : zero and negative tick periods
+     * expected output : IllegalArgumentException
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidPeriod() {
+        new TickScheduler(0, 5);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidSetPeriod() {
+        new TickScheduler(PERIOD, 5).setTickPeriod(-1);
+    }
+}